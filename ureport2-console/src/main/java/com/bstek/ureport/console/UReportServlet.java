@@ -15,6 +15,9 @@
  ******************************************************************************/
 package com.bstek.ureport.console;
 
+import com.bstek.ureport.cache.ImageStore;
+import com.bstek.ureport.console.cache.SessionObjectStore;
+import com.bstek.ureport.console.image.ImageServletAction;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
@@ -59,6 +62,15 @@ public class UReportServlet extends HttpServlet {
             }
             actionMap.put(url, handler);
         }
+        if (actionMap.containsKey(ImageServletAction.URL)) {
+            ImageStore.setImageUrl(config.getServletContext().getContextPath() + PREFIX_URL + ImageServletAction.URL);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        SessionObjectStore.shutdown();
+        super.destroy();
     }
 
     protected WebApplicationContext getWebApplicationContext(ServletConfig config) {
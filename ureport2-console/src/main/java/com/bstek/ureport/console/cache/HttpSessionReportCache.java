@@ -15,13 +15,12 @@
  ******************************************************************************/
 package com.bstek.ureport.console.cache;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.bstek.ureport.cache.CacheStatistics;
 import com.bstek.ureport.cache.ReportCache;
 import com.bstek.ureport.console.RequestHolder;
 
@@ -29,8 +28,9 @@ import com.bstek.ureport.console.RequestHolder;
  * @author Jacky.gao
  * @since 2017年3月8日
  */
-public class HttpSessionReportCache implements ReportCache {
-	private Map<String,ObjectMap> sessionReportMap=new HashMap<String,ObjectMap>();
+public class HttpSessionReportCache implements ReportCache, InitializingBean, DisposableBean {
+	private final SessionObjectStore store=new SessionObjectStore("httpSessionReportCache");
+	private long sweepIntervalSeconds=30;
 	private boolean disabled;
 	@Override
 	public Object getObject(String file) {
@@ -38,18 +38,21 @@ public class HttpSessionReportCache implements ReportCache {
 		if(req==null){
 			return null;
 		}
-		ObjectMap objMap = getObjectMap(req);
-		return objMap.get(file);
+		return store.get(req, file);
 	}
 
 	@Override
 	public void storeObject(String file, Object object) {
+		tryStoreObject(file, object);
+	}
+	
+	@Override
+	public boolean tryStoreObject(String file, Object object) {
 		HttpServletRequest req=RequestHolder.getRequest();
 		if(req==null){
-			return;
+			return false;
 		}
-		ObjectMap map = getObjectMap(req);
-		map.put(file, object);
+		return store.put(req, file, object);
 	}
 	
 	@Override
@@ -57,29 +60,39 @@ public class HttpSessionReportCache implements ReportCache {
 		return disabled;
 	}
 	
+	@Override
+	public CacheStatistics getStatistics() {
+		return store.getStatistics();
+	}
+	
+	@Override
+	public void afterPropertiesSet() {
+		if(!disabled){
+			store.start(sweepIntervalSeconds);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		store.stop();
+	}
+	
 	public void setDisabled(boolean disabled) {
 		this.disabled = disabled;
 	}
-
-	private ObjectMap getObjectMap(HttpServletRequest req) {
-		List<String> expiredList=new ArrayList<String>();
-		for(String key:sessionReportMap.keySet()){
-			ObjectMap reportObj=sessionReportMap.get(key);
-			if(reportObj.isExpired()){
-				expiredList.add(key);
-			}
-		}
-		for(String key:expiredList){
-			sessionReportMap.remove(key);
-		}
-		String sessionId=req.getSession().getId();
-		ObjectMap obj=sessionReportMap.get(sessionId);
-		if(obj!=null){
-			return obj;
-		}else{
-			ObjectMap objMap=new ObjectMap();
-			sessionReportMap.put(sessionId, objMap);
-			return objMap;
-		}
+	public void setExpireSeconds(long expireSeconds) {
+		store.setExpireSeconds(expireSeconds);
+	}
+	public void setMaxSessions(int maxSessions) {
+		store.setMaxSessions(maxSessions);
+	}
+	public void setMaxEntriesPerSession(int maxEntriesPerSession) {
+		store.setMaxEntriesPerSession(maxEntriesPerSession);
+	}
+	public void setMaxWeight(long maxWeight) {
+		store.setMaxWeight(maxWeight);
+	}
+	public void setSweepIntervalSeconds(long sweepIntervalSeconds) {
+		this.sweepIntervalSeconds = sweepIntervalSeconds;
 	}
 }
@@ -15,52 +15,129 @@
  ******************************************************************************/
 package com.bstek.ureport.console.cache;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * 单个会话中缓存的对象，按最近访问顺序保存，超过条目上限时淘汰最久未访问的对象；
+ * 同时记录各对象的权重，权重及淘汰次数的变化同步累加到所属{@link SessionObjectStore}的计数中。
+ *
  * @author Jacky.gao
  * @since 2017年9月6日
  */
 public class ObjectMap {
     //default expired time is 5 minutes.
     private static final int MILLISECOND = 300000;
-    private static final int MAX_ITEM = 3;
-    private final Map<String, Object> OBJECT_MAP = new LinkedHashMap<>();
-    private long start;
+    private static final int MAX_ITEM = 4;
+    private final Map<String, WeightedObject> OBJECT_MAP = new LinkedHashMap<>(8, 0.75f, true);
+    private final int maxItem;
+    private final AtomicLong totalWeight;
+    private final AtomicLong evictionCount;
+    private volatile long start;
+    private long weight;
+    private boolean discarded;
 
     public ObjectMap() {
+        this(MAX_ITEM, new AtomicLong(), new AtomicLong());
+    }
+
+    ObjectMap(int maxItem, AtomicLong totalWeight, AtomicLong evictionCount) {
+        this.maxItem = maxItem;
+        this.totalWeight = totalWeight;
+        this.evictionCount = evictionCount;
         this.start = System.currentTimeMillis();
     }
 
     public void put(String key, Object obj) {
+        put(key, obj, 1);
+    }
+
+    /**
+     * @return 当前对象已被丢弃(会话已过期或被淘汰)时返回false，调用方需要重新取得会话对应的ObjectMap
+     */
+    synchronized boolean put(String key, Object obj, long objWeight) {
+        if (discarded) {
+            return false;
+        }
         this.start = System.currentTimeMillis();
-        if (OBJECT_MAP.containsKey(key)) {
-            OBJECT_MAP.remove(key);
-        } else {
-            if (OBJECT_MAP.size() > MAX_ITEM) {
-                String lastFile = null;
-                for (Entry<String, Object> entry : OBJECT_MAP.entrySet()) {
-                    lastFile = entry.getKey();
-                }
-                OBJECT_MAP.remove(lastFile);
+        WeightedObject old = OBJECT_MAP.put(key, new WeightedObject(obj, objWeight));
+        long delta = objWeight - (old == null ? 0 : old.weight);
+        Iterator<Entry<String, WeightedObject>> iter = OBJECT_MAP.entrySet().iterator();
+        while (OBJECT_MAP.size() > maxItem && iter.hasNext()) {
+            Entry<String, WeightedObject> eldest = iter.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
             }
+            delta -= eldest.getValue().weight;
+            iter.remove();
+            evictionCount.incrementAndGet();
         }
-        OBJECT_MAP.put(key, obj);
+        weight += delta;
+        totalWeight.addAndGet(delta);
+        return true;
     }
 
-    public Object get(String key) {
+    public synchronized Object get(String key) {
         this.start = System.currentTimeMillis();
-        return OBJECT_MAP.get(key);
+        WeightedObject obj = OBJECT_MAP.get(key);
+        return obj == null ? null : obj.value;
+    }
+
+    public synchronized void remove(String key) {
+        WeightedObject obj = OBJECT_MAP.remove(key);
+        if (obj != null) {
+            weight -= obj.weight;
+            totalWeight.addAndGet(-obj.weight);
+        }
+    }
+
+    /**
+     * 丢弃当前会话中的所有对象，之后的put操作将返回false
+     * @return 丢弃的对象数
+     */
+    synchronized int discard() {
+        if (discarded) {
+            return 0;
+        }
+        discarded = true;
+        int size = OBJECT_MAP.size();
+        OBJECT_MAP.clear();
+        totalWeight.addAndGet(-weight);
+        weight = 0;
+        return size;
+    }
+
+    synchronized int size() {
+        return OBJECT_MAP.size();
     }
 
-    public void remove(String key) {
-        OBJECT_MAP.remove(key);
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    long getLastAccessTime() {
+        return start;
     }
 
     public boolean isExpired() {
+        return isExpired(MILLISECOND);
+    }
+
+    boolean isExpired(long expireMillis) {
         long end = System.currentTimeMillis();
-        return (end - start) >= MILLISECOND;
+        return (end - start) >= expireMillis;
+    }
+
+    private static class WeightedObject {
+        private final Object value;
+        private final long weight;
+
+        WeightedObject(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
     }
 }
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.console.cache;
+
+import java.io.Serializable;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * 会话失效时立即清理{@link SessionObjectStore}中该会话的缓存对象。<br>
+ * 可以作为HttpSessionListener注册到容器中(web.xml的listener或Spring Boot的ServletListenerRegistrationBean)；
+ * 未注册时，会话第一次缓存对象时也会将其作为属性绑定到会话上，会话失效解绑时同样会触发清理。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SessionCacheListener implements HttpSessionListener, HttpSessionBindingListener, Serializable {
+	private static final long serialVersionUID = -3182937590357618423L;
+	private static final String ATTRIBUTE_NAME=SessionCacheListener.class.getName();
+
+	static void bind(HttpSession session){
+		try{
+			if(session.getAttribute(ATTRIBUTE_NAME)==null){
+				session.setAttribute(ATTRIBUTE_NAME, new SessionCacheListener());
+			}
+		}catch(IllegalStateException ex){
+			//session already invalidated
+		}
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent se) {
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent se) {
+		SessionObjectStore.sessionDestroyed(se.getSession().getId());
+	}
+
+	@Override
+	public void valueBound(HttpSessionBindingEvent event) {
+	}
+
+	@Override
+	public void valueUnbound(HttpSessionBindingEvent event) {
+		SessionObjectStore.sessionDestroyed(event.getSession().getId());
+	}
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.console.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.cache.CacheStatistics;
+import com.bstek.ureport.definition.ReportDefinition;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Report;
+
+/**
+ * 按会话存放临时对象的并发缓存，会话数及所有对象的总权重都有上限，超出时淘汰最久未访问的会话；
+ * 会话空闲超过expireSeconds后由后台线程定时清理，会话失效时通过{@link SessionCacheListener}立即清理。<br>
+ * Report及ReportDefinition以单元格数作为权重，Map以条目数作为权重，其它对象权重为1，单个对象超过总权重上限时不放入缓存，{@link #put}返回false。<br>
+ * 后台清理线程为守护线程，应用停止时需调用{@link #shutdown()}停止。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SessionObjectStore {
+	private static final Logger log=LoggerFactory.getLogger(SessionObjectStore.class);
+	private static final List<SessionObjectStore> stores=new CopyOnWriteArrayList<SessionObjectStore>();
+	private static ScheduledExecutorService sweeper;
+	private final String name;
+	private long expireMillis=300000;
+	private int maxSessions=1000;
+	private int maxEntriesPerSession=4;
+	private long maxWeight=2000000;
+	private final ConcurrentHashMap<String,ObjectMap> sessionMap=new ConcurrentHashMap<String,ObjectMap>();
+	private final AtomicLong totalWeight=new AtomicLong();
+	private final AtomicLong hitCount=new AtomicLong();
+	private final AtomicLong missCount=new AtomicLong();
+	private final AtomicLong evictionCount=new AtomicLong();
+	private ScheduledFuture<?> sweepFuture;
+
+	public SessionObjectStore(String name) {
+		this.name=name;
+	}
+
+	/**
+	 * 开始定时清理过期会话，并登记到会话失效时需要清理的缓存中
+	 * @param sweepIntervalSeconds 清理间隔秒数
+	 */
+	public synchronized void start(long sweepIntervalSeconds){
+		if(sweepFuture!=null){
+			return;
+		}
+		stores.add(this);
+		sweepFuture=getSweeper().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					sweep();
+				}catch(Throwable ex){
+					Utils.logToConsole("~~~ Sweep session cache ["+name+"] failed:"+ex.getMessage());
+				}
+			}
+		}, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stop(){
+		stores.remove(this);
+		if(sweepFuture!=null){
+			sweepFuture.cancel(false);
+			sweepFuture=null;
+		}
+		for(String sessionId:new ArrayList<String>(sessionMap.keySet())){
+			removeSession(sessionId);
+		}
+	}
+
+	public Object get(HttpServletRequest req,String key){
+		HttpSession session=req.getSession();
+		ObjectMap objMap=sessionMap.get(session.getId());
+		if(objMap!=null && objMap.isExpired(expireMillis)){
+			evict(session.getId(), objMap);
+			objMap=null;
+		}
+		Object obj=objMap==null ? null : objMap.get(key);
+		if(obj==null){
+			missCount.incrementAndGet();
+		}else{
+			hitCount.incrementAndGet();
+		}
+		return obj;
+	}
+
+	/**
+	 * @return 对象超过缓存总权重上限没有放入时返回false
+	 */
+	public boolean put(HttpServletRequest req,String key,Object obj){
+		long weight=weigh(obj);
+		if(weight>maxWeight){
+			log.warn("Object ["+key+"] weight "+weight+" exceeds session cache ["+name+"] limit "+maxWeight+", not cached.");
+			return false;
+		}
+		HttpSession session=req.getSession();
+		String sessionId=session.getId();
+		while(true){
+			ObjectMap objMap=sessionMap.get(sessionId);
+			if(objMap==null || objMap.isExpired(expireMillis)){
+				if(objMap!=null){
+					evict(sessionId, objMap);
+				}
+				ObjectMap newMap=new ObjectMap(maxEntriesPerSession,totalWeight,evictionCount);
+				objMap=sessionMap.putIfAbsent(sessionId, newMap);
+				if(objMap==null){
+					objMap=newMap;
+					SessionCacheListener.bind(session);
+				}
+			}
+			if(objMap.put(key, obj, weight)){
+				break;
+			}
+			sessionMap.remove(sessionId, objMap);
+		}
+		if(sessionMap.size()>maxSessions || totalWeight.get()>maxWeight){
+			evictOverflow(sessionId);
+		}
+		return true;
+	}
+
+	public void remove(HttpServletRequest req,String key){
+		ObjectMap objMap=sessionMap.get(req.getSession().getId());
+		if(objMap!=null){
+			objMap.remove(key);
+		}
+	}
+
+	public void removeSession(String sessionId){
+		ObjectMap objMap=sessionMap.get(sessionId);
+		if(objMap!=null){
+			removeSession(sessionId, objMap);
+		}
+	}
+
+	/**
+	 * 会话失效时清理所有缓存中该会话的对象
+	 * @param sessionId 会话ID
+	 */
+	public static void sessionDestroyed(String sessionId){
+		for(SessionObjectStore store:stores){
+			store.removeSession(sessionId);
+		}
+	}
+
+	/**
+	 * 停止所有缓存的定时清理并关闭清理线程，应用停止时调用
+	 */
+	public static void shutdown(){
+		for(SessionObjectStore store:stores){
+			store.stop();
+		}
+		synchronized(SessionObjectStore.class){
+			if(sweeper!=null){
+				sweeper.shutdownNow();
+				sweeper=null;
+			}
+		}
+	}
+
+	void sweep(){
+		for(Map.Entry<String,ObjectMap> entry:sessionMap.entrySet()){
+			if(entry.getValue().isExpired(expireMillis)){
+				evict(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * 会话数或总权重超出上限时，按最近访问时间淘汰其它会话，会话数超出时一次多淘汰十分之一，避免每次放入对象都要排序
+	 */
+	private synchronized void evictOverflow(String currentSessionId){
+		if(sessionMap.size()<=maxSessions && totalWeight.get()<=maxWeight){
+			return;
+		}
+		List<SessionAccess> sessions=new ArrayList<SessionAccess>(sessionMap.size());
+		for(Map.Entry<String,ObjectMap> entry:sessionMap.entrySet()){
+			sessions.add(new SessionAccess(entry.getKey(),entry.getValue()));
+		}
+		Collections.sort(sessions);
+		int targetSessions=sessionMap.size()>maxSessions ? maxSessions-maxSessions/10 : maxSessions;
+		for(SessionAccess session:sessions){
+			if(sessionMap.size()<=targetSessions && totalWeight.get()<=maxWeight){
+				break;
+			}
+			if(session.sessionId.equals(currentSessionId)){
+				continue;
+			}
+			evict(session.sessionId, session.objMap);
+		}
+	}
+
+	private void removeSession(String sessionId,ObjectMap objMap){
+		if(sessionMap.remove(sessionId, objMap)){
+			objMap.discard();
+		}
+	}
+
+	/**
+	 * 因过期或超出上限移除会话，移除的对象计入淘汰次数
+	 */
+	private void evict(String sessionId,ObjectMap objMap){
+		if(sessionMap.remove(sessionId, objMap)){
+			evictionCount.addAndGet(objMap.discard());
+		}
+	}
+
+	private long weigh(Object obj){
+		if(obj instanceof Report){
+			long count=0;
+			for(List<Cell> cells:((Report)obj).getCellsMap().values()){
+				count+=cells.size();
+			}
+			return Math.max(count, 1);
+		}
+		if(obj instanceof ReportDefinition){
+			List<?> cells=((ReportDefinition)obj).getCells();
+			return cells==null ? 1 : Math.max(cells.size(), 1);
+		}
+		if(obj instanceof Map){
+			return Math.max(((Map<?,?>)obj).size(), 1);
+		}
+		return 1;
+	}
+
+	public CacheStatistics getStatistics(){
+		long size=0;
+		for(ObjectMap objMap:sessionMap.values()){
+			size+=objMap.size();
+		}
+		return new CacheStatistics(hitCount.get(),missCount.get(),evictionCount.get(),size,totalWeight.get());
+	}
+
+	private static synchronized ScheduledExecutorService getSweeper(){
+		if(sweeper==null){
+			sweeper=Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread=new Thread(r,"ureport-session-cache-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sweeper;
+	}
+
+	public void setExpireSeconds(long expireSeconds) {
+		this.expireMillis = expireSeconds*1000;
+	}
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
+	public void setMaxEntriesPerSession(int maxEntriesPerSession) {
+		this.maxEntriesPerSession = maxEntriesPerSession;
+	}
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * 排序时使用的会话访问时间快照，避免排序过程中访问时间变化导致比较结果不一致
+	 */
+	private static class SessionAccess implements Comparable<SessionAccess>{
+		private final String sessionId;
+		private final ObjectMap objMap;
+		private final long lastAccessTime;
+		SessionAccess(String sessionId,ObjectMap objMap){
+			this.sessionId=sessionId;
+			this.objMap=objMap;
+			this.lastAccessTime=objMap.getLastAccessTime();
+		}
+		@Override
+		public int compareTo(SessionAccess o) {
+			return Long.compare(lastAccessTime, o.lastAccessTime);
+		}
+	}
+}
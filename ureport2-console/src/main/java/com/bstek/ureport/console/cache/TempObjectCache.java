@@ -18,13 +18,10 @@
  ******************************************************************************/
 package com.bstek.ureport.console.cache;
 
+import com.bstek.ureport.cache.CacheStatistics;
 import com.bstek.ureport.console.RequestHolder;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 
 /**
@@ -35,27 +32,37 @@ import java.util.Map;
  */
 public class TempObjectCache {
     private final static TempObjectCache TEMP_OBJECT_CACHE = new TempObjectCache();
-    private final Map<String, ObjectMap> SEESION_MAP = new HashMap<>();
+    private final SessionObjectStore store = new SessionObjectStore("tempObjectCache");
+
+    public TempObjectCache() {
+        store.start(30);
+    }
 
     public static Object getObject(String key) {
         return TEMP_OBJECT_CACHE.get(key);
     }
 
-    public static void putObject(String key, Object obj) {
-        TEMP_OBJECT_CACHE.store(key, obj);
+    /**
+     * @return 对象过大没有放入缓存时返回false
+     */
+    public static boolean putObject(String key, Object obj) {
+        return TEMP_OBJECT_CACHE.store(key, obj);
     }
 
     public static void removeObject(String key) {
         TEMP_OBJECT_CACHE.remove(key);
     }
 
+    public static CacheStatistics getStatistics() {
+        return TEMP_OBJECT_CACHE.store.getStatistics();
+    }
+
     public void remove(String key) {
         HttpServletRequest req = RequestHolder.getRequest();
         if (req == null) {
             return;
         }
-        ObjectMap mapObject = getReportMap(req);
-        mapObject.remove(key);
+        store.remove(req, key);
     }
 
     public Object get(String key) {
@@ -63,38 +70,15 @@ public class TempObjectCache {
         if (req == null) {
             return null;
         }
-        ObjectMap mapObject = getReportMap(req);
-        return mapObject.get(key);
+        return store.get(req, key);
     }
 
-    public void store(String key, Object obj) {
+    public boolean store(String key, Object obj) {
         HttpServletRequest req = RequestHolder.getRequest();
         if (req == null) {
-            return;
-        }
-        ObjectMap mapObject = getReportMap(req);
-        mapObject.put(key, obj);
-    }
-
-    private ObjectMap getReportMap(HttpServletRequest req) {
-        List<String> expiredList = new ArrayList<>();
-        for (String key : SEESION_MAP.keySet()) {
-            ObjectMap reportObj = SEESION_MAP.get(key);
-            if (reportObj.isExpired()) {
-                expiredList.add(key);
-            }
-        }
-        for (String key : expiredList) {
-            SEESION_MAP.remove(key);
-        }
-        String sessionId = req.getSession().getId();
-        ObjectMap obj = SEESION_MAP.get(sessionId);
-        if (obj != null) {
-            return obj;
-        } else {
-            ObjectMap mapObject = new ObjectMap();
-            SEESION_MAP.put(sessionId, mapObject);
-            return mapObject;
+            return false;
         }
+        store.start(30);
+        return store.put(req, key, obj);
     }
 }
@@ -120,7 +120,9 @@ public class DesignerServletAction extends RenderPageServletAction {
         ReportDefinition reportDef = reportParser.parse(inputStream, "p");
         reportRender.rebuildReportDefinition(reportDef);
         IOUtils.closeQuietly(inputStream);
-        TempObjectCache.putObject(PREVIEW_KEY, reportDef);
+        if (!TempObjectCache.putObject(PREVIEW_KEY, reportDef)) {
+            throw new ReportDesignException("Report is too large to preview from the designer, please save it and preview the file.");
+        }
     }
 
     public void loadReport(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -38,6 +38,7 @@ public class ReportDefinitionWrapper {
 	private HeaderFooterDefinition footer;
 	private SearchForm searchForm;
 	private String searchFormXml;
+	private boolean parallelDatasets;
 	private List<RowDefinition> rows;
 	private List<ColumnDefinition> columns;
 	private List<DatasourceDefinition> datasources;
@@ -48,6 +49,7 @@ public class ReportDefinitionWrapper {
 		this.footer=report.getFooter();
 		this.searchForm=report.getSearchForm();
 		this.searchFormXml=report.getSearchFormXml();
+		this.parallelDatasets=report.isParallelDatasets();
 		this.rows=report.getRows();
 		this.columns=report.getColumns();
 		this.datasources=report.getDatasources();
@@ -76,6 +78,9 @@ public class ReportDefinitionWrapper {
 	public void setSearchForm(SearchForm searchForm) {
 		this.searchForm = searchForm;
 	}
+	public boolean isParallelDatasets() {
+		return parallelDatasets;
+	}
 	public Map<String, CellDefinition> getCellsMap() {
 		return cellsMap;
 	}
@@ -19,7 +19,9 @@ import com.bstek.ureport.build.Context;
 import com.bstek.ureport.build.ReportBuilder;
 import com.bstek.ureport.build.paging.Page;
 import com.bstek.ureport.cache.CacheUtils;
+import com.bstek.ureport.cache.ComputedReportCache;
 import com.bstek.ureport.chart.ChartData;
+import com.bstek.ureport.chart.render.ChartRenderer;
 import com.bstek.ureport.console.MobileUtils;
 import com.bstek.ureport.console.RenderPageServletAction;
 import com.bstek.ureport.console.cache.TempObjectCache;
@@ -35,8 +37,11 @@ import com.bstek.ureport.export.html.SearchFormData;
 import com.bstek.ureport.model.Report;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -44,6 +49,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -51,10 +57,13 @@ import java.util.*;
  * @since 2017年2月15日
  */
 public class HtmlPreviewServletAction extends RenderPageServletAction {
+    private static final String ROW_WINDOW_KEY_PREFIX = "_row_window_";
     private final HtmlProducer htmlProducer = new HtmlProducer();
+    private final RowWindowBuilder rowWindowBuilder = new RowWindowBuilder();
     private ExportManager exportManager;
     private ReportBuilder reportBuilder;
     private ReportRender reportRender;
+    private RowWindowStore rowWindowStore = new RowWindowStore();
 
     @Override
     public void execute(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -64,9 +73,12 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
         } else {
             VelocityContext context = new VelocityContext();
             HtmlReport htmlReport = null;
+            Report streamReport = null;
             String errorMsg = null;
             try {
-                htmlReport = loadReport(req);
+                PreviewReport previewReport = loadPreviewReport(req, true);
+                htmlReport = previewReport.htmlReport;
+                streamReport = previewReport.streamReport;
             } catch (Exception ex) {
                 if (!(ex instanceof ReportDesignException)) {
                     log.error("报表计算出错，错误信息如下：", ex);
@@ -97,13 +109,23 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
                     context.put("downSearchFormHtml", "");
                     context.put("upSearchFormHtml", "");
                 }
-                context.put("content", htmlReport.getContent());
+                boolean virtualScroll = streamReport != null && "1".equals(req.getParameter("_vs"));
+                if (virtualScroll) {
+                    rowWindowStore.put(buildRowWindowKey(req, buildParameters(req)), streamReport);
+                    context.put("content", "");
+                } else if (streamReport != null) {
+                    context.put("content", new StreamingHtmlContent(streamReport));
+                } else {
+                    context.put("content", htmlReport.getContent());
+                }
+                context.put("virtualScroll", virtualScroll);
                 context.put("style", htmlReport.getStyle());
                 context.put("reportAlign", htmlReport.getReportAlign());
                 context.put("totalPage", htmlReport.getTotalPage());
                 context.put("totalPageWithCol", htmlReport.getTotalPageWithCol());
                 context.put("pageIndex", htmlReport.getPageIndex());
                 context.put("chartDatas", convertJson(htmlReport.getChartDatas()));
+                context.put("serverChartRender", ChartRenderer.isEnabled());
                 context.put("error", false);
                 context.put("file", req.getParameter("_u"));
                 context.put("intervalRefreshValue", htmlReport.getHtmlIntervalRefreshValue());
@@ -186,16 +208,17 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
             throw new ReportComputeException("Report file can not be null.");
         }
         Map<String, Object> parameters = buildParameters(req);
-        ReportDefinition reportDefinition = null;
+        Report report = null;
         if (file.equals(PREVIEW_KEY)) {
-            reportDefinition = (ReportDefinition) TempObjectCache.getObject(PREVIEW_KEY);
+            ReportDefinition reportDefinition = (ReportDefinition) TempObjectCache.getObject(PREVIEW_KEY);
             if (reportDefinition == null) {
                 throw new ReportDesignException("Report data has expired,can not do export excel.");
             }
+            report = reportBuilder.buildReport(reportDefinition, parameters);
         } else {
-            reportDefinition = reportRender.getReportDefinition(file);
+            ReportDefinition reportDefinition = reportRender.getReportDefinition(file);
+            report = reportRender.renderWithCache(file, reportDefinition, parameters);
         }
-        Report report = reportBuilder.buildReport(reportDefinition, parameters);
         Map<String, ChartData> chartMap = report.getContext().getChartDataMap();
         if (!chartMap.isEmpty()) {
             CacheUtils.storeChartDataMap(chartMap);
@@ -233,6 +256,35 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
         writeObjectToJson(resp, map);
     }
 
+    /**
+     * 虚拟滚动预览时取得报表的一段行数据，参数_o为起始行，_l为行数。
+     * 报表在打开页面时计算并放入{@link RowWindowStore}，这里只读取，不会重新计算；
+     * 报表已失效时返回错误，由页面提示用户刷新
+     */
+    public void loadRows(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String file = decode(req.getParameter("_u"));
+        if (StringUtils.isBlank(file)) {
+            throw new ReportComputeException("Report file can not be null.");
+        }
+        Map<String, Object> parameters = buildParameters(req);
+        Report report = rowWindowStore.get(buildRowWindowKey(req, parameters));
+        if (report == null) {
+            throw new ReportDesignException("报表数据已过期，请刷新页面重新计算报表。");
+        }
+        int offset = NumberUtils.toInt(req.getParameter("_o"), 0);
+        int limit = NumberUtils.toInt(req.getParameter("_l"), 200);
+        writeObjectToJson(resp, rowWindowBuilder.build(report, offset, limit));
+    }
+
+    /**
+     * 按会话ID、报表文件及参数生成存储的key。数据集可能依赖当前登录用户或会话中的数据，
+     * 计算好的报表只能由计算它的会话读取，所以所有报表的key中都要加入会话ID
+     */
+    private String buildRowWindowKey(HttpServletRequest req, Map<String, Object> parameters) {
+        String file = decode(req.getParameter("_u"));
+        return req.getSession().getId() + ROW_WINDOW_KEY_PREFIX + ComputedReportCache.buildKey(file, parameters);
+    }
+
     public void loadPagePaper(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String file = req.getParameter("_u");
         file = decode(file);
@@ -253,8 +305,16 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
     }
 
     private HtmlReport loadReport(HttpServletRequest req) {
+        return loadPreviewReport(req, false).htmlReport;
+    }
+
+    /**
+     * @param streaming 为true时不分页的报表不生成HTML内容，而是返回计算好的报表，由页面模版渲染时直接写入响应
+     */
+    private PreviewReport loadPreviewReport(HttpServletRequest req, boolean streaming) {
         Map<String, Object> parameters = buildParameters(req);
         HtmlReport htmlReport = null;
+        Report streamReport = null;
         String file = req.getParameter("_u");
         file = decode(file);
         String pageIndex = req.getParameter("_i");
@@ -286,6 +346,8 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
                 }
                 htmlReport.setTotalPage(pageData.getTotalPages());
                 htmlReport.setPageIndex(index);
+            } else if (streaming) {
+                streamReport = report;
             } else {
                 html = htmlProducer.produce(report);
             }
@@ -303,11 +365,27 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
             if (StringUtils.isNotBlank(pageIndex) && !pageIndex.equals("0")) {
                 int index = Integer.parseInt(pageIndex);
                 htmlReport = exportManager.exportHtml(file, req.getContextPath(), parameters, index);
+            } else if (streaming) {
+                ReportDefinition reportDefinition = reportRender.getReportDefinition(file);
+                streamReport = reportRender.renderWithCache(file, reportDefinition, parameters);
+                Map<String, ChartData> chartMap = streamReport.getContext().getChartDataMap();
+                if (!chartMap.isEmpty()) {
+                    CacheUtils.storeChartDataMap(chartMap);
+                }
+                htmlReport = new HtmlReport();
+                if (reportDefinition.getPaper().isColumnEnabled()) {
+                    htmlReport.setColumn(reportDefinition.getPaper().getColumnCount());
+                }
+                htmlReport.setStyle(reportDefinition.getStyle());
+                htmlReport.setSearchFormData(reportDefinition.buildSearchFormData(streamReport.getContext().getDatasetMap(), parameters));
+                htmlReport.setReportAlign(streamReport.getPaper().getHtmlReportAlign().name());
+                htmlReport.setChartDatas(chartMap.values());
+                htmlReport.setHtmlIntervalRefreshValue(streamReport.getPaper().getHtmlIntervalRefreshValue());
             } else {
                 htmlReport = exportManager.exportHtml(file, req.getContextPath(), parameters);
             }
         }
-        return htmlReport;
+        return new PreviewReport(htmlReport, streamReport);
     }
 
 
@@ -357,8 +435,47 @@ public class HtmlPreviewServletAction extends RenderPageServletAction {
         this.reportRender = reportRender;
     }
 
+    public void setRowWindowStore(RowWindowStore rowWindowStore) {
+        this.rowWindowStore = rowWindowStore;
+    }
+
     @Override
     public String url() {
         return "/preview";
     }
+
+    private static class PreviewReport {
+        private final HtmlReport htmlReport;
+        private final Report streamReport;
+
+        PreviewReport(HtmlReport htmlReport, Report streamReport) {
+            this.htmlReport = htmlReport;
+            this.streamReport = streamReport;
+        }
+    }
+
+    /**
+     * 页面模版渲染到报表内容时，将报表HTML逐行写入响应，不先生成完整的字符串；
+     * 响应未设置长度，写入过程中定时刷新，容器会以chunked方式分块发送
+     */
+    private class StreamingHtmlContent implements Renderable {
+        private final Report report;
+
+        StreamingHtmlContent(Report report) {
+            this.report = report;
+        }
+
+        @Override
+        public boolean render(InternalContextAdapter context, Writer writer) throws IOException {
+            try {
+                htmlProducer.produce(report, writer);
+            } catch (IOException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                log.error("报表计算出错，错误信息如下：", ex);
+                writer.write("<div style='color:red'><strong>报表计算出错，错误信息如下：</strong><br><div style=\"margin:10px\">" + buildExceptionMessage(ex) + "</div></div>");
+            }
+            return true;
+        }
+    }
 }
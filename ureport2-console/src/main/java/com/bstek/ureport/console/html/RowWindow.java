@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.console.html;
+
+import java.util.List;
+
+/**
+ * 虚拟滚动预览时返回给浏览器的一段行数据。<br>
+ * cells中每个单元格为数组：[行号,列号,跨行数,跨列数,单元格名,自定义样式下标,文本,图片]，
+ * 行号为所有可见行中的绝对序号，跨行数按可见行计算，自定义样式下标对应styles，没有时为-1，图片为data url，没有时省略。<br>
+ * offset为0时heightRuns按[行高,连续行数,行高,连续行数...]给出所有可见行的行高，浏览器据此计算每行的位置，其它时候为null。
+ *
+ * @author jackie
+ * @since 2.2.10
+ */
+public class RowWindow {
+    private int total;
+    private int offset;
+    private int[] columns;
+    private int[] heights;
+    private int[] heightRuns;
+    private List<Object[]> cells;
+    private List<String> styles;
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int[] getColumns() {
+        return columns;
+    }
+
+    public void setColumns(int[] columns) {
+        this.columns = columns;
+    }
+
+    public int[] getHeights() {
+        return heights;
+    }
+
+    public void setHeights(int[] heights) {
+        this.heights = heights;
+    }
+
+    public int[] getHeightRuns() {
+        return heightRuns;
+    }
+
+    public void setHeightRuns(int[] heightRuns) {
+        this.heightRuns = heightRuns;
+    }
+
+    public List<Object[]> getCells() {
+        return cells;
+    }
+
+    public void setCells(List<Object[]> cells) {
+        this.cells = cells;
+    }
+
+    public List<String> getStyles() {
+        return styles;
+    }
+
+    public void setStyles(List<String> styles) {
+        this.styles = styles;
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.console.html;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.bstek.ureport.chart.ChartData;
+import com.bstek.ureport.export.html.HtmlProducer;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Column;
+import com.bstek.ureport.model.Image;
+import com.bstek.ureport.model.Report;
+import com.bstek.ureport.model.Row;
+
+/**
+ * 从已计算好的报表中截取指定范围的可见行，生成{@link RowWindow}。<br>
+ * 每个报表的可见行索引只生成一次，之后取任意一段行只访问该段内的行，
+ * 以及向上最多最大跨行数范围内跨入该段的单元格。
+ *
+ * @author jackie
+ * @since 2.2.10
+ */
+public class RowWindowBuilder {
+    public static final int MAX_LIMIT = 1000;
+    private final HtmlProducer htmlProducer = new HtmlProducer();
+    private final Map<Report, RowIndex> indexMap = new WeakHashMap<>();
+
+    public RowWindow build(Report report, int offset, int limit) {
+        RowIndex index = getRowIndex(report);
+        int total = index.visibleRows.length;
+        if (limit < 1 || limit > MAX_LIMIT) {
+            limit = MAX_LIMIT;
+        }
+        if (offset < 0) {
+            offset = 0;
+        }
+        if (offset > total) {
+            offset = total;
+        }
+        int end = Math.min(offset + limit, total);
+        List<Row> rows = report.getRows();
+        List<Column> columns = report.getColumns();
+        Map<Row, Map<Column, Cell>> cellMap = report.getRowColCellMap();
+        RowWindow window = new RowWindow();
+        window.setTotal(total);
+        window.setOffset(offset);
+        int[] widths = new int[columns.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = columns.get(i).getWidth();
+        }
+        window.setColumns(widths);
+        int[] heights = new int[end - offset];
+        List<Object[]> cells = new ArrayList<>();
+        List<String> styles = new ArrayList<>();
+        Map<String, Integer> styleIndexMap = new HashMap<>();
+        int start = Math.max(0, offset - index.maxRowSpan + 1);
+        for (int i = start; i < end; i++) {
+            int rowIndex = index.visibleRows[i];
+            Row row = rows.get(rowIndex);
+            if (i >= offset) {
+                heights[i - offset] = row.getRealHeight();
+            }
+            Map<Column, Cell> colMap = cellMap.get(row);
+            if (colMap == null) {
+                continue;
+            }
+            for (int j = 0; j < widths.length; j++) {
+                Cell cell = colMap.get(columns.get(j));
+                if (cell == null || cell.isForPaging()) {
+                    continue;
+                }
+                int rowSpan = index.visibleRowSpan(rowIndex, cell.getRowSpan());
+                if (i < offset && i + Math.max(rowSpan, 1) <= offset) {
+                    continue;
+                }
+                cells.add(buildCell(cell, i, j, rowSpan, styles, styleIndexMap));
+            }
+        }
+        window.setHeights(heights);
+        if (offset == 0) {
+            window.setHeightRuns(index.heightRuns);
+        }
+        window.setCells(cells);
+        window.setStyles(styles);
+        return window;
+    }
+
+    private Object[] buildCell(Cell cell, int rowNumber, int colNumber, int rowSpan, List<String> styles, Map<String, Integer> styleIndexMap) {
+        int styleIndex = -1;
+        String css = htmlProducer.buildCustomCss(cell);
+        if (css.length() > 0) {
+            Integer exist = styleIndexMap.get(css);
+            if (exist == null) {
+                exist = styles.size();
+                styles.add(css);
+                styleIndexMap.put(css, exist);
+            }
+            styleIndex = exist;
+        }
+        Object data = cell.getFormatData();
+        String text = "";
+        String image = null;
+        if (data instanceof Image) {
+            Image img = (Image) data;
+            image = "data:" + imageType(img.getPath()) + ";base64," + img.getBase64Data();
+        } else if (data != null && !(data instanceof ChartData)) {
+            text = data.toString();
+        }
+        if (image == null) {
+            return new Object[]{rowNumber, colNumber, rowSpan, cell.getColSpan(), cell.getName(), styleIndex, text};
+        }
+        return new Object[]{rowNumber, colNumber, rowSpan, cell.getColSpan(), cell.getName(), styleIndex, text, image};
+    }
+
+    private String imageType(String path) {
+        if (StringUtils.isNotBlank(path)) {
+            path = path.toLowerCase();
+            if (path.endsWith(".jpg") || path.endsWith(".jpeg")) {
+                return "image/jpeg";
+            } else if (path.endsWith(".gif")) {
+                return "image/gif";
+            }
+        }
+        return "image/png";
+    }
+
+    private synchronized RowIndex getRowIndex(Report report) {
+        RowIndex index = indexMap.get(report);
+        if (index == null) {
+            index = new RowIndex(report);
+            indexMap.put(report, index);
+        }
+        return index;
+    }
+
+    /**
+     * 报表的可见行索引，与不分页预览一样跳过仅用于分页的行及高度为0的行
+     */
+    private static class RowIndex {
+        /**
+         * 可见行序号到报表行下标的映射
+         */
+        private final int[] visibleRows;
+        /**
+         * 报表行下标之前的可见行数，长度为报表行数加1
+         */
+        private final int[] visibleBefore;
+        private final int maxRowSpan;
+        /**
+         * 可见行的行高，连续相同行高合并为[行高,行数]
+         */
+        private final int[] heightRuns;
+
+        RowIndex(Report report) {
+            List<Row> rows = report.getRows();
+            Map<Row, Map<Column, Cell>> cellMap = report.getRowColCellMap();
+            visibleBefore = new int[rows.size() + 1];
+            int[] visible = new int[rows.size()];
+            int count = 0, maxSpan = 1;
+            for (int i = 0; i < rows.size(); i++) {
+                visibleBefore[i] = count;
+                Row row = rows.get(i);
+                if (row.isForPaging() || row.getRealHeight() < 1) {
+                    continue;
+                }
+                visible[count++] = i;
+                Map<Column, Cell> colMap = cellMap.get(row);
+                if (colMap != null) {
+                    for (Cell cell : colMap.values()) {
+                        maxSpan = Math.max(maxSpan, cell.getRowSpan());
+                    }
+                }
+            }
+            visibleBefore[rows.size()] = count;
+            visibleRows = new int[count];
+            System.arraycopy(visible, 0, visibleRows, 0, count);
+            maxRowSpan = maxSpan;
+            heightRuns = buildHeightRuns(rows);
+        }
+
+        private int[] buildHeightRuns(List<Row> rows) {
+            int[] runs = new int[16];
+            int size = 0;
+            for (int rowIndex : visibleRows) {
+                int height = rows.get(rowIndex).getRealHeight();
+                if (size > 0 && runs[size - 2] == height) {
+                    runs[size - 1]++;
+                    continue;
+                }
+                if (size == runs.length) {
+                    runs = Arrays.copyOf(runs, size * 2);
+                }
+                runs[size++] = height;
+                runs[size++] = 1;
+            }
+            return Arrays.copyOf(runs, size);
+        }
+
+        int visibleRowSpan(int rowIndex, int rowSpan) {
+            if (rowSpan < 2) {
+                return rowSpan;
+            }
+            int end = Math.min(rowIndex + rowSpan, visibleBefore.length - 1);
+            return visibleBefore[end] - visibleBefore[rowIndex];
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.console.html;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Report;
+
+/**
+ * 虚拟滚动预览使用的报表存储，按会话ID、报表文件及参数存放计算好的报表，报表对象本身不放在HTTP会话中，
+ * 每个报表只能由计算它的会话取回，不会在用户之间共享。<br>
+ * 存储的报表数不超过maxEntries，单元格总数不超过maxCells，超出时淘汰最久未访问的报表，
+ * 最近放入的报表即使单独超过maxCells也会保留，保证刚打开的虚拟滚动页面可以取到数据；
+ * 报表超过ttlSeconds未被访问后失效，失效后浏览器需要刷新页面重新计算。
+ *
+ * @author jackie
+ * @since 2.2.10
+ */
+public class RowWindowStore implements DisposableBean {
+    private int maxEntries = 8;
+    private long maxCells = 5000000;
+    private long ttlSeconds = 1800;
+    private long totalCells;
+    private final Map<String, Entry> entryMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    public synchronized Report get(String key) {
+        Entry entry = entryMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.isExpired(now, ttlSeconds)) {
+            remove(key);
+            return null;
+        }
+        entry.lastAccessTime = now;
+        return entry.report;
+    }
+
+    public synchronized void put(String key, Report report) {
+        long now = System.currentTimeMillis();
+        remove(key);
+        Iterator<Map.Entry<String, Entry>> iter = entryMap.entrySet().iterator();
+        while (iter.hasNext()) {
+            Entry entry = iter.next().getValue();
+            if (entry.isExpired(now, ttlSeconds)) {
+                iter.remove();
+                totalCells -= entry.cells;
+            }
+        }
+        Entry entry = new Entry(report, countCells(report), now);
+        entryMap.put(key, entry);
+        totalCells += entry.cells;
+        iter = entryMap.entrySet().iterator();
+        while ((entryMap.size() > maxEntries || totalCells > maxCells) && entryMap.size() > 1) {
+            Entry eldest = iter.next().getValue();
+            iter.remove();
+            totalCells -= eldest.cells;
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entryMap.remove(key);
+        if (entry != null) {
+            totalCells -= entry.cells;
+        }
+    }
+
+    private long countCells(Report report) {
+        long count = 0;
+        for (List<Cell> cells : report.getCellsMap().values()) {
+            count += cells.size();
+        }
+        return count;
+    }
+
+    public synchronized void clean() {
+        entryMap.clear();
+        totalCells = 0;
+    }
+
+    @Override
+    public void destroy() {
+        clean();
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public void setMaxCells(long maxCells) {
+        this.maxCells = maxCells;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    private static class Entry {
+        private final Report report;
+        private final long cells;
+        private long lastAccessTime;
+
+        Entry(Report report, long cells, long lastAccessTime) {
+            this.report = report;
+            this.cells = cells;
+            this.lastAccessTime = lastAccessTime;
+        }
+
+        boolean isExpired(long now, long ttlSeconds) {
+            return now - lastAccessTime > ttlSeconds * 1000;
+        }
+    }
+}
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package com.bstek.ureport.console.image;
 
+import com.bstek.ureport.cache.ImageStore;
+import com.bstek.ureport.cache.ImageStore.StoredImage;
 import com.bstek.ureport.cache.ResourceCache;
 import com.bstek.ureport.console.ServletAction;
 import org.apache.commons.io.IOUtils;
@@ -34,15 +36,39 @@ import java.io.OutputStream;
  */
 public class ImageServletAction implements ServletAction {
     public static final String URL = "/image";
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
 
     @Override
     public void execute(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String key = req.getParameter("_key");
         if (StringUtils.isNotBlank(key)) {
-            byte[] bytes = (byte[]) ResourceCache.getObject(key);
+            String contentType = "image/png";
+            byte[] bytes;
+            StoredImage image = ImageStore.get(key);
+            if (image != null) {
+                // 图片地址由内容摘要生成，内容不会变化，允许浏览器长期缓存
+                String etag = "\"" + key + "\"";
+                resp.setHeader("Cache-Control", CACHE_CONTROL);
+                resp.setHeader("ETag", etag);
+                if (etag.equals(req.getHeader("If-None-Match"))) {
+                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                bytes = image.getData();
+                if (image.getContentType() != null) {
+                    contentType = image.getContentType();
+                }
+            } else {
+                bytes = (byte[]) ResourceCache.getObject(key);
+            }
+            if (bytes == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
             InputStream input = new ByteArrayInputStream(bytes);
+            resp.setContentType(contentType);
+            resp.setContentLength(bytes.length);
             OutputStream output = resp.getOutputStream();
-            resp.setContentType("image/png");
             try {
                 IOUtils.copy(input, output);
             } finally {
@@ -76,9 +76,12 @@ public class ImportExcelServletAction extends RenderPageServletAction {
 			errorInfo=e.getMessage();
 		}
 		Map<String,Object> result=new HashMap<String,Object>();
+		if(report!=null && !TempObjectCache.putObject("classpath:template/template.ureport.xml", report)){
+			report=null;
+			errorInfo="导入的Excel过大，无法放入缓存";
+		}
 		if(report!=null){
 			result.put("result", true);
-			TempObjectCache.putObject("classpath:template/template.ureport.xml", report);
 		}else{
 			result.put("result", false);
 			if(errorInfo!=null){
@@ -17,7 +17,6 @@ package com.bstek.ureport;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -36,6 +35,8 @@ import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.model.Cell;
 import com.bstek.ureport.model.Report;
 import com.bstek.ureport.provider.image.ImageProvider;
+import com.bstek.ureport.utils.FormatUtils;
+import com.bstek.ureport.utils.PropertyAccessor;
 
 
 /**
@@ -165,6 +166,10 @@ public class Utils implements ApplicationContextAware{
 				Map<?,?> map=(Map<?,?>)obj;
 				return map.get(property);
 			}
+			Object value=PropertyAccessor.getProperty(obj, property);
+			if(value!=PropertyAccessor.UNRESOLVED){
+				return value;
+			}
 			return PropertyUtils.getProperty(obj, property);
 		}catch(Exception ex){
 			throw new ReportComputeException(ex);
@@ -175,13 +180,11 @@ public class Utils implements ApplicationContextAware{
 		if(obj instanceof Date){
 			return (Date)obj;
 		}else if(obj instanceof String){
-			SimpleDateFormat sd=new SimpleDateFormat("yyyy-MM-dd");
 			try{
-				return sd.parse(obj.toString());
+				return FormatUtils.parseDate(obj.toString(), "yyyy-MM-dd");
 			}catch(Exception ex){
-				sd=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 				try{
-					return sd.parse(obj.toString());					
+					return FormatUtils.parseDate(obj.toString(), "yyyy-MM-dd HH:mm:ss");
 				}catch(Exception e){
 					throw new ReportComputeException("Can not convert "+obj+" to Date.");
 				}
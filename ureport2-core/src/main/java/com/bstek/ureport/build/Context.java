@@ -17,6 +17,7 @@ package com.bstek.ureport.build;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +61,10 @@ public class Context {
 	private Map<Row,Map<Column,Cell>> blankCellsMap=new HashMap<Row,Map<Column,Cell>>();
 	private Map<Row,Integer> fillBlankRowsMap=new HashMap<Row,Integer>();
 	private Map<String,ChartData> chartDataMap=new HashMap<String,ChartData>();
+	/**
+	 * 按数据列表(以对象标识区分)及属性名缓存的分组索引，交叉单元格取数时直接按值取出对应的行
+	 */
+	private Map<List<?>,Map<String,Map<Object,List<Object>>>> groupRowsMap=new IdentityHashMap<List<?>,Map<String,Map<Object,List<Object>>>>();
 	public Context(ReportBuilder reportBuilder,Report report,Map<String,Dataset> datasetMap,ApplicationContext applicationContext,Map<String,Object> parameters,HideRowColumnBuilder hideRowColumnBuilder) {
 		this.reportBuilder=reportBuilder;
 		this.report = report;
@@ -231,6 +236,41 @@ public class Context {
 		throw new DatasetUndefinitionException(name);
 	}
 	
+	/**
+	 * 从list中取出属性prop的值等于data的行，list第一次按prop取数时会建立分组索引，
+	 * 之后所有针对该list与prop的取数都直接从索引中获取，不再逐行读取属性
+	 * @param list 数据列表，通常为数据集数据或父单元格绑定的数据
+	 * @param prop 属性名
+	 * @param data 属性值
+	 * @return 符合条件的行，保持在list中的原有顺序
+	 */
+	public List<Object> fetchGroupRows(List<?> list,String prop,Object data){
+		Map<String,Map<Object,List<Object>>> propMap=groupRowsMap.get(list);
+		if(propMap==null){
+			propMap=new HashMap<String,Map<Object,List<Object>>>();
+			groupRowsMap.put(list, propMap);
+		}
+		Map<Object,List<Object>> groupMap=propMap.get(prop);
+		if(groupMap==null){
+			groupMap=new HashMap<Object,List<Object>>();
+			for(Object obj:list){
+				Object value=Utils.getProperty(obj, prop);
+				List<Object> rows=groupMap.get(value);
+				if(rows==null){
+					rows=new ArrayList<Object>();
+					groupMap.put(value, rows);
+				}
+				rows.add(obj);
+			}
+			propMap.put(prop, groupMap);
+		}
+		List<Object> rows=groupMap.get(data);
+		if(rows==null){
+			return new ArrayList<Object>();
+		}
+		return rows;
+	}
+	
 	public Map<String, Dataset> getDatasetMap() {
 		return datasetMap;
 	}
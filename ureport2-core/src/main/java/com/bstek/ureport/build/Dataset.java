@@ -24,6 +24,10 @@ import java.util.List;
 public class Dataset {
 	private String name;
 	private List<?> data;
+	/**
+	 * 数据集加载耗时，单位毫秒
+	 */
+	private long loadTime;
 	
 	public Dataset(String name, List<?> data) {
 		this.name = name;
@@ -35,4 +39,10 @@ public class Dataset {
 	public List<?> getData() {
 		return data;
 	}
+	public long getLoadTime() {
+		return loadTime;
+	}
+	public void setLoadTime(long loadTime) {
+		this.loadTime = loadTime;
+	}
 }
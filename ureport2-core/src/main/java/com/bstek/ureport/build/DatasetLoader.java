@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.definition.dataset.DatasetDefinition;
+import com.bstek.ureport.definition.dataset.SqlDatasetDefinition;
+import com.bstek.ureport.definition.dataset.SqlDatasetDefinition.SqlQuery;
+import com.bstek.ureport.definition.datasource.DatasourceDefinition;
+import com.bstek.ureport.definition.datasource.SpringBeanDatasourceDefinition;
+import com.bstek.ureport.exception.ReportComputeException;
+
+/**
+ * 并行加载报表中的SQL数据集，每个SQL数据集使用独立的数据库连接在线程池中执行，
+ * 同一数据源同时执行的查询数受maxConnectionsPerDatasource限制，超出的查询在该数据源的队列中等待，不占用线程池中的线程，
+ * 数据源按实际的连接来源区分({@link ReportBuilder#resolveDatasourceKey(DatasourceDefinition)})，不按报表中定义的名称，
+ * 没有正在执行的查询时该数据源的限制器即被移除；
+ * SQL中的表达式及Spring Bean数据集可能依赖当前请求线程上的上下文，所以仍在调用线程中执行，线程池中只执行JDBC查询。<br>
+ * 任一数据集加载失败时会通过Statement.cancel()取消其余正在执行的查询，还未开始的查询不再执行；
+ * 所有数据集加载完成后按报表中数据源及数据集定义的顺序放入结果中，与串行加载的结果一致。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class DatasetLoader implements DisposableBean {
+	public static final String BEAN_ID="ureport.datasetLoader";
+	private boolean parallel;
+	private int threads=8;
+	private int maxConnectionsPerDatasource=4;
+	private ExecutorService executorService;
+	private final ConcurrentHashMap<Object,DatasourceLimiter> limiterMap=new ConcurrentHashMap<Object,DatasourceLimiter>();
+
+	public Map<String,Dataset> loadDatasets(List<DatasourceDefinition> datasources,Map<String,Object> parameters,ApplicationContext applicationContext,ReportBuilder reportBuilder){
+		BlockingQueue<Future<Dataset>> completedQueue=new LinkedBlockingQueue<Future<Dataset>>();
+		List<DatasetTask> tasks=new ArrayList<DatasetTask>();
+		Map<DatasourceDefinition,List<Dataset>> beanDatasetsMap=new HashMap<DatasourceDefinition,List<Dataset>>();
+		try{
+			for(DatasourceDefinition dsDef:datasources){
+				if(dsDef instanceof SpringBeanDatasourceDefinition || dsDef.getDatasets()==null){
+					continue;
+				}
+				for(DatasetDefinition datasetDef:dsDef.getDatasets()){
+					SqlDatasetDefinition sqlDataset=(SqlDatasetDefinition)datasetDef;
+					SqlQuery query=sqlDataset.prepareQuery(parameters);
+					DatasetTask task=new DatasetTask(dsDef, query, reportBuilder, completedQueue);
+					tasks.add(task);
+					Object datasourceKey=reportBuilder.resolveDatasourceKey(dsDef);
+					while(!getLimiter(datasourceKey).submit(task)){
+						// 限制器刚好因空闲被移除，重新取得
+					}
+				}
+			}
+			for(DatasourceDefinition dsDef:datasources){
+				if(dsDef instanceof SpringBeanDatasourceDefinition){
+					SpringBeanDatasourceDefinition ds=(SpringBeanDatasourceDefinition)dsDef;
+					beanDatasetsMap.put(dsDef, ds.getDatasets(applicationContext, parameters));
+				}
+			}
+			for(int i=0;i<tasks.size();i++){
+				completedQueue.take().get();
+			}
+		}catch(InterruptedException ex){
+			cancel(tasks);
+			Thread.currentThread().interrupt();
+			throw new ReportComputeException(ex);
+		}catch(ExecutionException ex){
+			cancel(tasks);
+			Throwable cause=ex.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error){
+				throw (Error)cause;
+			}
+			throw new ReportComputeException((Exception)cause);
+		}catch(RuntimeException ex){
+			cancel(tasks);
+			throw ex;
+		}
+		Map<String,Dataset> datasetMap=new HashMap<String,Dataset>();
+		int index=0;
+		for(DatasourceDefinition dsDef:datasources){
+			List<Dataset> list=null;
+			if(dsDef instanceof SpringBeanDatasourceDefinition){
+				list=beanDatasetsMap.get(dsDef);
+			}else if(dsDef.getDatasets()!=null){
+				list=new ArrayList<Dataset>();
+				for(int i=0;i<dsDef.getDatasets().size();i++){
+					list.add(getResult(tasks.get(index++)));
+				}
+			}
+			if(list==null){
+				continue;
+			}
+			for(Dataset dataset:list){
+				datasetMap.put(dataset.getName(), dataset);
+			}
+		}
+		return datasetMap;
+	}
+
+	private void cancel(List<DatasetTask> tasks){
+		for(DatasetTask task:tasks){
+			task.cancelQuery();
+		}
+	}
+
+	private Dataset getResult(Future<Dataset> future){
+		try {
+			return future.get();
+		} catch (Exception e) {
+			throw new ReportComputeException(e);
+		}
+	}
+
+	private DatasourceLimiter getLimiter(Object datasourceKey){
+		DatasourceLimiter limiter=limiterMap.get(datasourceKey);
+		if(limiter==null){
+			limiter=new DatasourceLimiter(datasourceKey);
+			DatasourceLimiter exist=limiterMap.putIfAbsent(datasourceKey, limiter);
+			if(exist!=null){
+				limiter=exist;
+			}
+		}
+		return limiter;
+	}
+
+	private synchronized ExecutorService getExecutorService(){
+		if(executorService==null){
+			final AtomicInteger count=new AtomicInteger();
+			executorService=new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread=new Thread(r,"ureport-dataset-loader-"+count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			((ThreadPoolExecutor)executorService).allowCoreThreadTimeOut(true);
+		}
+		return executorService;
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if(executorService!=null){
+			executorService.shutdownNow();
+			executorService=null;
+		}
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	public void setMaxConnectionsPerDatasource(int maxConnectionsPerDatasource) {
+		this.maxConnectionsPerDatasource = maxConnectionsPerDatasource;
+	}
+
+	/**
+	 * 限制同一数据源同时执行的查询数，名额已满时查询放入等待队列，某个查询结束后由其所在线程提交下一个，
+	 * 线程池中的线程不会因为等待名额而阻塞，其它数据源的查询不受影响。
+	 * 最后一个查询结束且没有等待的查询时从limiterMap中移除，之后不再接受查询
+	 */
+	private class DatasourceLimiter{
+		private final Object datasourceKey;
+		private final Queue<DatasetTask> waitingTasks=new LinkedList<DatasetTask>();
+		private int running;
+		private boolean removed;
+
+		DatasourceLimiter(Object datasourceKey){
+			this.datasourceKey=datasourceKey;
+		}
+
+		/**
+		 * @return 限制器已被移除时返回false，调用方需要重新取得限制器再提交
+		 */
+		boolean submit(DatasetTask task){
+			synchronized(this){
+				if(removed){
+					return false;
+				}
+				if(running>=maxConnectionsPerDatasource){
+					waitingTasks.add(task);
+					return true;
+				}
+				running++;
+			}
+			execute(task);
+			return true;
+		}
+
+		private void execute(final DatasetTask task){
+			try{
+				getExecutorService().execute(new Runnable() {
+					@Override
+					public void run() {
+						try{
+							task.run();
+						}finally{
+							next();
+						}
+					}
+				});
+			}catch(RejectedExecutionException ex){
+				task.cancelQuery();
+				next();
+			}
+		}
+
+		private void next(){
+			DatasetTask task;
+			synchronized(this){
+				task=waitingTasks.poll();
+				if(task==null){
+					running--;
+					if(running==0){
+						removed=true;
+						limiterMap.remove(datasourceKey, this);
+					}
+					return;
+				}
+			}
+			execute(task);
+		}
+	}
+
+	private class DatasetTask extends FutureTask<Dataset>{
+		private final StatementTracker tracker;
+		private final BlockingQueue<Future<Dataset>> completedQueue;
+
+		DatasetTask(DatasourceDefinition datasource,SqlQuery query,ReportBuilder reportBuilder,BlockingQueue<Future<Dataset>> completedQueue){
+			this(new StatementTracker(),datasource,query,reportBuilder,completedQueue);
+		}
+
+		private DatasetTask(final StatementTracker tracker,final DatasourceDefinition datasource,final SqlQuery query,final ReportBuilder reportBuilder,BlockingQueue<Future<Dataset>> completedQueue){
+			super(new Callable<Dataset>() {
+				@Override
+				public Dataset call() throws Exception {
+					Connection conn=null;
+					try{
+						conn=reportBuilder.buildConnection(datasource);
+						return query.execute(conn, tracker);
+					}finally{
+						if(conn!=null){
+							try {
+								conn.close();
+							} catch (SQLException e) {
+								Utils.logToConsole("~~~ Close connection of datasource ["+datasource.getName()+"] failed:"+e.getMessage());
+							}
+						}
+					}
+				}
+			});
+			this.tracker=tracker;
+			this.completedQueue=completedQueue;
+		}
+
+		/**
+		 * 让数据库停止正在执行的查询，还未开始的不再执行
+		 */
+		void cancelQuery(){
+			tracker.cancel();
+			cancel(false);
+		}
+
+		@Override
+		protected void done() {
+			completedQueue.add(this);
+		}
+	}
+}
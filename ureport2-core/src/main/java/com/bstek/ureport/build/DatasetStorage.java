@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build;
+
+/**
+ * SQL数据集的读取及存储方式配置：
+ * columnar为true时查询结果以流的方式逐行读入按列存储的{@link com.bstek.ureport.build.columnar.ColumnarTable}，
+ * 否则与之前一样每行生成一个Map；fetchSize大于0(或为MySQL流式读取使用的Integer.MIN_VALUE)时设置到查询语句上。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class DatasetStorage {
+	private static boolean columnar;
+	private static int fetchSize;
+
+	public static boolean isColumnar() {
+		return columnar;
+	}
+	public void setColumnar(boolean columnar) {
+		DatasetStorage.columnar = columnar;
+	}
+	public static int getFetchSize() {
+		return fetchSize;
+	}
+	public void setFetchSize(int fetchSize) {
+		DatasetStorage.fetchSize = fetchSize;
+	}
+}
@@ -23,6 +23,7 @@ import com.bstek.ureport.build.cell.right.RightExpandBuilder;
 import com.bstek.ureport.build.paging.BasePagination;
 import com.bstek.ureport.build.paging.Page;
 import com.bstek.ureport.build.paging.PagingBuilder;
+import com.bstek.ureport.build.pushdown.SqlPushdownPlanner;
 import com.bstek.ureport.definition.*;
 import com.bstek.ureport.definition.datasource.*;
 import com.bstek.ureport.exception.ReportComputeException;
@@ -50,6 +51,8 @@ public class ReportBuilder extends BasePagination implements ApplicationContextA
     private Map<Expand, CellBuilder> cellBuildersMap = new HashMap<Expand, CellBuilder>();
     private NoneExpandBuilder noneExpandBuilder = new NoneExpandBuilder();
     private HideRowColumnBuilder hideRowColumnBuilder;
+    private DatasetLoader datasetLoader;
+    private SqlPushdownPlanner sqlPushdownPlanner;
 
     public ReportBuilder() {
         cellBuildersMap.put(Expand.Right, new RightExpandBuilder());
@@ -59,6 +62,9 @@ public class ReportBuilder extends BasePagination implements ApplicationContextA
 
     public Report buildReport(ReportDefinition reportDefinition, Map<String, Object> parameters) {
         Report report = reportDefinition.newReport();
+        if (sqlPushdownPlanner != null) {
+            sqlPushdownPlanner.plan(reportDefinition);
+        }
         Map<String, Dataset> datasetMap = buildDatasets(reportDefinition, parameters, applicationContext);
         Context context = new Context(this, report, datasetMap, applicationContext, parameters, hideRowColumnBuilder);
         long start = System.currentTimeMillis();
@@ -110,6 +116,9 @@ public class ReportBuilder extends BasePagination implements ApplicationContextA
         if (datasources == null) {
             return datasetMap;
         }
+        if (datasetLoader != null && datasetLoader.isParallel() && reportDefinition.isParallelDatasets()) {
+            return datasetLoader.loadDatasets(datasources, parameters, applicationContext, this);
+        }
         for (DatasourceDefinition dsDef : datasources) {
             if (dsDef instanceof JdbcDatasourceDefinition) {
                 String dsName = dsDef.getName();
@@ -177,6 +186,51 @@ public class ReportBuilder extends BasePagination implements ApplicationContextA
         return datasetMap;
     }
 
+    /**
+     * 取得数据源实际对应的连接来源，与{@link #buildConnection(DatasourceDefinition)}的查找顺序一致：
+     * 内置数据源及DatasourceProvider为对应的Bean，JDBC数据源为连接地址加用户名。
+     * 不同报表中同名但实际不同的数据源得到不同的结果，用于按实际数据源限制并行加载时的连接数
+     */
+    Object resolveDatasourceKey(DatasourceDefinition dsDef) {
+        String dsName = dsDef.getName();
+        if (dsDef instanceof BuildinDatasourceDefinition) {
+            for (BuildinDatasource datasource : Utils.getBuildinDatasources()) {
+                if (datasource.name().equals(dsName)) {
+                    return datasource;
+                }
+            }
+        }
+        if (datasourceProviderMap.containsKey(dsName)) {
+            return datasourceProviderMap.get(dsName);
+        }
+        if (dsDef instanceof JdbcDatasourceDefinition) {
+            JdbcDatasourceDefinition jdbcDef = (JdbcDatasourceDefinition) dsDef;
+            return "jdbc:" + jdbcDef.getUsername() + "@" + jdbcDef.getUrl();
+        }
+        return dsDef;
+    }
+
+    /**
+     * 为数据源创建一个新的数据库连接，用于并行加载数据集时每个数据集使用独立的连接
+     */
+    Connection buildConnection(DatasourceDefinition dsDef) {
+        String dsName = dsDef.getName();
+        if (dsDef instanceof BuildinDatasourceDefinition) {
+            for (BuildinDatasource datasource : Utils.getBuildinDatasources()) {
+                if (datasource.name().equals(dsName)) {
+                    return datasource.getConnection();
+                }
+            }
+        }
+        if (datasourceProviderMap.containsKey(dsName)) {
+            return datasourceProviderMap.get(dsName).getConnection();
+        }
+        if (dsDef instanceof JdbcDatasourceDefinition) {
+            return ((JdbcDatasourceDefinition) dsDef).buildConnection();
+        }
+        throw new ReportComputeException("Buildin datasource [" + dsName + "] not exist.");
+    }
+
     private void doFillBlankRows(Report report, Context context) {
         Map<Row, Integer> map = context.getFillBlankRowsMap();
         List<Row> newRowList = new ArrayList<Row>();
@@ -445,6 +499,14 @@ public class ReportBuilder extends BasePagination implements ApplicationContextA
         this.hideRowColumnBuilder = hideRowColumnBuilder;
     }
 
+    public void setDatasetLoader(DatasetLoader datasetLoader) {
+        this.datasetLoader = datasetLoader;
+    }
+
+    public void setSqlPushdownPlanner(SqlPushdownPlanner sqlPushdownPlanner) {
+        this.sqlPushdownPlanner = sqlPushdownPlanner;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         this.applicationContext = applicationContext;
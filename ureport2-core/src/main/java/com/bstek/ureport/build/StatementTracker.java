@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 记录一个数据集当前正在执行的Statement，其它线程可以通过{@link #cancel()}让数据库停止执行该查询。<br>
+ * 中断阻塞在JDBC读写上的线程并不能让数据库停止查询，所以并行加载时某个数据集失败后需要用这里的Statement.cancel()取消其它查询。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class StatementTracker {
+	private Statement statement;
+	private boolean cancelled;
+
+	/**
+	 * 在Statement执行前调用，已取消时直接抛出异常，不再执行查询
+	 */
+	public synchronized void track(Statement statement) throws SQLException{
+		if(cancelled){
+			throw new SQLException("Dataset query cancelled.");
+		}
+		this.statement=statement;
+	}
+
+	public synchronized void untrack(){
+		this.statement=null;
+	}
+
+	public void cancel(){
+		Statement current;
+		synchronized(this){
+			cancelled=true;
+			current=statement;
+		}
+		if(current==null){
+			return;
+		}
+		try{
+			current.cancel();
+		}catch(SQLException ex){
+			// Statement可能已执行完并关闭
+		}
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+}
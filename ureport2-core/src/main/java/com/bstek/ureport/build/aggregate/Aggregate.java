@@ -15,21 +15,20 @@
  ******************************************************************************/
 package com.bstek.ureport.build.aggregate;
 
-import java.math.BigDecimal;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
 import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
+import com.bstek.ureport.build.pushdown.AggregatedRow;
 import com.bstek.ureport.definition.Order;
 import com.bstek.ureport.definition.value.Value;
 import com.bstek.ureport.expression.model.Condition;
+import com.bstek.ureport.expression.model.condition.PreparedCondition;
 import com.bstek.ureport.expression.model.expr.dataset.DatasetExpression;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.OrderUtils;
 
 /**
  * @author Jacky.gao
@@ -59,6 +58,13 @@ public abstract class Aggregate {
 		return label;
 	}
 	
+	/**
+	 * 遍历数据集前调用，条件右侧的表达式对当前单元格只计算一次
+	 */
+	protected Condition prepareCondition(Condition condition,Cell cell,Context context){
+		return PreparedCondition.prepare(condition, cell, cell, context);
+	}
+	
 	protected boolean doCondition(Condition condition,Cell cell,Object obj,Context context){
 		if(condition==null){
 			return true;
@@ -66,44 +72,56 @@ public abstract class Aggregate {
 		return condition.filter(cell,cell, obj, context);
 	}
 	
-	protected void orderBindDataList(List<BindData> list, final Order order) {
-		if(order==null || order.equals(Order.none)){
-			return;
+	/**
+	 * 数据集的分组汇总下推到数据库后，一个{@link AggregatedRow}代表原数据集中的多行
+	 */
+	protected int fetchRowCount(Object obj){
+		if(obj instanceof AggregatedRow){
+			return ((AggregatedRow)obj).getRows();
+		}
+		return 1;
+	}
+	
+	protected int fetchRowCount(List<?> list){
+		int count=0;
+		for(Object obj:list){
+			count+=fetchRowCount(obj);
 		}
-		Collections.sort(list, new Comparator<BindData>() {
-			@Override
-			public int compare(BindData o1, BindData o2) {
-				Object data1=o1.getValue();
-				Object data2=o2.getValue();
-				if(data1==null || data2==null){
-					return 1;
-				}
-				if(data1 instanceof Date){
-					Date d1=(Date)data1;
-					Date d2=(Date)data2;
-					if(order.equals(Order.asc)){
-						return d1.compareTo(d2);
-					}else{
-						return d2.compareTo(d1);								
-					}
-				}else if(data1 instanceof Number){
-					BigDecimal n1=Utils.toBigDecimal(data1);
-					BigDecimal n2=Utils.toBigDecimal(data2);
-					if(order.equals(Order.asc)){
-						return n1.compareTo(n2);
-					}else{
-						return n2.compareTo(n1);
-					}
-				}else{
-					String str1=data1.toString();
-					String str2=data2.toString();
-					if(order.equals(Order.asc)){
-						return str1.compareTo(str2);
-					}else{
-						return str2.compareTo(str1);								
-					}
-				}
-			}
-		});
+		return count;
+	}
+	
+	/**
+	 * @return 属性值不为空的行数，obj为普通行时调用方已判断过属性值不为空
+	 */
+	protected int fetchCount(Object obj,String property){
+		if(obj instanceof AggregatedRow){
+			return ((AggregatedRow)obj).getCount(property);
+		}
+		return 1;
+	}
+	
+	protected Object fetchSum(Object obj,String property){
+		if(obj instanceof AggregatedRow){
+			return ((AggregatedRow)obj).getSum(property);
+		}
+		return Utils.getProperty(obj, property);
+	}
+	
+	protected Object fetchMax(Object obj,String property){
+		if(obj instanceof AggregatedRow){
+			return ((AggregatedRow)obj).getMax(property);
+		}
+		return Utils.getProperty(obj, property);
+	}
+	
+	protected Object fetchMin(Object obj,String property){
+		if(obj instanceof AggregatedRow){
+			return ((AggregatedRow)obj).getMin(property);
+		}
+		return Utils.getProperty(obj, property);
+	}
+	
+	protected void orderBindDataList(List<BindData> list, final Order order) {
+		OrderUtils.sortBindDataList(list, order);
 	}
 }
@@ -21,8 +21,6 @@ import java.util.List;
 import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
-import com.bstek.ureport.definition.value.Value;
-import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.expression.model.Condition;
 import com.bstek.ureport.expression.model.expr.dataset.DatasetExpression;
 import com.bstek.ureport.model.Cell;
@@ -54,42 +52,17 @@ public class CountAggregate extends Aggregate {
 		}else if(topList==null){
 			count = doCondition(leftList, cell, expr,context);
 		}else{
-			List<Object> list=null;
-			Object data=null;
-			String prop=null;
-			if(leftList.size()>topList.size()){
-				list=topList;
-				data=leftCell.getData();
-				Value value=leftCell.getValue();
-				DatasetExpression de=DataUtils.fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}else{
-				list=leftList;
-				data=topCell.getData();
-				Value value=topCell.getValue();
-				DatasetExpression de=DataUtils.fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}
+			List<Object> list=DataUtils.fetchCrossData(leftCell, topCell, context);
 			Condition condition=getCondition(cell);
 			if(condition==null){
 				condition=expr.getCondition();
 			}
+			condition=prepareCondition(condition, cell, context);
 			for(Object obj:list){
 				if(condition!=null && !condition.filter(cell, cell, obj, context)){
 					continue;
 				}
-				Object o=Utils.getProperty(obj, prop);
-				if(o!=null && data!=null && (o==data || o.equals(data))){
-					count++;
-				}else if(o==null && data==null){
-					count++;
-				}
+				count+=fetchRowCount(obj);
 			}
 		}
 		List<BindData> list=new ArrayList<BindData>();
@@ -101,13 +74,14 @@ public class CountAggregate extends Aggregate {
 		if(condition==null){
 			condition=expr.getCondition();
 		}
+		condition=prepareCondition(condition, cell, context);
 		if(condition==null){
-			return dataList.size();
+			return fetchRowCount(dataList);
 		}
 		int size=0;
 		for(Object obj:dataList){
 			boolean result=condition.filter(cell, cell, obj, context);
-			if(result)size++;
+			if(result)size+=fetchRowCount(obj);
 		}
 		return size;
 	}
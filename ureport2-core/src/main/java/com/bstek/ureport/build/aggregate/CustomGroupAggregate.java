@@ -54,7 +54,7 @@ public class CustomGroupAggregate extends Aggregate {
 				list.add(new BindData(""));
 				return list;
 			}
-			String itemName=groupData(groupItems, cell, context, o);
+			String itemName=groupData(groupItems, null, cell, context, o);
 			if(itemName==null){
 				list.add(new BindData(""));
 				return list;
@@ -65,12 +65,17 @@ public class CustomGroupAggregate extends Aggregate {
 			return list;
 		}
 		Map<Object,List<Object>> map=new HashMap<Object,List<Object>>();
+		Condition condition=prepareCondition(expr.getCondition(), cell, context);
+		List<Condition> itemConditions=new ArrayList<Condition>(groupItems.size());
+		for(GroupItem item:groupItems){
+			itemConditions.add(prepareCondition(item.getCondition(), cell, context));
+		}
 		for(Object o:objList){
-			boolean conditionResult=doCondition(expr.getCondition(),cell,o,context);
+			boolean conditionResult=doCondition(condition,cell,o,context);
 			if(!conditionResult){
 				continue;
 			}
-			String itemName=groupData(groupItems, cell, context, o);
+			String itemName=groupData(groupItems, itemConditions, cell, context, o);
 			if(itemName==null){
 				continue;
 			}
@@ -95,9 +100,10 @@ public class CustomGroupAggregate extends Aggregate {
 		}
 		return list;
 	}
-	private String groupData(List<GroupItem> groupItems, Cell cell,Context context,Object o){
-		for(GroupItem item:groupItems){
-			Condition condition=item.getCondition();
+	private String groupData(List<GroupItem> groupItems, List<Condition> itemConditions, Cell cell,Context context,Object o){
+		for(int i=0;i<groupItems.size();i++){
+			GroupItem item=groupItems.get(i);
+			Condition condition=itemConditions==null ? item.getCondition() : itemConditions.get(i);
 			boolean doCondition=doCondition(condition, cell, o, context);
 			if(doCondition){
 				return item.getName();
@@ -24,6 +24,7 @@ import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
 import com.bstek.ureport.definition.Order;
+import com.bstek.ureport.expression.model.Condition;
 import com.bstek.ureport.expression.model.expr.dataset.DatasetExpression;
 import com.bstek.ureport.model.Cell;
 import com.bstek.ureport.utils.DataUtils;
@@ -47,7 +48,7 @@ public class GroupAggregate extends Aggregate {
 		if(objList.size()==0){
 			list.add(new BindData(""));
 			return list;
-		}else if(objList.size()==1){
+		}else if(objList.size()==1 && fetchRowCount(objList.get(0))==1){
 			Object o=objList.get(0);
 			boolean conditionResult=doCondition(expr.getCondition(),cell,o,context);
 			if(!conditionResult){
@@ -66,8 +67,9 @@ public class GroupAggregate extends Aggregate {
 			return list;
 		}
 		Map<Object,List<Object>> map=new HashMap<Object,List<Object>>();
+		Condition condition=prepareCondition(expr.getCondition(), cell, context);
 		for(Object o:objList){
-			boolean conditionResult=doCondition(expr.getCondition(),cell,o,context);
+			boolean conditionResult=doCondition(condition,cell,o,context);
 			if(!conditionResult){
 				continue;
 			}
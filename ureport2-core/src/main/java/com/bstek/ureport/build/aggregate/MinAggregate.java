@@ -22,8 +22,6 @@ import java.util.List;
 import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
-import com.bstek.ureport.definition.value.Value;
-import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.expression.model.Condition;
 import com.bstek.ureport.expression.model.expr.dataset.DatasetExpression;
 import com.bstek.ureport.model.Cell;
@@ -56,51 +54,28 @@ public class MinAggregate extends Aggregate {
 		}else if(topList==null){
 			result=buildMin(leftList,property,cell,expr,context);
 		}else{
-			List<Object> list=null;
-			Object data=null;
-			String prop=null;
-			if(leftList.size()>topList.size()){
-				list=topList;
-				data=leftCell.getData();
-				Value value=leftCell.getValue();
-				DatasetExpression de=DataUtils.fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}else{
-				list=leftList;
-				data=topCell.getData();
-				Value value=topCell.getValue();
-				DatasetExpression de=DataUtils.fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}
+			List<Object> list=DataUtils.fetchCrossData(leftCell, topCell, context);
 			Condition condition=getCondition(cell);
 			if(condition==null){
 				condition=expr.getCondition();
 			}
+			condition=prepareCondition(condition, cell, context);
 			for(Object obj:list){
 				if(condition!=null && !condition.filter(cell, cell, obj, context)){
 					continue;
 				}
-				Object o=Utils.getProperty(obj, prop);
-				if((o!=null && data!=null && (o==data || o.equals(data))) || (o==null && data==null)){
-					Object value=Utils.getProperty(obj, property);
-					if(value==null || value.toString().equals("")){
-						continue;
-					}
-					BigDecimal b=Utils.toBigDecimal(value);
-					if(result==null){
-						result=b;
-						continue;
-					}
-					int v=result.compareTo(b);
-					if(v==1){
-						result=b;
-					}
+				Object value=fetchMin(obj, property);
+				if(value==null || value.toString().equals("")){
+					continue;
+				}
+				BigDecimal b=Utils.toBigDecimal(value);
+				if(result==null){
+					result=b;
+					continue;
+				}
+				int v=result.compareTo(b);
+				if(v==1){
+					result=b;
 				}
 			}
 		}
@@ -119,11 +94,12 @@ public class MinAggregate extends Aggregate {
 		if(condition==null){
 			condition=expr.getCondition();
 		}
+		condition=prepareCondition(condition, cell, context);
 		for(Object obj:list){
 			if(condition!=null && !condition.filter(cell, cell, obj, context)){
 				continue;
 			}
-			Object value=Utils.getProperty(obj, property);
+			Object value=fetchMin(obj, property);
 			if(value==null || value.toString().equals("")){
 				continue;
 			}
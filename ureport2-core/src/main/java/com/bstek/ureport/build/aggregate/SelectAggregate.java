@@ -24,6 +24,7 @@ import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
 import com.bstek.ureport.definition.Order;
+import com.bstek.ureport.expression.model.Condition;
 import com.bstek.ureport.expression.model.expr.dataset.DatasetExpression;
 import com.bstek.ureport.model.Cell;
 import com.bstek.ureport.utils.DataUtils;
@@ -43,8 +44,9 @@ public class SelectAggregate extends Aggregate {
 		List<BindData> list=new ArrayList<BindData>();
 		Map<String,String> mappingMap=context.getMapping(expr);
 		String property=expr.getProperty();
+		Condition condition=prepareCondition(expr.getCondition(), cell, context);
 		for(Object o:objList){
-			boolean conditionResult=doCondition(expr.getCondition(),cell,o,context);
+			boolean conditionResult=doCondition(condition,cell,o,context);
 			if(!conditionResult){
 				continue;
 			}
@@ -22,8 +22,6 @@ import java.util.List;
 import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
-import com.bstek.ureport.definition.value.Value;
-import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.expression.model.Condition;
 import com.bstek.ureport.expression.model.expr.dataset.DatasetExpression;
 import com.bstek.ureport.model.Cell;
@@ -56,45 +54,22 @@ public class SumAggregate extends Aggregate {
 		}else if(topList==null){
 			result=buildSum(leftList,property,cell,expr,context);
 		}else{
-			List<Object> list=null;
-			Object data=null;
-			String prop=null;
-			if(leftList.size()>topList.size()){
-				list=topList;
-				data=leftCell.getData();
-				Value value=leftCell.getValue();
-				DatasetExpression de=DataUtils.fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}else{
-				list=leftList;
-				data=topCell.getData();
-				Value value=topCell.getValue();
-				DatasetExpression de=DataUtils.fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}
+			List<Object> list=DataUtils.fetchCrossData(leftCell, topCell, context);
 			Condition condition=getCondition(cell);
 			if(condition==null){
 				condition=expr.getCondition();
 			}
+			condition=prepareCondition(condition, cell, context);
 			result=new BigDecimal(0);
 			for(Object obj:list){
 				if(condition!=null && !condition.filter(cell, cell, obj, context)){
 					continue;
 				}
-				Object o=Utils.getProperty(obj, prop);
-				if((o!=null && data!=null && (o==data || o.equals(data))) || (o==null && data==null)){
-					Object value=Utils.getProperty(obj, property);
-					if(value==null || value.toString().equals("")){
-						continue;
-					}
-					result=result.add(Utils.toBigDecimal(value));
+				Object value=fetchSum(obj, property);
+				if(value==null || value.toString().equals("")){
+					continue;
 				}
+				result=result.add(Utils.toBigDecimal(value));
 			}
 		}
 		List<BindData> list=new ArrayList<BindData>();
@@ -108,11 +83,12 @@ public class SumAggregate extends Aggregate {
 		if(condition==null){
 			condition=expr.getCondition();
 		}
+		condition=prepareCondition(condition, cell, context);
 		for(Object obj:list){
 			if(condition!=null && !condition.filter(cell, cell, obj, context)){
 				continue;
 			}
-			Object value=Utils.getProperty(obj, property);
+			Object value=fetchSum(obj, property);
 			if(value==null || value.toString().equals("")){
 				continue;
 			}
@@ -22,4 +22,13 @@ package com.bstek.ureport.build.assertor;
  */
 public interface Assertor {
 	boolean eval(Object left,Object right);
+	/**
+	 * 右侧的值在多次判断中保持不变时(如遍历数据集时条件右侧为参数或常量)，预先处理右侧的值，默认每次直接调用eval
+	 * @param right 右侧的值
+	 * @return 只需传入左侧值的判断器
+	 * @since 2.2.10
+	 */
+	default PreparedAssertor prepare(final Object right){
+		return left -> eval(left, right);
+	}
 }
@@ -15,7 +15,11 @@
  ******************************************************************************/
 package com.bstek.ureport.build.assertor;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Jacky.gao
@@ -55,4 +59,34 @@ public class InAssertor implements Assertor {
 		}
 		return left.equals(right);
 	}
+
+	/**
+	 * 将右侧的列表、数组或逗号分隔的字符串预先放入HashSet，每次判断只需一次查找
+	 */
+	@Override
+	public PreparedAssertor prepare(final Object right) {
+		if(right == null){
+			return left -> false;
+		}
+		final Set<Object> set=buildSet(right);
+		if(set==null){
+			return left -> left != null && left.equals(right);
+		}
+		return left -> left != null && set.contains(left);
+	}
+
+	static Set<Object> buildSet(Object right){
+		Collection<?> values=null;
+		if(right instanceof List){
+			values=(List<?>)right;
+		}else if(right instanceof Object[]){
+			values=Arrays.asList((Object[])right);
+		}else if(right instanceof String){
+			values=Arrays.asList(right.toString().split(","));
+		}
+		if(values==null){
+			return null;
+		}
+		return new HashSet<Object>(values);
+	}
 }
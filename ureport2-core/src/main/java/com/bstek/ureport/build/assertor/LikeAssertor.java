@@ -32,4 +32,15 @@ public class LikeAssertor implements Assertor {
 		return left.toString().indexOf(right.toString())>-1;
 	}
 
+	@Override
+	public PreparedAssertor prepare(final Object right) {
+		if(right == null){
+			return left -> false;
+		}
+		final String pattern=right.toString();
+		if(pattern.isEmpty()){
+			return left -> left != null;
+		}
+		return left -> left != null && (left.equals(right) || left.toString().contains(pattern));
+	}
 }
@@ -16,6 +16,7 @@
 package com.bstek.ureport.build.assertor;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Jacky.gao
@@ -31,28 +32,40 @@ public class NotInAssertor implements Assertor {
 		if(right instanceof List){
 			List<?> list=(List<?>)right;
 			for(Object obj:list){
-				if(!left.equals(obj)){
-					return true;
+				if(left.equals(obj)){
+					return false;
 				}
 			}
-			return false;
+			return true;
 		}else if(right instanceof Object[]){
 			Object[] objs=(Object[])right;
 			for(Object obj:objs){
-				if(!left.equals(obj)){
-					return true;
+				if(left.equals(obj)){
+					return false;
 				}
 			}
-			return false;
+			return true;
 		}else if(right instanceof String){
 			String[] array=right.toString().split(",");
 			for(String str:array){
-				if(!left.equals(str)){
-					return true;
+				if(left.equals(str)){
+					return false;
 				}
 			}
-			return false;
+			return true;
 		}
 		return !left.equals(right);
 	}
+
+	@Override
+	public PreparedAssertor prepare(final Object right) {
+		if(right == null){
+			return left -> false;
+		}
+		final Set<Object> set=InAssertor.buildSet(right);
+		if(set==null){
+			return left -> left != null && !left.equals(right);
+		}
+		return left -> left != null && !set.contains(left);
+	}
 }
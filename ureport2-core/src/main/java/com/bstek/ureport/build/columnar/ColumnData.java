@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.columnar;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个列的存储，第一个非空值决定存储方式：Integer、Long、Double使用基本类型数组，
+ * BigDecimal存放long型的unscaled值及scale(整列scale相同时只记一次)，
+ * 字符串使用字典编码，其它类型直接存放对象；后续值类型不一致时整列转为对象存储，
+ * 读取时返回的值类型与JDBC返回的值类型保持一致。
+ * @author jackie
+ * @since 2.2.10
+ */
+class ColumnData {
+	private static final byte NONE=0,INT=1,LONG=2,DOUBLE=3,STRING=4,OBJECT=5,DECIMAL=6;
+	/**
+	 * 字典中不同字符串超过此数量且超过行数一半时，说明该列重复值少，不再做字典编码
+	 */
+	private static final int MAX_DICTIONARY_SIZE=65536;
+	private byte kind=NONE;
+	private int size;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	private Object[] objects;
+	private BitSet nulls;
+	private List<String> dictionary;
+	private Map<String,Integer> codeMap;
+	/**
+	 * DECIMAL列第一个值的scale，出现不同scale后改为按行记录在scales中
+	 */
+	private int scale;
+	private byte[] scales;
+
+	void add(Object value){
+		if(value==null){
+			addNull();
+			return;
+		}
+		byte valueKind=kindOf(value);
+		if(kind==NONE){
+			init(valueKind);
+			if(kind==DECIMAL){
+				scale=((BigDecimal)value).scale();
+			}
+		}else if(kind!=valueKind && kind!=OBJECT){
+			toObjectColumn();
+		}
+		ensureCapacity(size+1);
+		switch(kind){
+		case INT:
+			ints[size]=(Integer)value;
+			break;
+		case LONG:
+			longs[size]=(Long)value;
+			break;
+		case DOUBLE:
+			doubles[size]=(Double)value;
+			break;
+		case STRING:
+			ints[size]=encode((String)value);
+			break;
+		case DECIMAL:
+			addDecimal((BigDecimal)value);
+			break;
+		default:
+			objects[size]=value;
+		}
+		size++;
+		if(kind==STRING && dictionary.size()>MAX_DICTIONARY_SIZE && dictionary.size()>size/2){
+			toObjectColumn();
+		}
+	}
+
+	Object get(int row){
+		switch(kind){
+		case INT:
+			return isNull(row) ? null : Integer.valueOf(ints[row]);
+		case LONG:
+			return isNull(row) ? null : Long.valueOf(longs[row]);
+		case DOUBLE:
+			return isNull(row) ? null : Double.valueOf(doubles[row]);
+		case STRING:
+			int code=ints[row];
+			return code<0 ? null : dictionary.get(code);
+		case DECIMAL:
+			return isNull(row) ? null : BigDecimal.valueOf(longs[row], scales==null ? scale : scales[row]);
+		case OBJECT:
+			return objects[row];
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * unscaled值超出long范围或scale超出byte范围时整列转为对象存储
+	 */
+	private void addDecimal(BigDecimal value){
+		int valueScale=value.scale();
+		BigInteger unscaled=value.unscaledValue();
+		if(unscaled.bitLength()>63 || valueScale<Byte.MIN_VALUE || valueScale>Byte.MAX_VALUE){
+			toObjectColumn();
+			ensureCapacity(size+1);
+			objects[size]=value;
+			return;
+		}
+		if(scales==null && valueScale!=scale){
+			scales=new byte[longs.length];
+			Arrays.fill(scales, 0, size, (byte)scale);
+		}
+		longs[size]=unscaled.longValue();
+		if(scales!=null){
+			scales[size]=(byte)valueScale;
+		}
+	}
+
+	private void addNull(){
+		if(kind==NONE){
+			size++;
+			return;
+		}
+		ensureCapacity(size+1);
+		switch(kind){
+		case STRING:
+			ints[size]=-1;
+			break;
+		case OBJECT:
+			objects[size]=null;
+			break;
+		default:
+			if(nulls==null){
+				nulls=new BitSet();
+			}
+			nulls.set(size);
+		}
+		size++;
+	}
+
+	/**
+	 * 确定列的存储方式，此前已加入的值都为null
+	 */
+	private void init(byte valueKind){
+		kind=valueKind;
+		int capacity=Math.max(16, size+1);
+		switch(kind){
+		case INT:
+			ints=new int[capacity];
+			break;
+		case LONG:
+		case DECIMAL:
+			longs=new long[capacity];
+			break;
+		case DOUBLE:
+			doubles=new double[capacity];
+			break;
+		case STRING:
+			ints=new int[capacity];
+			Arrays.fill(ints, 0, size, -1);
+			dictionary=new ArrayList<String>();
+			codeMap=new HashMap<String,Integer>();
+			break;
+		default:
+			objects=new Object[capacity];
+		}
+		if(size>0 && kind!=STRING && kind!=OBJECT){
+			nulls=new BitSet();
+			nulls.set(0, size);
+		}
+	}
+
+	private void toObjectColumn(){
+		Object[] values=new Object[Math.max(16, size+1)];
+		for(int i=0;i<size;i++){
+			values[i]=get(i);
+		}
+		kind=OBJECT;
+		objects=values;
+		ints=null;
+		longs=null;
+		doubles=null;
+		nulls=null;
+		scales=null;
+		dictionary=null;
+		codeMap=null;
+	}
+
+	private int encode(String value){
+		Integer code=codeMap.get(value);
+		if(code==null){
+			code=dictionary.size();
+			dictionary.add(value);
+			codeMap.put(value, code);
+		}
+		return code;
+	}
+
+	private boolean isNull(int row){
+		return nulls!=null && nulls.get(row);
+	}
+
+	private void ensureCapacity(int capacity){
+		switch(kind){
+		case INT:
+		case STRING:
+			if(ints.length<capacity){
+				ints=Arrays.copyOf(ints, newCapacity(ints.length,capacity));
+			}
+			break;
+		case LONG:
+			if(longs.length<capacity){
+				longs=Arrays.copyOf(longs, newCapacity(longs.length,capacity));
+			}
+			break;
+		case DECIMAL:
+			if(longs.length<capacity){
+				longs=Arrays.copyOf(longs, newCapacity(longs.length,capacity));
+				if(scales!=null){
+					scales=Arrays.copyOf(scales, longs.length);
+				}
+			}
+			break;
+		case DOUBLE:
+			if(doubles.length<capacity){
+				doubles=Arrays.copyOf(doubles, newCapacity(doubles.length,capacity));
+			}
+			break;
+		case OBJECT:
+			if(objects.length<capacity){
+				objects=Arrays.copyOf(objects, newCapacity(objects.length,capacity));
+			}
+			break;
+		}
+	}
+
+	private int newCapacity(int oldCapacity,int minCapacity){
+		return Math.max(oldCapacity+(oldCapacity>>1), minCapacity);
+	}
+
+	private byte kindOf(Object value){
+		Class<?> clazz=value.getClass();
+		if(clazz==Integer.class){
+			return INT;
+		}else if(clazz==Long.class){
+			return LONG;
+		}else if(clazz==Double.class){
+			return DOUBLE;
+		}else if(clazz==String.class){
+			return STRING;
+		}else if(clazz==BigDecimal.class){
+			return DECIMAL;
+		}
+		return OBJECT;
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.columnar;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * {@link ColumnarTable}中一行数据的只读Map视图，只记录所在表及行号，取值时直接从列中读取
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ColumnarRow extends AbstractMap<String,Object> {
+	private final ColumnarTable table;
+	private final int row;
+
+	ColumnarRow(ColumnarTable table,int row) {
+		this.table=table;
+		this.row=row;
+	}
+
+	@Override
+	public Object get(Object key) {
+		int column=table.columnIndexOf(key);
+		if(column==-1){
+			return null;
+		}
+		return table.getValue(row, column);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return table.columnIndexOf(key)>-1;
+	}
+
+	@Override
+	public int size() {
+		return table.getVisibleColumns().length;
+	}
+
+	@Override
+	public Set<Map.Entry<String,Object>> entrySet() {
+		return new AbstractSet<Map.Entry<String,Object>>() {
+			@Override
+			public Iterator<Map.Entry<String,Object>> iterator() {
+				return new Iterator<Map.Entry<String,Object>>() {
+					private int index;
+					@Override
+					public boolean hasNext() {
+						return index<table.getVisibleColumns().length;
+					}
+					@Override
+					public Map.Entry<String,Object> next() {
+						if(!hasNext()){
+							throw new NoSuchElementException();
+						}
+						int column=table.getVisibleColumns()[index++];
+						return new SimpleImmutableEntry<String,Object>(table.getColumnNames()[column], table.getValue(row, column));
+					}
+				};
+			}
+			@Override
+			public int size() {
+				return table.getVisibleColumns().length;
+			}
+		};
+	}
+}
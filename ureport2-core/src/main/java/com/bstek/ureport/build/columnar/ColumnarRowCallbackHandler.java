@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.columnar;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * 逐行读取ResultSet并写入{@link ColumnarTable}，不再为每行创建Map；
+ * 列名及列值的读取方式与queryForList使用的ColumnMapRowMapper一致。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ColumnarRowCallbackHandler implements RowCallbackHandler {
+	private ColumnarTable table;
+	private Object[] values;
+
+	@Override
+	public void processRow(ResultSet rs) throws SQLException {
+		if(table==null){
+			ResultSetMetaData metaData=rs.getMetaData();
+			int columnCount=metaData.getColumnCount();
+			String[] columnNames=new String[columnCount];
+			for(int i=0;i<columnCount;i++){
+				columnNames[i]=JdbcUtils.lookupColumnName(metaData, i+1);
+			}
+			table=new ColumnarTable(columnNames);
+			values=new Object[columnCount];
+		}
+		for(int i=0;i<values.length;i++){
+			values[i]=JdbcUtils.getResultSetValue(rs, i+1);
+		}
+		table.addRow(values);
+	}
+
+	public ColumnarTable getTable() {
+		if(table==null){
+			return new ColumnarTable(new String[0]);
+		}
+		return table;
+	}
+}
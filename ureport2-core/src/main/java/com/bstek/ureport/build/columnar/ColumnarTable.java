@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.columnar;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按列存放的数据集数据，对外表现为由{@link ColumnarRow}组成的List，
+ * 每行都是一个只读的Map视图，列名不区分大小写，与queryForList返回的行保持一致。<br>
+ * 属性名到列下标的解析结果按表缓存，同一个属性名只在第一次访问时查找；
+ * 行对象在第一次被访问时才创建，之后重复使用，未被访问的行不占用额外对象。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ColumnarTable extends AbstractList<Map<String,Object>> implements RandomAccess {
+	private String[] columnNames;
+	private ColumnData[] columns;
+	/**
+	 * 列名(包括原始列名及小写列名)到列下标的映射，不区分大小写重名的列以后出现的为准
+	 */
+	private Map<String,Integer> indexMap;
+	/**
+	 * 对外可见的列下标，与列名在行中的顺序一致
+	 */
+	private int[] visibleColumns;
+	/**
+	 * 已解析过的属性名到列下标的映射，不存在的列记为-1
+	 */
+	private final Map<String,Integer> resolvedMap=new ConcurrentHashMap<String,Integer>();
+	/**
+	 * 最近一次解析的属性名，表达式每次传入的是同一个String对象，先按引用比较可以省去哈希查找
+	 */
+	private volatile ResolvedColumn lastResolved;
+	private int rowCount;
+	private volatile AtomicReferenceArray<ColumnarRow> rows;
+
+	public ColumnarTable(String[] columnNames) {
+		this.columnNames=columnNames;
+		columns=new ColumnData[columnNames.length];
+		indexMap=new HashMap<String,Integer>();
+		String[] lowerCaseNames=new String[columnNames.length];
+		for(int i=0;i<columnNames.length;i++){
+			columns[i]=new ColumnData();
+			lowerCaseNames[i]=columnNames[i].toLowerCase(Locale.getDefault());
+			indexMap.put(lowerCaseNames[i], i);
+		}
+		List<Integer> visible=new ArrayList<Integer>();
+		for(int i=0;i<columnNames.length;i++){
+			int index=indexMap.get(lowerCaseNames[i]);
+			if(index==i){
+				visible.add(i);
+			}
+			indexMap.put(columnNames[i], index);
+		}
+		visibleColumns=new int[visible.size()];
+		for(int i=0;i<visibleColumns.length;i++){
+			visibleColumns[i]=visible.get(i);
+		}
+	}
+
+	/**
+	 * 加入一行数据
+	 * @param values 按列顺序排列的值
+	 */
+	public void addRow(Object[] values){
+		for(int i=0;i<columns.length;i++){
+			columns[i].add(values[i]);
+		}
+		rowCount++;
+	}
+
+	/**
+	 * 根据列名取得列下标，列名不区分大小写
+	 * @param name 列名
+	 * @return 列下标，不存在时返回-1
+	 */
+	public int columnIndexOf(Object name){
+		if(!(name instanceof String)){
+			return -1;
+		}
+		ResolvedColumn last=lastResolved;
+		if(last!=null && last.name==name){
+			return last.index;
+		}
+		String columnName=(String)name;
+		Integer index=resolvedMap.get(columnName);
+		if(index==null){
+			index=indexMap.get(columnName);
+			if(index==null){
+				index=indexMap.get(columnName.toLowerCase(Locale.getDefault()));
+			}
+			if(index==null){
+				index=-1;
+			}
+			resolvedMap.put(columnName, index);
+		}
+		lastResolved=new ResolvedColumn(columnName, index);
+		return index;
+	}
+
+	public Object getValue(int row,int column){
+		return columns[column].get(row);
+	}
+
+	String[] getColumnNames() {
+		return columnNames;
+	}
+
+	int[] getVisibleColumns() {
+		return visibleColumns;
+	}
+
+	@Override
+	public Map<String,Object> get(int index) {
+		if(index<0 || index>=rowCount){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+rowCount);
+		}
+		AtomicReferenceArray<ColumnarRow> array=rowArray();
+		ColumnarRow row=array.get(index);
+		if(row==null){
+			row=new ColumnarRow(this, index);
+			if(!array.compareAndSet(index, null, row)){
+				row=array.get(index);
+			}
+		}
+		return row;
+	}
+
+	private AtomicReferenceArray<ColumnarRow> rowArray(){
+		AtomicReferenceArray<ColumnarRow> array=rows;
+		if(array!=null && array.length()>=rowCount){
+			return array;
+		}
+		synchronized(this){
+			array=rows;
+			if(array==null || array.length()<rowCount){
+				AtomicReferenceArray<ColumnarRow> newArray=new AtomicReferenceArray<ColumnarRow>(rowCount);
+				if(array!=null){
+					for(int i=0;i<array.length();i++){
+						newArray.set(i, array.get(i));
+					}
+				}
+				rows=array=newArray;
+			}
+			return array;
+		}
+	}
+
+	@Override
+	public int size() {
+		return rowCount;
+	}
+
+	private static class ResolvedColumn{
+		private final String name;
+		private final int index;
+		private ResolvedColumn(String name,int index) {
+			this.name=name;
+			this.index=index;
+		}
+	}
+}
@@ -52,6 +52,7 @@ public class ImageValueCompute implements ValueCompute{
 			Object obj=data.getData();
 			if(obj instanceof List){
 				List<?> listData=(List<?>)obj;
+				List<String> paths=new ArrayList<String>(listData.size());
 				for(Object o:listData){
 					if(o==null){
 						continue;
@@ -69,8 +70,11 @@ public class ImageValueCompute implements ValueCompute{
 					if(StringUtils.isBlank(path)){
 						continue;
 					}
-					String base64Data=ImageUtils.getImageBase64Data(ImageType.image, path,width,height);
-					list.add(new BindData(new Image(base64Data,path,-1,-1)));						
+					paths.add(path);
+				}
+				List<String> base64Datas=ImageUtils.getImageBase64Datas(paths, width, height);
+				for(int i=0;i<paths.size();i++){
+					list.add(new BindData(new Image(base64Datas.get(i),paths.get(i),-1,-1)));
 				}
 			}else if(obj instanceof BindData){
 				BindData bindData=(BindData)obj;
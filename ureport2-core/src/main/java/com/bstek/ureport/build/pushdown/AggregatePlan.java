@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * 数据集的分组汇总下推计划：原SQL作为子查询，按分组列group by，每组只返回一行{@link AggregatedRow}，
+ * 其中包含该组的行数及单元格需要的sum、count、max、min，数据集单元格在这些汇总行上计算的结果与在原始行上计算的结果相同。<br>
+ * sum、max、min只有在列本身为整数或定点数(max、min也可以是浮点数)时才与内存中的计算完全一致，
+ * 部分数据库(如H2)对浮点数列求和时也返回定点数，所以sum时同时取该列的min作为样本判断列的实际类型；
+ * 列为浮点数、字符串或日期等其它类型时放弃本次下推，由调用方改用原SQL加载。<br>
+ * 分组单元格排序时null值的位置取决于排序前各组的先后顺序，而汇总行的顺序与原始行不同，
+ * 所以分组单元格的列中出现null值时同样放弃本次下推；只用于单元格条件的分组列不排序，不受影响。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class AggregatePlan {
+	public static final String TABLE_ALIAS="ureport_aggregate_t";
+	private final List<String> groupColumns;
+	/**
+	 * groupColumns中各列是否为分组单元格排序的列
+	 */
+	private final boolean[] sortedColumns;
+	private final List<String> sumProperties;
+	private final List<String> maxProperties;
+	private final List<String> minProperties;
+
+	/**
+	 * @param groupColumns group by的列，包括分组单元格的列及单元格条件中用到的列
+	 * @param sortedColumns 分组单元格的列
+	 */
+	public AggregatePlan(List<String> groupColumns,Collection<String> sortedColumns,List<String> sumProperties,List<String> maxProperties,List<String> minProperties) {
+		this.groupColumns=groupColumns;
+		this.sortedColumns=new boolean[groupColumns.size()];
+		for(int i=0;i<groupColumns.size();i++){
+			for(String column:sortedColumns){
+				if(column.equalsIgnoreCase(groupColumns.get(i))){
+					this.sortedColumns[i]=true;
+				}
+			}
+		}
+		this.sumProperties=sumProperties;
+		this.maxProperties=maxProperties;
+		this.minProperties=minProperties;
+	}
+
+	public String buildSql(String sql){
+		String inner=sql.trim();
+		while(inner.endsWith(";")){
+			inner=inner.substring(0, inner.length()-1).trim();
+		}
+		StringBuilder sb=new StringBuilder("select ");
+		for(String column:groupColumns){
+			sb.append(column).append(",");
+		}
+		sb.append("count(*) as ureport_rows");
+		int index=0;
+		for(String property:sumProperties){
+			sb.append(",sum(").append(property).append(") as ureport_sum_").append(index);
+			sb.append(",count(").append(property).append(") as ureport_count_").append(index);
+			sb.append(",min(").append(property).append(") as ureport_sample_").append(index);
+			index++;
+		}
+		index=0;
+		for(String property:maxProperties){
+			sb.append(",max(").append(property).append(") as ureport_max_").append(index++);
+		}
+		index=0;
+		for(String property:minProperties){
+			sb.append(",min(").append(property).append(") as ureport_min_").append(index++);
+		}
+		sb.append(" from (\n").append(inner).append("\n) ").append(TABLE_ALIAS);
+		if(!groupColumns.isEmpty()){
+			sb.append(" group by ");
+			for(int i=0;i<groupColumns.size();i++){
+				if(i>0){
+					sb.append(",");
+				}
+				sb.append(groupColumns.get(i));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return 汇总后的行，数据库返回的汇总值类型或分组值无法保证与内存计算结果一致时返回null
+	 */
+	public List<AggregatedRow> query(NamedParameterJdbcTemplate jdbcTemplate,String sql,Map<String,Object> parameterMap){
+		final List<AggregatedRow> rows=new ArrayList<AggregatedRow>();
+		final boolean[] exact={true};
+		jdbcTemplate.query(sql, parameterMap, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				if(!exact[0]){
+					return;
+				}
+				AggregatedRow row=new AggregatedRow();
+				int index=1;
+				for(int i=0;i<groupColumns.size();i++){
+					Object value=JdbcUtils.getResultSetValue(rs, index++);
+					if(value==null && sortedColumns[i]){
+						exact[0]=false;
+						return;
+					}
+					row.put(groupColumns.get(i), value);
+				}
+				row.setRows(((Number)rs.getObject(index++)).intValue());
+				for(String property:sumProperties){
+					Object sum=JdbcUtils.getResultSetValue(rs, index++);
+					int count=((Number)rs.getObject(index++)).intValue();
+					Object sample=JdbcUtils.getResultSetValue(rs, index++);
+					if(!isExact(sum) || !isExact(sample)){
+						exact[0]=false;
+						return;
+					}
+					row.putSum(property, sum);
+					row.putCount(property, count);
+				}
+				for(String property:maxProperties){
+					Object max=JdbcUtils.getResultSetValue(rs, index++);
+					if(max!=null && !(max instanceof Number)){
+						exact[0]=false;
+						return;
+					}
+					row.putMax(property, max);
+				}
+				for(String property:minProperties){
+					Object min=JdbcUtils.getResultSetValue(rs, index++);
+					if(min!=null && !(min instanceof Number)){
+						exact[0]=false;
+						return;
+					}
+					row.putMin(property, min);
+				}
+				// 没有group by时空数据集也会返回一行
+				if(row.getRows()>0){
+					rows.add(row);
+				}
+			}
+		});
+		return exact[0] ? rows : null;
+	}
+
+	/**
+	 * 浮点数求和的结果与逐行转为BigDecimal累加的结果可能在最后几位不同
+	 */
+	private boolean isExact(Object value){
+		return value==null || value instanceof BigDecimal || value instanceof BigInteger || value instanceof Long
+				|| value instanceof Integer || value instanceof Short || value instanceof Byte;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb=new StringBuilder("group by ").append(groupColumns);
+		if(!sumProperties.isEmpty()){
+			sb.append(", sum/count ").append(sumProperties);
+		}
+		if(!maxProperties.isEmpty()){
+			sb.append(", max ").append(maxProperties);
+		}
+		if(!minProperties.isEmpty()){
+			sb.append(", min ").append(minProperties);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+/**
+ * 数据库中按分组预先汇总后的一行，代表原数据集中分组列取值完全相同的rows行。<br>
+ * 分组列的值与普通行一样按列名存放，分组、条件过滤及父子格取数不需要区分；
+ * 求和、求平均、计数、最大值、最小值则需要通过{@link #getRows()}、{@link #getSum(String)}等取该组的汇总值。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class AggregatedRow extends LinkedCaseInsensitiveMap<Object> {
+	private static final long serialVersionUID = 1L;
+	private int rows;
+	private final Map<String,Object> sumMap=new HashMap<String,Object>();
+	private final Map<String,Integer> countMap=new HashMap<String,Integer>();
+	private final Map<String,Object> maxMap=new HashMap<String,Object>();
+	private final Map<String,Object> minMap=new HashMap<String,Object>();
+
+	/**
+	 * @return 该组在原数据集中的行数
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	void setRows(int rows) {
+		this.rows = rows;
+	}
+
+	/**
+	 * @return 该组中属性值的和，值全部为null时返回null
+	 */
+	public Object getSum(String property){
+		return sumMap.get(property);
+	}
+
+	/**
+	 * @return 该组中属性值不为null的行数
+	 */
+	public int getCount(String property){
+		Integer count=countMap.get(property);
+		return count==null ? 0 : count;
+	}
+
+	public Object getMax(String property){
+		return maxMap.get(property);
+	}
+
+	public Object getMin(String property){
+		return minMap.get(property);
+	}
+
+	void putSum(String property,Object value){
+		sumMap.put(property, value);
+	}
+
+	void putCount(String property,int count){
+		countMap.put(property, count);
+	}
+
+	void putMax(String property,Object value){
+		maxMap.put(property, value);
+	}
+
+	void putMin(String property,Object value){
+		minMap.put(property, value);
+	}
+}
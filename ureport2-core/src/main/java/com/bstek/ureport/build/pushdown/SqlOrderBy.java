@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 将SQL拆分为主体与末尾的order by，下推时主体作为子查询，order by加在外层查询上。<br>
+ * 子查询中的order by不能保证外层查询结果的顺序(如MariaDB在没有limit时直接忽略)，SQL Server则不允许子查询中带order by。
+ * 只识别最外层末尾形如"order by 列 [asc|desc] [nulls first|last], ..."的排序，排序项只能是不带表名的列名或列序号；
+ * 排序项为表达式、order by后还有limit等子句、与top/limit/offset/fetch一起使用，或SQL中有无法识别的引号时返回null，此时不做下推。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SqlOrderBy {
+	private static final Pattern ITEM_PATTERN=Pattern.compile(
+			"\\s*(?:([A-Za-z_][A-Za-z0-9_$]*)|\"([^\"]+)\"|`([^`]+)`|\\[([^\\]]+)\\]|(\\d+))(?:\\s+(?:asc|desc))?(?:\\s+nulls\\s+(?:first|last))?\\s*",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern DOLLAR_QUOTE_PATTERN=Pattern.compile("\\$[A-Za-z_]*\\$");
+	/**
+	 * 这些子句取哪些行依赖于排序，去掉order by后结果会变
+	 */
+	private static final Set<String> ORDER_DEPENDENT_WORDS=new HashSet<String>(Arrays.asList("top","limit","offset","fetch"));
+	private static final Set<String> KEYWORDS=new HashSet<String>(Arrays.asList("asc","desc","nulls","first","last"));
+	private final String body;
+	private final String orderBy;
+	private final List<String> columns;
+
+	private SqlOrderBy(String body,String orderBy,List<String> columns) {
+		this.body=body;
+		this.orderBy=orderBy;
+		this.columns=columns;
+	}
+
+	/**
+	 * @param sql 原SQL
+	 * @return 拆分结果，无法安全拆分时返回null
+	 */
+	public static SqlOrderBy split(String sql){
+		String text=sql.trim();
+		while(text.endsWith(";")){
+			text=text.substring(0, text.length()-1).trim();
+		}
+		int length=text.length();
+		int depth=0;
+		int orderStart=-1,orderEnd=-1;
+		boolean orderDependent=false;
+		String previousWord=null;
+		int previousStart=-1;
+		int i=0;
+		while(i<length){
+			char c=text.charAt(i);
+			char next=i+1<length ? text.charAt(i+1) : 0;
+			if(c=='\'' || c=='"' || c=='`' || c=='['){
+				i=skipQuoted(text, i, c=='[' ? ']' : c);
+				if(i<0){
+					return null;
+				}
+				previousWord=null;
+				continue;
+			}
+			if(c=='-' && next=='-'){
+				int end=text.indexOf('\n', i);
+				i=end<0 ? length : end+1;
+				continue;
+			}
+			if(c=='/' && next=='*'){
+				int end=text.indexOf("*/", i+2);
+				if(end<0){
+					return null;
+				}
+				i=end+2;
+				continue;
+			}
+			if(c=='$' && DOLLAR_QUOTE_PATTERN.matcher(text).region(i, length).lookingAt()){
+				return null;
+			}
+			if(Character.isLetter(c) || c=='_'){
+				int start=i;
+				while(i<length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i)=='_' || text.charAt(i)=='$')){
+					i++;
+				}
+				String word=text.substring(start, i).toLowerCase();
+				if(depth==0){
+					if(word.equals("by") && "order".equals(previousWord)){
+						orderStart=previousStart;
+						orderEnd=i;
+					}else if(ORDER_DEPENDENT_WORDS.contains(word)){
+						orderDependent=true;
+					}
+				}
+				previousWord=word;
+				previousStart=start;
+				continue;
+			}
+			if(c=='('){
+				depth++;
+			}else if(c==')'){
+				depth--;
+				if(depth<0){
+					return null;
+				}
+			}
+			if(!Character.isWhitespace(c)){
+				previousWord=null;
+			}
+			i++;
+		}
+		if(depth!=0){
+			return null;
+		}
+		if(orderStart<0){
+			return new SqlOrderBy(text, null, Collections.<String>emptyList());
+		}
+		if(orderDependent){
+			return null;
+		}
+		List<String> columns=new ArrayList<String>();
+		for(String item:text.substring(orderEnd).split(",", -1)){
+			Matcher matcher=ITEM_PATTERN.matcher(item);
+			if(!matcher.matches()){
+				return null;
+			}
+			String column=null;
+			for(int group=1;group<=4 && column==null;group++){
+				column=matcher.group(group);
+			}
+			if(column!=null){
+				if(matcher.group(1)!=null && KEYWORDS.contains(column.toLowerCase())){
+					return null;
+				}
+				columns.add(column.toLowerCase());
+			}
+		}
+		return new SqlOrderBy(text.substring(0, orderStart).trim(), text.substring(orderStart), columns);
+	}
+
+	/**
+	 * @return 结束引号之后的位置，没有结束引号时返回-1
+	 */
+	private static int skipQuoted(String text,int start,char quote){
+		int i=start+1;
+		while(i<text.length()){
+			if(text.charAt(i)==quote){
+				if(quote!=']' && i+1<text.length() && text.charAt(i+1)==quote){
+					i+=2;
+					continue;
+				}
+				return i+1;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param where 外层查询的条件，以空格开头
+	 * @param ordered 是否在外层查询上加上原order by
+	 * @return 以主体为子查询的SQL
+	 */
+	public String wrap(String alias,String where,boolean ordered){
+		StringBuilder sb=new StringBuilder("select * from (\n").append(body).append("\n) ").append(alias).append(where);
+		if(ordered && orderBy!=null){
+			sb.append(" ").append(orderBy);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return 去掉末尾order by及分号后的SQL
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * @return 末尾的order by子句，没有时为null
+	 */
+	public String getOrderBy() {
+		return orderBy;
+	}
+
+	/**
+	 * @return order by中按名称引用的列，已转为小写
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.bstek.ureport.build.Context;
+import com.bstek.ureport.expression.model.Expression;
+import com.bstek.ureport.expression.model.Op;
+import com.bstek.ureport.expression.model.data.ExpressionData;
+import com.bstek.ureport.expression.model.data.ObjectExpressionData;
+import com.bstek.ureport.expression.model.data.ObjectListExpressionData;
+
+/**
+ * 下推到SQL中执行的单个过滤条件，形如"列 操作符 :参数"，右侧表达式在加载数据集时用报表参数计算一次后以命名参数绑定。<br>
+ * 下推后的SQL只能比内存过滤保留更多的行而不能更少，所以单元格上的条件仍在内存中照常执行；
+ * 计算出的值无法保证这一点时(如null、空列表、非数字的大小比较)该条件本次不下推。
+ * 数据库在列与参数类型不同时会做隐式转换(如SQLite中文本列与数字比较时按文本比较)，结果与内存中的比较不一定相同，
+ * 所以只在列的JDBC类型与值的类型一致时下推：数字只与整数、定点数列比较，字符串只与字符列比较，日期只与日期、时间戳列比较，like只用于字符列。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SqlPredicate {
+	public static final String TABLE_ALIAS="ureport_pushdown_t";
+	public static final String PARAMETER_PREFIX="ureport_pd_";
+	private static final char LIKE_ESCAPE='!';
+	/**
+	 * 部分数据库限制IN中值的个数(如Oracle为1000)，超过时不下推
+	 */
+	private static final int MAX_IN_VALUES=1000;
+	private final String column;
+	private final Op op;
+	private final Expression rightExpression;
+	private final String right;
+
+	public SqlPredicate(String column,Op op,Expression rightExpression,String right) {
+		this.column=column;
+		this.op=op;
+		this.rightExpression=rightExpression;
+		this.right=right;
+	}
+
+	/**
+	 * 用报表参数计算条件的右侧，加载数据集前在调用线程中执行
+	 * @param context 只包含报表参数的上下文
+	 * @return 下推时绑定的值，不能下推时返回null
+	 */
+	public Object computeValue(Context context){
+		Object value=computeRight(context);
+		switch(op){
+		case Equals:
+			value=unwrap(value);
+			if(!(value instanceof Number || value instanceof String || value instanceof Date)){
+				return null;
+			}
+			return value;
+		case GreatThen:
+		case EqualsGreatThen:
+		case LessThen:
+		case EqualsLessThen:
+			// 内存中按数字比较大小，只有右侧为数字时数据库中的比较结果才与之一致
+			value=unwrap(value);
+			if(!(value instanceof Number)){
+				return null;
+			}
+			return value;
+		case In:
+			List<?> values=toList(value);
+			if(values==null || values.isEmpty() || values.size()>MAX_IN_VALUES){
+				return null;
+			}
+			for(Object v:values){
+				if(v==null){
+					return null;
+				}
+			}
+			return values;
+		case Like:
+			if(!(value instanceof String) || ((String)value).isEmpty()){
+				return null;
+			}
+			return value;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param predicates 下推的条件
+	 * @param values 各条件由{@link #computeValue(Context)}计算出的值
+	 * @param columnTypes 子查询各列的JDBC类型，key为小写的列名
+	 * @param parameterMap SQL的命名参数，下推条件的参数会加入其中
+	 * @return 以空格开头的where子句，用于{@link SqlOrderBy#wrap(String, String, boolean)}，没有可下推的条件时返回null
+	 */
+	public static String buildWhere(List<SqlPredicate> predicates,List<Object> values,Map<String,Integer> columnTypes,Map<String,Object> parameterMap){
+		StringBuilder where=new StringBuilder();
+		for(int i=0;i<predicates.size();i++){
+			Object value=values.get(i);
+			SqlPredicate predicate=predicates.get(i);
+			Integer type=columnTypes.get(predicate.column.toLowerCase());
+			if(value==null || type==null){
+				continue;
+			}
+			String clause=predicate.buildClause(PARAMETER_PREFIX+i, value, type, parameterMap);
+			if(clause==null){
+				continue;
+			}
+			where.append(where.length()==0 ? " where " : " and ");
+			where.append(clause);
+		}
+		return where.length()==0 ? null : where.toString();
+	}
+
+	private String buildClause(String name,Object value,int type,Map<String,Object> parameterMap){
+		switch(op){
+		case Equals:
+			if(!isComparable(value, type)){
+				return null;
+			}
+			parameterMap.put(name, value);
+			return column+" = :"+name;
+		case GreatThen:
+		case EqualsGreatThen:
+		case LessThen:
+		case EqualsLessThen:
+			if(!isExactNumeric(type)){
+				return null;
+			}
+			parameterMap.put(name, value);
+			return column+" "+op.toString()+" :"+name;
+		case In:
+			List<?> values=(List<?>)value;
+			for(Object v:values){
+				if(!isComparable(v, type)){
+					return null;
+				}
+			}
+			parameterMap.put(name, values);
+			return column+" in (:"+name+")";
+		case Like:
+			if(!isCharacter(type)){
+				return null;
+			}
+			parameterMap.put(name, "%"+escapeLike((String)value)+"%");
+			return column+" like :"+name+" escape '"+LIKE_ESCAPE+"'";
+		default:
+			return null;
+		}
+	}
+
+	private static boolean isComparable(Object value,int type){
+		if(value instanceof Number){
+			return isExactNumeric(type);
+		}else if(value instanceof String){
+			return isCharacter(type);
+		}else if(value instanceof Date){
+			return type==Types.DATE || type==Types.TIMESTAMP;
+		}
+		return false;
+	}
+
+	/**
+	 * 浮点数列在数据库中与定点数参数比较时可能先做转换，结果与内存中按BigDecimal比较不一定相同
+	 */
+	private static boolean isExactNumeric(int type){
+		switch(type){
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isCharacter(int type){
+		switch(type){
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private Object computeRight(Context context){
+		ExpressionData<?> data=rightExpression.execute(null, null, context);
+		if(data instanceof ObjectExpressionData){
+			return ((ObjectExpressionData)data).getData();
+		}else if(data instanceof ObjectListExpressionData){
+			return ((ObjectListExpressionData)data).getData();
+		}
+		return null;
+	}
+
+	private Object unwrap(Object value){
+		if(value instanceof List && ((List<?>)value).size()==1){
+			return ((List<?>)value).get(0);
+		}
+		return value;
+	}
+
+	private List<?> toList(Object value){
+		if(value instanceof List){
+			return (List<?>)value;
+		}else if(value instanceof Object[]){
+			return Arrays.asList((Object[])value);
+		}else if(value instanceof String){
+			return Arrays.asList(((String)value).split(","));
+		}else if(value instanceof Number){
+			List<Object> list=new ArrayList<Object>();
+			list.add(value);
+			return list;
+		}
+		return null;
+	}
+
+	private static String escapeLike(String text){
+		StringBuilder sb=new StringBuilder(text.length()+8);
+		for(int i=0;i<text.length();i++){
+			char c=text.charAt(i);
+			if(c=='%' || c=='_' || c==LIKE_ESCAPE){
+				sb.append(LIKE_ESCAPE);
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public Op getOp() {
+		return op;
+	}
+
+	@Override
+	public String toString() {
+		return column+op.toString()+right;
+	}
+}
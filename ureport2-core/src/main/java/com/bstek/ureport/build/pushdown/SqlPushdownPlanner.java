@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.chart.Chart;
+import com.bstek.ureport.chart.dataset.impl.BubbleDataset;
+import com.bstek.ureport.chart.dataset.impl.ScatterDataset;
+import com.bstek.ureport.chart.dataset.impl.category.CategoryDataset;
+import com.bstek.ureport.definition.CellDefinition;
+import com.bstek.ureport.definition.ConditionPropertyItem;
+import com.bstek.ureport.definition.HeaderFooterDefinition;
+import com.bstek.ureport.definition.LinkParameter;
+import com.bstek.ureport.definition.Order;
+import com.bstek.ureport.definition.ReportDefinition;
+import com.bstek.ureport.definition.dataset.DatasetDefinition;
+import com.bstek.ureport.definition.dataset.SqlDatasetDefinition;
+import com.bstek.ureport.definition.datasource.DatasourceDefinition;
+import com.bstek.ureport.definition.mapping.MappingType;
+import com.bstek.ureport.definition.value.AggregateType;
+import com.bstek.ureport.definition.value.ChartValue;
+import com.bstek.ureport.definition.value.DatasetValue;
+import com.bstek.ureport.definition.value.ExpressionValue;
+import com.bstek.ureport.definition.value.GroupItem;
+import com.bstek.ureport.definition.value.ImageValue;
+import com.bstek.ureport.definition.value.Value;
+import com.bstek.ureport.definition.value.ZxingValue;
+import com.bstek.ureport.expression.model.Condition;
+import com.bstek.ureport.expression.model.Expression;
+import com.bstek.ureport.expression.model.Op;
+import com.bstek.ureport.expression.model.condition.BaseCondition;
+import com.bstek.ureport.expression.model.condition.Join;
+import com.bstek.ureport.expression.model.condition.PropertyExpressionCondition;
+import com.bstek.ureport.expression.model.expr.BooleanExpression;
+import com.bstek.ureport.expression.model.expr.ExpressionBlock;
+import com.bstek.ureport.expression.model.expr.FunctionExpression;
+import com.bstek.ureport.expression.model.expr.IntegerExpression;
+import com.bstek.ureport.expression.model.expr.JoinExpression;
+import com.bstek.ureport.expression.model.expr.NullExpression;
+import com.bstek.ureport.expression.model.expr.NumberExpression;
+import com.bstek.ureport.expression.model.expr.StringExpression;
+
+/**
+ * SQL下推的规划器，条件下推(enabled)与分组汇总下推(aggregate)默认都不启用。<br>
+ * 对报表中的每个SQL数据集，找出所有使用它的数据集单元格，若每个单元格的过滤条件中都以and方式包含同一个
+ * "属性 操作符 右侧表达式"条件，且右侧表达式只依赖常量与报表参数(param函数)，则该条件可以在数据库中执行：
+ * 加载数据集时原SQL作为子查询，外层加上带命名参数的where条件，减少从数据库读取的行数。<br>
+ * 若数据集的单元格都只做分组及sum、avg、count、max、min，则按{@link AggregatePlan}在数据库中group by后只读取汇总行。
+ * 字符串分组列按数据库的排序规则比较，不区分大小写的排序规则下只有大小写不同的值会合并为一组。<br>
+ * 数据集还被表达式、图表、条件属性、链接参数、查询表单或其它数据集的映射引用时无法确定需要哪些行，不做下推。
+ * 规划结果保存在{@link SqlDatasetDefinition}上，同一报表模版只规划一次。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SqlPushdownPlanner {
+	public static final String BEAN_ID="ureport.sqlPushdownPlanner";
+	private static final Pattern COLUMN_PATTERN=Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	private boolean enabled;
+	private boolean aggregate;
+
+	public void plan(ReportDefinition reportDefinition){
+		if(!enabled && !aggregate){
+			return;
+		}
+		Map<String,SqlDatasetDefinition> sqlDatasetMap=collectSqlDatasets(reportDefinition);
+		if(sqlDatasetMap.isEmpty() || isPlanned(sqlDatasetMap)){
+			return;
+		}
+		Map<String,List<DatasetValue>> consumersMap=new HashMap<String,List<DatasetValue>>();
+		Set<String> blocked=new HashSet<String>();
+		List<String> texts=new ArrayList<String>();
+		boolean unknownChart=collectReferences(reportDefinition, consumersMap, blocked, texts);
+		for(Map.Entry<String,SqlDatasetDefinition> entry:sqlDatasetMap.entrySet()){
+			String name=entry.getKey();
+			SqlDatasetDefinition dataset=entry.getValue();
+			String reason=null;
+			List<DatasetValue> consumers=consumersMap.get(name);
+			if(unknownChart || blocked.contains(name)){
+				reason="referenced by chart or mapping";
+			}else if(isReferenced(name, texts)){
+				reason="referenced by expression";
+			}else if(consumers==null){
+				reason="no dataset cell";
+			}
+			List<SqlPredicate> predicates=Collections.emptyList();
+			if(enabled){
+				String predicateReason=reason;
+				if(reason==null){
+					predicates=buildPredicates(consumers);
+					if(predicates.isEmpty()){
+						predicateReason="no common pushable condition";
+					}else if(isOrderSensitive(consumers) && !hasStaticOrderBy(dataset)){
+						predicates=Collections.emptyList();
+						predicateReason="cells show rows in database order but sql has no order by";
+					}
+				}
+				if(Utils.isDebug()){
+					if(!predicates.isEmpty()){
+						Utils.logToConsole("~~~ Dataset ["+name+"] push down conditions:"+predicates);
+					}else{
+						Utils.logToConsole("~~~ Dataset ["+name+"] conditions not pushed down:"+predicateReason);
+					}
+				}
+			}
+			if(aggregate){
+				AggregatePlan plan=null;
+				if(reason==null){
+					List<String> reasons=new ArrayList<String>();
+					plan=buildAggregatePlan(consumers, reasons);
+					if(plan==null){
+						reason=reasons.get(0);
+					}
+				}
+				dataset.setAggregatePlan(plan);
+				if(Utils.isDebug()){
+					if(plan!=null){
+						Utils.logToConsole("~~~ Dataset ["+name+"] aggregate pushed down:"+plan);
+					}else{
+						Utils.logToConsole("~~~ Dataset ["+name+"] aggregate not pushed down:"+reason);
+					}
+				}
+			}
+			dataset.setPushdownPredicates(predicates);
+		}
+	}
+
+	private Map<String,SqlDatasetDefinition> collectSqlDatasets(ReportDefinition reportDefinition){
+		Map<String,SqlDatasetDefinition> map=new LinkedHashMap<String,SqlDatasetDefinition>();
+		List<DatasourceDefinition> datasources=reportDefinition.getDatasources();
+		if(datasources==null){
+			return map;
+		}
+		Set<String> duplicates=new HashSet<String>();
+		for(DatasourceDefinition ds:datasources){
+			if(ds.getDatasets()==null){
+				continue;
+			}
+			for(DatasetDefinition dataset:ds.getDatasets()){
+				if(dataset instanceof SqlDatasetDefinition && map.put(dataset.getName(), (SqlDatasetDefinition)dataset)!=null){
+					duplicates.add(dataset.getName());
+				}
+			}
+		}
+		for(String name:duplicates){
+			map.remove(name).setPushdownPredicates(Collections.<SqlPredicate>emptyList());
+		}
+		return map;
+	}
+
+	private boolean isPlanned(Map<String,SqlDatasetDefinition> sqlDatasetMap){
+		for(SqlDatasetDefinition dataset:sqlDatasetMap.values()){
+			if(dataset.getPushdownPredicates()==null){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return 报表中是否有无法确定所用数据集的图表
+	 */
+	private boolean collectReferences(ReportDefinition reportDefinition,Map<String,List<DatasetValue>> consumersMap,Set<String> blocked,List<String> texts){
+		boolean unknownChart=false;
+		if(reportDefinition.getCells()!=null){
+			for(CellDefinition cell:reportDefinition.getCells()){
+				Value value=cell.getValue();
+				if(value instanceof DatasetValue){
+					DatasetValue dsValue=(DatasetValue)value;
+					List<DatasetValue> consumers=consumersMap.get(dsValue.getDatasetName());
+					if(consumers==null){
+						consumers=new ArrayList<DatasetValue>();
+						consumersMap.put(dsValue.getDatasetName(), consumers);
+					}
+					consumers.add(dsValue);
+					if(MappingType.dataset.equals(dsValue.getMappingType()) && dsValue.getMappingDataset()!=null){
+						blocked.add(dsValue.getMappingDataset());
+					}
+					collectConditionTexts(dsValue.getCondition(), false, texts);
+					if(dsValue.getGroupItems()!=null){
+						for(GroupItem item:dsValue.getGroupItems()){
+							collectConditionTexts(item.getCondition(), false, texts);
+						}
+					}
+				}else if(value instanceof ExpressionValue){
+					texts.add(value.getValue());
+				}else if(value instanceof ImageValue){
+					texts.add(((ImageValue)value).getExpr());
+				}else if(value instanceof ZxingValue){
+					texts.add(((ZxingValue)value).getExpr());
+				}else if(value instanceof ChartValue){
+					String name=getChartDatasetName(((ChartValue)value).getChart());
+					if(name==null){
+						unknownChart=true;
+					}else{
+						blocked.add(name);
+					}
+				}
+				texts.add(cell.getLinkUrl());
+				collectLinkTexts(cell.getLinkParameters(), texts);
+				if(cell.getConditionPropertyItems()!=null){
+					for(ConditionPropertyItem item:cell.getConditionPropertyItems()){
+						texts.add(item.getExpr());
+						texts.add(item.getNewValue());
+						texts.add(item.getLinkUrl());
+						collectLinkTexts(item.getLinkParameters(), texts);
+						if(item.getConditions()!=null){
+							for(Condition condition:item.getConditions()){
+								collectConditionTexts(condition, true, texts);
+							}
+						}
+					}
+				}
+			}
+		}
+		collectHeaderFooterTexts(reportDefinition.getHeader(), texts);
+		collectHeaderFooterTexts(reportDefinition.getFooter(), texts);
+		texts.add(reportDefinition.getSearchFormXml());
+		return unknownChart;
+	}
+
+	private String getChartDatasetName(Chart chart){
+		if(chart==null || chart.getDataset()==null){
+			return null;
+		}
+		Object dataset=chart.getDataset();
+		if(dataset instanceof CategoryDataset){
+			return ((CategoryDataset)dataset).getDatasetName();
+		}else if(dataset instanceof ScatterDataset){
+			return ((ScatterDataset)dataset).getDatasetName();
+		}else if(dataset instanceof BubbleDataset){
+			return ((BubbleDataset)dataset).getDatasetName();
+		}
+		return null;
+	}
+
+	/**
+	 * @param includeLeft 数据集单元格条件的左侧是属性名而不是表达式，不需要检查
+	 */
+	private void collectConditionTexts(Condition condition,boolean includeLeft,List<String> texts){
+		while(condition instanceof BaseCondition){
+			BaseCondition base=(BaseCondition)condition;
+			if(includeLeft){
+				texts.add(base.getLeft());
+			}
+			texts.add(base.getRight());
+			condition=base.getNextCondition();
+		}
+	}
+
+	private void collectLinkTexts(List<LinkParameter> parameters,List<String> texts){
+		if(parameters==null){
+			return;
+		}
+		for(LinkParameter parameter:parameters){
+			texts.add(parameter.getValue());
+		}
+	}
+
+	private void collectHeaderFooterTexts(HeaderFooterDefinition def,List<String> texts){
+		if(def==null){
+			return;
+		}
+		texts.add(def.getLeft());
+		texts.add(def.getCenter());
+		texts.add(def.getRight());
+	}
+
+	private boolean isReferenced(String name,List<String> texts){
+		for(String text:texts){
+			if(text!=null && text.contains(name)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 列表、不排序的分组等单元格按数据库返回行的顺序显示，SQL没有order by时这个顺序由数据库决定，
+	 * 加上下推条件后执行计划改变(如改用索引)，行的顺序可能随之改变
+	 */
+	private boolean isOrderSensitive(List<DatasetValue> consumers){
+		for(DatasetValue consumer:consumers){
+			AggregateType type=consumer.getAggregate();
+			if(type==null){
+				return true;
+			}
+			switch(type){
+			case sum:
+			case avg:
+			case count:
+			case max:
+			case min:
+				break;
+			case group:
+				if(consumer.getOrder()==null || consumer.getOrder().equals(Order.none)){
+					return true;
+				}
+				break;
+			default:
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return SQL末尾是否有可以移到外层查询的order by，SQL中有表达式时渲染后的SQL不确定，返回false
+	 */
+	private boolean hasStaticOrderBy(SqlDatasetDefinition dataset){
+		String sql=dataset.getSql();
+		if(sql==null || sql.contains("${")){
+			return false;
+		}
+		SqlOrderBy orderBy=SqlOrderBy.split(sql);
+		return orderBy!=null && orderBy.getOrderBy()!=null;
+	}
+
+	/**
+	 * 取所有单元格都包含的可下推条件，单元格中条件的顺序不影响结果
+	 */
+	private List<SqlPredicate> buildPredicates(List<DatasetValue> consumers){
+		Map<String,SqlPredicate> common=null;
+		for(DatasetValue consumer:consumers){
+			Map<String,SqlPredicate> map=collectConjuncts(consumer.getCondition());
+			if(common==null){
+				common=map;
+			}else{
+				common.keySet().retainAll(map.keySet());
+			}
+			if(common.isEmpty()){
+				return Collections.emptyList();
+			}
+		}
+		return new ArrayList<SqlPredicate>(common.values());
+	}
+
+	/**
+	 * 条件链按从左到右的方式计算：a and b or c即a and (b or c)，所以只有在第一个or之前的条件是必须满足的
+	 */
+	private Map<String,SqlPredicate> collectConjuncts(Condition condition){
+		Map<String,SqlPredicate> map=new LinkedHashMap<String,SqlPredicate>();
+		while(condition instanceof BaseCondition){
+			BaseCondition base=(BaseCondition)condition;
+			Condition next=base.getNextCondition();
+			boolean or=next!=null && Join.or.equals(base.getJoin());
+			if(or){
+				break;
+			}
+			if(base instanceof PropertyExpressionCondition){
+				PropertyExpressionCondition pec=(PropertyExpressionCondition)base;
+				String column=pec.getLeftProperty();
+				Op op=pec.getOp();
+				if(isColumn(column) && isPushableOp(op) && isParameterOnly(pec.getRightExpression())){
+					String key=column+"\u0000"+op.name()+"\u0000"+pec.getRight();
+					map.put(key, new SqlPredicate(column, op, pec.getRightExpression(), pec.getRight()));
+				}
+			}
+			condition=next;
+		}
+		return map;
+	}
+
+	/**
+	 * 数据集的所有单元格都只做分组及sum、avg、count、max、min，且条件都基于数据集的列时，
+	 * 按分组列及条件中用到的列在数据库中group by，单元格在汇总行上计算的结果与在原始行上相同。
+	 * 分组单元格必须指定排序方式，否则分组的顺序取决于原始行的顺序，汇总后无法还原。
+	 * @param reasons 不能下推时放入原因
+	 */
+	private AggregatePlan buildAggregatePlan(List<DatasetValue> consumers,List<String> reasons){
+		Map<String,String> groupColumns=new LinkedHashMap<String,String>();
+		Set<String> sortedColumns=new LinkedHashSet<String>();
+		Set<String> sums=new LinkedHashSet<String>();
+		Set<String> maxs=new LinkedHashSet<String>();
+		Set<String> mins=new LinkedHashSet<String>();
+		for(DatasetValue consumer:consumers){
+			AggregateType type=consumer.getAggregate();
+			String property=consumer.getProperty();
+			if(type==null){
+				reasons.add("no aggregate type");
+				return null;
+			}
+			if(!type.equals(AggregateType.count) && !isColumn(property)){
+				reasons.add(type.name()+"("+property+") is not a column");
+				return null;
+			}
+			switch(type){
+			case group:
+				if(consumer.getOrder()==null || consumer.getOrder().equals(Order.none)){
+					reasons.add("group("+property+") has no order");
+					return null;
+				}
+				addColumn(groupColumns, property);
+				sortedColumns.add(property);
+				break;
+			case sum:
+			case avg:
+				sums.add(property);
+				break;
+			case max:
+				maxs.add(property);
+				break;
+			case min:
+				mins.add(property);
+				break;
+			case count:
+				break;
+			default:
+				reasons.add(type.name()+" not supported");
+				return null;
+			}
+			Condition condition=consumer.getCondition();
+			while(condition!=null){
+				if(!(condition instanceof PropertyExpressionCondition)){
+					reasons.add("condition "+condition.getClass().getSimpleName()+" not supported");
+					return null;
+				}
+				PropertyExpressionCondition pec=(PropertyExpressionCondition)condition;
+				String column=pec.getLeftProperty();
+				if(StringUtils.isNotBlank(column)){
+					if(!isColumn(column)){
+						reasons.add("condition property "+column+" is not a column");
+						return null;
+					}
+					addColumn(groupColumns, column);
+				}
+				condition=pec.getNextCondition();
+			}
+		}
+		return new AggregatePlan(new ArrayList<String>(groupColumns.values()), sortedColumns, new ArrayList<String>(sums), new ArrayList<String>(maxs), new ArrayList<String>(mins));
+	}
+
+	private void addColumn(Map<String,String> columns,String column){
+		String key=column.toLowerCase();
+		if(!columns.containsKey(key)){
+			columns.put(key, column);
+		}
+	}
+
+	private boolean isColumn(String property){
+		return property!=null && COLUMN_PATTERN.matcher(property).matches();
+	}
+
+	private boolean isPushableOp(Op op){
+		// 不等于、not in在内存中对null值的判断结果与SQL不同，下推后会丢失数据，所以不下推
+		return op!=null && !op.equals(Op.NotEquals) && !op.equals(Op.NotIn);
+	}
+
+	/**
+	 * 右侧表达式只由常量、param函数及它们的运算组成时，其值在加载数据集时即可确定
+	 */
+	private boolean isParameterOnly(Expression expr){
+		if(expr==null){
+			return false;
+		}
+		if(expr instanceof StringExpression || expr instanceof IntegerExpression || expr instanceof NumberExpression
+				|| expr instanceof BooleanExpression || expr instanceof NullExpression){
+			return true;
+		}
+		if(expr instanceof FunctionExpression){
+			FunctionExpression funExpr=(FunctionExpression)expr;
+			if(!"param".equals(funExpr.getName())){
+				return false;
+			}
+			return isAllParameterOnly(funExpr.getExpressions());
+		}
+		if(expr instanceof JoinExpression){
+			return isAllParameterOnly(((JoinExpression)expr).getExpressions());
+		}
+		if(expr instanceof ExpressionBlock){
+			ExpressionBlock block=(ExpressionBlock)expr;
+			return isAllParameterOnly(block.getExpressionList()) && (block.getReturnExpression()==null || isParameterOnly(block.getReturnExpression()));
+		}
+		return false;
+	}
+
+	private boolean isAllParameterOnly(List<? extends Expression> list){
+		if(list==null){
+			return true;
+		}
+		for(Expression expr:list){
+			if(!isParameterOnly(expr)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isAggregate() {
+		return aggregate;
+	}
+
+	public void setAggregate(boolean aggregate) {
+		this.aggregate = aggregate;
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.cache;
+
+/**
+ * 缓存的统计信息快照，包括命中、未命中、淘汰次数以及当前的条目数与权重
+ * @author jackie
+ * @since 2.2.10
+ */
+public class CacheStatistics {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long size;
+	private final long weight;
+
+	public CacheStatistics(long hitCount,long missCount,long evictionCount,long size,long weight) {
+		this.hitCount=hitCount;
+		this.missCount=missCount;
+		this.evictionCount=evictionCount;
+		this.size=size;
+		this.weight=weight;
+	}
+
+	public double getHitRate(){
+		long total=hitCount+missCount;
+		return total==0 ? 1.0 : (double)hitCount/total;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+	public long getMissCount() {
+		return missCount;
+	}
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+	public long getSize() {
+		return size;
+	}
+	public long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return "hits="+hitCount+",misses="+missCount+",evictions="+evictionCount+",size="+size+",weight="+weight;
+	}
+}
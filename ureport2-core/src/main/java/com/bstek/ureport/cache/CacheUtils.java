@@ -59,10 +59,21 @@ public class CacheUtils implements ApplicationContextAware{
 		}
 		return null;
 	}
-	public static void storeObject(String file,Object obj){
+	/**
+	 * @return 没有可用的报表缓存或对象没有放入缓存时返回false
+	 */
+	public static boolean storeObject(String file,Object obj){
 		if(reportCache!=null){
-			reportCache.storeObject(file, obj);
+			return reportCache.tryStoreObject(file, obj);
 		}
+		return false;
+	}
+	
+	public static CacheStatistics getReportCacheStatistics(){
+		if(reportCache!=null){
+			return reportCache.getStatistics();
+		}
+		return null;
 	}
 	
 	public static ReportDefinition getReportDefinition(String file){
@@ -71,6 +82,9 @@ public class CacheUtils implements ApplicationContextAware{
 	public static void cacheReportDefinition(String file,ReportDefinition reportDefinition){
 		reportDefinitionCache.cacheReportDefinition(file, reportDefinition);
 	}
+	public static void removeReportDefinition(String file){
+		reportDefinitionCache.removeReportDefinition(file);
+	}
 	
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.exception.ReportComputeException;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Report;
+
+/**
+ * 已计算报表的缓存，以报表文件名加规范化后的参数作为key，
+ * 这样HTML分页浏览及导出时不需要每次都重新查询数据集并展开单元格。<br>
+ * 缓存条目按TTL过期，并按条目数与单元格总数两个上限做LRU淘汰；
+ * 相同key的并发请求只会触发一次报表计算。<br>
+ * 缓存中的Report会同时交给多个请求使用，放入缓存前会先完成分页并标记为共享({@link Report#markShared()})，
+ * 之后只能读取，需要重新分页等修改报表的场景应自行计算一份新的报表。<br>
+ * 每次{@link #evict(String)}或{@link #clean()}都会使代数加一，计算开始后代数发生变化的报表不放入缓存，
+ * 避免用修改前的报表模版计算出的报表在模版修改后仍被缓存到过期。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ComputedReportCache {
+	private boolean enabled;
+	private long ttlSeconds=60;
+	private int maxEntries=20;
+	private long maxCells=2000000;
+	private long totalCells;
+	private long generation;
+	private final Map<String,CacheEntry> entryMap=new LinkedHashMap<String,CacheEntry>(16,0.75f,true);
+	private final ConcurrentHashMap<String,FutureTask<Report>> loadingMap=new ConcurrentHashMap<String,FutureTask<Report>>();
+
+	public Report getReport(String file,Map<String,Object> parameters,Callable<Report> loader){
+		if(!enabled){
+			return call(loader);
+		}
+		String key=buildKey(file, parameters);
+		Report report=fetch(key);
+		if(report!=null){
+			return report;
+		}
+		long startGeneration=getGeneration();
+		FutureTask<Report> task=new FutureTask<Report>(loader);
+		FutureTask<Report> existTask=loadingMap.putIfAbsent(key, task);
+		if(existTask==null){
+			try{
+				task.run();
+				report=waitFor(task);
+				report.getPages();
+				report.markShared();
+				store(key, report, startGeneration);
+			}finally{
+				loadingMap.remove(key);
+			}
+			return report;
+		}
+		return waitFor(existTask);
+	}
+
+	public synchronized void clean(){
+		entryMap.clear();
+		totalCells=0;
+		generation++;
+	}
+
+	/**
+	 * 移除指定报表文件在各种参数下的缓存，报表模版修改后调用
+	 * @param file 报表文件名
+	 */
+	public synchronized void evict(String file){
+		generation++;
+		String prefix=escape(file);
+		Iterator<Map.Entry<String,CacheEntry>> iter=entryMap.entrySet().iterator();
+		while(iter.hasNext()){
+			Map.Entry<String,CacheEntry> entry=iter.next();
+			String key=entry.getKey();
+			if(key.equals(prefix) || (key.startsWith(prefix) && key.charAt(prefix.length())=='&')){
+				totalCells-=entry.getValue().cells;
+				iter.remove();
+			}
+		}
+	}
+
+	private synchronized Report fetch(String key){
+		CacheEntry entry=entryMap.get(key);
+		if(entry==null){
+			return null;
+		}
+		if(entry.isExpired(ttlSeconds)){
+			remove(key);
+			return null;
+		}
+		return entry.report;
+	}
+
+	private synchronized long getGeneration(){
+		return generation;
+	}
+
+	/**
+	 * @param startGeneration 开始计算报表时的代数，与当前代数不同时说明计算期间有报表被移除，不再放入缓存
+	 */
+	private synchronized void store(String key,Report report,long startGeneration){
+		if(startGeneration!=generation){
+			return;
+		}
+		long cells=countCells(report);
+		if(cells>maxCells){
+			Utils.logToConsole("~~~ Report ["+key+"] has "+cells+" cells, exceeds computed report cache limit, not cached.");
+			return;
+		}
+		remove(key);
+		entryMap.put(key, new CacheEntry(report,cells));
+		totalCells+=cells;
+		Iterator<Map.Entry<String,CacheEntry>> iter=entryMap.entrySet().iterator();
+		while(iter.hasNext() && (entryMap.size()>maxEntries || totalCells>maxCells)){
+			Map.Entry<String,CacheEntry> eldest=iter.next();
+			if(eldest.getKey().equals(key)){
+				continue;
+			}
+			totalCells-=eldest.getValue().cells;
+			iter.remove();
+		}
+	}
+
+	private void remove(String key){
+		CacheEntry entry=entryMap.remove(key);
+		if(entry!=null){
+			totalCells-=entry.cells;
+		}
+	}
+
+	private long countCells(Report report){
+		long count=0;
+		for(List<Cell> cells:report.getCellsMap().values()){
+			count+=cells.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 以报表文件名加按参数名排序后的参数生成缓存key，文件名、参数名及参数值中的分隔符都会被转义，
+	 * 数组及集合按元素逐个转义，null与字符串"null"也不相同，所以不同的参数不会得到相同的key
+	 */
+	public static String buildKey(String file,Map<String,Object> parameters){
+		StringBuilder sb=new StringBuilder(escape(file));
+		if(parameters==null){
+			return sb.toString();
+		}
+		Map<String,Object> sortedMap=new TreeMap<String,Object>(parameters);
+		for(Map.Entry<String,Object> entry:sortedMap.entrySet()){
+			sb.append('&');
+			sb.append(escape(entry.getKey()));
+			sb.append('=');
+			appendValue(sb, entry.getValue());
+		}
+		return sb.toString();
+	}
+
+	private static void appendValue(StringBuilder sb,Object value){
+		if(value==null){
+			sb.append("%00");
+		}else if(value instanceof Object[]){
+			appendValues(sb, Arrays.asList((Object[])value));
+		}else if(value instanceof Collection){
+			appendValues(sb, (Collection<?>)value);
+		}else{
+			sb.append(escape(value.toString()));
+		}
+	}
+
+	private static void appendValues(StringBuilder sb,Collection<?> values){
+		sb.append('[');
+		boolean first=true;
+		for(Object value:values){
+			if(!first){
+				sb.append(',');
+			}
+			first=false;
+			appendValue(sb, value);
+		}
+		sb.append(']');
+	}
+
+	private static String escape(String text){
+		StringBuilder sb=null;
+		for(int i=0;i<text.length();i++){
+			char c=text.charAt(i);
+			String replacement=null;
+			switch(c){
+			case '%':
+				replacement="%25";
+				break;
+			case '&':
+				replacement="%26";
+				break;
+			case '=':
+				replacement="%3D";
+				break;
+			case ',':
+				replacement="%2C";
+				break;
+			case '[':
+				replacement="%5B";
+				break;
+			case ']':
+				replacement="%5D";
+				break;
+			}
+			if(replacement!=null && sb==null){
+				sb=new StringBuilder(text.length()+16);
+				sb.append(text, 0, i);
+			}
+			if(sb!=null){
+				if(replacement!=null){
+					sb.append(replacement);
+				}else{
+					sb.append(c);
+				}
+			}
+		}
+		return sb==null ? text : sb.toString();
+	}
+
+	private Report waitFor(FutureTask<Report> task){
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReportComputeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause=e.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error){
+				throw (Error)cause;
+			}
+			throw new ReportComputeException((Exception)cause);
+		}
+	}
+
+	private Report call(Callable<Report> loader){
+		try {
+			return loader.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ReportComputeException(e);
+		}
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	public void setTtlSeconds(long ttlSeconds) {
+		this.ttlSeconds = ttlSeconds;
+	}
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+	public void setMaxCells(long maxCells) {
+		this.maxCells = maxCells;
+	}
+
+	private static class CacheEntry{
+		private final Report report;
+		private final long cells;
+		private final long createTime=System.currentTimeMillis();
+		CacheEntry(Report report,long cells){
+			this.report=report;
+			this.cells=cells;
+		}
+		boolean isExpired(long ttlSeconds){
+			return System.currentTimeMillis()-createTime>ttlSeconds*1000;
+		}
+	}
+}
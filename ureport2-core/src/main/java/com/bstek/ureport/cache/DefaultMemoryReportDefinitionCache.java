@@ -37,4 +37,8 @@ public class DefaultMemoryReportDefinitionCache implements ReportDefinitionCache
 		}
 		reportMap.put(file, reportDefinition);
 	}
+	@Override
+	public void removeReportDefinition(String file) {
+		reportMap.remove(file);
+	}
 }
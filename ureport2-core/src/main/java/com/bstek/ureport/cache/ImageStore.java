@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Base64Utils;
+
+import com.bstek.ureport.exception.ReportComputeException;
+
+/**
+ * HTML输出时按引用方式提供图片的存储，以图片内容的SHA-256摘要作为key，相同图片只存一份。<br>
+ * 总大小超过maxBytes时淘汰最久未使用的图片，超过idleSeconds未被访问的图片也会被清除；
+ * 最近一分钟内放入或访问过的图片不会因总大小超出被淘汰，保证刚输出的HTML能取到图片。<br>
+ * 长期保存的HTML(如{@link PagedReportStore}中的分页)在生成时通过{@link #beginPinning()}记录引用的图片，
+ * 这些图片在HTML被移除并调用{@link #release(Collection)}之前不会被淘汰，此时总大小可能超过maxBytes；
+ * 图片地址由控制台在启动时通过{@link #setImageUrl(String)}注册，未注册或未启用时HTML中仍内嵌base64数据。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ImageStore {
+	private static boolean enabled;
+	private static long maxBytes=32*1024*1024;
+	private static long idleSeconds=3600;
+	private static volatile String imageUrl;
+	private static final long GRACE_MILLIS=60000;
+	private static long bytes;
+	private static final ThreadLocal<Set<String>> pinningKeys=new ThreadLocal<Set<String>>();
+	private static final Map<String,StoredImage> imageMap=new LinkedHashMap<String,StoredImage>(64,0.75f,true);
+	/**
+	 * 同一图片在报表中重复出现时base64数据通常是同一个字符串，记住其摘要避免每个单元格都重新计算
+	 */
+	private static final Map<String,String> digestMap=Collections.synchronizedMap(new WeakHashMap<String,String>());
+	private static final AtomicLong hits=new AtomicLong();
+	private static final AtomicLong misses=new AtomicLong();
+	private static final AtomicLong evictions=new AtomicLong();
+
+	/**
+	 * 存入base64格式的图片并返回访问地址
+	 * @param base64Data 图片的base64数据
+	 * @param contentType 图片类型，如image/png
+	 * @return 图片地址，未启用或控制台未注册图片地址时返回null，此时应内嵌图片数据
+	 */
+	public static String buildImageUrl(String base64Data,String contentType){
+		String url=imageUrl;
+		if(!enabled || url==null || base64Data==null){
+			return null;
+		}
+		return url+"?_key="+put(base64Data, contentType, pinningKeys.get());
+	}
+
+	/**
+	 * 开始记录当前线程输出的图片，记录的图片被固定在存储中，直到调用{@link #release(Collection)}
+	 * @return 记录图片key的集合，生成结束后调用{@link #endPinning()}
+	 */
+	public static Set<String> beginPinning(){
+		Set<String> keys=new HashSet<String>();
+		pinningKeys.set(keys);
+		return keys;
+	}
+
+	public static void endPinning(){
+		pinningKeys.remove();
+	}
+
+	/**
+	 * 引用这些图片的HTML被移除时调用，解除固定
+	 */
+	public static void release(Collection<String> keys){
+		if(keys==null || keys.isEmpty()){
+			return;
+		}
+		synchronized(imageMap){
+			for(String key:keys){
+				StoredImage image=imageMap.get(key);
+				if(image!=null && image.pins>0){
+					image.pins--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return 图片的key，即图片数据的SHA-256摘要
+	 */
+	public static String put(String base64Data,String contentType){
+		return put(base64Data, contentType, null);
+	}
+
+	private static String put(String base64Data,String contentType,Set<String> pinned){
+		String key=digestMap.get(base64Data);
+		if(key==null){
+			key=digest(base64Data);
+			digestMap.put(base64Data, key);
+		}
+		long now=System.currentTimeMillis();
+		synchronized(imageMap){
+			StoredImage image=imageMap.get(key);
+			if(image!=null){
+				image.lastAccess=now;
+				pin(image, key, pinned);
+				return key;
+			}
+		}
+		byte[] data=Base64Utils.decodeFromString(base64Data);
+		synchronized(imageMap){
+			StoredImage image=imageMap.get(key);
+			if(image!=null){
+				image.lastAccess=now;
+				pin(image, key, pinned);
+				return key;
+			}
+			removeIdle(now);
+			image=new StoredImage(data,contentType,now);
+			pin(image, key, pinned);
+			imageMap.put(key, image);
+			bytes+=data.length;
+			Iterator<StoredImage> iter=imageMap.values().iterator();
+			while(bytes>maxBytes && iter.hasNext()){
+				StoredImage eldest=iter.next();
+				if(eldest.pins>0){
+					continue;
+				}
+				if(now-eldest.lastAccess<GRACE_MILLIS){
+					break;
+				}
+				bytes-=eldest.data.length;
+				iter.remove();
+				evictions.incrementAndGet();
+			}
+		}
+		return key;
+	}
+
+	private static void pin(StoredImage image,String key,Set<String> pinned){
+		if(pinned!=null && pinned.add(key)){
+			image.pins++;
+		}
+	}
+
+	/**
+	 * @param key 图片的key
+	 * @return 图片，不存在或已过期时返回null
+	 */
+	public static StoredImage get(String key){
+		long now=System.currentTimeMillis();
+		synchronized(imageMap){
+			StoredImage image=imageMap.get(key);
+			if(image==null || (image.pins==0 && image.isIdle(now))){
+				if(image!=null){
+					imageMap.remove(key);
+					bytes-=image.data.length;
+					evictions.incrementAndGet();
+				}
+				misses.incrementAndGet();
+				return null;
+			}
+			image.lastAccess=now;
+			hits.incrementAndGet();
+			return image;
+		}
+	}
+
+	private static void removeIdle(long now){
+		Iterator<StoredImage> iter=imageMap.values().iterator();
+		while(iter.hasNext()){
+			StoredImage image=iter.next();
+			if(!image.isIdle(now)){
+				break;
+			}
+			if(image.pins>0){
+				continue;
+			}
+			bytes-=image.data.length;
+			iter.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static String digest(String base64Data){
+		try{
+			MessageDigest md=MessageDigest.getInstance("SHA-256");
+			byte[] hash=md.digest(base64Data.getBytes(StandardCharsets.ISO_8859_1));
+			StringBuilder sb=new StringBuilder(hash.length*2);
+			for(byte b:hash){
+				sb.append(Character.forDigit((b>>4)&0xF, 16));
+				sb.append(Character.forDigit(b&0xF, 16));
+			}
+			return sb.toString();
+		}catch(NoSuchAlgorithmException ex){
+			throw new ReportComputeException(ex);
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 由提供图片访问服务的控制台注册图片地址，如/contextPath/ureport/image
+	 */
+	public static void setImageUrl(String url) {
+		imageUrl=url;
+	}
+
+	public static CacheStatistics getStatistics(){
+		synchronized(imageMap){
+			return new CacheStatistics(hits.get(), misses.get(), evictions.get(), imageMap.size(), bytes);
+		}
+	}
+
+	public static void clear(){
+		synchronized(imageMap){
+			imageMap.clear();
+			bytes=0;
+		}
+		digestMap.clear();
+	}
+
+	public void setEnabled(boolean enabled) {
+		ImageStore.enabled = enabled;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		ImageStore.maxBytes = maxBytes;
+	}
+
+	public void setIdleSeconds(long idleSeconds) {
+		ImageStore.idleSeconds = idleSeconds;
+	}
+
+	public static class StoredImage{
+		private final byte[] data;
+		private final String contentType;
+		private volatile long lastAccess;
+		/**
+		 * 引用该图片的长期保存的HTML数量
+		 */
+		private int pins;
+
+		StoredImage(byte[] data,String contentType,long lastAccess) {
+			this.data=data;
+			this.contentType=contentType;
+			this.lastAccess=lastAccess;
+		}
+
+		boolean isIdle(long now){
+			return idleSeconds>0 && now-lastAccess>idleSeconds*1000;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+	}
+}
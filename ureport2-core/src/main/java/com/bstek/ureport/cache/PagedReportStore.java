@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.chart.ChartData;
+import com.bstek.ureport.exception.ReportComputeException;
+import com.bstek.ureport.export.html.HtmlReport;
+
+/**
+ * 分页HTML预览时使用的报表存储，报表计算完成后将每页的HTML压缩后连续存放为一段二进制数据，
+ * 只保留每页的偏移量及报表级的样式、查询表单、图表数据等信息，不再持有整个Report对象。<br>
+ * 最近使用的报表数据保存在堆内，超过maxHeapBytes后将最久未使用的报表写入directory目录下的文件并以内存映射方式访问，
+ * 文件总大小超过maxDiskBytes时删除最久未使用的报表；请求某一页时只读取并解压该页的数据。<br>
+ * 第一次请求只生成当前页的HTML直接返回，其它页由后台线程逐页生成并压缩，完成后才放入存储；
+ * 同一报表同一参数同时只有一个后台生成任务，期间的其它请求仍各自只生成自己请求的页。
+ * 各页引用的图片在{@link ImageStore}中固定，报表从存储中移除时解除。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class PagedReportStore implements DisposableBean {
+	private static final int STORE_THREADS=2;
+	private boolean enabled;
+	private long ttlSeconds=300;
+	private long maxHeapBytes=64*1024*1024;
+	private long maxDiskBytes=1024L*1024*1024;
+	private String directory;
+	private long heapBytes;
+	private long diskBytes;
+	private final Map<String,StoredReport> entryMap=new LinkedHashMap<String,StoredReport>(16,0.75f,true);
+	private final ConcurrentHashMap<String,CompletableFuture<Void>> storingMap=new ConcurrentHashMap<String,CompletableFuture<Void>>();
+	private ExecutorService executor;
+
+	/**
+	 * @param file 报表文件名
+	 * @param parameters 参数
+	 * @param pageIndex 页码，从1开始，超过总页数时返回最后一页
+	 * @return 已存储的报表对应页的HtmlReport，不存在或已过期时返回null
+	 */
+	public HtmlReport getPage(String file,Map<String,Object> parameters,int pageIndex){
+		StoredReport report=fetch(ComputedReportCache.buildKey(file, parameters));
+		if(report==null){
+			return null;
+		}
+		return report.buildHtmlReport(pageIndex);
+	}
+
+	/**
+	 * 在后台逐页生成报表的HTML并存储，同一报表同一参数已有生成任务或已存储时直接返回
+	 * @param file 报表文件名
+	 * @param parameters 参数
+	 * @param prototype 报表级的信息，各页共用，其中的content不会被存储
+	 * @param chartDataMap 报表中的图表数据，取页时需要重新放入报表缓存中供图表请求使用
+	 * @param totalPages 总页数
+	 * @param renderer 生成指定页HTML的回调，在后台线程中调用
+	 * @return 后台生成任务
+	 */
+	public CompletableFuture<Void> storeAsync(String file,Map<String,Object> parameters,final HtmlReport prototype,final Map<String,ChartData> chartDataMap,final int totalPages,final PageRenderer renderer){
+		final String key=ComputedReportCache.buildKey(file, parameters);
+		if(fetch(key)!=null){
+			return CompletableFuture.completedFuture(null);
+		}
+		final CompletableFuture<Void> future=new CompletableFuture<Void>();
+		CompletableFuture<Void> existFuture=storingMap.putIfAbsent(key, future);
+		if(existFuture!=null){
+			return existFuture;
+		}
+		try{
+			getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						store(key, new StoredReport(prototype,chartDataMap,totalPages,renderer));
+						future.complete(null);
+					}catch(Throwable ex){
+						Utils.logToConsole("~~~ Store report pages ["+key+"] failed:"+ex.getMessage());
+						future.completeExceptionally(ex);
+					}finally{
+						storingMap.remove(key, future);
+					}
+				}
+			});
+		}catch(RuntimeException ex){
+			storingMap.remove(key, future);
+			future.completeExceptionally(ex);
+		}
+		return future;
+	}
+
+	private synchronized StoredReport fetch(String key){
+		StoredReport report=entryMap.get(key);
+		if(report==null){
+			return null;
+		}
+		if(report.isExpired(ttlSeconds)){
+			remove(key);
+			return null;
+		}
+		return report;
+	}
+
+	private synchronized void store(String key,StoredReport report){
+		removeExpired();
+		remove(key);
+		entryMap.put(key, report);
+		heapBytes+=report.size;
+		Iterator<Map.Entry<String,StoredReport>> iter=entryMap.entrySet().iterator();
+		while(heapBytes>maxHeapBytes && iter.hasNext()){
+			StoredReport eldest=iter.next().getValue();
+			if(eldest.isSpilled()){
+				continue;
+			}
+			if(eldest.size>maxDiskBytes || !spill(eldest)){
+				iter.remove();
+				heapBytes-=eldest.size;
+				eldest.release();
+				continue;
+			}
+			heapBytes-=eldest.size;
+			diskBytes+=eldest.size;
+		}
+		iter=entryMap.entrySet().iterator();
+		while(diskBytes>maxDiskBytes && iter.hasNext()){
+			StoredReport eldest=iter.next().getValue();
+			if(!eldest.isSpilled()){
+				continue;
+			}
+			iter.remove();
+			diskBytes-=eldest.size;
+			eldest.release();
+		}
+	}
+
+	private boolean spill(StoredReport report){
+		File dir=getDirectory();
+		File file=new File(dir,UUID.randomUUID().toString()+".page");
+		try(FileChannel channel=FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			ByteBuffer buffer=ByteBuffer.wrap(report.data);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			MappedByteBuffer mapped=channel.map(FileChannel.MapMode.READ_ONLY, 0, report.data.length);
+			report.spillTo(file, mapped);
+			return true;
+		}catch(IOException ex){
+			Utils.logToConsole("~~~ Spill report pages to ["+file.getAbsolutePath()+"] failed:"+ex.getMessage());
+			deleteFile(file);
+			return false;
+		}
+	}
+
+	private void removeExpired(){
+		List<String> expiredList=new ArrayList<String>();
+		for(Map.Entry<String,StoredReport> entry:entryMap.entrySet()){
+			if(entry.getValue().isExpired(ttlSeconds)){
+				expiredList.add(entry.getKey());
+			}
+		}
+		for(String key:expiredList){
+			remove(key);
+		}
+	}
+
+	private void remove(String key){
+		StoredReport report=entryMap.remove(key);
+		if(report==null){
+			return;
+		}
+		if(report.isSpilled()){
+			diskBytes-=report.size;
+		}else{
+			heapBytes-=report.size;
+		}
+		report.release();
+	}
+
+	private File getDirectory(){
+		File dir;
+		if(directory==null || directory.trim().length()==0){
+			dir=new File(System.getProperty("java.io.tmpdir"),"ureport-pages");
+		}else{
+			dir=new File(directory);
+		}
+		if(!dir.exists()){
+			dir.mkdirs();
+		}
+		return dir;
+	}
+
+	private static void deleteFile(File file){
+		try{
+			Files.deleteIfExists(file.toPath());
+		}catch(IOException ex){
+			//映射未释放时部分系统无法立即删除文件
+			file.deleteOnExit();
+		}
+	}
+
+	private synchronized ExecutorService getExecutor(){
+		if(executor==null){
+			executor=Executors.newFixedThreadPool(STORE_THREADS, new ThreadFactory() {
+				private int count;
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread=new Thread(r,"ureport-page-store-"+(++count));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	public synchronized void clean(){
+		for(StoredReport report:entryMap.values()){
+			report.release();
+		}
+		entryMap.clear();
+		heapBytes=0;
+		diskBytes=0;
+	}
+
+	@Override
+	public void destroy() {
+		synchronized(this){
+			if(executor!=null){
+				executor.shutdownNow();
+				executor=null;
+			}
+		}
+		clean();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	public void setTtlSeconds(long ttlSeconds) {
+		this.ttlSeconds = ttlSeconds;
+	}
+	public void setMaxHeapBytes(long maxHeapBytes) {
+		this.maxHeapBytes = maxHeapBytes;
+	}
+	public void setMaxDiskBytes(long maxDiskBytes) {
+		this.maxDiskBytes = maxDiskBytes;
+	}
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * 生成报表指定页的HTML
+	 */
+	public interface PageRenderer{
+		/**
+		 * @param pageIndex 页码，从1开始
+		 */
+		String render(int pageIndex);
+	}
+
+	/**
+	 * 一张报表的存储数据：data中依次存放各页使用Deflater压缩后的UTF-8字节，
+	 * offsets记录各页在data中的起始位置，rawLengths记录各页解压后的字节数
+	 */
+	private static class StoredReport{
+		private final HtmlReport prototype;
+		private final Map<String,ChartData> chartDataMap;
+		private final int[] offsets;
+		private final int[] rawLengths;
+		private final long size;
+		private final long createTime=System.currentTimeMillis();
+		private volatile byte[] data;
+		private volatile MappedByteBuffer mapped;
+		private File file;
+		private final Set<String> imageKeys;
+		private boolean released;
+
+		StoredReport(HtmlReport prototype,Map<String,ChartData> chartDataMap,int count,PageRenderer renderer){
+			this.prototype=prototype;
+			this.chartDataMap=chartDataMap;
+			offsets=new int[count+1];
+			rawLengths=new int[count];
+			Deflater deflater=new Deflater(Deflater.BEST_SPEED);
+			byte[] buffer=new byte[8192];
+			ByteArrayOutputStream out=new ByteArrayOutputStream();
+			imageKeys=ImageStore.beginPinning();
+			boolean completed=false;
+			try{
+				for(int i=0;i<count;i++){
+					byte[] raw=renderer.render(i+1).getBytes("UTF-8");
+					rawLengths[i]=raw.length;
+					offsets[i]=out.size();
+					deflater.reset();
+					deflater.setInput(raw);
+					deflater.finish();
+					while(!deflater.finished()){
+						int len=deflater.deflate(buffer);
+						out.write(buffer, 0, len);
+					}
+				}
+				completed=true;
+			}catch(UnsupportedEncodingException ex){
+				throw new ReportComputeException(ex);
+			}finally{
+				ImageStore.endPinning();
+				deflater.end();
+				if(!completed){
+					ImageStore.release(imageKeys);
+				}
+			}
+			offsets[count]=out.size();
+			data=out.toByteArray();
+			size=data.length;
+		}
+
+		HtmlReport buildHtmlReport(int pageIndex){
+			int totalPage=rawLengths.length;
+			if(pageIndex>totalPage){
+				pageIndex=totalPage;
+			}
+			if(pageIndex<1){
+				pageIndex=1;
+			}
+			if(!chartDataMap.isEmpty()){
+				CacheUtils.storeChartDataMap(chartDataMap);
+			}
+			HtmlReport htmlReport=new HtmlReport();
+			htmlReport.setContent(readPage(pageIndex-1));
+			htmlReport.setPageIndex(pageIndex);
+			htmlReport.setTotalPage(totalPage);
+			htmlReport.setStyle(prototype.getStyle());
+			htmlReport.setColumn(prototype.getColumn());
+			htmlReport.setReportAlign(prototype.getReportAlign());
+			htmlReport.setChartDatas(prototype.getChartDatas());
+			htmlReport.setHtmlIntervalRefreshValue(prototype.getHtmlIntervalRefreshValue());
+			htmlReport.setSearchFormData(prototype.getSearchFormData());
+			return htmlReport;
+		}
+
+		private String readPage(int index){
+			int start=offsets[index],length=offsets[index+1]-start;
+			byte[] compressed;
+			byte[] bytes=data;
+			if(bytes!=null){
+				compressed=bytes;
+			}else{
+				ByteBuffer buffer=mapped.duplicate();
+				buffer.position(start);
+				compressed=new byte[length];
+				buffer.get(compressed);
+				start=0;
+			}
+			Inflater inflater=new Inflater();
+			try{
+				inflater.setInput(compressed, start, length);
+				byte[] raw=new byte[rawLengths[index]];
+				int pos=0;
+				while(pos<raw.length && !inflater.finished()){
+					pos+=inflater.inflate(raw, pos, raw.length-pos);
+				}
+				return new String(raw, "UTF-8");
+			}catch(DataFormatException|UnsupportedEncodingException ex){
+				throw new ReportComputeException(ex);
+			}finally{
+				inflater.end();
+			}
+		}
+
+		boolean isSpilled(){
+			return file!=null;
+		}
+
+		/**
+		 * 先设置映射再丢弃堆内数据，保证并发读取时至少能看到其中一个
+		 */
+		void spillTo(File file,MappedByteBuffer mapped){
+			this.file=file;
+			this.mapped=mapped;
+			this.data=null;
+		}
+
+		/**
+		 * 从存储中移除时调用，删除磁盘文件并解除图片的固定
+		 */
+		synchronized void release(){
+			if(released){
+				return;
+			}
+			released=true;
+			if(file!=null){
+				deleteFile(file);
+			}
+			ImageStore.release(imageKeys);
+		}
+
+		boolean isExpired(long ttlSeconds){
+			return System.currentTimeMillis()-createTime>ttlSeconds*1000;
+		}
+	}
+}
@@ -24,4 +24,17 @@ public interface ReportCache {
 	Object getObject(String file);
 	void storeObject(String file,Object obj);
 	boolean disabled();
+	/**
+	 * 放入对象，对象因过大等原因没有放入缓存时返回false，调用方需要自行处理
+	 */
+	default boolean tryStoreObject(String file,Object obj){
+		storeObject(file, obj);
+		return true;
+	}
+	/**
+	 * @return 缓存的命中、未命中及淘汰等统计信息，不支持统计的实现返回null
+	 */
+	default CacheStatistics getStatistics(){
+		return null;
+	}
 }
@@ -24,4 +24,11 @@ import com.bstek.ureport.definition.ReportDefinition;
 public interface ReportDefinitionCache {
 	ReportDefinition getReportDefinition(String file);
 	void cacheReportDefinition(String file,ReportDefinition reportDefinition);
+	/**
+	 * 报表模版文件修改或删除后移除对应的缓存，默认不做处理
+	 * @param file 报表模版文件名
+	 * @since 2.2.10
+	 */
+	default void removeReportDefinition(String file){
+	}
 }
@@ -29,6 +29,9 @@ import com.bstek.ureport.chart.dataset.impl.category.LineDataset;
 import com.bstek.ureport.chart.option.Option;
 import com.bstek.ureport.chart.plugins.Plugin;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Column;
+import com.bstek.ureport.model.Report;
+import com.bstek.ureport.model.Row;
 
 /**
  * @author Jacky.gao
@@ -110,10 +113,38 @@ public class Chart {
 		sb.append("}");
 		sb.append("}");
 		ChartData chartData=new ChartData(sb.toString(),cell);
+		buildCanvasSize(chartData, cell, context.getReport());
 		context.addChartData(chartData);
 		return chartData;
 	}
 
+	/**
+	 * 计算单元格(含合并的行列)中画布的尺寸，与HtmlProducer中canvas的尺寸计算方式一致
+	 */
+	private void buildCanvasSize(ChartData chartData,Cell cell,Report report){
+		int width=cell.getColumn().getWidth(),height=cell.getRow().getRealHeight();
+		if(report!=null){
+			List<Column> columns=report.getColumns();
+			int colIndex=cell.getColumn().getColumnNumber()-1;
+			if(colIndex>-1 && cell.getColSpan()>0){
+				width=0;
+				for(int i=colIndex;i<colIndex+cell.getColSpan() && i<columns.size();i++){
+					width+=columns.get(i).getWidth();
+				}
+			}
+			List<Row> rows=report.getRows();
+			int rowIndex=cell.getRow().getRowNumber()-1;
+			if(rowIndex>-1 && cell.getRowSpan()>0){
+				height=0;
+				for(int i=rowIndex;i<rowIndex+cell.getRowSpan() && i<rows.size();i++){
+					height+=rows.get(i).getRealHeight();
+				}
+			}
+		}
+		chartData.setCanvasWidth(width-2);
+		chartData.setCanvasHeight(height-2);
+	}
+
 	private boolean hasYAxes(Dataset dataset){
 		if(dataset instanceof BarDataset){
 			return true;
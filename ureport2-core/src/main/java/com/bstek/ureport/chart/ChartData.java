@@ -17,7 +17,9 @@ package com.bstek.ureport.chart;
 
 
 import com.bstek.ureport.cache.CacheUtils;
+import com.bstek.ureport.chart.render.ChartRenderer;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.UnitUtils;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
@@ -33,6 +35,13 @@ public class ChartData {
     private int width;
     @JsonIgnore
     private int height;
+    /**
+     * 单元格中图表画布的像素尺寸，与网页中canvas的尺寸一致，用于在服务端绘制图表
+     */
+    @JsonIgnore
+    private int canvasWidth;
+    @JsonIgnore
+    private int canvasHeight;
 
     public ChartData(String json, Cell cell) {
         this.json = json;
@@ -68,10 +77,30 @@ public class ChartData {
             return base64Data;
         }
         ChartData data = CacheUtils.getChartData(id);
+        if (data != null && data != this) {
+            String browserData = data.getBase64Data();
+            if (browserData != null) {
+                width = data.getWidth();
+                height = data.getHeight();
+                return browserData;
+            }
+        }
+        return renderOnServer();
+    }
+
+    /**
+     * 浏览器没有回传图表图片时(如定时任务、直接调用导出接口)，在服务端绘制图表
+     */
+    private String renderOnServer() {
+        if (!ChartRenderer.isEnabled() || canvasWidth <= 0 || canvasHeight <= 0) {
+            return null;
+        }
+        String data = ChartRenderer.renderBase64(json, canvasWidth, canvasHeight);
         if (data != null) {
-            return data.retriveBase64Data();
+            width = UnitUtils.pixelToPoint(canvasWidth);
+            height = UnitUtils.pixelToPoint(canvasHeight);
         }
-        return base64Data;
+        return data;
     }
 
     public String getId() {
@@ -105,4 +134,20 @@ public class ChartData {
     public void setHeight(int height) {
         this.height = height;
     }
+
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public void setCanvasWidth(int canvasWidth) {
+        this.canvasWidth = canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    public void setCanvasHeight(int canvasHeight) {
+        this.canvasHeight = canvasHeight;
+    }
 }
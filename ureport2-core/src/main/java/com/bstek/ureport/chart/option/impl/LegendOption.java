@@ -34,7 +34,7 @@ public class LegendOption implements Option {
 		sb.append("\"display\":"+display+",");
 		sb.append("\"position\":\""+position+"\"");
 		if(labels!=null){
-			sb.append("\"labels\":"+labels.toJson());			
+			sb.append(",\"labels\":"+labels.toJson());			
 		}
 		sb.append("}");
 		return sb.toString();
@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * 绘制带坐标轴的图表：柱状图、条形图、折线图、面积图、混合图，以及x轴为数值的散点图与气泡图
+ * @author jackie
+ * @since 2.2.10
+ */
+class CartesianChartPainter implements ChartPainter {
+	private static final Stroke LINE_STROKE=new BasicStroke(2f,BasicStroke.CAP_ROUND,BasicStroke.JOIN_ROUND);
+	private static final Stroke THIN_STROKE=new BasicStroke(1f);
+	/**
+	 * 条形图，分类在纵轴上
+	 */
+	private final boolean horizontal;
+	/**
+	 * 散点图与气泡图，横轴也是数值轴
+	 */
+	private final boolean xy;
+
+	CartesianChartPainter(boolean horizontal,boolean xy) {
+		this.horizontal=horizontal;
+		this.xy=xy;
+	}
+
+	@Override
+	public void paint(Graphics2D g, ChartModel model, Rectangle area) {
+		g.setFont(ChartPaintUtils.font(ChartPaintUtils.FONT_SIZE, false));
+		if(xy){
+			paintXY(g, model, area);
+		}else{
+			paintCategory(g, model, area);
+		}
+	}
+
+	private void paintCategory(Graphics2D g, ChartModel model, Rectangle area){
+		FontMetrics fm=g.getFontMetrics();
+		int fh=fm.getHeight();
+		List<ChartSeries> seriesList=model.getSeries();
+		List<String> labels=model.getLabels();
+		int count=labels.size();
+		int barCount=0;
+		double min=Double.MAX_VALUE,max=-Double.MAX_VALUE;
+		for(ChartSeries s:seriesList){
+			if(isBar(model, s)){
+				barCount++;
+			}
+			for(double v:s.getValues()){
+				min=Math.min(min, v);
+				max=Math.max(max, v);
+			}
+			count=Math.max(count, s.getValues().length);
+		}
+		if(count==0){
+			return;
+		}
+		if(min>max){
+			min=0;
+			max=0;
+		}
+		if(barCount>0 || model.getMinValue()!=null){
+			double base=model.getMinValue()!=null ? model.getMinValue() : 0;
+			min=Math.min(min, base);
+			max=Math.max(max, base);
+		}
+		boolean offset=barCount>0;
+		int yTitle=model.getYAxisLabel()!=null ? fh+4 : 0;
+		int xTitle=model.getXAxisLabel()!=null ? fh+4 : 0;
+		Rectangle plot;
+		double[] scale;
+		if(horizontal){
+			int labelWidth=0;
+			for(String label:labels){
+				labelWidth=Math.max(labelWidth, fm.stringWidth(label));
+			}
+			labelWidth=Math.min(labelWidth, area.width/3);
+			int left=area.x+yTitle+labelWidth+8;
+			int bottom=area.y+area.height-fh-6-xTitle;
+			int width=area.x+area.width-left-fm.stringWidth("0000")/2;
+			scale=ChartPaintUtils.niceScale(min, max, Math.max(2, Math.min(10, width/(fm.stringWidth("00000")+10))));
+			plot=new Rectangle(left,area.y+fh/2,Math.max(1, width),Math.max(1, bottom-area.y-fh/2));
+		}else{
+			int top=area.y+fh/2;
+			int bottom=area.y+area.height-fh-6-xTitle;
+			scale=ChartPaintUtils.niceScale(min, max, Math.max(2, Math.min(10, (bottom-top)/(fh*2))));
+			int labelWidth=tickLabelWidth(fm, scale);
+			int left=area.x+yTitle+labelWidth+8;
+			int right=area.x+area.width-4;
+			if(!offset && labels.size()>0){
+				left=Math.max(left, area.x+fm.stringWidth(labels.get(0))/2+2);
+				right=Math.min(right, area.x+area.width-fm.stringWidth(labels.get(labels.size()-1))/2-2);
+			}
+			plot=new Rectangle(left,top,Math.max(1, right-left),Math.max(1, bottom-top));
+		}
+		drawValueGrid(g, fm, plot, scale, horizontal);
+		double categorySize=horizontal ? plot.getHeight() : plot.getWidth();
+		categorySize=offset ? categorySize/count : (count>1 ? categorySize/(count-1) : categorySize);
+		int skip=1;
+		if(labels.size()>0){
+			int labelSize=fh;
+			if(!horizontal){
+				for(String label:labels){
+					labelSize=Math.max(labelSize, fm.stringWidth(label)+6);
+				}
+			}
+			skip=Math.max(1, (int)Math.ceil(labelSize/categorySize));
+		}
+		g.setColor(ChartPaintUtils.TEXT_COLOR);
+		for(int i=0;i<labels.size();i+=skip){
+			double pos=categoryPosition(plot, i, categorySize, offset, count);
+			String label=labels.get(i);
+			if(horizontal){
+				ChartPaintUtils.drawRight(g, label, plot.x-6, pos);
+			}else{
+				ChartPaintUtils.drawCenter(g, label, pos, plot.y+plot.height+6+fh/2.0);
+			}
+		}
+		drawAxisTitles(g, model, area, plot, fh);
+		double base=Math.max(scale[0], Math.min(scale[1], 0));
+		int barIndex=0;
+		for(ChartSeries s:seriesList){
+			if(!isBar(model, s)){
+				continue;
+			}
+			double[] values=s.getValues();
+			for(int i=0;i<values.length;i++){
+				double center=categoryPosition(plot, i, categorySize, offset, count);
+				double groupSize=categorySize*0.8;
+				double barSize=groupSize/barCount;
+				double start=center-groupSize/2+barIndex*barSize+barSize*0.05;
+				double from=valuePosition(plot, scale, base),to=valuePosition(plot, scale, values[i]);
+				Rectangle2D rect;
+				if(horizontal){
+					rect=new Rectangle2D.Double(Math.min(from, to),start,Math.abs(to-from),barSize*0.9);
+				}else{
+					rect=new Rectangle2D.Double(start,Math.min(from, to),barSize*0.9,Math.abs(to-from));
+				}
+				g.setColor(s.getBackgroundColor(i));
+				g.fill(rect);
+				g.setColor(s.getBorderColor());
+				g.setStroke(THIN_STROKE);
+				g.draw(rect);
+			}
+			barIndex++;
+		}
+		for(ChartSeries s:seriesList){
+			if(isBar(model, s)){
+				continue;
+			}
+			double[] values=s.getValues();
+			double[][] points=new double[values.length][];
+			for(int i=0;i<values.length;i++){
+				double pos=categoryPosition(plot, i, categorySize, offset, count);
+				double value=valuePosition(plot, scale, values[i]);
+				points[i]=horizontal ? new double[]{value,pos} : new double[]{pos,value};
+			}
+			drawLine(g, plot, scale, s, points, base);
+		}
+	}
+
+	private void paintXY(Graphics2D g, ChartModel model, Rectangle area){
+		FontMetrics fm=g.getFontMetrics();
+		int fh=fm.getHeight();
+		double minX=Double.MAX_VALUE,maxX=-Double.MAX_VALUE,minY=Double.MAX_VALUE,maxY=-Double.MAX_VALUE;
+		for(ChartSeries s:model.getSeries()){
+			if(s.getPoints()==null){
+				continue;
+			}
+			for(double[] p:s.getPoints()){
+				if(p==null){
+					continue;
+				}
+				minX=Math.min(minX, p[0]);
+				maxX=Math.max(maxX, p[0]);
+				minY=Math.min(minY, p[1]);
+				maxY=Math.max(maxY, p[1]);
+			}
+		}
+		if(minX>maxX){
+			minX=0;
+			maxX=0;
+			minY=0;
+			maxY=0;
+		}
+		boolean bubble="bubble".equals(model.getType());
+		if(bubble){
+			double maxR=0;
+			for(ChartSeries s:model.getSeries()){
+				if(s.getPoints()!=null){
+					for(double[] p:s.getPoints()){
+						if(p!=null){
+							maxR=Math.max(maxR, p[2]);
+						}
+					}
+				}
+			}
+			double padX=(maxX-minX)*maxR/Math.max(1, area.width-2*maxR);
+			double padY=(maxY-minY)*maxR/Math.max(1, area.height-2*maxR);
+			minX-=padX;
+			maxX+=padX;
+			minY-=padY;
+			maxY+=padY;
+		}
+		if(model.getMinValue()!=null){
+			minY=Math.min(minY, model.getMinValue());
+		}
+		int yTitle=model.getYAxisLabel()!=null ? fh+4 : 0;
+		int xTitle=model.getXAxisLabel()!=null ? fh+4 : 0;
+		int top=area.y+fh/2;
+		int bottom=area.y+area.height-fh-6-xTitle;
+		double[] yScale=ChartPaintUtils.niceScale(minY, maxY, Math.max(2, Math.min(10, (bottom-top)/(fh*2))));
+		int left=area.x+yTitle+tickLabelWidth(fm, yScale)+8;
+		int width=area.x+area.width-left-fm.stringWidth("0000")/2;
+		double[] xScale=ChartPaintUtils.niceScale(minX, maxX, Math.max(2, Math.min(10, width/(fm.stringWidth("00000")+10))));
+		Rectangle plot=new Rectangle(left,top,Math.max(1, width),Math.max(1, bottom-top));
+		drawValueGrid(g, fm, plot, yScale, false);
+		drawValueGrid(g, fm, plot, xScale, true);
+		drawAxisTitles(g, model, area, plot, fh);
+		for(ChartSeries s:model.getSeries()){
+			if(s.getPoints()==null){
+				continue;
+			}
+			for(int i=0;i<s.getPoints().length;i++){
+				double[] p=s.getPoints()[i];
+				if(p==null){
+					continue;
+				}
+				double x=valuePosition(plot, xScale, p[0],true);
+				double y=valuePosition(plot, yScale, p[1],false);
+				double r=bubble ? Math.max(1, p[2]) : 3;
+				drawPoint(g, x, y, r, s.getBackgroundColor(i), s.getBorderColor());
+			}
+		}
+	}
+
+	private void drawLine(Graphics2D g,Rectangle plot,double[] scale,ChartSeries s,double[][] points,double base){
+		if(points.length==0){
+			return;
+		}
+		Path2D path=new Path2D.Double();
+		for(int i=0;i<points.length;i++){
+			if(i==0){
+				path.moveTo(points[i][0], points[i][1]);
+			}else{
+				path.lineTo(points[i][0], points[i][1]);
+			}
+		}
+		if(s.isFill() && points.length>1){
+			Path2D area=new Path2D.Double(path);
+			double baseline=valuePosition(plot, scale, base);
+			if(horizontal){
+				area.lineTo(baseline, points[points.length-1][1]);
+				area.lineTo(baseline, points[0][1]);
+			}else{
+				area.lineTo(points[points.length-1][0], baseline);
+				area.lineTo(points[0][0], baseline);
+			}
+			area.closePath();
+			g.setColor(s.getBackgroundColor(0));
+			g.fill(area);
+		}
+		g.setColor(s.getBorderColor());
+		g.setStroke(LINE_STROKE);
+		g.draw(path);
+		g.setStroke(THIN_STROKE);
+		for(double[] p:points){
+			drawPoint(g, p[0], p[1], 3, s.getBackgroundColor(0), s.getBorderColor());
+		}
+	}
+
+	private void drawPoint(Graphics2D g,double x,double y,double r,Color fill,Color border){
+		Ellipse2D circle=new Ellipse2D.Double(x-r,y-r,r*2,r*2);
+		if(fill!=null){
+			g.setColor(fill);
+			g.fill(circle);
+		}
+		g.setColor(border);
+		g.setStroke(THIN_STROKE);
+		g.draw(circle);
+	}
+
+	/**
+	 * 绘制数值轴的网格线与刻度文字
+	 * @param alongX true表示数值轴为横轴
+	 */
+	private void drawValueGrid(Graphics2D g,FontMetrics fm,Rectangle plot,double[] scale,boolean alongX){
+		g.setStroke(THIN_STROKE);
+		for(double v=scale[0];v<=scale[1]+scale[2]/2;v+=scale[2]){
+			double pos=valuePosition(plot, scale, v, alongX);
+			g.setColor(ChartPaintUtils.GRID_COLOR);
+			String text=ChartPaintUtils.formatTick(v, scale[2]);
+			if(alongX){
+				g.draw(new Line2D.Double(pos,plot.y,pos,plot.y+plot.height));
+				g.setColor(ChartPaintUtils.TEXT_COLOR);
+				ChartPaintUtils.drawCenter(g, text, pos, plot.y+plot.height+6+fm.getHeight()/2.0);
+			}else{
+				g.draw(new Line2D.Double(plot.x,pos,plot.x+plot.width,pos));
+				g.setColor(ChartPaintUtils.TEXT_COLOR);
+				ChartPaintUtils.drawRight(g, text, plot.x-6, pos);
+			}
+		}
+		g.setColor(ChartPaintUtils.AXIS_COLOR);
+		g.draw(new Line2D.Double(plot.x,plot.y+plot.height,plot.x+plot.width,plot.y+plot.height));
+		g.draw(new Line2D.Double(plot.x,plot.y,plot.x,plot.y+plot.height));
+	}
+
+	private void drawAxisTitles(Graphics2D g,ChartModel model,Rectangle area,Rectangle plot,int fh){
+		g.setColor(ChartPaintUtils.TEXT_COLOR);
+		if(model.getXAxisLabel()!=null){
+			ChartPaintUtils.drawCenter(g, model.getXAxisLabel(), plot.getCenterX(), area.y+area.height-fh/2.0);
+		}
+		if(model.getYAxisLabel()!=null){
+			ChartPaintUtils.drawVertical(g, model.getYAxisLabel(), area.x+fh/2.0, plot.getCenterY());
+		}
+	}
+
+	private int tickLabelWidth(FontMetrics fm,double[] scale){
+		int width=0;
+		for(double v=scale[0];v<=scale[1]+scale[2]/2;v+=scale[2]){
+			width=Math.max(width, fm.stringWidth(ChartPaintUtils.formatTick(v, scale[2])));
+		}
+		return width;
+	}
+
+	private double categoryPosition(Rectangle plot,int index,double categorySize,boolean offset,int count){
+		double start=horizontal ? plot.y : plot.x;
+		if(offset){
+			return start+(index+0.5)*categorySize;
+		}
+		if(count==1){
+			return start+categorySize/2;
+		}
+		return start+index*categorySize;
+	}
+
+	private double valuePosition(Rectangle plot,double[] scale,double value){
+		return valuePosition(plot, scale, value, horizontal);
+	}
+
+	private double valuePosition(Rectangle plot,double[] scale,double value,boolean alongX){
+		double ratio=(value-scale[0])/(scale[1]-scale[0]);
+		if(alongX){
+			return plot.x+ratio*plot.width;
+		}
+		return plot.y+plot.height-ratio*plot.height;
+	}
+
+	private boolean isBar(ChartModel model,ChartSeries s){
+		String type=s.getType()!=null ? s.getType() : model.getType();
+		return "bar".equals(type) || "horizontalBar".equals(type);
+	}
+
+	@Override
+	public boolean legendByLabel() {
+		return false;
+	}
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 从{@link com.bstek.ureport.chart.Chart}生成的Chart.js配置JSON中解析出服务端绘制所需的信息，
+ * 生成的JSON中存在未加引号的属性名等不规范之处，这里使用宽松模式解析
+ * @author jackie
+ * @since 2.2.10
+ */
+class ChartModel {
+	private static final Color[] PALETTE={new Color(255,99,132),new Color(54,162,235),new Color(255,205,86),
+			new Color(75,192,192),new Color(255,159,64),new Color(153,102,255),new Color(53,202,25),
+			new Color(201,203,207),new Color(205,92,92),new Color(255,127,80)};
+	private static final ObjectMapper mapper=new ObjectMapper();
+	static{
+		mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+		mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+		mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
+		mapper.configure(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS, true);
+		mapper.configure(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER, true);
+	}
+	private String type;
+	private List<String> labels=new ArrayList<String>();
+	private List<ChartSeries> series=new ArrayList<ChartSeries>();
+	private String title;
+	private String titlePosition="top";
+	private int titleFontSize=12;
+	private Color titleColor=new Color(102,102,102);
+	private boolean titleBold=true;
+	private boolean legendDisplay=true;
+	private String legendPosition="top";
+	private int legendFontSize=12;
+	private Color legendColor=new Color(102,102,102);
+	private String xAxisLabel;
+	private String yAxisLabel;
+	private Double minValue;
+
+	static ChartModel parse(String json) throws IOException{
+		JsonNode root=mapper.readTree(json);
+		ChartModel model=new ChartModel();
+		model.type=root.path("type").asText("bar");
+		JsonNode data=root.path("data");
+		for(JsonNode label:data.path("labels")){
+			model.labels.add(label.asText());
+		}
+		int index=0;
+		for(JsonNode node:data.path("datasets")){
+			model.series.add(parseSeries(node,index++));
+		}
+		JsonNode options=root.path("options");
+		JsonNode titleNode=options.path("title");
+		if(titleNode.path("display").asBoolean(false)){
+			String text=titleNode.path("text").asText(null);
+			if(text!=null && text.length()>0){
+				model.title=text;
+			}
+			model.titlePosition=titleNode.path("position").asText("top");
+			model.titleFontSize=titleNode.path("fontSize").asInt(12);
+			model.titleColor=parseColor(titleNode.path("fontColor").asText(null), model.titleColor);
+			model.titleBold="bold".equals(titleNode.path("fontStyle").asText("bold"));
+		}
+		JsonNode legendNode=options.path("legend");
+		model.legendDisplay=legendNode.path("display").asBoolean(true);
+		model.legendPosition=legendNode.path("position").asText("top");
+		JsonNode legendLabels=legendNode.path("labels");
+		model.legendFontSize=legendLabels.path("fontSize").asInt(12);
+		model.legendColor=parseColor(legendLabels.path("fontColor").asText(null), model.legendColor);
+		JsonNode scales=options.path("scales");
+		model.xAxisLabel=parseScaleLabel(scales.path("xAxes").path(0));
+		JsonNode yAxis=scales.path("yAxes").path(0);
+		model.yAxisLabel=parseScaleLabel(yAxis);
+		JsonNode min=yAxis.path("ticks").path("min");
+		if(min.isNumber()){
+			model.minValue=min.asDouble();
+		}
+		return model;
+	}
+
+	private static ChartSeries parseSeries(JsonNode node,int index){
+		ChartSeries s=new ChartSeries();
+		s.setLabel(node.path("label").asText(""));
+		s.setType(node.path("type").asText(null));
+		s.setFill(node.path("fill").asBoolean(false));
+		Color defaultColor=PALETTE[index % PALETTE.length];
+		JsonNode bg=node.path("backgroundColor");
+		if(bg.isArray()){
+			Color[] colors=new Color[bg.size()];
+			for(int i=0;i<colors.length;i++){
+				colors[i]=parseColor(bg.get(i).asText(null), PALETTE[i % PALETTE.length]);
+			}
+			s.setBackgroundColors(colors);
+		}else{
+			s.setBackgroundColors(new Color[]{parseColor(bg.asText(null), withAlpha(defaultColor,0.3f))});
+		}
+		s.setBorderColor(parseColor(node.path("borderColor").asText(null), defaultColor));
+		JsonNode data=node.path("data");
+		double[] values=new double[data.size()];
+		double[][] points=null;
+		for(int i=0;i<values.length;i++){
+			JsonNode value=data.get(i);
+			if(value.isObject()){
+				if(points==null){
+					points=new double[values.length][];
+				}
+				points[i]=new double[]{value.path("x").asDouble(0),value.path("y").asDouble(0),value.path("r").asDouble(3)};
+			}else{
+				values[i]=value.asDouble(0);
+			}
+		}
+		s.setValues(values);
+		s.setPoints(points);
+		return s;
+	}
+
+	private static String parseScaleLabel(JsonNode axis){
+		JsonNode scaleLabel=axis.path("scaleLabel");
+		if(!scaleLabel.path("display").asBoolean(false)){
+			return null;
+		}
+		String text=scaleLabel.path("labelString").asText(null);
+		return text==null || text.length()==0 ? null : text;
+	}
+
+	/**
+	 * 解析rgb(r,g,b)、rgba(r,g,b,a)与#rrggbb格式的颜色，无法解析时返回默认颜色
+	 */
+	static Color parseColor(String text,Color defaultColor){
+		if(text==null){
+			return defaultColor;
+		}
+		text=text.trim();
+		try{
+			if(text.startsWith("#")){
+				return Color.decode(text);
+			}
+			int start=text.indexOf("("),end=text.indexOf(")");
+			if(start==-1 || end<start){
+				return defaultColor;
+			}
+			String[] parts=text.substring(start+1,end).split(",");
+			if(parts.length<3){
+				return defaultColor;
+			}
+			int r=Integer.parseInt(parts[0].trim()),g=Integer.parseInt(parts[1].trim()),b=Integer.parseInt(parts[2].trim());
+			int a=255;
+			if(parts.length>3){
+				a=Math.round(Float.parseFloat(parts[3].trim())*255);
+			}
+			return new Color(clamp(r),clamp(g),clamp(b),clamp(a));
+		}catch(NumberFormatException ex){
+			return defaultColor;
+		}
+	}
+
+	static Color withAlpha(Color color,float alpha){
+		return new Color(color.getRed(),color.getGreen(),color.getBlue(),clamp(Math.round(alpha*255)));
+	}
+
+	private static int clamp(int value){
+		return Math.max(0, Math.min(255, value));
+	}
+
+	String getType() {
+		return type;
+	}
+	List<String> getLabels() {
+		return labels;
+	}
+	List<ChartSeries> getSeries() {
+		return series;
+	}
+	String getTitle() {
+		return title;
+	}
+	String getTitlePosition() {
+		return titlePosition;
+	}
+	int getTitleFontSize() {
+		return titleFontSize;
+	}
+	Color getTitleColor() {
+		return titleColor;
+	}
+	boolean isTitleBold() {
+		return titleBold;
+	}
+	boolean isLegendDisplay() {
+		return legendDisplay;
+	}
+	String getLegendPosition() {
+		return legendPosition;
+	}
+	int getLegendFontSize() {
+		return legendFontSize;
+	}
+	Color getLegendColor() {
+		return legendColor;
+	}
+	String getXAxisLabel() {
+		return xAxisLabel;
+	}
+	String getYAxisLabel() {
+		return yAxisLabel;
+	}
+	Double getMinValue() {
+		return minValue;
+	}
+}
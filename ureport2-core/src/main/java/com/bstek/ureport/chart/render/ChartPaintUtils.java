@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.math.BigDecimal;
+
+import com.bstek.ureport.export.pdf.font.FontBuilder;
+
+/**
+ * 服务端绘制图表时用到的字体、文字与刻度计算方法，默认样式与浏览器端Chart.js保持一致
+ * @author jackie
+ * @since 2.2.10
+ */
+final class ChartPaintUtils {
+	static final Color TEXT_COLOR=new Color(102,102,102);
+	static final Color GRID_COLOR=new Color(0,0,0,25);
+	static final Color AXIS_COLOR=new Color(0,0,0,64);
+	static final int FONT_SIZE=12;
+	private static final String FONT_NAME="宋体";
+	private static volatile String systemFamily;
+
+	private ChartPaintUtils(){}
+
+	/**
+	 * 优先使用报表字体目录中的宋体，以便正确绘制中文，取不到时使用系统中能显示中文的字体
+	 */
+	static Font font(int size,boolean bold){
+		int style=bold ? Font.BOLD : Font.PLAIN;
+		Font font=null;
+		try{
+			font=FontBuilder.getAwtFont(FONT_NAME, style, size);
+		}catch(Exception ex){
+			font=null;
+		}
+		if(font==null){
+			font=new Font(systemFamily(),style,size);
+		}
+		return font;
+	}
+
+	private static String systemFamily(){
+		String family=systemFamily;
+		if(family!=null){
+			return family;
+		}
+		family=Font.SANS_SERIF;
+		if(!new Font(family,Font.PLAIN,FONT_SIZE).canDisplay('中')){
+			for(String name:GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames()){
+				if(new Font(name,Font.PLAIN,FONT_SIZE).canDisplay('中')){
+					family=name;
+					break;
+				}
+			}
+		}
+		systemFamily=family;
+		return family;
+	}
+
+	/**
+	 * 以(x,y)为文字中心绘制
+	 */
+	static void drawCenter(Graphics2D g,String text,double x,double y){
+		FontMetrics fm=g.getFontMetrics();
+		int width=fm.stringWidth(text);
+		g.drawString(text, (float)(x-width/2.0), (float)(y+(fm.getAscent()-fm.getDescent())/2.0));
+	}
+
+	/**
+	 * 以(x,y)为文字右侧中点绘制
+	 */
+	static void drawRight(Graphics2D g,String text,double x,double y){
+		FontMetrics fm=g.getFontMetrics();
+		int width=fm.stringWidth(text);
+		g.drawString(text, (float)(x-width), (float)(y+(fm.getAscent()-fm.getDescent())/2.0));
+	}
+
+	/**
+	 * 以(x,y)为中心逆时针旋转90度绘制，用于纵轴标题
+	 */
+	static void drawVertical(Graphics2D g,String text,double x,double y){
+		Graphics2D g2=(Graphics2D)g.create();
+		try{
+			g2.translate(x, y);
+			g2.rotate(-Math.PI/2);
+			drawCenter(g2, text, 0, 0);
+		}finally{
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * 计算包含[min,max]的刻度，刻度间隔取1、2、5乘以10的整数次幂
+	 * @return 依次为刻度最小值、最大值与间隔
+	 */
+	static double[] niceScale(double min,double max,int maxTicks){
+		if(min>max){
+			double tmp=min;
+			min=max;
+			max=tmp;
+		}
+		if(min==max){
+			if(min==0){
+				max=1;
+			}else if(min>0){
+				min=0;
+			}else{
+				max=0;
+			}
+		}
+		double rough=(max-min)/Math.max(1, maxTicks);
+		double magnitude=Math.pow(10, Math.floor(Math.log10(rough)));
+		double ratio=rough/magnitude;
+		double step;
+		if(ratio<=1){
+			step=magnitude;
+		}else if(ratio<=2){
+			step=2*magnitude;
+		}else if(ratio<=5){
+			step=5*magnitude;
+		}else{
+			step=10*magnitude;
+		}
+		double niceMin=Math.floor(min/step)*step;
+		double niceMax=Math.ceil(max/step)*step;
+		if(niceMax==niceMin){
+			niceMax=niceMin+step;
+		}
+		return new double[]{niceMin,niceMax,step};
+	}
+
+	static String formatTick(double value,double step){
+		int scale=Math.max(0, -(int)Math.floor(Math.log10(step)));
+		BigDecimal decimal=new BigDecimal(value).setScale(scale, BigDecimal.ROUND_HALF_UP).stripTrailingZeros();
+		if(decimal.signum()==0){
+			return "0";
+		}
+		return decimal.toPlainString();
+	}
+}
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * 在扣除标题与图例后的区域内绘制图表主体
+ * @author jackie
+ * @since 2.2.10
+ */
+interface ChartPainter {
+	void paint(Graphics2D g,ChartModel model,Rectangle area);
+	/**
+	 * @return true表示图例按标签(而不是按数据系列)显示，如饼图
+	 */
+	boolean legendByLabel();
+}
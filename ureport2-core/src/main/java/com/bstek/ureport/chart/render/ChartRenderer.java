@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.util.Base64Utils;
+import org.springframework.util.DigestUtils;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.cache.CacheStatistics;
+
+/**
+ * 在服务端使用Java2D绘制图表，导出PDF、Word、Excel时如果浏览器没有回传图表图片，则由此生成，
+ * 这样定时任务或直接调用导出接口时也能输出图表。
+ * 绘制结果以图表JSON的摘要及尺寸为键缓存，相同数据的图表只绘制一次。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ChartRenderer {
+	private static boolean enabled=true;
+	private static int cacheSize=200;
+	private static final Map<String,String> imageCache=new LinkedHashMap<String,String>(64,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+			if(size()>cacheSize){
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+	private static final AtomicLong hits=new AtomicLong();
+	private static final AtomicLong misses=new AtomicLong();
+	private static final AtomicLong evictions=new AtomicLong();
+
+	/**
+	 * @param json 图表的Chart.js配置JSON
+	 * @param width 图片宽度，单位为像素
+	 * @param height 图片高度，单位为像素
+	 * @return PNG图片的base64数据，绘制失败时返回null
+	 */
+	public static String renderBase64(String json,int width,int height){
+		if(json==null || width<=0 || height<=0){
+			return null;
+		}
+		String key=DigestUtils.md5DigestAsHex(json.getBytes(StandardCharsets.UTF_8))+":"+width+"x"+height;
+		String base64Data=null;
+		synchronized(imageCache){
+			base64Data=imageCache.get(key);
+		}
+		if(base64Data!=null){
+			hits.incrementAndGet();
+			return base64Data;
+		}
+		misses.incrementAndGet();
+		try{
+			BufferedImage image=render(json, width, height);
+			ByteArrayOutputStream out=new ByteArrayOutputStream();
+			ImageIO.write(image, "png", out);
+			base64Data=Base64Utils.encodeToString(out.toByteArray());
+		}catch(Exception ex){
+			Utils.logToConsole("~~~ Render chart on server failed:"+ex.getMessage());
+			return null;
+		}
+		synchronized(imageCache){
+			imageCache.put(key, base64Data);
+		}
+		return base64Data;
+	}
+
+	public static BufferedImage render(String json,int width,int height) throws IOException{
+		ChartModel model=ChartModel.parse(json);
+		BufferedImage image=new BufferedImage(width,height,BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g=image.createGraphics();
+		try{
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			Rectangle area=new Rectangle(0,0,width,height);
+			paintTitle(g, model, area);
+			ChartPainter painter=buildPainter(model.getType());
+			if(model.isLegendDisplay()){
+				paintLegend(g, model, painter.legendByLabel(), area);
+			}
+			if(area.width>0 && area.height>0){
+				painter.paint(g, model, area);
+			}
+		}finally{
+			g.dispose();
+		}
+		return image;
+	}
+
+	private static ChartPainter buildPainter(String type){
+		if("pie".equals(type)){
+			return new PieChartPainter(0,false);
+		}else if("doughnut".equals(type)){
+			return new PieChartPainter(0.5,false);
+		}else if("polarArea".equals(type)){
+			return new PieChartPainter(0,true);
+		}else if("radar".equals(type)){
+			return new RadarChartPainter();
+		}else if("horizontalBar".equals(type)){
+			return new CartesianChartPainter(true,false);
+		}else if("scatter".equals(type) || "bubble".equals(type)){
+			return new CartesianChartPainter(false,true);
+		}
+		return new CartesianChartPainter(false,false);
+	}
+
+	private static void paintTitle(Graphics2D g,ChartModel model,Rectangle area){
+		String title=model.getTitle();
+		if(title==null){
+			return;
+		}
+		g.setFont(ChartPaintUtils.font(model.getTitleFontSize(), model.isTitleBold()));
+		g.setColor(model.getTitleColor());
+		int height=g.getFontMetrics().getHeight()+10;
+		if("bottom".equals(model.getTitlePosition())){
+			ChartPaintUtils.drawCenter(g, title, area.getCenterX(), area.y+area.height-height/2.0);
+		}else{
+			ChartPaintUtils.drawCenter(g, title, area.getCenterX(), area.y+height/2.0);
+			area.y+=height;
+		}
+		area.height-=height;
+	}
+
+	/**
+	 * 图例位于上下方时按行排列，一行放不下时换行；位于左右侧时每项一行
+	 */
+	private static void paintLegend(Graphics2D g,ChartModel model,boolean byLabel,Rectangle area){
+		List<String> texts=new ArrayList<String>();
+		List<Color> fills=new ArrayList<Color>();
+		List<Color> borders=new ArrayList<Color>();
+		if(byLabel){
+			if(model.getSeries().isEmpty()){
+				return;
+			}
+			ChartSeries first=model.getSeries().get(0);
+			for(int i=0;i<model.getLabels().size();i++){
+				texts.add(model.getLabels().get(i));
+				fills.add(first.getBackgroundColor(i));
+				borders.add(Color.WHITE);
+			}
+		}else{
+			for(ChartSeries s:model.getSeries()){
+				texts.add(s.getLabel());
+				fills.add(s.getBackgroundColor(0));
+				borders.add(s.getBorderColor());
+			}
+		}
+		if(texts.isEmpty()){
+			return;
+		}
+		g.setFont(ChartPaintUtils.font(model.getLegendFontSize(), false));
+		FontMetrics fm=g.getFontMetrics();
+		int fh=fm.getHeight();
+		int boxWidth=Math.min(40, Math.max(area.width/10, model.getLegendFontSize()));
+		int boxHeight=model.getLegendFontSize();
+		String position=model.getLegendPosition();
+		boolean vertical="left".equals(position) || "right".equals(position);
+		List<int[]> places=new ArrayList<int[]>();
+		int used;
+		if(vertical){
+			int itemWidth=0;
+			for(String text:texts){
+				itemWidth=Math.max(itemWidth, boxWidth+6+fm.stringWidth(text));
+			}
+			used=Math.min(itemWidth+20, area.width/2);
+			int left="left".equals(position) ? area.x+10 : area.x+area.width-used+10;
+			int top=area.y+Math.max(10, (area.height-texts.size()*(fh+10))/2);
+			for(int i=0;i<texts.size();i++){
+				places.add(new int[]{left,top+i*(fh+10)});
+			}
+		}else{
+			List<List<Integer>> lines=new ArrayList<List<Integer>>();
+			List<Integer> lineWidths=new ArrayList<Integer>();
+			List<Integer> line=new ArrayList<Integer>();
+			int lineWidth=0;
+			for(int i=0;i<texts.size();i++){
+				int itemWidth=boxWidth+6+fm.stringWidth(texts.get(i))+10;
+				if(!line.isEmpty() && lineWidth+itemWidth>area.width){
+					lines.add(line);
+					lineWidths.add(lineWidth);
+					line=new ArrayList<Integer>();
+					lineWidth=0;
+				}
+				line.add(i);
+				lineWidth+=itemWidth;
+			}
+			lines.add(line);
+			lineWidths.add(lineWidth);
+			used=lines.size()*(fh+10)+10;
+			int top="bottom".equals(position) ? area.y+area.height-used+10 : area.y+10;
+			for(int l=0;l<lines.size();l++){
+				int left=area.x+(area.width-lineWidths.get(l))/2+5;
+				for(int index:lines.get(l)){
+					places.add(new int[]{left,top+l*(fh+10)});
+					left+=boxWidth+6+fm.stringWidth(texts.get(index))+10;
+				}
+			}
+		}
+		g.setStroke(new BasicStroke(1f));
+		for(int i=0;i<texts.size();i++){
+			int[] place=places.get(i);
+			int boxTop=place[1]+(fh-boxHeight)/2;
+			if(fills.get(i)!=null){
+				g.setColor(fills.get(i));
+				g.fillRect(place[0], boxTop, boxWidth, boxHeight);
+			}
+			g.setColor(borders.get(i));
+			g.drawRect(place[0], boxTop, boxWidth, boxHeight);
+			g.setColor(model.getLegendColor());
+			g.drawString(texts.get(i), place[0]+boxWidth+6, place[1]+fm.getAscent());
+		}
+		if(vertical){
+			area.width-=used;
+			if("left".equals(position)){
+				area.x+=used;
+			}
+		}else{
+			area.height-=used;
+			if(!"bottom".equals(position)){
+				area.y+=used;
+			}
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static CacheStatistics getStatistics(){
+		long size=0,weight=0;
+		synchronized(imageCache){
+			size=imageCache.size();
+			for(String data:imageCache.values()){
+				weight+=data.length();
+			}
+		}
+		return new CacheStatistics(hits.get(),misses.get(),evictions.get(),size,weight);
+	}
+
+	public void setEnabled(boolean enabled) {
+		ChartRenderer.enabled = enabled;
+	}
+
+	public void setCacheSize(int cacheSize) {
+		ChartRenderer.cacheSize = cacheSize;
+	}
+}
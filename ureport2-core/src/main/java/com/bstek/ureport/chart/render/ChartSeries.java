@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.Color;
+
+/**
+ * 图表JSON中datasets里的一个数据系列
+ * @author jackie
+ * @since 2.2.10
+ */
+class ChartSeries {
+	private String label;
+	/**
+	 * 混合图表中单个系列的类型，为空时使用图表的类型
+	 */
+	private String type;
+	private Color[] backgroundColors;
+	private Color borderColor;
+	private double[] values;
+	/**
+	 * 散点图与气泡图的数据点，每个数据点依次为x、y、r
+	 */
+	private double[][] points;
+	private boolean fill;
+
+	/**
+	 * @param index 数据下标，饼图等每个数据使用各自的颜色
+	 * @return 数据对应的背景色
+	 */
+	Color getBackgroundColor(int index){
+		if(backgroundColors==null || backgroundColors.length==0){
+			return null;
+		}
+		return backgroundColors[index % backgroundColors.length];
+	}
+
+	String getLabel() {
+		return label;
+	}
+	void setLabel(String label) {
+		this.label = label;
+	}
+	String getType() {
+		return type;
+	}
+	void setType(String type) {
+		this.type = type;
+	}
+	Color[] getBackgroundColors() {
+		return backgroundColors;
+	}
+	void setBackgroundColors(Color[] backgroundColors) {
+		this.backgroundColors = backgroundColors;
+	}
+	Color getBorderColor() {
+		return borderColor;
+	}
+	void setBorderColor(Color borderColor) {
+		this.borderColor = borderColor;
+	}
+	double[] getValues() {
+		return values;
+	}
+	void setValues(double[] values) {
+		this.values = values;
+	}
+	double[][] getPoints() {
+		return points;
+	}
+	void setPoints(double[][] points) {
+		this.points = points;
+	}
+	boolean isFill() {
+		return fill;
+	}
+	void setFill(boolean fill) {
+		this.fill = fill;
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.util.List;
+
+/**
+ * 绘制饼图、环形图与极地图，多个数据系列时由外向内依次绘制为同心圆环
+ * @author jackie
+ * @since 2.2.10
+ */
+class PieChartPainter implements ChartPainter {
+	private static final BasicStroke SLICE_STROKE=new BasicStroke(2f);
+	/**
+	 * 中心空白部分半径所占比例，饼图为0
+	 */
+	private final double cutout;
+	/**
+	 * 极地图各扇区角度相同，以半径表示数据大小
+	 */
+	private final boolean polar;
+
+	PieChartPainter(double cutout,boolean polar) {
+		this.cutout=cutout;
+		this.polar=polar;
+	}
+
+	@Override
+	public void paint(Graphics2D g, ChartModel model, Rectangle area) {
+		List<ChartSeries> seriesList=model.getSeries();
+		if(seriesList.isEmpty()){
+			return;
+		}
+		double radius=Math.min(area.width, area.height)/2.0-2;
+		if(radius<=0){
+			return;
+		}
+		double cx=area.getCenterX(),cy=area.getCenterY();
+		if(polar){
+			paintPolar(g, seriesList.get(0), cx, cy, radius);
+			return;
+		}
+		double inner=radius*cutout;
+		double ringWidth=(radius-inner)/seriesList.size();
+		for(int i=0;i<seriesList.size();i++){
+			double outer=radius-i*ringWidth;
+			paintRing(g, seriesList.get(i), cx, cy, outer, outer-ringWidth);
+		}
+	}
+
+	private void paintRing(Graphics2D g,ChartSeries s,double cx,double cy,double outer,double inner){
+		double[] values=s.getValues();
+		double total=0;
+		for(double v:values){
+			total+=Math.abs(v);
+		}
+		if(total==0){
+			return;
+		}
+		Area hole=null;
+		if(inner>0){
+			hole=new Area(new Ellipse2D.Double(cx-inner,cy-inner,inner*2,inner*2));
+		}
+		double start=90;
+		for(int i=0;i<values.length;i++){
+			double extent=-Math.abs(values[i])/total*360;
+			Area slice=new Area(new Arc2D.Double(cx-outer,cy-outer,outer*2,outer*2,start,extent,Arc2D.PIE));
+			if(hole!=null){
+				slice.subtract(hole);
+			}
+			fillSlice(g, slice, s.getBackgroundColor(i));
+			start+=extent;
+		}
+	}
+
+	private void paintPolar(Graphics2D g,ChartSeries s,double cx,double cy,double radius){
+		double[] values=s.getValues();
+		if(values.length==0){
+			return;
+		}
+		double max=0;
+		for(double v:values){
+			max=Math.max(max, v);
+		}
+		double[] scale=ChartPaintUtils.niceScale(0, max, 5);
+		double extent=-360.0/values.length;
+		double start=90;
+		for(int i=0;i<values.length;i++){
+			double r=Math.max(0, values[i])/scale[1]*radius;
+			Arc2D arc=new Arc2D.Double(cx-r,cy-r,r*2,r*2,start,extent,Arc2D.PIE);
+			fillSlice(g, new Area(arc), s.getBackgroundColor(i));
+			start+=extent;
+		}
+		g.setStroke(new BasicStroke(1f));
+		g.setColor(ChartPaintUtils.GRID_COLOR);
+		for(double v=scale[2];v<=scale[1]+scale[2]/2;v+=scale[2]){
+			double r=v/scale[1]*radius;
+			g.draw(new Ellipse2D.Double(cx-r,cy-r,r*2,r*2));
+		}
+	}
+
+	private void fillSlice(Graphics2D g,Area slice,Color color){
+		g.setColor(color);
+		g.fill(slice);
+		g.setColor(Color.WHITE);
+		g.setStroke(SLICE_STROKE);
+		g.draw(slice);
+	}
+
+	@Override
+	public boolean legendByLabel() {
+		return true;
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.chart.render;
+
+import java.awt.BasicStroke;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * 绘制雷达图，第一个分类位于正上方，其余分类按顺时针方向排列
+ * @author jackie
+ * @since 2.2.10
+ */
+class RadarChartPainter implements ChartPainter {
+	@Override
+	public void paint(Graphics2D g, ChartModel model, Rectangle area) {
+		List<ChartSeries> seriesList=model.getSeries();
+		List<String> labels=model.getLabels();
+		int count=labels.size();
+		double max=0;
+		for(ChartSeries s:seriesList){
+			count=Math.max(count, s.getValues().length);
+			for(double v:s.getValues()){
+				max=Math.max(max, v);
+			}
+		}
+		if(count<1){
+			return;
+		}
+		g.setFont(ChartPaintUtils.font(ChartPaintUtils.FONT_SIZE, false));
+		FontMetrics fm=g.getFontMetrics();
+		int labelWidth=0;
+		for(String label:labels){
+			labelWidth=Math.max(labelWidth, fm.stringWidth(label));
+		}
+		double radius=Math.min(area.width/2.0-labelWidth-6, area.height/2.0-fm.getHeight()-4);
+		radius=Math.max(radius, Math.min(area.width, area.height)/4.0);
+		double cx=area.getCenterX(),cy=area.getCenterY();
+		double[] scale=ChartPaintUtils.niceScale(0, max, 5);
+		g.setStroke(new BasicStroke(1f));
+		g.setColor(ChartPaintUtils.GRID_COLOR);
+		for(double v=scale[2];v<=scale[1]+scale[2]/2;v+=scale[2]){
+			g.draw(polygon(cx, cy, v/scale[1]*radius, count, null, 0));
+		}
+		for(int i=0;i<count;i++){
+			double angle=angle(i, count);
+			g.draw(new Line2D.Double(cx,cy,cx+Math.cos(angle)*radius,cy+Math.sin(angle)*radius));
+		}
+		g.setColor(ChartPaintUtils.TEXT_COLOR);
+		for(int i=0;i<labels.size();i++){
+			double angle=angle(i, count);
+			double x=cx+Math.cos(angle)*(radius+6),y=cy+Math.sin(angle)*(radius+fm.getHeight()/2.0+2);
+			String label=labels.get(i);
+			double cos=Math.cos(angle);
+			if(Math.abs(cos)<0.1){
+				ChartPaintUtils.drawCenter(g, label, x, y);
+			}else if(cos>0){
+				ChartPaintUtils.drawCenter(g, label, x+fm.stringWidth(label)/2.0, y);
+			}else{
+				ChartPaintUtils.drawRight(g, label, x, y);
+			}
+		}
+		for(ChartSeries s:seriesList){
+			Path2D shape=polygon(cx, cy, radius, count, s.getValues(), scale[1]);
+			g.setColor(s.getBackgroundColor(0));
+			g.fill(shape);
+			g.setColor(s.getBorderColor());
+			g.setStroke(new BasicStroke(2f,BasicStroke.CAP_ROUND,BasicStroke.JOIN_ROUND));
+			g.draw(shape);
+			g.setStroke(new BasicStroke(1f));
+			double[] values=s.getValues();
+			for(int i=0;i<values.length;i++){
+				double r=Math.max(0, values[i])/scale[1]*radius,angle=angle(i, count);
+				Ellipse2D point=new Ellipse2D.Double(cx+Math.cos(angle)*r-3,cy+Math.sin(angle)*r-3,6,6);
+				g.setColor(s.getBackgroundColor(0));
+				g.fill(point);
+				g.setColor(s.getBorderColor());
+				g.draw(point);
+			}
+		}
+	}
+
+	/**
+	 * @param values 为空时绘制半径为radius的正多边形网格，否则按数据绘制
+	 */
+	private Path2D polygon(double cx,double cy,double radius,int count,double[] values,double max){
+		Path2D path=new Path2D.Double();
+		for(int i=0;i<count;i++){
+			double r=radius;
+			if(values!=null){
+				r=i<values.length ? Math.max(0, values[i])/max*radius : 0;
+			}
+			double angle=angle(i, count);
+			double x=cx+Math.cos(angle)*r,y=cy+Math.sin(angle)*r;
+			if(i==0){
+				path.moveTo(x, y);
+			}else{
+				path.lineTo(x, y);
+			}
+		}
+		path.closePath();
+		return path;
+	}
+
+	private double angle(int index,int count){
+		return -Math.PI/2+index*2*Math.PI/count;
+	}
+
+	@Override
+	public boolean legendByLabel() {
+		return false;
+	}
+}
@@ -22,13 +22,13 @@ import com.bstek.ureport.definition.searchform.SearchForm;
 import com.bstek.ureport.export.html.SearchFormData;
 import com.bstek.ureport.model.Cell;
 import com.bstek.ureport.model.Column;
+import com.bstek.ureport.model.LineList;
 import com.bstek.ureport.model.Report;
 import com.bstek.ureport.model.Row;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +50,10 @@ public class ReportDefinition implements Serializable {
     private List<ColumnDefinition> columns;
     private List<DatasourceDefinition> datasources;
     private String searchFormXml;
+    /**
+     * 是否允许并行加载数据集，对应报表文件根节点上的parallel-datasets属性
+     */
+    private boolean parallelDatasets = true;
     @JsonIgnore
     private String style;
 
@@ -59,8 +63,8 @@ public class ReportDefinition implements Serializable {
         report.setPaper(paper);
         report.setHeader(header);
         report.setFooter(footer);
-        List<Row> reportRows = new ArrayList<Row>();
-        List<Column> reportColumns = new ArrayList<Column>();
+        List<Row> reportRows = new LineList<Row>();
+        List<Column> reportColumns = new LineList<Column>();
         report.setRows(reportRows);
         report.setColumns(reportColumns);
         Map<Integer, Row> rowMap = new HashMap<Integer, Row>();
@@ -329,4 +333,12 @@ public class ReportDefinition implements Serializable {
     public void setSearchFormXml(String searchFormXml) {
         this.searchFormXml = searchFormXml;
     }
+
+    public boolean isParallelDatasets() {
+        return parallelDatasets;
+    }
+
+    public void setParallelDatasets(boolean parallelDatasets) {
+        this.parallelDatasets = parallelDatasets;
+    }
 }
@@ -19,6 +19,7 @@ import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
 
+import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.Dataset;
 import com.bstek.ureport.exception.ReportComputeException;
 
@@ -35,11 +36,15 @@ public class BeanDatasetDefinition implements DatasetDefinition {
 
 	@SuppressWarnings("unchecked")
 	public Dataset buildDataset(String datasourceName,Object obj,Map<String,Object> parameters){
+		long start=System.currentTimeMillis();
 		try {
 			Method m=obj.getClass().getMethod(method, new Class[]{String.class,String.class,Map.class});
 			Object result=m.invoke(obj, new Object[]{datasourceName,name,parameters});
 			List<Object> list=(List<Object>)result;
-			return new Dataset(name,list);
+			Dataset dataset=new Dataset(name,list);
+			dataset.setLoadTime(System.currentTimeMillis()-start);
+			Utils.logToConsole("~~~ Dataset ["+name+"] load completed:"+dataset.getLoadTime()+"ms");
+			return dataset;
 		} catch (Exception e) {
 			throw new ReportComputeException(e);
 		}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.definition.dataset;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+
+/**
+ * 每次加载数据集都会新建NamedParameterJdbcTemplate，其自带的ParsedSql缓存无法复用，
+ * 这里将解析好的ParsedSql放在所有实例共享的有界缓存中，以最终执行的SQL文本为key。
+ * @author jackie
+ * @since 2.2.10
+ */
+class CachedNamedParameterJdbcTemplate extends NamedParameterJdbcTemplate {
+	private static final int MAX_CACHE_SIZE=512;
+	private static final Map<String,ParsedSql> parsedSqlCache=new LinkedHashMap<String,ParsedSql>(64,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,ParsedSql> eldest) {
+			return size()>MAX_CACHE_SIZE;
+		}
+	};
+
+	CachedNamedParameterJdbcTemplate(JdbcOperations classicJdbcTemplate) {
+		super(classicJdbcTemplate);
+	}
+
+	@Override
+	protected ParsedSql getParsedSql(String sql) {
+		synchronized(parsedSqlCache){
+			ParsedSql parsedSql=parsedSqlCache.get(sql);
+			if(parsedSql!=null){
+				return parsedSql;
+			}
+		}
+		ParsedSql parsedSql=NamedParameterUtils.parseSqlStatement(sql);
+		synchronized(parsedSqlCache){
+			parsedSqlCache.put(sql, parsedSql);
+		}
+		return parsedSql;
+	}
+}
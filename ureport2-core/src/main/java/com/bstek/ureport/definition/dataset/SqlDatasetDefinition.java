@@ -16,20 +16,41 @@
 package com.bstek.ureport.definition.dataset;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
 
 import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.Context;
 import com.bstek.ureport.build.Dataset;
+import com.bstek.ureport.build.DatasetStorage;
+import com.bstek.ureport.build.StatementTracker;
+import com.bstek.ureport.build.columnar.ColumnarRowCallbackHandler;
+import com.bstek.ureport.build.pushdown.AggregatePlan;
+import com.bstek.ureport.build.pushdown.AggregatedRow;
+import com.bstek.ureport.build.pushdown.SqlOrderBy;
+import com.bstek.ureport.build.pushdown.SqlPredicate;
 import com.bstek.ureport.definition.datasource.DataType;
-import com.bstek.ureport.expression.ExpressionUtils;
+import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.expression.model.Expression;
 import com.bstek.ureport.expression.model.data.ExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectExpressionData;
@@ -47,35 +68,324 @@ public class SqlDatasetDefinition implements DatasetDefinition {
 	private List<Parameter> parameters;
 	private List<Field> fields;
 	private Expression sqlExpression;
+	/**
+	 * 由sql编译成的模版，第一次加载数据集时生成
+	 */
+	private transient volatile SqlTemplate sqlTemplate;
+	/**
+	 * 由{@link com.bstek.ureport.build.pushdown.SqlPushdownPlanner}规划出的可在数据库中执行的过滤条件，为null表示还未规划
+	 */
+	private transient volatile List<SqlPredicate> pushdownPredicates;
+	/**
+	 * 下推时子查询各列的类型，为null表示还未取得
+	 */
+	private transient volatile ColumnTypes columnTypes;
+	/**
+	 * 分组汇总下推的计划，为null表示不下推
+	 */
+	private transient volatile AggregatePlan aggregatePlan;
 	public Dataset buildDataset(Map<String,Object> parameterMap,Connection conn){
+		return prepareQuery(parameterMap).execute(conn, null);
+	}
+
+	/**
+	 * 计算SQL中的表达式及下推条件右侧的参数，得到之后只需访问数据库的查询。<br>
+	 * 表达式中的函数可能依赖调用线程上的上下文(如当前请求)，并行加载时在调用线程中执行这一步，
+	 * 只把{@link SqlQuery#execute(Connection, StatementTracker)}交给线程池。
+	 * @param parameterMap 报表参数
+	 * @return 准备好的查询
+	 */
+	public SqlQuery prepareQuery(Map<String,Object> parameterMap){
+		long start=System.currentTimeMillis();
 		String sqlForUse=sql;
 		Context context=new Context(null,parameterMap);
 		if(sqlExpression!=null){
 			sqlForUse=executeSqlExpr(sqlExpression, context);
 		}else{
-			Pattern pattern=Pattern.compile("\\$\\{.*?\\}");
-			Matcher matcher=pattern.matcher(sqlForUse);
-			while(matcher.find()){
-				String substr=matcher.group();
-				String sqlExpr=substr.substring(2,substr.length()-1);
-				Expression expr=ExpressionUtils.parseExpression(sqlExpr);
-				String result=executeSqlExpr(expr, context);
-				sqlForUse=sqlForUse.replace(substr, result);
+			SqlTemplate template=sqlTemplate;
+			if(template==null){
+				template=new SqlTemplate(sql);
+				sqlTemplate=template;
 			}
+			sqlForUse=template.render(context);
 		}
 		Utils.logToConsole("RUNTIME SQL:"+sqlForUse);
 		Map<String, Object> pmap = buildParameters(parameterMap);
-		if(ProcedureUtils.isProcedure(sqlForUse)){
-			List<Map<String,Object>> result = ProcedureUtils.procedureQuery(sqlForUse,pmap,conn);
-			return new Dataset(name,result);
+		List<SqlPredicate> predicates=pushdownPredicates;
+		List<Object> pushdownValues=null;
+		if(predicates!=null && !predicates.isEmpty() && !ProcedureUtils.isProcedure(sqlForUse)){
+			List<Object> values=new ArrayList<Object>(predicates.size());
+			for(SqlPredicate predicate:predicates){
+				Object value=predicate.computeValue(context);
+				values.add(value);
+				if(value!=null){
+					pushdownValues=values;
+				}
+			}
+		}
+		return new SqlQuery(sqlForUse, predicates, pushdownValues, aggregatePlan, pmap, System.currentTimeMillis()-start);
+	}
+
+	/**
+	 * 已计算好SQL及参数的查询，执行时不再计算任何表达式
+	 */
+	public class SqlQuery{
+		private final String sqlForUse;
+		private final List<SqlPredicate> predicates;
+		private final List<Object> pushdownValues;
+		private final AggregatePlan plan;
+		private final Map<String,Object> pmap;
+		private final long prepareTime;
+
+		private SqlQuery(String sqlForUse,List<SqlPredicate> predicates,List<Object> pushdownValues,AggregatePlan plan,Map<String,Object> pmap,long prepareTime){
+			this.sqlForUse=sqlForUse;
+			this.predicates=predicates;
+			this.pushdownValues=pushdownValues;
+			this.plan=plan;
+			this.pmap=pmap;
+			this.prepareTime=prepareTime;
+		}
+
+		/**
+		 * @param conn 数据库连接
+		 * @param tracker 用于记录正在执行的Statement以便从其它线程取消，可以为null
+		 * @return 数据集
+		 */
+		public Dataset execute(Connection conn,final StatementTracker tracker){
+			long start=System.currentTimeMillis()-prepareTime;
+			if(ProcedureUtils.isProcedure(sqlForUse)){
+				List<Map<String,Object>> result = ProcedureUtils.procedureQuery(sqlForUse,pmap,conn);
+				return newDataset(result,start);
+			}
+			SingleConnectionDataSource datasource=new SingleConnectionDataSource(conn,false);
+			JdbcTemplate template=null;
+			if(tracker==null){
+				template=new JdbcTemplate(datasource);
+			}else{
+				template=new JdbcTemplate(datasource){
+					@Override
+					protected void applyStatementSettings(Statement stmt) throws SQLException {
+						super.applyStatementSettings(stmt);
+						tracker.track(stmt);
+					}
+				};
+			}
+			if(DatasetStorage.getFetchSize()!=0){
+				template.setFetchSize(DatasetStorage.getFetchSize());
+			}
+			NamedParameterJdbcTemplate jdbcTemplate=new CachedNamedParameterJdbcTemplate(template);
+			try{
+				return execute(conn, jdbcTemplate, tracker, start);
+			}finally{
+				if(tracker!=null){
+					tracker.untrack();
+				}
+			}
+		}
+
+		private Dataset execute(Connection conn,NamedParameterJdbcTemplate jdbcTemplate,StatementTracker tracker,long start){
+			if((pushdownValues==null && plan==null) || !canRecover(conn)){
+				return query(jdbcTemplate, sqlForUse, pmap, start);
+			}
+			Map<String,Object> pushdownParameters=new HashMap<String,Object>(pmap);
+			SqlOrderBy orderBy=SqlOrderBy.split(sqlForUse);
+			String where=buildPushdownWhere(conn, jdbcTemplate, tracker, orderBy, pushdownParameters);
+			if(plan!=null){
+				// 分组汇总与行的顺序无关，去掉order by(SQL Server不允许子查询中带order by)
+				String source=sqlForUse;
+				if(orderBy!=null){
+					source=where==null ? orderBy.getBody() : orderBy.wrap(SqlPredicate.TABLE_ALIAS, where, false);
+				}
+				String aggregateSql=plan.buildSql(source);
+				Utils.logToConsole("AGGREGATE SQL:"+aggregateSql);
+				Savepoint savepoint=setSavepoint(conn);
+				try{
+					List<AggregatedRow> rows=plan.query(jdbcTemplate, aggregateSql, pushdownParameters);
+					releaseSavepoint(conn, savepoint);
+					if(rows!=null){
+						return newDataset(rows,start);
+					}
+					// 汇总值不精确或分组值为null只与本次的数据有关，只对本次查询回退
+					Utils.logToConsole("~~~ Dataset ["+name+"] aggregate values are not exact or group values contain null, fallback to original sql.");
+				}catch(DataAccessException ex){
+					if(handlePushdownFailure(conn, savepoint, tracker, ex)){
+						aggregatePlan=null;
+					}
+					Utils.logToConsole("~~~ Dataset ["+name+"] aggregate push down failed, fallback to original sql:"+ex.getMessage());
+				}
+			}
+			if(where!=null){
+				String pushdownSql=orderBy.wrap(SqlPredicate.TABLE_ALIAS, where, true);
+				Utils.logToConsole("PUSHDOWN SQL:"+pushdownSql);
+				Savepoint savepoint=setSavepoint(conn);
+				try{
+					Dataset dataset=query(jdbcTemplate, pushdownSql, pushdownParameters, start);
+					releaseSavepoint(conn, savepoint);
+					return dataset;
+				}catch(DataAccessException ex){
+					if(handlePushdownFailure(conn, savepoint, tracker, ex)){
+						pushdownPredicates=Collections.emptyList();
+					}
+					Utils.logToConsole("~~~ Dataset ["+name+"] push down failed, fallback to original sql:"+ex.getMessage());
+				}
+			}
+			return query(jdbcTemplate, sqlForUse, pmap, start);
+		}
+
+		/**
+		 * 取得子查询各列的类型，生成下推条件
+		 * @param orderBy 拆分出末尾order by后的原SQL，无法拆分时为null
+		 * @return 下推条件组成的where子句，不下推时返回null
+		 */
+		private String buildPushdownWhere(Connection conn,NamedParameterJdbcTemplate jdbcTemplate,StatementTracker tracker,SqlOrderBy orderBy,Map<String,Object> pushdownParameters){
+			if(pushdownValues==null){
+				return null;
+			}
+			if(orderBy==null){
+				Utils.logToConsole("~~~ Dataset ["+name+"] order by can not be moved to outer query, conditions not pushed down.");
+				return null;
+			}
+			Map<String,Integer> columnTypes=loadColumnTypes(conn, jdbcTemplate, tracker, orderBy);
+			if(columnTypes==null || !columnTypes.keySet().containsAll(orderBy.getColumns())){
+				return null;
+			}
+			return SqlPredicate.buildWhere(predicates, pushdownValues, columnTypes, pushdownParameters);
+		}
+
+		/**
+		 * 执行"select * from (原SQL) where 1=0"取得子查询各列的JDBC类型，同一SQL只执行一次
+		 * @return 列名转为小写后对应的类型，失败时返回null
+		 */
+		private Map<String,Integer> loadColumnTypes(Connection conn,NamedParameterJdbcTemplate jdbcTemplate,StatementTracker tracker,SqlOrderBy orderBy){
+			ColumnTypes cached=columnTypes;
+			if(cached!=null && cached.sql.equals(orderBy.getBody())){
+				return cached.types;
+			}
+			Savepoint savepoint=setSavepoint(conn);
+			try{
+				Map<String,Integer> types=jdbcTemplate.query(orderBy.wrap(SqlPredicate.TABLE_ALIAS, " where 1=0", false), pmap, new ResultSetExtractor<Map<String,Integer>>() {
+					@Override
+					public Map<String,Integer> extractData(ResultSet rs) throws SQLException {
+						ResultSetMetaData metaData=rs.getMetaData();
+						Map<String,Integer> map=new HashMap<String,Integer>();
+						for(int i=1;i<=metaData.getColumnCount();i++){
+							String column=JdbcUtils.lookupColumnName(metaData, i).toLowerCase();
+							// 同名的列无法确定条件作用在哪一列上
+							Integer type=map.containsKey(column) ? Types.OTHER : metaData.getColumnType(i);
+							map.put(column, type);
+						}
+						return map;
+					}
+				});
+				releaseSavepoint(conn, savepoint);
+				columnTypes=new ColumnTypes(orderBy.getBody(), types);
+				return types;
+			}catch(DataAccessException ex){
+				if(handlePushdownFailure(conn, savepoint, tracker, ex)){
+					pushdownPredicates=Collections.emptyList();
+				}
+				Utils.logToConsole("~~~ Dataset ["+name+"] push down failed, fallback to original sql:"+ex.getMessage());
+				return null;
+			}
+		}
+
+		/**
+		 * 下推的查询失败后回滚到保存点，由调用方回退到原SQL。
+		 * 超时、连接中断等暂时性的错误原SQL同样无法执行，直接抛出
+		 * @return 是否为SQL语法错误(如原SQL不能作为子查询)，是则之后不再下推
+		 */
+		private boolean handlePushdownFailure(Connection conn,Savepoint savepoint,StatementTracker tracker,DataAccessException ex){
+			checkCancelled(tracker, ex);
+			if(ex instanceof TransientDataAccessException || ex instanceof RecoverableDataAccessException || ex instanceof DataAccessResourceFailureException){
+				throw ex;
+			}
+			rollbackSavepoint(conn, savepoint, ex);
+			return ex instanceof BadSqlGrammarException;
+		}
+
+		/**
+		 * 查询被其它线程取消时不能回退到原SQL重新执行
+		 */
+		private void checkCancelled(StatementTracker tracker,DataAccessException ex){
+			if(tracker!=null && tracker.isCancelled()){
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * 连接处于事务中时，失败的查询会让部分数据库(如PostgreSQL)中止整个事务，
+	 * 所以事务中只有支持保存点时才下推，失败后回滚到保存点再执行原SQL
+	 */
+	private boolean canRecover(Connection conn){
+		try{
+			return conn.getAutoCommit() || conn.getMetaData().supportsSavepoints();
+		}catch(SQLException ex){
+			return false;
+		}
+	}
+
+	private Savepoint setSavepoint(Connection conn){
+		try{
+			if(conn.getAutoCommit()){
+				return null;
+			}
+			return conn.setSavepoint();
+		}catch(SQLException ex){
+			throw new ReportComputeException(ex);
+		}
+	}
+
+	private void releaseSavepoint(Connection conn,Savepoint savepoint){
+		if(savepoint==null){
+			return;
+		}
+		try{
+			conn.releaseSavepoint(savepoint);
+		}catch(SQLException ex){
+			// 部分驱动不支持释放保存点，事务结束时会自动释放
+		}
+	}
+
+	private void rollbackSavepoint(Connection conn,Savepoint savepoint,DataAccessException cause){
+		if(savepoint==null){
+			return;
+		}
+		try{
+			conn.rollback(savepoint);
+		}catch(SQLException ex){
+			throw cause;
+		}
+	}
+
+	private static class ColumnTypes{
+		private final String sql;
+		private final Map<String,Integer> types;
+
+		private ColumnTypes(String sql,Map<String,Integer> types){
+			this.sql=sql;
+			this.types=types;
+		}
+	}
+
+	private Dataset query(NamedParameterJdbcTemplate jdbcTemplate,String sqlForUse,Map<String,Object> pmap,long start){
+		if(DatasetStorage.isColumnar()){
+			ColumnarRowCallbackHandler handler=new ColumnarRowCallbackHandler();
+			jdbcTemplate.query(sqlForUse, pmap, handler);
+			return newDataset(handler.getTable(),start);
 		}
-		SingleConnectionDataSource datasource=new SingleConnectionDataSource(conn,false);
-		NamedParameterJdbcTemplate jdbcTemplate=new NamedParameterJdbcTemplate(datasource);
 		List<Map<String,Object>> list= jdbcTemplate.queryForList(sqlForUse, pmap);
-		return new Dataset(name,list);
+		return newDataset(list,start);
+	}
+
+	private Dataset newDataset(List<?> list,long start){
+		Dataset dataset=new Dataset(name,list);
+		dataset.setLoadTime(System.currentTimeMillis()-start);
+		Utils.logToConsole("~~~ Dataset ["+name+"] load completed:"+dataset.getLoadTime()+"ms");
+		return dataset;
 	}
 	
-	private String executeSqlExpr(Expression sqlExpr,Context context){
+	static String executeSqlExpr(Expression sqlExpr,Context context){
 		String sqlForUse=null;
 		ExpressionData<?> exprData=sqlExpr.execute(null, null, context);
 		if(exprData instanceof ObjectExpressionData){
@@ -137,8 +447,26 @@ public class SqlDatasetDefinition implements DatasetDefinition {
 
 	public void setSql(String sql) {
 		this.sql = sql;
+		this.sqlTemplate = null;
+		this.columnTypes = null;
 	}
 	public String getSql() {
 		return sql;
 	}
+
+	public List<SqlPredicate> getPushdownPredicates() {
+		return pushdownPredicates;
+	}
+
+	public void setPushdownPredicates(List<SqlPredicate> pushdownPredicates) {
+		this.pushdownPredicates = pushdownPredicates;
+	}
+
+	public AggregatePlan getAggregatePlan() {
+		return aggregatePlan;
+	}
+
+	public void setAggregatePlan(AggregatePlan aggregatePlan) {
+		this.aggregatePlan = aggregatePlan;
+	}
 }
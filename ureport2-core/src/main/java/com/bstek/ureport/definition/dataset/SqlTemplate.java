@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.definition.dataset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.bstek.ureport.build.Context;
+import com.bstek.ureport.exception.ReportComputeException;
+import com.bstek.ureport.expression.ExpressionUtils;
+import com.bstek.ureport.expression.model.Expression;
+
+/**
+ * 预先编译好的SQL模版，SQL中的${...}片段只在编译时解析一次，
+ * 之后每次生成SQL时只需计算表达式并与文本片段依次拼接。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SqlTemplate {
+	private static final Pattern EXPR_PATTERN=Pattern.compile("\\$\\{.*?\\}");
+	private final String sql;
+	/**
+	 * 文本片段，数量比表达式多一个，生成SQL时按"文本,表达式,文本..."的顺序拼接
+	 */
+	private final String[] segments;
+	private final Expression[] expressions;
+	private final String[] expressionTexts;
+
+	public SqlTemplate(String sql) {
+		this.sql=sql;
+		List<String> segmentList=new ArrayList<String>();
+		List<Expression> expressionList=new ArrayList<Expression>();
+		List<String> textList=new ArrayList<String>();
+		Matcher matcher=EXPR_PATTERN.matcher(sql);
+		int start=0;
+		while(matcher.find()){
+			String substr=matcher.group();
+			segmentList.add(sql.substring(start, matcher.start()));
+			expressionList.add(ExpressionUtils.parseExpression(substr.substring(2,substr.length()-1)));
+			textList.add(substr);
+			start=matcher.end();
+		}
+		segmentList.add(sql.substring(start));
+		segments=segmentList.toArray(new String[segmentList.size()]);
+		expressions=expressionList.toArray(new Expression[expressionList.size()]);
+		expressionTexts=textList.toArray(new String[textList.size()]);
+	}
+
+	public String render(Context context){
+		if(expressions.length==0){
+			return sql;
+		}
+		StringBuilder sb=new StringBuilder(sql.length()+16*expressions.length);
+		for(int i=0;i<expressions.length;i++){
+			sb.append(segments[i]);
+			String result=SqlDatasetDefinition.executeSqlExpr(expressions[i], context);
+			if(result==null){
+				throw new ReportComputeException("Sql expression "+expressionTexts[i]+" result is null.");
+			}
+			sb.append(result);
+		}
+		sb.append(segments[expressions.length]);
+		return sb.toString();
+	}
+}
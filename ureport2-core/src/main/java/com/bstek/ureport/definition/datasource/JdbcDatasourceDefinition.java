@@ -43,7 +43,7 @@ public class JdbcDatasourceDefinition implements DatasourceDefinition {
 		if(datasets==null || datasets.size()==0){
 			return null;
 		}
-		if(conn==null)conn=getConnection();
+		if(conn==null)conn=buildConnection();
 		List<Dataset> list=new ArrayList<Dataset>();
 		try{
 			
@@ -62,7 +62,7 @@ public class JdbcDatasourceDefinition implements DatasourceDefinition {
 		return list;
 	}
 	
-	private Connection getConnection() {
+	public Connection buildConnection() {
 		try {
 			Class.forName(driver);
 			Connection conn=DriverManager.getConnection(url, username, password);
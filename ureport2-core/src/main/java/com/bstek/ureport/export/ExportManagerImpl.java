@@ -17,6 +17,7 @@ package com.bstek.ureport.export;
 
 import com.bstek.ureport.build.paging.Page;
 import com.bstek.ureport.cache.CacheUtils;
+import com.bstek.ureport.cache.PagedReportStore;
 import com.bstek.ureport.chart.ChartData;
 import com.bstek.ureport.definition.ReportDefinition;
 import com.bstek.ureport.export.excel.high.ExcelProducer;
@@ -41,6 +42,7 @@ public class ExportManagerImpl implements ExportManager {
     private final Excel97Producer excel97Producer = new Excel97Producer();
     private final PdfProducer pdfProducer = new PdfProducer();
     private final ReportRender reportRender;
+    private PagedReportStore pagedReportStore;
 
     public ExportManagerImpl(ReportRender reportRender) {
         this.reportRender = reportRender;
@@ -57,7 +59,7 @@ public class ExportManagerImpl implements ExportManager {
     @Override
     public HtmlReport exportHtml(String file, String contextPath, Map<String, Object> parameters) {
         ReportDefinition reportDefinition = reportRender.getReportDefinition(file);
-        Report report = reportRender.render(reportDefinition, parameters);
+        Report report = reportRender.renderWithCache(file, reportDefinition, parameters);
         Map<String, ChartData> chartMap = report.getContext().getChartDataMap();
         if (!chartMap.isEmpty()) {
             CacheUtils.storeChartDataMap(chartMap);
@@ -88,21 +90,21 @@ public class ExportManagerImpl implements ExportManager {
     @Override
     public HtmlReport exportHtml(String file, String contextPath, Map<String, Object> parameters, int pageIndex) {
         ReportDefinition reportDefinition = reportRender.getReportDefinition(file);
-        Report report = reportRender.render(reportDefinition, parameters);
+        boolean usePagedStore = pagedReportStore != null && pagedReportStore.isEnabled() && reportDefinition.getPaper().getHtmlIntervalRefreshValue() <= 0;
+        if (usePagedStore) {
+            HtmlReport htmlReport = pagedReportStore.getPage(file, parameters, pageIndex);
+            if (htmlReport != null) {
+                return htmlReport;
+            }
+        }
+        Report report = reportRender.renderWithCache(file, reportDefinition, parameters);
         Map<String, ChartData> chartMap = report.getContext().getChartDataMap();
         if (!chartMap.isEmpty()) {
             CacheUtils.storeChartDataMap(chartMap);
         }
         SinglePageData pageData = PageBuilder.buildSinglePageData(pageIndex, report);
-        List<Page> pages = pageData.getPages();
-        String content = null;
-        if (pages.size() == 1) {
-            content = htmlProducer.produce(report.getContext(), pages.get(0), false);
-        } else {
-            content = htmlProducer.produce(report.getContext(), pages, pageData.getColumnMargin(), false);
-        }
         HtmlReport htmlReport = new HtmlReport();
-        htmlReport.setContent(content);
+        htmlReport.setContent(producePage(report, pageData));
         if (reportDefinition.getPaper().isColumnEnabled()) {
             htmlReport.setColumn(reportDefinition.getPaper().getColumnCount());
         }
@@ -113,9 +115,36 @@ public class ExportManagerImpl implements ExportManager {
         htmlReport.setReportAlign(report.getPaper().getHtmlReportAlign().name());
         htmlReport.setChartDatas(report.getContext().getChartDataMap().values());
         htmlReport.setHtmlIntervalRefreshValue(report.getPaper().getHtmlIntervalRefreshValue());
+        if (usePagedStore && !report.getPages().isEmpty()) {
+            storePages(file, parameters, htmlReport, report);
+        }
         return htmlReport;
     }
 
+    private String producePage(Report report, SinglePageData pageData) {
+        List<Page> pages = pageData.getPages();
+        if (pages.size() == 1) {
+            return htmlProducer.produce(report.getContext(), pages.get(0), false);
+        }
+        return htmlProducer.produce(report.getContext(), pages, pageData.getColumnMargin(), false);
+    }
+
+    /**
+     * 在后台生成报表所有页的HTML并放入分页报表存储中，之后翻页时直接从存储中读取对应页；
+     * 当前请求的页已经生成，不需要等待后台任务
+     */
+    private void storePages(String file, Map<String, Object> parameters, HtmlReport htmlReport, final Report report) {
+        HtmlReport prototype = new HtmlReport();
+        prototype.setColumn(htmlReport.getColumn());
+        prototype.setStyle(htmlReport.getStyle());
+        prototype.setSearchFormData(htmlReport.getSearchFormData());
+        prototype.setReportAlign(htmlReport.getReportAlign());
+        prototype.setChartDatas(htmlReport.getChartDatas());
+        prototype.setHtmlIntervalRefreshValue(htmlReport.getHtmlIntervalRefreshValue());
+        pagedReportStore.storeAsync(file, parameters, prototype, report.getContext().getChartDataMap(), htmlReport.getTotalPage(),
+                pageIndex -> producePage(report, PageBuilder.buildSinglePageData(pageIndex, report)));
+    }
+
     /**
      * 导出PDF报表
      *
@@ -206,8 +235,10 @@ public class ExportManagerImpl implements ExportManager {
         String file = config.getFile();
         Map<String, Object> parameters = config.getParameters();
         ReportDefinition reportDefinition = reportRender.getReportDefinition(file);
-        return reportRender.render(reportDefinition, parameters);
+        return reportRender.renderWithCache(file, reportDefinition, parameters);
     }
 
-
+    public void setPagedReportStore(PagedReportStore pagedReportStore) {
+        this.pagedReportStore = pagedReportStore;
+    }
 }
@@ -20,6 +20,7 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -27,6 +28,7 @@ import org.springframework.context.ApplicationContextAware;
 
 import com.bstek.ureport.build.ReportBuilder;
 import com.bstek.ureport.cache.CacheUtils;
+import com.bstek.ureport.cache.ComputedReportCache;
 import com.bstek.ureport.definition.CellDefinition;
 import com.bstek.ureport.definition.Expand;
 import com.bstek.ureport.definition.ReportDefinition;
@@ -45,6 +47,7 @@ import com.bstek.ureport.provider.report.ReportProvider;
 public class ReportRender implements ApplicationContextAware{
 	private ReportParser reportParser;
 	private ReportBuilder reportBuilder;
+	private ComputedReportCache computedReportCache;
 	private Collection<ReportProvider> reportProviders;
 	private DownCellbuilder downCellParentbuilder=new DownCellbuilder();
 	private RightCellbuilder rightCellParentbuilder=new RightCellbuilder();
@@ -57,6 +60,25 @@ public class ReportRender implements ApplicationContextAware{
 		return reportBuilder.buildReport(reportDefinition,parameters);
 	}
 	
+	/**
+	 * 优先从已计算报表缓存中取报表，缓存未启用或报表设置了定时刷新时直接计算
+	 * @param file 报表模版文件名
+	 * @param reportDefinition 报表模版定义
+	 * @param parameters 参数
+	 * @return 计算后的报表，来自缓存时会被其它请求同时使用，只能读取(见{@link Report#isShared()})
+	 */
+	public Report renderWithCache(String file,final ReportDefinition reportDefinition,final Map<String,Object> parameters){
+		if(computedReportCache==null || reportDefinition.getPaper().getHtmlIntervalRefreshValue()>0){
+			return render(reportDefinition, parameters);
+		}
+		return computedReportCache.getReport(file, parameters, new Callable<Report>() {
+			@Override
+			public Report call() throws Exception {
+				return render(reportDefinition, parameters);
+			}
+		});
+	}
+	
 	public ReportDefinition getReportDefinition(String file){
 		ReportDefinition reportDefinition=CacheUtils.getReportDefinition(file);
 		if(reportDefinition==null){
@@ -67,6 +89,32 @@ public class ReportRender implements ApplicationContextAware{
 		return reportDefinition;
 	}
 	
+	/**
+	 * 报表模版文件变化后移除其模版定义缓存及已计算报表缓存
+	 * @param file 报表模版文件名
+	 */
+	public void invalidate(String file){
+		CacheUtils.removeReportDefinition(file);
+		if(computedReportCache!=null){
+			computedReportCache.evict(file);
+		}
+	}
+	
+	/**
+	 * 重新解析报表模版并放入缓存，之前计算好的报表同时失效
+	 * @param file 报表模版文件名
+	 * @return 新的报表模版定义
+	 */
+	public ReportDefinition reloadReportDefinition(String file){
+		ReportDefinition reportDefinition=parseReport(file);
+		rebuildReportDefinition(reportDefinition);
+		CacheUtils.cacheReportDefinition(file, reportDefinition);
+		if(computedReportCache!=null){
+			computedReportCache.evict(file);
+		}
+		return reportDefinition;
+	}
+	
 	public void rebuildReportDefinition(ReportDefinition reportDefinition){
 		List<CellDefinition> cells=reportDefinition.getCells();
 		for(CellDefinition cell:cells){
@@ -137,6 +185,9 @@ public class ReportRender implements ApplicationContextAware{
 	public void setReportBuilder(ReportBuilder reportBuilder) {
 		this.reportBuilder = reportBuilder;
 	}
+	public void setComputedReportCache(ComputedReportCache computedReportCache) {
+		this.computedReportCache = computedReportCache;
+	}
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		reportProviders=applicationContext.getBeansOfType(ReportProvider.class).values();
@@ -40,17 +40,24 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @author Jacky.gao
  * @since 2017年8月10日
  */
 public class ExcelBuilderDirect extends ExcelBuilder {
+    /**
+     * SXSSF在内存中保留的行数，超出的行会写入临时文件
+     */
+    private static int rowAccessWindowSize = 100;
+
     public void build(Report report, OutputStream outputStream) {
         CellStyleContext cellStyleContext = new CellStyleContext();
-        SXSSFWorkbook wb = new SXSSFWorkbook(100000);
+        SXSSFWorkbook wb = new SXSSFWorkbook(rowAccessWindowSize);
         CreationHelper creationHelper = wb.getCreationHelper();
         Paper paper = report.getPaper();
         try {
@@ -61,6 +68,18 @@ public class ExcelBuilderDirect extends ExcelBuilder {
             Drawing<?> drawing = sheet.createDrawingPatriarch();
             List<Row> rows = report.getRows();
             int rowNumber = 0;
+            int hiddenCols = 0;
+            for (int i = 0; i < columnSize; i++) {
+                int w = columns.get(i).getWidth();
+                if (w < 1) {
+                    hiddenCols++;
+                    continue;
+                }
+                double colWidth = UnitUtils.pointToPixel(w) * 37.5;
+                sheet.setColumnWidth(i - hiddenCols, (short) colWidth);
+            }
+            // 被上方单元格跨行覆盖的单元格样式，key为行号，写到该行时再创建这些单元格，不再提前创建后面的行
+            TreeMap<Integer, Map<Integer, XSSFCellStyle>> spanStylesMap = new TreeMap<Integer, Map<Integer, XSSFCellStyle>>();
             for (Row r : rows) {
                 int realHeight = r.getRealHeight();
                 if (realHeight < 1) {
@@ -69,10 +88,8 @@ public class ExcelBuilderDirect extends ExcelBuilder {
                 if (r.isForPaging()) {
                     return;
                 }
-                org.apache.poi.ss.usermodel.Row row = sheet.getRow(rowNumber);
-                if (row == null) {
-                    row = sheet.createRow(rowNumber);
-                }
+                org.apache.poi.ss.usermodel.Row row = sheet.createRow(rowNumber);
+                applySpanStyles(row, spanStylesMap.remove(rowNumber));
                 Map<Column, com.bstek.ureport.model.Cell> colCell = cellMap.get(r);
                 int skipCol = 0;
                 for (int i = 0; i < columnSize; i++) {
@@ -82,9 +99,7 @@ public class ExcelBuilderDirect extends ExcelBuilder {
                         skipCol++;
                         continue;
                     }
-                    double colWidth = UnitUtils.pointToPixel(w) * 37.5;
                     int colNum = i - skipCol;
-                    sheet.setColumnWidth(colNum, (short) colWidth);
                     org.apache.poi.ss.usermodel.Cell cell = row.getCell(colNum);
                     if (cell != null) {
                         continue;
@@ -115,17 +130,21 @@ public class ExcelBuilderDirect extends ExcelBuilder {
                         colEnd++;
                     }
                     colEnd += i;
-                    for (int j = rowStart; j < rowEnd; j++) {
-                        org.apache.poi.ss.usermodel.Row rr = sheet.getRow(j);
-                        if (rr == null) {
-                            rr = sheet.createRow(j);
+                    for (int c = colStart; c < colEnd; c++) {
+                        Cell cc = row.getCell(c - skipCol);
+                        if (cc == null) {
+                            cc = row.createCell(c - skipCol);
+                        }
+                        cc.setCellStyle(style);
+                    }
+                    for (int j = rowStart + 1; j < rowEnd; j++) {
+                        Map<Integer, XSSFCellStyle> spanStyles = spanStylesMap.get(j);
+                        if (spanStyles == null) {
+                            spanStyles = new HashMap<Integer, XSSFCellStyle>();
+                            spanStylesMap.put(j, spanStyles);
                         }
                         for (int c = colStart; c < colEnd; c++) {
-                            Cell cc = rr.getCell(c - skipCol);
-                            if (cc == null) {
-                                cc = rr.createCell(c - skipCol);
-                            }
-                            cc.setCellStyle(style);
+                            spanStyles.put(c - skipCol, style);
                         }
                     }
                     if (colSpan > 0 || rowSpan > 0) {
@@ -136,7 +155,7 @@ public class ExcelBuilderDirect extends ExcelBuilder {
                             colSpan--;
                         }
                         CellRangeAddress cellRegion = new CellRangeAddress(rowNumber, (rowNumber + rowSpan), i - skipCol, (i - skipCol + colSpan));
-                        sheet.addMergedRegion(cellRegion);
+                        sheet.addMergedRegionUnsafe(cellRegion);
                     }
                     Object obj = cellInfo.getFormatData();
                     if (obj != null) {
@@ -248,6 +267,9 @@ public class ExcelBuilderDirect extends ExcelBuilder {
                 row.setHeight((short) UnitUtils.pointToTwip(r.getRealHeight()));
                 rowNumber++;
             }
+            for (Map.Entry<Integer, Map<Integer, XSSFCellStyle>> entry : spanStylesMap.entrySet()) {
+                applySpanStyles(sheet.createRow(entry.getKey()), entry.getValue());
+            }
             sheet.setRowBreak(rowNumber - 1);
             wb.write(outputStream);
         } catch (Exception ex) {
@@ -256,4 +278,17 @@ public class ExcelBuilderDirect extends ExcelBuilder {
             wb.dispose();
         }
     }
+
+    private void applySpanStyles(org.apache.poi.ss.usermodel.Row row, Map<Integer, XSSFCellStyle> spanStyles) {
+        if (spanStyles == null) {
+            return;
+        }
+        for (Map.Entry<Integer, XSSFCellStyle> entry : spanStyles.entrySet()) {
+            row.createCell(entry.getKey()).setCellStyle(entry.getValue());
+        }
+    }
+
+    public void setRowAccessWindowSize(int rowAccessWindowSize) {
+        ExcelBuilderDirect.rowAccessWindowSize = rowAccessWindowSize;
+    }
 }
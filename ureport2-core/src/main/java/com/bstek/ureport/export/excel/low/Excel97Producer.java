@@ -34,11 +34,7 @@ import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.util.Units;
-import org.apache.poi.xssf.usermodel.XSSFClientAnchor;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -164,14 +160,8 @@ public class Excel97Producer {
                                 } else if (obj instanceof Image) {
                                     Image img = (Image) obj;
                                     InputStream inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
-                                    BufferedImage bufferedImage = ImageIO.read(inputStream);
-                                    int width = bufferedImage.getWidth();
-                                    int height = bufferedImage.getHeight();
-                                    IOUtils.closeQuietly(inputStream);
-                                    inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
                                     try {
-                                        XSSFClientAnchor anchor = (XSSFClientAnchor) creationHelper.createClientAnchor();
-
+                                        ClientAnchor anchor = creationHelper.createClientAnchor();
                                         byte[] bytes = IOUtils.toByteArray(inputStream);
                                         int pictureFormat = buildImageFormat(img);
                                         int pictureIndex = wb.addPicture(bytes, pictureFormat);
@@ -179,10 +169,6 @@ public class Excel97Producer {
                                         anchor.setCol2(i + colSpan);
                                         anchor.setRow1(rowNumber);
                                         anchor.setRow2(rowNumber + rowSpan);
-                                        anchor.setDx1(0 * Units.EMU_PER_PIXEL);
-                                        anchor.setDx2(width * Units.EMU_PER_PIXEL);
-                                        anchor.setDy1(0 * Units.EMU_PER_PIXEL);
-                                        anchor.setDy2(height * Units.EMU_PER_PIXEL);
                                         drawing.createPicture(anchor, pictureIndex);
                                     } finally {
                                         IOUtils.closeQuietly(inputStream);
@@ -193,13 +179,8 @@ public class Excel97Producer {
                                     if (base64Data != null) {
                                         Image img = new Image(base64Data, chartData.getWidth(), chartData.getHeight());
                                         InputStream inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
-                                        BufferedImage bufferedImage = ImageIO.read(inputStream);
-                                        int width = bufferedImage.getWidth();
-                                        int height = bufferedImage.getHeight();
-                                        IOUtils.closeQuietly(inputStream);
-                                        inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
                                         try {
-                                            XSSFClientAnchor anchor = (XSSFClientAnchor) creationHelper.createClientAnchor();
+                                            ClientAnchor anchor = creationHelper.createClientAnchor();
                                             byte[] bytes = IOUtils.toByteArray(inputStream);
                                             int pictureFormat = buildImageFormat(img);
                                             int pictureIndex = wb.addPicture(bytes, pictureFormat);
@@ -207,10 +188,6 @@ public class Excel97Producer {
                                             anchor.setCol2(i + colSpan);
                                             anchor.setRow1(rowNumber);
                                             anchor.setRow2(rowNumber + rowSpan);
-                                            anchor.setDx1(0 * Units.EMU_PER_PIXEL);
-                                            anchor.setDx2(width * Units.EMU_PER_PIXEL);
-                                            anchor.setDy1(0 * Units.EMU_PER_PIXEL);
-                                            anchor.setDy2(height * Units.EMU_PER_PIXEL);
                                             drawing.createPicture(anchor, pictureIndex);
                                         } finally {
                                             IOUtils.closeQuietly(inputStream);
@@ -317,13 +294,8 @@ public class Excel97Producer {
                             } else if (obj instanceof Image) {
                                 Image img = (Image) obj;
                                 InputStream inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
-                                BufferedImage bufferedImage = ImageIO.read(inputStream);
-                                int width = bufferedImage.getWidth();
-                                int height = bufferedImage.getHeight();
-                                IOUtils.closeQuietly(inputStream);
-                                inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
                                 try {
-                                    XSSFClientAnchor anchor = (XSSFClientAnchor) creationHelper.createClientAnchor();
+                                    ClientAnchor anchor = creationHelper.createClientAnchor();
                                     byte[] bytes = IOUtils.toByteArray(inputStream);
                                     int pictureFormat = buildImageFormat(img);
                                     int pictureIndex = wb.addPicture(bytes, pictureFormat);
@@ -331,10 +303,6 @@ public class Excel97Producer {
                                     anchor.setCol2(i + colSpan);
                                     anchor.setRow1(rowNumber);
                                     anchor.setRow2(rowNumber + rowSpan);
-                                    anchor.setDx1(0 * Units.EMU_PER_PIXEL);
-                                    anchor.setDx2(width * Units.EMU_PER_PIXEL);
-                                    anchor.setDy1(0 * Units.EMU_PER_PIXEL);
-                                    anchor.setDy2(height * Units.EMU_PER_PIXEL);
                                     drawing.createPicture(anchor, pictureIndex);
                                 } finally {
                                     IOUtils.closeQuietly(inputStream);
@@ -345,13 +313,8 @@ public class Excel97Producer {
                                 if (base64Data != null) {
                                     Image img = new Image(base64Data, chartData.getWidth(), chartData.getHeight());
                                     InputStream inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
-                                    BufferedImage bufferedImage = ImageIO.read(inputStream);
-                                    int width = bufferedImage.getWidth();
-                                    int height = bufferedImage.getHeight();
-                                    IOUtils.closeQuietly(inputStream);
-                                    inputStream = ImageUtils.base64DataToInputStream(img.getBase64Data());
                                     try {
-                                        XSSFClientAnchor anchor = (XSSFClientAnchor) creationHelper.createClientAnchor();
+                                        ClientAnchor anchor = creationHelper.createClientAnchor();
                                         byte[] bytes = IOUtils.toByteArray(inputStream);
                                         int pictureFormat = buildImageFormat(img);
                                         int pictureIndex = wb.addPicture(bytes, pictureFormat);
@@ -359,10 +322,6 @@ public class Excel97Producer {
                                         anchor.setCol2(i + colSpan);
                                         anchor.setRow1(rowNumber);
                                         anchor.setRow2(rowNumber + rowSpan);
-                                        anchor.setDx1(0 * Units.EMU_PER_PIXEL);
-                                        anchor.setDx2(width * Units.EMU_PER_PIXEL);
-                                        anchor.setDy1(0 * Units.EMU_PER_PIXEL);
-                                        anchor.setDy2(height * Units.EMU_PER_PIXEL);
                                         drawing.createPicture(anchor, pictureIndex);
                                     } finally {
                                         IOUtils.closeQuietly(inputStream);
@@ -15,6 +15,9 @@
  ******************************************************************************/
 package com.bstek.ureport.export.html;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,10 +27,12 @@ import org.apache.commons.lang3.StringUtils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
 import com.bstek.ureport.build.paging.Page;
+import com.bstek.ureport.cache.ImageStore;
 import com.bstek.ureport.chart.ChartData;
 import com.bstek.ureport.definition.Alignment;
 import com.bstek.ureport.definition.Border;
 import com.bstek.ureport.definition.CellStyle;
+import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.expression.model.Expression;
 import com.bstek.ureport.expression.model.data.BindDataListExpressionData;
 import com.bstek.ureport.expression.model.data.ExpressionData;
@@ -44,12 +49,32 @@ import com.bstek.ureport.model.Row;
  * @since 2016年12月30日
  */
 public class HtmlProducer{
+	/**
+	 * 流式输出时每输出多少行刷新一次Writer，使内容尽快发送到客户端
+	 */
+	private static final int FLUSH_ROWS=200;
 	public String produce(Report report) {
+		StringBuilder sb=new StringBuilder();
+		try{
+			produce(report, sb);
+		}catch(IOException ex){
+			throw new ReportComputeException(ex);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * 将整个报表的HTML逐行直接写入out，不在内存中拼接完整的HTML，
+	 * out为Writer时每输出一定行数刷新一次
+	 * @param report 报表
+	 * @param out 输出目标
+	 * @throws IOException 写入失败
+	 */
+	public void produce(Report report,Appendable out) throws IOException {
 		List<Row> rows=report.getRows();
 		List<Column> columns=report.getColumns();
 		Map<Row, Map<Column, Cell>> cellMap=report.getRowColCellMap();
-		StringBuilder sb = buildTable(report.getContext(),rows, columns, cellMap,false,false);
-		return sb.toString();
+		writeTable(report.getContext(),rows, columns, cellMap,false,false,out,new StyleCache());
 	}
 	
 	public String produce(Context context,List<Page> pages,int columnMargin,boolean breakPage){
@@ -87,12 +112,16 @@ public class HtmlProducer{
 		List<Row> rows=page.getRows();
 		List<Column> columns=page.getColumns();
 		Map<Row, Map<Column, Cell>> cellMap=context.getReport().getRowColCellMap();
-		StringBuilder sb = buildTable(context,rows, columns, cellMap,breakPage,true);
+		StringBuilder sb=new StringBuilder();
+		try{
+			writeTable(context,rows, columns, cellMap,breakPage,true,sb,new StyleCache());
+		}catch(IOException ex){
+			throw new ReportComputeException(ex);
+		}
 		return sb.toString();
 	}
 	
-	private StringBuilder buildTable(Context context,List<Row> rows, List<Column> columns,Map<Row, Map<Column, Cell>> cellMap,boolean breakPage,boolean forPage) {
-		StringBuilder sb=new StringBuilder();
+	private void writeTable(Context context,List<Row> rows, List<Column> columns,Map<Row, Map<Column, Cell>> cellMap,boolean breakPage,boolean forPage,Appendable sb,StyleCache styleCache) throws IOException {
 		int tableWidth=buildTableWidth(columns);
 		String bgStyle="";
 		String bgImage=context.getReport().getPaper().getBgImage();
@@ -106,6 +135,7 @@ public class HtmlProducer{
 		}
 		int colSize=columns.size();
 		int rowSize=rows.size();
+		int writtenRows=0;
 		for(int i=0;i<rowSize;i++){
 			Row row=rows.get(i);
 			if(!forPage && row.isForPaging()){
@@ -146,9 +176,8 @@ public class HtmlProducer{
 						sb.append("<td");
 					}
 				}
-				sb.append(" class='_"+cell.getName()+"' ");
-				String style=buildCustomStyle(cell);
-				sb.append(" "+style+"");
+				sb.append(styleCache.getClassAttribute(cell));
+				sb.append(styleCache.getCustomStyle(cell));
 				sb.append(">");
 				boolean hasLink=false;
 				String linkURL=cell.getLinkUrl();
@@ -208,7 +237,12 @@ public class HtmlProducer{
 							imageType="image/gif";
 						}
 					}
-					sb.append("<img src=\"data:"+imageType+";base64,"+img.getBase64Data()+"\"");
+					String imageUrl=ImageStore.buildImageUrl(img.getBase64Data(), imageType);
+					if(imageUrl!=null){
+						sb.append("<img src=\""+imageUrl+"\"");
+					}else{
+						sb.append("<img src=\"data:"+imageType+";base64,"+img.getBase64Data()+"\"");
+					}
 					sb.append(">");
 				}else if(obj instanceof ChartData){
 					ChartData chartData=(ChartData)obj;
@@ -242,9 +276,11 @@ public class HtmlProducer{
 				sb.append("</td>");
 			}
 			sb.append("</tr>");
+			if(sb instanceof Writer && ++writtenRows%FLUSH_ROWS==0){
+				((Writer)sb).flush();
+			}
 		}
 		sb.append("</table>");
-		return sb;
 	}
 	
 	private int buildWidth(List<Column> columns,int colIndex,int colSpan){
@@ -268,6 +304,19 @@ public class HtmlProducer{
 	}
 	
 	private String buildCustomStyle(Cell cell){
+		String css=buildCustomCss(cell);
+		if(css.length()==0){
+			return css;
+		}
+		return "style=\""+css+"\"";
+	}
+	
+	/**
+	 * 生成单元格由条件属性产生的自定义样式
+	 * @param cell 单元格
+	 * @return css文本，没有自定义样式时返回空字符串
+	 */
+	public String buildCustomCss(Cell cell){
 		CellStyle style=cell.getCustomCellStyle();
 		CellStyle rowStyle=cell.getRow().getCustomCellStyle();
 		CellStyle colStyle=cell.getColumn().getCustomCellStyle();
@@ -434,8 +483,6 @@ public class HtmlProducer{
 		if(sb.length()>0){
 			int colWidth=cell.getColumn().getWidth();
 			sb.append("width:"+colWidth+"pt");
-			sb.insert(0, "style=\"");
-			sb.append("\"");
 		}
 		return sb.toString();
 	}
@@ -447,4 +494,62 @@ public class HtmlProducer{
 		}
 		return width;
 	}
+	
+	/**
+	 * 单次输出过程中的样式缓存：同名单元格共用class属性串；
+	 * 条件属性产生的自定义样式按(单元格样式,行样式,列样式,列宽)对象相同与否缓存，同一行或同一列的样式对象只生成一次样式串
+	 */
+	private class StyleCache{
+		private final Map<String,String> classAttributeMap=new HashMap<String,String>();
+		private final Map<StyleKey,String> customStyleMap=new HashMap<StyleKey,String>();
+		String getClassAttribute(Cell cell){
+			String name=cell.getName();
+			String attr=classAttributeMap.get(name);
+			if(attr==null){
+				attr=" class='_"+name+"' ";
+				classAttributeMap.put(name, attr);
+			}
+			return attr;
+		}
+		String getCustomStyle(Cell cell){
+			CellStyle style=cell.getCustomCellStyle();
+			CellStyle rowStyle=cell.getRow().getCustomCellStyle();
+			CellStyle colStyle=cell.getColumn().getCustomCellStyle();
+			if(style==null && rowStyle==null && colStyle==null){
+				return " ";
+			}
+			StyleKey key=new StyleKey(style,rowStyle,colStyle,cell.getColumn().getWidth());
+			String customStyle=customStyleMap.get(key);
+			if(customStyle==null){
+				customStyle=" "+buildCustomStyle(cell);
+				customStyleMap.put(key, customStyle);
+			}
+			return customStyle;
+		}
+	}
+	
+	private static class StyleKey{
+		private final CellStyle style;
+		private final CellStyle rowStyle;
+		private final CellStyle colStyle;
+		private final int width;
+		StyleKey(CellStyle style,CellStyle rowStyle,CellStyle colStyle,int width){
+			this.style=style;
+			this.rowStyle=rowStyle;
+			this.colStyle=colStyle;
+			this.width=width;
+		}
+		@Override
+		public int hashCode() {
+			return ((System.identityHashCode(style)*31+System.identityHashCode(rowStyle))*31+System.identityHashCode(colStyle))*31+width;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof StyleKey)){
+				return false;
+			}
+			StyleKey key=(StyleKey)obj;
+			return style==key.style && rowStyle==key.rowStyle && colStyle==key.colStyle && width==key.width;
+		}
+	}
 }
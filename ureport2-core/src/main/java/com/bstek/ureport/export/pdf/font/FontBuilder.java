@@ -18,11 +18,14 @@ package com.bstek.ureport.export.pdf.font;
 import java.awt.GraphicsEnvironment;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -30,6 +33,7 @@ import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
+import com.bstek.ureport.Utils;
 import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.exception.ReportException;
 import com.itextpdf.text.DocumentException;
@@ -45,7 +49,24 @@ public class FontBuilder implements ApplicationContextAware{
 	private static ApplicationContext applicationContext;
 	private static final Map<String,BaseFont> fontMap=new HashMap<String,BaseFont>();
 	public static final Map<String,String> fontPathMap=new HashMap<String,String>();
-	private static List<String> systemFontNameList=new ArrayList<String>();
+	private static Set<String> systemFontNameSet=new HashSet<String>();
+	private static final int MAX_DERIVED_FONT_SIZE=256;
+	/**
+	 * 从字体文件加载的AWT字体，每个字体文件只加载一次
+	 */
+	private static final Map<String,java.awt.Font> awtBaseFontMap=new ConcurrentHashMap<String,java.awt.Font>();
+	/**
+	 * 按字体名、样式及大小派生出的AWT字体，超出上限时淘汰最久未使用的
+	 */
+	private static final Map<String,java.awt.Font> awtDerivedFontMap=new LinkedHashMap<String,java.awt.Font>(16,0.75f,true){
+		private static final long serialVersionUID = -2526283453436532592L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,java.awt.Font> eldest) {
+			return size()>MAX_DERIVED_FONT_SIZE;
+		}
+	};
+	private static final AtomicLong awtFontHits=new AtomicLong();
+	private static final AtomicLong awtFontLoads=new AtomicLong();
 	public static Font getFont(String fontName,int fontSize,boolean fontBold,boolean fontItalic,boolean underLine){
 		BaseFont baseFont=fontMap.get(fontName);
 		Font font=null;
@@ -82,7 +103,7 @@ public class FontBuilder implements ApplicationContextAware{
 	}
 	
 	public static java.awt.Font getAwtFont(String fontName,int fontStyle,float size){
-		if(systemFontNameList.contains(fontName)){
+		if(systemFontNameSet.contains(fontName)){
 			return new java.awt.Font(fontName,fontStyle,new Float(size).intValue());
 		}
 		String fontPath=fontPathMap.get(fontName);
@@ -93,24 +114,69 @@ public class FontBuilder implements ApplicationContextAware{
 				return null;				
 			}
 		}
-		InputStream inputStream=null;
-		try {
-			inputStream=applicationContext.getResource(fontPath).getInputStream();
-			java.awt.Font font=java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, inputStream);
-			return font.deriveFont(fontStyle,size);
-		} catch (Exception e) {
-			throw new ReportException(e);
-		}finally{
-			IOUtils.closeQuietly(inputStream);
+		String key=fontName+"|"+fontStyle+"|"+size;
+		java.awt.Font font=null;
+		synchronized(awtDerivedFontMap){
+			font=awtDerivedFontMap.get(key);
+		}
+		if(font!=null){
+			awtFontHits.incrementAndGet();
+			return font;
+		}
+		font=loadAwtBaseFont(fontPath).deriveFont(fontStyle,size);
+		synchronized(awtDerivedFontMap){
+			awtDerivedFontMap.put(key, font);
+		}
+		return font;
+	}
+	
+	private static java.awt.Font loadAwtBaseFont(String fontPath){
+		java.awt.Font baseFont=awtBaseFontMap.get(fontPath);
+		if(baseFont!=null){
+			return baseFont;
+		}
+		synchronized(awtBaseFontMap){
+			baseFont=awtBaseFontMap.get(fontPath);
+			if(baseFont!=null){
+				return baseFont;
+			}
+			InputStream inputStream=null;
+			try {
+				long start=System.currentTimeMillis();
+				inputStream=applicationContext.getResource(fontPath).getInputStream();
+				baseFont=java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, inputStream);
+				awtBaseFontMap.put(fontPath, baseFont);
+				awtFontLoads.incrementAndGet();
+				Utils.logToConsole("~~~ Load font ["+fontPath+"]:"+(System.currentTimeMillis()-start)+"ms");
+				return baseFont;
+			} catch (Exception e) {
+				throw new ReportException(e);
+			}finally{
+				IOUtils.closeQuietly(inputStream);
+			}
 		}
 	}
 	
+	/**
+	 * @return 从派生字体缓存中直接取到AWT字体的次数
+	 */
+	public static long getAwtFontHits() {
+		return awtFontHits.get();
+	}
+	
+	/**
+	 * @return 从字体文件加载AWT字体的次数
+	 */
+	public static long getAwtFontLoads() {
+		return awtFontLoads.get();
+	}
+	
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		FontBuilder.applicationContext=applicationContext;
 		GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
 		String[] fontNames=environment.getAvailableFontFamilyNames();
 		for(String name:fontNames){
-			systemFontNameList.add(name);
+			systemFontNameSet.add(name);
 		}
 		Collection<FontRegister> fontRegisters=applicationContext.getBeansOfType(FontRegister.class).values();
 		for(FontRegister fontReg:fontRegisters){
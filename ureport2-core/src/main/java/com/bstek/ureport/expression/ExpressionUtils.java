@@ -18,11 +18,17 @@ package com.bstek.ureport.expression;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -37,8 +43,10 @@ import com.bstek.ureport.build.assertor.LessThenAssertor;
 import com.bstek.ureport.build.assertor.LikeAssertor;
 import com.bstek.ureport.build.assertor.NotEqualsAssertor;
 import com.bstek.ureport.build.assertor.NotInAssertor;
+import com.bstek.ureport.build.assertor.PreparedAssertor;
 import com.bstek.ureport.dsl.ReportParserLexer;
 import com.bstek.ureport.dsl.ReportParserParser;
+import com.bstek.ureport.dsl.ReportParserParser.EntryContext;
 import com.bstek.ureport.exception.ReportParseException;
 import com.bstek.ureport.expression.function.Function;
 import com.bstek.ureport.expression.model.Expression;
@@ -68,10 +76,25 @@ import com.bstek.ureport.expression.parse.builder.VariableExpressionBuilder;
 public class ExpressionUtils implements ApplicationContextAware{
 	public static final String EXPR_PREFIX="${";
 	public static final String EXPR_SUFFIX="}";
-	private static ExpressionVisitor exprVisitor;
+	private static int expressionCacheSize=2000;
+	/**
+	 * 表达式文本到解析结果的LRU缓存，解析出的表达式在运行期不会被修改，可以在多处共享
+	 */
+	private static final Map<String,Expression> expressionCache=new LinkedHashMap<String,Expression>(256,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Expression> eldest) {
+			return size()>expressionCacheSize;
+		}
+	};
+	private static final AtomicLong cacheHits=new AtomicLong();
+	private static final AtomicLong cacheMisses=new AtomicLong();
+	private static final AtomicLong llFallbacks=new AtomicLong();
+	private static final AtomicLong parseNanos=new AtomicLong();
 	private static Map<String,Function> functions=new HashMap<String,Function>();
 	private static Map<Op,Assertor> assertorsMap=new HashMap<Op,Assertor>();
 	private static List<ExpressionBuilder> expressionBuilders=new ArrayList<ExpressionBuilder>();
+	private static final ExpressionVisitor exprVisitor;
 	private static List<String> cellNameList=new ArrayList<String>();
 	private static String[] LETTERS={"A","B","C","D","E","F","G","H","I","J","K","L","M","N","O","P","Q","R","S","T","U","V","W","X","Y","Z"};
 	static{
@@ -89,6 +112,7 @@ public class ExpressionUtils implements ApplicationContextAware{
 		expressionBuilders.add(new NullExpressionBuilder());
 		expressionBuilders.add(new CurrentCellValueExpressionBuilder());
 		expressionBuilders.add(new CurrentCellDataExpressionBuilder());
+		exprVisitor=new ExpressionVisitor(expressionBuilders);
 		
 		assertorsMap.put(Op.Equals, new EqualsAssertor());
 		assertorsMap.put(Op.EqualsGreatThen, new EqualsGreatThenAssertor());
@@ -130,26 +154,95 @@ public class ExpressionUtils implements ApplicationContextAware{
 		return result;
 	}
 	
+	/**
+	 * 右侧的值在多次判断中保持不变时使用，In、NotIn、Like等会针对右侧的值预先编译
+	 */
+	public static PreparedAssertor prepareAssertor(Op op,Object right){
+		return assertorsMap.get(op).prepare(right);
+	}
+	
 	public static Expression parseExpression(String text){
+		Expression expression;
+		synchronized(expressionCache){
+			expression=expressionCache.get(text);
+		}
+		if(expression!=null){
+			cacheHits.incrementAndGet();
+			return expression;
+		}
+		cacheMisses.incrementAndGet();
+		long start=System.nanoTime();
+		expression=doParseExpression(text);
+		parseNanos.addAndGet(System.nanoTime()-start);
+		synchronized(expressionCache){
+			expressionCache.put(text, expression);
+		}
+		return expression;
+	}
+	
+	/**
+	 * 先用SLL模式解析，遇到语法错误时立即放弃，再用完整的LL模式重新解析并收集错误信息；
+	 * 绝大多数表达式在SLL模式下即可解析成功。
+	 */
+	private static Expression doParseExpression(String text){
 		ANTLRInputStream antlrInputStream=new ANTLRInputStream(text);
 		ReportParserLexer lexer=new ReportParserLexer(antlrInputStream);
 		CommonTokenStream tokenStream=new CommonTokenStream(lexer);
 		ReportParserParser parser=new ReportParserParser(tokenStream);
-		ExpressionErrorListener errorListener=new ExpressionErrorListener();
-		parser.addErrorListener(errorListener);
-		exprVisitor=new ExpressionVisitor(expressionBuilders);
-		Expression expression=exprVisitor.visitEntry(parser.entry());
-		String error=errorListener.getErrorMessage();
-		if(error!=null){
-			throw new ReportParseException("Expression parse error:"+error);
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		EntryContext entry;
+		try{
+			entry=parser.entry();
+		}catch(ParseCancellationException ex){
+			llFallbacks.incrementAndGet();
+			tokenStream.seek(0);
+			parser.reset();
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			ExpressionErrorListener errorListener=new ExpressionErrorListener();
+			parser.addErrorListener(errorListener);
+			Expression expression=exprVisitor.visitEntry(parser.entry());
+			String error=errorListener.getErrorMessage();
+			if(error!=null){
+				throw new ReportParseException("Expression parse error:"+error);
+			}
+			return expression;
 		}
-		return expression;
+		return exprVisitor.visitEntry(entry);
+	}
+	
+	public static long getCacheHits() {
+		return cacheHits.get();
+	}
+	
+	public static long getCacheMisses() {
+		return cacheMisses.get();
+	}
+	
+	/**
+	 * @return SLL模式解析失败后改用LL模式重新解析的次数
+	 */
+	public static long getLlFallbacks() {
+		return llFallbacks.get();
+	}
+	
+	/**
+	 * @return 缓存未命中时解析表达式累计耗费的时间，单位毫秒
+	 */
+	public static long getParseTimeMillis() {
+		return parseNanos.get()/1000000;
 	}
 	
 	public static ExpressionVisitor getExprVisitor() {
 		return exprVisitor;
 	}
 	
+	public void setExpressionCacheSize(int expressionCacheSize) {
+		ExpressionUtils.expressionCacheSize = expressionCacheSize;
+	}
+	
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		Collection<Function> coll=applicationContext.getBeansOfType(Function.class).values();
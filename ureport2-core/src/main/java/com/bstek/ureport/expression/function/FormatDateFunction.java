@@ -15,7 +15,6 @@
  ******************************************************************************/
 package com.bstek.ureport.expression.function;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 
@@ -27,6 +26,7 @@ import com.bstek.ureport.expression.model.data.ExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectListExpressionData;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.FormatUtils;
 
 /**
  * @author Jacky.gao
@@ -68,8 +68,7 @@ public class FormatDateFunction implements Function {
 			throw new ReportComputeException("Function [formatdate] need a Date type parameter at least");
 		}else{
 			if(obj instanceof Date){
-				SimpleDateFormat sd=new SimpleDateFormat(pattern);
-				return sd.format((Date)obj);
+				return FormatUtils.formatDate((Date)obj, pattern);
 			}else{
 				throw new ReportComputeException("Function [formatdate] first parameter is Date type");
 			}
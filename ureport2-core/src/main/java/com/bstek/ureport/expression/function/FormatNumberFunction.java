@@ -16,7 +16,6 @@
 package com.bstek.ureport.expression.function;
 
 import java.math.BigDecimal;
-import java.text.DecimalFormat;
 import java.util.List;
 
 import com.bstek.ureport.Utils;
@@ -28,6 +27,7 @@ import com.bstek.ureport.expression.model.data.ExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectListExpressionData;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.FormatUtils;
 
 /**
  * @author Jacky.gao
@@ -55,9 +55,11 @@ public class FormatNumberFunction implements Function {
 		if(obj==null){
 			throw new ReportComputeException("Function [formatnumber] need a number parameter at least");
 		}else{
+			if(obj instanceof Number){
+				return FormatUtils.formatNumber((Number)obj, pattern);
+			}
 			BigDecimal bigData=Utils.toBigDecimal(obj);
-			DecimalFormat df=new DecimalFormat(pattern);
-			return df.format(bigData.doubleValue());
+			return FormatUtils.formatNumber(bigData.doubleValue(), pattern);
 		}
 	}
 
@@ -15,14 +15,9 @@
  ******************************************************************************/
 package com.bstek.ureport.expression.function;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 
-import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.BindData;
 import com.bstek.ureport.build.Context;
 import com.bstek.ureport.definition.Order;
@@ -32,6 +27,7 @@ import com.bstek.ureport.expression.model.data.ExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectListExpressionData;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.OrderUtils;
 
 /**
  * @author Jacky.gao
@@ -49,17 +45,12 @@ public class OrderFunction implements Function {
 		if(!result){
 			orderData=Order.desc;
 		}
-		final Order order=orderData;
+		Order order=orderData;
 		ExpressionData<?> firstData=dataList.get(0);
 		if(firstData instanceof ObjectListExpressionData){
 			ObjectListExpressionData data=(ObjectListExpressionData)firstData;
 			List<?> list=data.getData();
-			Collections.sort(list, new Comparator<Object>(){
-				@Override
-				public int compare(Object data1, Object data2) {
-					return doOrder(data1, data2, order);
-				}
-			});
+			OrderUtils.sortValues(list, order);
 			return list;
 		}else if(firstData instanceof BindDataListExpressionData){
 			BindDataListExpressionData bindDataList=(BindDataListExpressionData)firstData;
@@ -71,49 +62,13 @@ public class OrderFunction implements Function {
 					ls.add(obj);					
 				}
 			}
-			Collections.sort(ls,new Comparator<Object>(){
-				@Override
-				public int compare(Object data1, Object data2) {
-					return doOrder(data1, data2, order);
-				}
-			});
+			OrderUtils.sortValues(ls, order);
 			return ls;
 		}else {
 			return firstData.getData();
 		}
 	}
 
-	private int doOrder(Object data1,Object data2,Order order){
-		if(data1==null || data2==null){
-			return 1;
-		}
-		if(data1 instanceof Date){
-			Date d1=(Date)data1;
-			Date d2=(Date)data2;
-			if(order.equals(Order.asc)){
-				return d1.compareTo(d2);
-			}else{
-				return d2.compareTo(d1);								
-			}
-		}else if(data1 instanceof Number){
-			BigDecimal n1=Utils.toBigDecimal(data1);
-			BigDecimal n2=Utils.toBigDecimal(data2);
-			if(order.equals(Order.asc)){
-				return n1.compareTo(n2);
-			}else{
-				return n2.compareTo(n1);
-			}
-		}else{
-			String str1=data1.toString();
-			String str2=data2.toString();
-			if(order.equals(Order.asc)){
-				return str1.compareTo(str2);
-			}else{
-				return str2.compareTo(str1);								
-			}
-		}
-	}
-	
 	private boolean computeOrder(List<ExpressionData<?>> dataList) {
 		boolean order=false;
 		ExpressionData<?> secondData=dataList.get(1);
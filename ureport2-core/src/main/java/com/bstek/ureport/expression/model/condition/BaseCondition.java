@@ -108,6 +108,9 @@ public abstract class BaseCondition implements Condition {
 	public void setOperation(String operation) {
 		this.operation = operation;
 	}
+	public Condition getNextCondition() {
+		return nextCondition;
+	}
 	public void setNextCondition(Condition nextCondition) {
 		this.nextCondition = nextCondition;
 	}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.expression.model.condition;
+
+import com.bstek.ureport.build.Context;
+import com.bstek.ureport.build.assertor.PreparedAssertor;
+import com.bstek.ureport.expression.ExpressionUtils;
+import com.bstek.ureport.expression.model.Condition;
+import com.bstek.ureport.model.Cell;
+
+/**
+ * 遍历数据集时使用的条件。条件右侧的表达式只依赖单元格与上下文，与被判断的对象无关，
+ * 因此对同一单元格只在第一次用到时计算一次，并针对右侧的值预先编译运算符(如In、NotIn编译为HashSet)；
+ * 后续条件同样在第一次用到时才准备。只能在同一线程中使用，传入的单元格与准备时不同时交给原条件处理。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class PreparedCondition implements Condition {
+	private final BaseCondition condition;
+	private final Cell cell;
+	private final Cell currentCell;
+	private final Context context;
+	private PreparedAssertor assertor;
+	private Condition nextCondition;
+
+	private PreparedCondition(BaseCondition condition,Cell cell,Cell currentCell,Context context) {
+		this.condition=condition;
+		this.cell=cell;
+		this.currentCell=currentCell;
+		this.context=context;
+	}
+
+	/**
+	 * @return 可在遍历数据集时重复使用的条件，condition为null时返回null
+	 */
+	public static Condition prepare(Condition condition,Cell cell,Cell currentCell,Context context){
+		if(!(condition instanceof BaseCondition)){
+			return condition;
+		}
+		return new PreparedCondition((BaseCondition)condition, cell, currentCell, context);
+	}
+
+	@Override
+	public boolean filter(Cell cell, Cell currentCell, Object obj, Context context) {
+		if(cell!=this.cell || currentCell!=this.currentCell || context!=this.context){
+			return condition.filter(cell, currentCell, obj, context);
+		}
+		Object left=condition.computeLeft(cell, currentCell, obj, context);
+		if(assertor==null){
+			Object right=condition.computeRight(cell, currentCell, obj, context);
+			assertor=ExpressionUtils.prepareAssertor(condition.getOp(), right);
+		}
+		boolean result=assertor.eval(left);
+		Join join=condition.getJoin();
+		Condition next=condition.getNextCondition();
+		if(join==null || next==null){
+			return result;
+		}
+		// and时结果为true、or时结果为false才需要判断后续条件
+		if(result!=join.equals(Join.and)){
+			return result;
+		}
+		if(nextCondition==null){
+			nextCondition=prepare(next, cell, currentCell, context);
+		}
+		return nextCondition.filter(cell, currentCell, obj, context);
+	}
+}
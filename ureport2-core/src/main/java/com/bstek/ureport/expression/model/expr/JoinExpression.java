@@ -26,6 +26,7 @@ import com.bstek.ureport.expression.model.data.ExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectListExpressionData;
 import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.ArithmeticProgram;
 
 /**
  * @author Jacky.gao
@@ -35,17 +36,19 @@ public class JoinExpression extends BaseExpression {
 	private static final long serialVersionUID = -9045259827109781135L;
 	private List<Operator> operators;
 	private List<BaseExpression> expressions;
+	private transient ArithmeticProgram program;
 	
 	public JoinExpression(List<Operator> operators, List<BaseExpression> expressions) {
 		this.operators = operators;
 		this.expressions = expressions;
+		this.program = new ArithmeticProgram(operators);
 	}
 	@Override
 	protected ExpressionData<?> compute(Cell cell,Cell currentCell,Context context) {
 		if(expressions.size()==1){
 			return expressions.get(0).compute(cell, currentCell,context);
 		}
-		List<Object> list=new ArrayList<Object>();
+		Object[] operands=new Object[expressions.size()];
 		for(int i=0;i<expressions.size();i++){
 			BaseExpression expression=expressions.get(i);
 			ExpressionData<?> data=expression.execute(cell, currentCell,context);
@@ -73,6 +76,24 @@ public class JoinExpression extends BaseExpression {
 					obj=sb.toString();
 				}
 			}
+			operands[i]=obj;
+		}
+		if(program==null){
+			program=new ArithmeticProgram(operators);
+		}
+		Object result=program.execute(operands);
+		if(result!=null){
+			return new ObjectExpressionData(result);
+		}
+		return new ObjectExpressionData(evalByString(operands, context));
+	}
+	
+	/**
+	 * 操作数中存在日期等非数字非字符串对象时，仍采用拼接表达式字符串再解析的方式计算
+	 */
+	private Object evalByString(Object[] operands,Context context){
+		List<Object> list=new ArrayList<Object>();
+		for(Object obj:operands){
 			if(obj==null){
 				obj="";
 			}
@@ -98,8 +119,7 @@ public class JoinExpression extends BaseExpression {
 				}
 			}
 		}
-		Object obj=context.evalExpr(str);
-		return new ObjectExpressionData(obj);
+		return context.evalExpr(str);
 	}
 	public List<BaseExpression> getExpressions() {
 		return expressions;
@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Base64Utils;
+import org.springframework.util.DigestUtils;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.cache.CacheStatistics;
+import com.bstek.ureport.exception.ReportComputeException;
+import com.bstek.ureport.provider.image.ConditionalImageProvider;
+import com.bstek.ureport.provider.image.HttpImageProvider;
+import com.bstek.ureport.provider.image.HttpsImageProvider;
+import com.bstek.ureport.provider.image.ImageProvider;
+import com.bstek.ureport.provider.image.ImageResource;
+import com.bstek.ureport.utils.ImageUtils;
+
+/**
+ * 图片单元格的图片缓存，以图片路径及输出宽高为键，缓存缩放编码后的base64数据。
+ * 条目超过ttlSeconds后需要重新确认：远程图片使用ETag/Last-Modified做条件请求，未变化时继续使用缓存；
+ * 其它图片重新读取；重新读取失败时继续使用原来缓存的图片，RETRY_MILLIS后再次尝试，不会用默认图片替换已缓存的图片。
+ * 配置了directory时缓存同时写入磁盘，重启后可直接使用。
+ * 同一图片同时只会读取一次，{@link #getBase64Datas(List, int, int)}使用线程池并发读取多张远程图片；
+ * 线程池只用于内置的{@link HttpImageProvider}及{@link HttpsImageProvider}，其它ImageProvider可能依赖当前请求、
+ * 线程变量或安全上下文，仍在调用线程中读取。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ImageCache implements DisposableBean {
+	private static final String FILE_SUFFIX=".img";
+	/**
+	 * 重新确认图片失败后，继续使用原缓存图片的时间
+	 */
+	private static final long RETRY_MILLIS=30000;
+	private static final StaticImageProcessor processor=new StaticImageProcessor();
+	private static boolean enabled=true;
+	private static long maxBytes=64L*1024*1024;
+	private static long ttlMillis=300000;
+	private static File directory;
+	private static long maxDiskBytes=512L*1024*1024;
+	private static int fetchThreads=8;
+	private static ExecutorService executor;
+	private static long totalBytes;
+	private static final Map<String,ImageEntry> entryMap=new LinkedHashMap<String,ImageEntry>(256,0.75f,true);
+	private static final Map<String,CompletableFuture<String>> loadingMap=new ConcurrentHashMap<String,CompletableFuture<String>>();
+	private static final AtomicLong diskBytes=new AtomicLong(-1);
+	private static final AtomicLong hits=new AtomicLong();
+	private static final AtomicLong misses=new AtomicLong();
+	private static final AtomicLong evictions=new AtomicLong();
+	private static final AtomicLong revalidations=new AtomicLong();
+
+	/**
+	 * @param path 图片路径
+	 * @param width 输出宽度，小于等于0时不缩放
+	 * @param height 输出高度，小于等于0时不缩放
+	 * @return 图片的base64数据
+	 */
+	public static String getBase64Data(String path,int width,int height){
+		String key=path+"|"+width+"x"+height;
+		ImageEntry entry=getEntry(key);
+		if(entry!=null && !entry.isExpired(System.currentTimeMillis())){
+			hits.incrementAndGet();
+			return entry.base64Data;
+		}
+		CompletableFuture<String> future=new CompletableFuture<String>();
+		CompletableFuture<String> loading=loadingMap.putIfAbsent(key, future);
+		if(loading!=null){
+			return waitFor(loading);
+		}
+		try{
+			String base64Data=load(key, path, width, height, entry);
+			future.complete(base64Data);
+			return base64Data;
+		}catch(RuntimeException ex){
+			future.completeExceptionally(ex);
+			throw ex;
+		}finally{
+			loadingMap.remove(key, future);
+		}
+	}
+
+	/**
+	 * 取得多张图片，返回结果与paths的顺序一致；内置HTTP(S)图片在线程池中并发读取，其它图片在调用线程中读取
+	 */
+	public static List<String> getBase64Datas(List<String> paths,final int width,final int height){
+		List<String> result=new ArrayList<String>(paths.size());
+		if(paths.size()<2 || fetchThreads<2){
+			for(String path:paths){
+				result.add(getBase64Data(path, width, height));
+			}
+			return result;
+		}
+		List<Future<String>> futures=new ArrayList<Future<String>>(paths.size());
+		for(final String path:paths){
+			futures.add(isBuildinRemote(path) ? getExecutor().submit(() -> getBase64Data(path, width, height)) : null);
+		}
+		for(int i=0;i<paths.size();i++){
+			Future<String> future=futures.get(i);
+			result.add(future==null ? getBase64Data(paths.get(i), width, height) : null);
+		}
+		for(int i=0;i<paths.size();i++){
+			Future<String> future=futures.get(i);
+			if(future!=null){
+				result.set(i, waitFor(future));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return 图片是否由内置的HTTP(S)图片提供者读取，只有这些图片可以放到线程池中读取
+	 */
+	private static boolean isBuildinRemote(String path){
+		ImageProvider provider;
+		try{
+			provider=processor.findImageProvider(path);
+		}catch(ReportComputeException ex){
+			return false;
+		}
+		Class<?> providerClass=provider.getClass();
+		return providerClass==HttpImageProvider.class || providerClass==HttpsImageProvider.class;
+	}
+
+	private static String load(String key,String path,int width,int height,ImageEntry staleEntry){
+		ImageProvider provider=processor.findImageProvider(path);
+		long now=System.currentTimeMillis();
+		ImageResource resource=null;
+		try{
+			if(provider instanceof ConditionalImageProvider){
+				ConditionalImageProvider conditionalProvider=(ConditionalImageProvider)provider;
+				if(staleEntry!=null && !staleEntry.failed && staleEntry.hasValidator()){
+					resource=conditionalProvider.getImage(path, staleEntry.etag, staleEntry.lastModified);
+					if(resource.isNotModified()){
+						revalidations.incrementAndGet();
+						ImageEntry entry=new ImageEntry(staleEntry.base64Data,staleEntry.etag,staleEntry.lastModified,now,false);
+						putEntry(key, entry, true);
+						return entry.base64Data;
+					}
+				}else{
+					resource=conditionalProvider.getImage(path, null, 0);
+				}
+			}else{
+				resource=new ImageResource(provider.getImage(path),null,0);
+			}
+		}catch(Exception ex){
+			if(staleEntry!=null && !staleEntry.failed){
+				Utils.logToConsole("~~~ Revalidate image ["+path+"] failed,keep cached picture:"+ex.getMessage());
+				long validatedAt=now-ttlMillis+Math.min(RETRY_MILLIS, ttlMillis);
+				ImageEntry entry=new ImageEntry(staleEntry.base64Data,staleEntry.etag,staleEntry.lastModified,validatedAt,false);
+				putEntry(key, entry, false);
+				return entry.base64Data;
+			}
+			Utils.logToConsole("~~~ Image ["+path+"] not exist,use default picture.");
+			resource=null;
+		}
+		misses.incrementAndGet();
+		boolean failed=resource==null;
+		InputStream inputStream=failed ? processor.getNotExistImage() : resource.getInputStream();
+		byte[] bytes=ImageUtils.toImageBytes(inputStream, width, height);
+		ImageEntry entry=new ImageEntry(Base64Utils.encodeToString(bytes),failed ? null : resource.getEtag(),failed ? 0 : resource.getLastModified(),now,failed);
+		putEntry(key, entry, !failed);
+		return entry.base64Data;
+	}
+
+	private static ImageEntry getEntry(String key){
+		ImageEntry entry=null;
+		synchronized(entryMap){
+			entry=entryMap.get(key);
+		}
+		if(entry==null && directory!=null){
+			entry=readFromDisk(key);
+			if(entry!=null){
+				putEntry(key, entry, false);
+			}
+		}
+		return entry;
+	}
+
+	private static void putEntry(String key,ImageEntry entry,boolean persist){
+		synchronized(entryMap){
+			ImageEntry old=entryMap.put(key, entry);
+			if(old!=null){
+				totalBytes-=old.base64Data.length();
+			}
+			totalBytes+=entry.base64Data.length();
+			Iterator<Map.Entry<String,ImageEntry>> iter=entryMap.entrySet().iterator();
+			while(totalBytes>maxBytes && iter.hasNext()){
+				Map.Entry<String,ImageEntry> eldest=iter.next();
+				if(eldest.getValue()==entry){
+					break;
+				}
+				totalBytes-=eldest.getValue().base64Data.length();
+				iter.remove();
+				evictions.incrementAndGet();
+			}
+		}
+		if(persist && directory!=null){
+			writeToDisk(key, entry);
+		}
+	}
+
+	private static File diskFile(String key){
+		return new File(directory,DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8))+FILE_SUFFIX);
+	}
+
+	private static ImageEntry readFromDisk(String key){
+		File file=diskFile(key);
+		if(!file.exists()){
+			return null;
+		}
+		try(DataInputStream input=new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+			if(!key.equals(input.readUTF())){
+				return null;
+			}
+			String etag=input.readUTF();
+			long lastModified=input.readLong();
+			long validatedAt=input.readLong();
+			byte[] bytes=new byte[input.readInt()];
+			input.readFully(bytes);
+			return new ImageEntry(Base64Utils.encodeToString(bytes),etag.length()==0 ? null : etag,lastModified,validatedAt,false);
+		}catch(IOException ex){
+			Utils.logToConsole("~~~ Read image cache file ["+file.getAbsolutePath()+"] failed:"+ex.getMessage());
+			return null;
+		}
+	}
+
+	private static void writeToDisk(String key,ImageEntry entry){
+		File file=diskFile(key);
+		byte[] bytes=Base64Utils.decodeFromString(entry.base64Data);
+		long oldLength=file.length();
+		File tempFile=new File(directory,file.getName()+"."+Thread.currentThread().getId()+".tmp");
+		try(DataOutputStream output=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))){
+			output.writeUTF(key);
+			output.writeUTF(entry.etag==null ? "" : entry.etag);
+			output.writeLong(entry.lastModified);
+			output.writeLong(entry.validatedAt);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}catch(IOException ex){
+			tempFile.delete();
+			Utils.logToConsole("~~~ Write image cache file ["+file.getAbsolutePath()+"] failed:"+ex.getMessage());
+			return;
+		}
+		file.delete();
+		if(!tempFile.renameTo(file)){
+			tempFile.delete();
+			return;
+		}
+		if(diskBytes.addAndGet(file.length()-oldLength)>maxDiskBytes){
+			trimDisk();
+		}
+	}
+
+	/**
+	 * 磁盘缓存超过上限时，按最后修改时间从旧到新删除，直到降到上限的80%
+	 */
+	private static synchronized void trimDisk(){
+		File[] files=directory.listFiles((dir,name) -> name.endsWith(FILE_SUFFIX));
+		if(files==null){
+			return;
+		}
+		long total=0;
+		for(File file:files){
+			total+=file.length();
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(int i=0;i<files.length && total>maxDiskBytes*0.8;i++){
+			long length=files[i].length();
+			if(files[i].delete()){
+				total-=length;
+			}
+		}
+		diskBytes.set(total);
+	}
+
+	private static String waitFor(Future<String> future){
+		try{
+			return future.get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new ReportComputeException(ex);
+		}catch(ExecutionException ex){
+			Throwable cause=ex.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error){
+				throw (Error)cause;
+			}
+			throw new ReportComputeException((Exception)cause);
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor(){
+		if(executor==null){
+			final AtomicInteger index=new AtomicInteger();
+			executor=Executors.newFixedThreadPool(fetchThreads, runnable -> {
+				Thread thread=new Thread(runnable,"ureport-image-fetch-"+index.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static CacheStatistics getStatistics(){
+		synchronized(entryMap){
+			return new CacheStatistics(hits.get(),misses.get(),evictions.get(),entryMap.size(),totalBytes);
+		}
+	}
+
+	public static long getRevalidationCount(){
+		return revalidations.get();
+	}
+
+	public static void clear(){
+		synchronized(entryMap){
+			entryMap.clear();
+			totalBytes=0;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		synchronized(ImageCache.class){
+			if(executor!=null){
+				executor.shutdownNow();
+				executor=null;
+			}
+		}
+	}
+
+	public void setEnabled(boolean enabled) {
+		ImageCache.enabled = enabled;
+	}
+
+	public void setMaxBytes(long maxBytes) {
+		ImageCache.maxBytes = maxBytes;
+	}
+
+	public void setTtlSeconds(int ttlSeconds) {
+		ImageCache.ttlMillis = ttlSeconds*1000L;
+	}
+
+	public void setMaxDiskBytes(long maxDiskBytes) {
+		ImageCache.maxDiskBytes = maxDiskBytes;
+	}
+
+	public void setFetchThreads(int fetchThreads) {
+		ImageCache.fetchThreads = fetchThreads;
+	}
+
+	public void setDirectory(String directory) {
+		if(StringUtils.isBlank(directory)){
+			ImageCache.directory=null;
+			return;
+		}
+		File dir=new File(directory);
+		if(!dir.exists() && !dir.mkdirs()){
+			Utils.logToConsole("~~~ Create image cache directory ["+dir.getAbsolutePath()+"] failed, disk cache disabled.");
+			ImageCache.directory=null;
+			return;
+		}
+		ImageCache.directory=dir;
+		trimDisk();
+	}
+
+	private static class ImageEntry {
+		private final String base64Data;
+		private final String etag;
+		private final long lastModified;
+		private final long validatedAt;
+		/**
+		 * 图片读取失败，缓存的是默认图片，过期后重新读取
+		 */
+		private final boolean failed;
+
+		ImageEntry(String base64Data,String etag,long lastModified,long validatedAt,boolean failed) {
+			this.base64Data=base64Data;
+			this.etag=etag;
+			this.lastModified=lastModified;
+			this.validatedAt=validatedAt;
+			this.failed=failed;
+		}
+
+		boolean isExpired(long now){
+			return now-validatedAt>=ttlMillis;
+		}
+
+		boolean hasValidator(){
+			return etag!=null || lastModified>0;
+		}
+	}
+}
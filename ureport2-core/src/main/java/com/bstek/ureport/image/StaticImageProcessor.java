@@ -34,6 +34,17 @@ public class StaticImageProcessor implements ImageProcessor<String> {
 	private Logger log=Logger.getGlobal();
 	@Override
 	public InputStream getImage(String path) {
+		ImageProvider targetImageProvider=findImageProvider(path);
+		try{
+			InputStream inputStream=targetImageProvider.getImage(path);
+			return inputStream;			
+		}catch(Exception ex){
+			log.warning("Image ["+path+"] not exist,use default picture.");
+			return getNotExistImage();
+		}
+	}
+
+	public ImageProvider findImageProvider(String path) {
 		Collection<ImageProvider> imageProviders=Utils.getImageProviders();
 		ImageProvider targetImageProvider=null;
 		for(ImageProvider provider:imageProviders){
@@ -45,18 +56,16 @@ public class StaticImageProcessor implements ImageProcessor<String> {
 		if(targetImageProvider==null){
 			throw new ReportComputeException("Unsupport image path :"+path);
 		}
-		try{
-			InputStream inputStream=targetImageProvider.getImage(path);
-			return inputStream;			
-		}catch(Exception ex){
-			ApplicationContext applicationContext=Utils.getApplicationContext();
-			log.warning("Image ["+path+"] not exist,use default picture.");
-			String imageNotExistPath="classpath:com/bstek/ureport/image/image-not-exist.jpg";
-			try {
-				return applicationContext.getResource(imageNotExistPath).getInputStream();
-			} catch (IOException e1) {
-				throw new ReportComputeException(e1);
-			}
+		return targetImageProvider;
+	}
+
+	public InputStream getNotExistImage() {
+		ApplicationContext applicationContext=Utils.getApplicationContext();
+		String imageNotExistPath="classpath:com/bstek/ureport/image/image-not-exist.jpg";
+		try {
+			return applicationContext.getResource(imageNotExistPath).getInputStream();
+		} catch (IOException e1) {
+			throw new ReportComputeException(e1);
 		}
 	}
 }
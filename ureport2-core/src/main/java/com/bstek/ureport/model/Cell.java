@@ -20,8 +20,6 @@ import java.awt.FontMetrics;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.net.URLEncoder;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -56,6 +54,8 @@ import com.bstek.ureport.expression.model.data.BindDataListExpressionData;
 import com.bstek.ureport.expression.model.data.ExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectExpressionData;
 import com.bstek.ureport.expression.model.data.ObjectListExpressionData;
+import com.bstek.ureport.utils.FormatUtils;
+import com.bstek.ureport.utils.TextMeasurer;
 import com.bstek.ureport.utils.UnitUtils;
 
 /**
@@ -129,6 +129,12 @@ public class Cell implements ReportCell {
 	 * 当前单元格所在列所有子格
 	 */
 	private Map<String,List<Cell>> columnChildrenCellsMap=new HashMap<String,List<Cell>>();
+	/**
+	 * 已将当前单元格加入其子格集合的左父格与上父格，判断是否重复添加时只需查看这里的几个父格，
+	 * 不需要在父格可能非常大的子格集合中逐个查找
+	 */
+	private List<Cell> addedRowParents;
+	private List<Cell> addedColumnParents;
 	
 	
 	private List<String> increaseSpanCellNames;
@@ -210,8 +216,12 @@ public class Cell implements ReportCell {
 			cells=new ArrayList<Cell>();
 			rowChildrenCellsMap.put(name, cells);
 		}
-		if(!cells.contains(child)){
-			cells.add(child);			
+		if(child.addedRowParents==null){
+			child.addedRowParents=new ArrayList<Cell>(4);
+		}
+		if(!child.addedRowParents.contains(this)){
+			child.addedRowParents.add(this);
+			cells.add(child);
 		}
 		if(leftParentCell!=null){
 			leftParentCell.addRowChild(child);
@@ -226,8 +236,12 @@ public class Cell implements ReportCell {
 			cells=new ArrayList<Cell>();
 			columnChildrenCellsMap.put(name, cells);
 		}
-		if(!cells.contains(child)){
-			cells.add(child);			
+		if(child.addedColumnParents==null){
+			child.addedColumnParents=new ArrayList<Cell>(4);
+		}
+		if(!child.addedColumnParents.contains(this)){
+			child.addedColumnParents.add(this);
+			cells.add(child);
 		}
 		if(topParentCell!=null){
 			topParentCell.addColumnChild(child);
@@ -268,22 +282,24 @@ public class Cell implements ReportCell {
 		if(StringUtils.isNotBlank(customFormat)){
 			format=customFormat;
 		}
-		if(StringUtils.isBlank(format) || data==null || StringUtils.isBlank(data.toString())){
+		if(StringUtils.isBlank(format) || data==null){
 			return;
 		}
 		if(data instanceof Date){
-			Date d=(Date)data;
-			SimpleDateFormat sd=new SimpleDateFormat(format);
-			formatData=sd.format(d);
+			formatData=FormatUtils.formatDate((Date)data, format);
+		}else if(data instanceof Number){
+			formatData=FormatUtils.formatNumber((Number)data, format);
 		}else{
+			if(StringUtils.isBlank(data.toString())){
+				return;
+			}
 			BigDecimal bd=null;
 			try{
 				bd=Utils.toBigDecimal(data);				
 			}catch(Exception ex){
 			}
 			if(bd!=null){				
-				DecimalFormat df=new DecimalFormat(format);
-				formatData=df.format(bd.doubleValue());
+				formatData=FormatUtils.formatNumber(bd.doubleValue(), format);
 			}
 		}
 	}
@@ -585,9 +601,8 @@ public class Cell implements ReportCell {
 			}
 		}
 		Font font=cellStyle.getFont();
-		JLabel jlabel=new JLabel();
-		FontMetrics fontMetrics=jlabel.getFontMetrics(font);
-		int textWidth=fontMetrics.stringWidth(dataText);
+		TextMeasurer measurer=TextMeasurer.getMeasurer(font);
+		int textWidth=measurer.stringWidth(dataText);
 		
 		double fontSize=cellStyle.getFontSize();
 		float lineHeight=1.2f;
@@ -599,44 +614,14 @@ public class Cell implements ReportCell {
 		if(textWidth<=totalColumnWidth){
 			return;
 		}
-		int totalLineHeight=0;
+		List<String> lines=measurer.breakLines(dataText, totalColumnWidth-4);
+		int totalLineHeight=singleLineHeight*lines.size();
 		StringBuilder multipleLine=new StringBuilder();
-		StringBuilder sb=new StringBuilder();
-		int length=dataText.length();
-		for(int i=0;i<length;i++){
-			char text=dataText.charAt(i);
-			if(text=='\r' || text=='\n'){
-				if(text=='\r'){
-					int nextIndex=i+1;
-					if(nextIndex<length){
-						char nextText=dataText.charAt(nextIndex);
-						if(nextText=='\n'){
-							i=nextIndex;
-						}
-					}
-				}
-				continue;
-			}
-			sb.append(text);
-			
-			int width=fontMetrics.stringWidth(sb.toString())+4;
-			if(width>totalColumnWidth){
-				sb.deleteCharAt(sb.length()-1);
-				totalLineHeight+=singleLineHeight;										
-				if(multipleLine.length()>0){
-					multipleLine.append('\n');
-				}
-				multipleLine.append(sb);
-				sb.delete(0, sb.length());
-				sb.append(text);
-			}
-		}
-		if(sb.length()>0){
-			totalLineHeight+=singleLineHeight;
+		for(String line:lines){
 			if(multipleLine.length()>0){
 				multipleLine.append('\n');
 			}
-			multipleLine.append(sb);
+			multipleLine.append(line);
 		}
 		this.formatData=multipleLine.toString();
 		int totalRowHeight=row.getHeight();
@@ -42,7 +42,7 @@ public class Column extends Line{
 	}
 	
 	public int getColumnNumber() {
-		return this.columns.indexOf(this)+1;
+		return indexIn(columns)+1;
 	}
 
 	public int getWidth() {
@@ -27,6 +27,20 @@ import com.bstek.ureport.definition.CellStyle;
 public abstract class Line{
 	private CellStyle customCellStyle;
 	private List<Cell> cells=new ArrayList<Cell>();
+	/**
+	 * 当前行或列在所属{@link LineList}中的块及块内位置，由LineList维护
+	 */
+	Object lineChunk;
+	int lineOffset;
+
+	/**
+	 * 返回当前对象在lines中的位置，lines为{@link LineList}时不需要遍历集合
+	 * @param lines 当前行或列所属的集合
+	 * @return 位置，不在集合中时返回-1
+	 */
+	protected int indexIn(List<? extends Line> lines){
+		return lines.indexOf(this);
+	}
 
 	public CellStyle getCustomCellStyle() {
 		return customCellStyle;
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 报表行、列使用的顺序集合：元素按顺序分成若干块存放，块的大小用树状数组(Fenwick tree)维护前缀和，
+ * 每个元素记录自己所在的块及块内位置。<br>
+ * 这样按下标取值、在任意位置插入或删除以及{@link #indexOf(Object)}都只需O(log n)加上块内移动的固定开销，
+ * 报表扩展时不断插入新行并查询行号不再是O(n²)。
+ * 同一个元素不应在集合中出现多次，也不应同时放入两个LineList，否则indexOf退化为逐个比较。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class LineList<T extends Line> extends AbstractList<T> implements RandomAccess {
+	/**
+	 * 块中元素超过该值的两倍时拆分
+	 */
+	private static final int CHUNK_SIZE=256;
+	private final List<Chunk> chunks=new ArrayList<Chunk>();
+	/**
+	 * 以块为单位的树状数组，下标从1开始，tree.length-1为可容纳的块数
+	 */
+	private int[] tree=new int[1];
+	private int size;
+	/**
+	 * 最近一次定位到的块及其起始下标，顺序访问时不需要再查树状数组，集合变动后失效
+	 */
+	private int cursorChunk=-1;
+	private int cursorStart;
+
+	public LineList() {
+	}
+
+	public LineList(List<? extends T> lines) {
+		addAll(lines);
+	}
+
+	@Override
+	public T get(int index) {
+		checkIndex(index, size);
+		int chunkIndex=locate(index);
+		return chunks.get(chunkIndex).get(index-cursorStart);
+	}
+
+	@Override
+	public T set(int index, T element) {
+		checkIndex(index, size);
+		int chunkIndex=locate(index);
+		Chunk chunk=chunks.get(chunkIndex);
+		int offset=index-cursorStart;
+		T old=chunk.get(offset);
+		chunk.items.set(offset, element);
+		element.lineChunk=chunk;
+		element.lineOffset=offset;
+		return old;
+	}
+
+	@Override
+	public void add(int index, T element) {
+		checkIndex(index, size+1);
+		int chunkIndex;
+		int offset;
+		if(chunks.isEmpty()){
+			Chunk chunk=new Chunk();
+			chunk.ordinal=0;
+			chunks.add(chunk);
+			chunkIndex=0;
+			offset=0;
+			rebuildTree();
+		}else if(index==size){
+			chunkIndex=chunks.size()-1;
+			offset=chunks.get(chunkIndex).items.size();
+		}else{
+			chunkIndex=locate(index);
+			offset=index-cursorStart;
+		}
+		Chunk chunk=chunks.get(chunkIndex);
+		chunk.items.add(offset, element);
+		chunk.renumber(offset);
+		size++;
+		modCount++;
+		cursorChunk=-1;
+		if(chunk.items.size()>CHUNK_SIZE*2){
+			split(chunkIndex);
+		}else{
+			updateTree(chunkIndex, 1);
+		}
+	}
+
+	@Override
+	public T remove(int index) {
+		checkIndex(index, size);
+		int chunkIndex=locate(index);
+		Chunk chunk=chunks.get(chunkIndex);
+		int offset=index-cursorStart;
+		T old=chunk.items.remove(offset);
+		if(old.lineChunk==chunk && old.lineOffset==offset){
+			old.lineChunk=null;
+		}
+		chunk.renumber(offset);
+		size--;
+		modCount++;
+		cursorChunk=-1;
+		if(chunk.items.isEmpty()){
+			chunks.remove(chunkIndex);
+			chunk.list=null;
+			for(int i=chunkIndex;i<chunks.size();i++){
+				chunks.get(i).ordinal=i;
+			}
+			rebuildTree();
+		}else{
+			updateTree(chunkIndex, -1);
+		}
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		for(Chunk chunk:chunks){
+			chunk.list=null;
+		}
+		chunks.clear();
+		tree=new int[1];
+		size=0;
+		modCount++;
+		cursorChunk=-1;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if(o instanceof Line){
+			Line line=(Line)o;
+			Object c=line.lineChunk;
+			if(c instanceof LineList.Chunk){
+				Chunk chunk=(Chunk)c;
+				if(chunk.list==this && line.lineOffset<chunk.items.size() && chunk.items.get(line.lineOffset)==line){
+					return prefixSum(chunk.ordinal)+line.lineOffset;
+				}
+			}
+		}
+		return super.indexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o)>-1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 找到index所在的块，同时将块的起始下标记录到cursorStart中
+	 */
+	private int locate(int index){
+		if(cursorChunk>-1){
+			int chunkSize=chunks.get(cursorChunk).items.size();
+			if(index>=cursorStart && index<cursorStart+chunkSize){
+				return cursorChunk;
+			}
+			int next=cursorChunk+1;
+			if(next<chunks.size() && index>=cursorStart+chunkSize && index<cursorStart+chunkSize+chunks.get(next).items.size()){
+				cursorStart+=chunkSize;
+				cursorChunk=next;
+				return next;
+			}
+		}
+		int pos=0,remain=index;
+		int step=Integer.highestOneBit(tree.length-1);
+		for(;step>0;step>>=1){
+			int next=pos+step;
+			if(next<tree.length && tree[next]<=remain){
+				pos=next;
+				remain-=tree[next];
+			}
+		}
+		cursorChunk=pos;
+		cursorStart=index-remain;
+		return pos;
+	}
+
+	private void split(int chunkIndex){
+		Chunk chunk=chunks.get(chunkIndex);
+		List<T> items=chunk.items;
+		int half=items.size()/2;
+		Chunk newChunk=new Chunk();
+		newChunk.items.addAll(items.subList(half, items.size()));
+		items.subList(half, items.size()).clear();
+		newChunk.renumber(0);
+		chunks.add(chunkIndex+1, newChunk);
+		for(int i=chunkIndex+1;i<chunks.size();i++){
+			chunks.get(i).ordinal=i;
+		}
+		rebuildTree();
+	}
+
+	private void rebuildTree(){
+		int count=chunks.size();
+		int[] newTree=new int[Math.max(count*2, 16)+1];
+		for(int i=1;i<newTree.length;i++){
+			if(i<=count){
+				newTree[i]+=chunks.get(i-1).items.size();
+			}
+			int parent=i+(i&-i);
+			if(parent<newTree.length){
+				newTree[parent]+=newTree[i];
+			}
+		}
+		tree=newTree;
+	}
+
+	private void updateTree(int chunkIndex,int delta){
+		for(int i=chunkIndex+1;i<tree.length;i+=i&-i){
+			tree[i]+=delta;
+		}
+	}
+
+	/**
+	 * @return 前chunkIndex个块中元素的总数
+	 */
+	private int prefixSum(int chunkIndex){
+		int sum=0;
+		for(int i=chunkIndex;i>0;i-=i&-i){
+			sum+=tree[i];
+		}
+		return sum;
+	}
+
+	private static void checkIndex(int index,int bound){
+		if(index<0 || index>=bound){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+bound);
+		}
+	}
+
+	private class Chunk{
+		private final List<T> items=new ArrayList<T>(CHUNK_SIZE*2+1);
+		private LineList<T> list=LineList.this;
+		private int ordinal;
+
+		private T get(int offset){
+			return items.get(offset);
+		}
+
+		private void renumber(int from){
+			for(int i=from;i<items.size();i++){
+				T line=items.get(i);
+				line.lineChunk=this;
+				line.lineOffset=i;
+			}
+		}
+	}
+}
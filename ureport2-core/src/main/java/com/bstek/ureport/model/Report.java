@@ -27,6 +27,7 @@ import com.bstek.ureport.definition.Band;
 import com.bstek.ureport.definition.ConditionPropertyItem;
 import com.bstek.ureport.definition.HeaderFooterDefinition;
 import com.bstek.ureport.definition.Paper;
+import com.bstek.ureport.exception.ReportComputeException;
 
 /**
  * @author Jacky.gao
@@ -50,6 +51,7 @@ public class Report {
 	private List<Cell> lazyComputeCells=new ArrayList<Cell>();
 	private Map<Row,Map<Column,Cell>> rowColCellMap=new HashMap<Row,Map<Column,Cell>>();
 	private Map<String,List<Cell>> cellsMap=new HashMap<String,List<Cell>>();
+	private volatile boolean shared;
 	public void insertRow(Row row,int rowNumber){
 		int pos=rowNumber-1;
 		rows.add(pos,row);
@@ -135,10 +137,12 @@ public class Report {
 		return pages;
 	}
 	public void setPages(List<Page> pages) {
+		checkNotShared();
 		this.pages = pages;
 	}
 	
 	public void rePaging(Paper paper){
+		checkNotShared();
 		paper.setColumnCount(this.paper.getColumnCount());
 		paper.setColumnEnabled(this.paper.isColumnEnabled());
 		paper.setFixRows(this.paper.getFixRows());
@@ -147,6 +151,23 @@ public class Report {
 		pages=PagingBuilder.buildPages(this);
 	}
 	
+	/**
+	 * 标记报表已放入已计算报表缓存、会被多个请求同时使用，之后不能再重新分页或修改纸张
+	 */
+	public void markShared(){
+		this.shared=true;
+	}
+	
+	public boolean isShared() {
+		return shared;
+	}
+	
+	private void checkNotShared(){
+		if(shared){
+			throw new ReportComputeException("Report ["+reportFullName+"] is shared by computed report cache and can not be modified.");
+		}
+	}
+	
 	public Context getContext() {
 		return context;
 	}
@@ -164,6 +185,7 @@ public class Report {
 		return paper;
 	}
 	public void setPaper(Paper paper) {
+		checkNotShared();
 		this.paper = paper;
 	}
 	public Map<String, List<Cell>> getCellsMap() {
@@ -63,7 +63,7 @@ public class Row extends Line{
 	}
 
 	public int getRowNumber() {
-		return rows.indexOf(this)+1;
+		return indexIn(rows)+1;
 	}
 	public int getHeight() {
 		return height;
@@ -71,6 +71,10 @@ public class ReportParser {
 			if(!element.getName().equals("ureport")){
 				throw new ReportParseException("Unknow report file.");
 			}
+			String parallelDatasets=element.attributeValue("parallel-datasets");
+			if(StringUtils.isNotBlank(parallelDatasets)){
+				report.setParallelDatasets(Boolean.valueOf(parallelDatasets));
+			}
 			List<RowDefinition> rows=new ArrayList<RowDefinition>();
 			List<ColumnDefinition> columns=new ArrayList<ColumnDefinition>();
 			List<CellDefinition> cells=new ArrayList<CellDefinition>();
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.provider.image;
+
+/**
+ * 支持按ETag与Last-Modified做条件请求的图片提供者，图片缓存过期后用它确认远程图片是否变化
+ * @author jackie
+ * @since 2.2.10
+ */
+public interface ConditionalImageProvider extends ImageProvider {
+	/**
+	 * @param path 图片路径
+	 * @param etag 上次取得的ETag，没有时为null
+	 * @param lastModified 上次取得的最后修改时间，没有时为0
+	 * @return 图片未变化时返回{@link ImageResource#notModified()}
+	 */
+	ImageResource getImage(String path,String etag,long lastModified);
+}
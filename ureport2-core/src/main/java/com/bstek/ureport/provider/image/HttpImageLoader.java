@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.provider.image;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+
+/**
+ * HTTP与HTTPS图片提供者共用的读取逻辑：设置超时并发送条件请求头
+ * @author jackie
+ * @since 2.2.10
+ */
+final class HttpImageLoader {
+	private HttpImageLoader(){}
+
+	static ImageResource load(URLConnection connection,String etag,long lastModified,int connectTimeout,int readTimeout) throws IOException{
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		if(etag!=null){
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		if(lastModified>0){
+			connection.setIfModifiedSince(lastModified);
+		}
+		connection.connect();
+		if(connection instanceof HttpURLConnection){
+			HttpURLConnection httpConnection=(HttpURLConnection)connection;
+			if(httpConnection.getResponseCode()==HttpURLConnection.HTTP_NOT_MODIFIED){
+				httpConnection.disconnect();
+				return ImageResource.notModified();
+			}
+		}
+		return new ImageResource(connection.getInputStream(),connection.getHeaderField("ETag"),connection.getLastModified());
+	}
+}
@@ -25,16 +25,21 @@ import com.bstek.ureport.exception.ReportException;
  * @author Jacky.gao
  * @since 2017年12月11日
  */
-public class HttpImageProvider implements ImageProvider {
+public class HttpImageProvider implements ConditionalImageProvider {
+	private int connectTimeout=5000;
+	private int readTimeout=15000;
 
 	@Override
 	public InputStream getImage(String path) {
+		return getImage(path, null, 0).getInputStream();
+	}
+
+	@Override
+	public ImageResource getImage(String path, String etag, long lastModified) {
 		try{
 			URL url=new URL(path);
 			URLConnection connection=url.openConnection();
-			connection.connect();
-			InputStream inputStream=connection.getInputStream();
-			return inputStream;
+			return HttpImageLoader.load(connection, etag, lastModified, connectTimeout, readTimeout);
 		}catch(Exception ex){
 			throw new ReportException(ex);
 		}
@@ -45,4 +50,11 @@ public class HttpImageProvider implements ImageProvider {
 		return path.startsWith("http:");
 	}
 
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
 }
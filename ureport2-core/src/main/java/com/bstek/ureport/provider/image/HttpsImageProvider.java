@@ -26,16 +26,21 @@ import com.bstek.ureport.exception.ReportException;
  * @author Jacky.gao
  * @since 2017年12月22日
  */
-public class HttpsImageProvider implements ImageProvider {
+public class HttpsImageProvider implements ConditionalImageProvider {
+	private int connectTimeout=5000;
+	private int readTimeout=15000;
 
 	@Override
 	public InputStream getImage(String path) {
+		return getImage(path, null, 0).getInputStream();
+	}
+
+	@Override
+	public ImageResource getImage(String path, String etag, long lastModified) {
 		try{
 			URL url=new URL(path);
 			HttpsURLConnection connection=(HttpsURLConnection)url.openConnection();
-			connection.connect();
-			InputStream inputStream=connection.getInputStream();
-			return inputStream;
+			return HttpImageLoader.load(connection, etag, lastModified, connectTimeout, readTimeout);
 		}catch(Exception ex){
 			throw new ReportException(ex);
 		}
@@ -46,4 +51,11 @@ public class HttpsImageProvider implements ImageProvider {
 		return path.startsWith("https:");
 	}
 
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
 }
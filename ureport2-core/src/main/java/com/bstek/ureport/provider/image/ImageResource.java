@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.provider.image;
+
+import java.io.InputStream;
+
+/**
+ * 带缓存校验信息的图片读取结果，notModified为true时表示图片未变化，此时没有输入流
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ImageResource {
+	private static final ImageResource NOT_MODIFIED=new ImageResource(null,null,0);
+	private final InputStream inputStream;
+	private final String etag;
+	private final long lastModified;
+
+	public ImageResource(InputStream inputStream,String etag,long lastModified) {
+		this.inputStream=inputStream;
+		this.etag=etag;
+		this.lastModified=lastModified;
+	}
+
+	public static ImageResource notModified(){
+		return NOT_MODIFIED;
+	}
+
+	public boolean isNotModified() {
+		return this==NOT_MODIFIED;
+	}
+
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+}
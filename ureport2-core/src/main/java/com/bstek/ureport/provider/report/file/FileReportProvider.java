@@ -118,6 +118,10 @@ public class FileReportProvider implements ReportProvider, ApplicationContextAwa
         this.disabled = disabled;
     }
 
+    public String getFileStoreDir() {
+        return fileStoreDir;
+    }
+
     public void setFileStoreDir(String fileStoreDir) {
         this.fileStoreDir = fileStoreDir;
     }
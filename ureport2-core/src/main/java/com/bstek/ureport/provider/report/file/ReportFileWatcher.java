@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.provider.report.file;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.export.ReportRender;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 监听{@link FileReportProvider}的报表存储目录，报表模版文件新增、修改或删除后移除对应的模版定义缓存及已计算报表缓存，
+ * 开启reparse时在文件稳定debounceMillis毫秒后于后台重新解析；开启prewarm时在容器启动完成后并发解析目录中所有报表模版，
+ * 使第一次请求不必承担解析模版的开销。
+ *
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ReportFileWatcher implements ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+    private static final String SUFFIX = ".ureport.xml";
+    private FileReportProvider fileReportProvider;
+    private ReportRender reportRender;
+    private boolean enabled = true;
+    private boolean reparse;
+    private boolean prewarm;
+    private int prewarmThreads = 4;
+    private long debounceMillis = 300;
+    private boolean started;
+    private File directory;
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile ScheduledExecutorService reparseExecutor;
+    private final Map<String, ScheduledFuture<?>> pendingMap = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized void onApplicationEvent(ContextRefreshedEvent event) {
+        // Web应用中子容器刷新时也会发布该事件，只需启动一次
+        if (started || fileReportProvider == null || fileReportProvider.disabled()) {
+            return;
+        }
+        started = true;
+        directory = new File(fileReportProvider.getFileStoreDir());
+        if (!directory.isDirectory()) {
+            return;
+        }
+        if (prewarm) {
+            prewarm();
+        }
+        if (enabled) {
+            startWatch();
+        }
+    }
+
+    private void prewarm() {
+        List<String> names = listReportFiles();
+        if (names.isEmpty()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final AtomicInteger failed = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, prewarmThreads), daemonFactory("ureport-report-prewarm-"));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(names.size());
+        for (final String name : names) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                String file = fileReportProvider.getPrefix() + name;
+                try {
+                    reportRender.getReportDefinition(file);
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    Utils.logToConsole("~~~ Prewarm report [" + file + "] failed:" + ex.getMessage());
+                }
+            }, executor));
+        }
+        final int total = names.size();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            executor.shutdown();
+            Utils.logToConsole("~~~ Prewarmed " + (total - failed.get()) + "/" + total + " report definitions in " + (System.currentTimeMillis() - start) + "ms");
+        });
+    }
+
+    private void startWatch() {
+        try {
+            watchService = directory.toPath().getFileSystem().newWatchService();
+            directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException ex) {
+            Utils.logToConsole("~~~ Watch report directory [" + directory.getAbsolutePath() + "] failed:" + ex.getMessage());
+            return;
+        }
+        if (reparse) {
+            reparseExecutor = Executors.newSingleThreadScheduledExecutor(daemonFactory("ureport-report-reparse-"));
+        }
+        watchThread = new Thread(this::watch, "ureport-report-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // 事件过多丢失时无法确定哪些文件变化，目录中的模版全部视为已修改
+                    for (String name : listReportFiles()) {
+                        fileChanged(name, true);
+                    }
+                    continue;
+                }
+                Path path = (Path) event.context();
+                fileChanged(path.toString(), event.kind() != StandardWatchEventKinds.ENTRY_DELETE);
+            }
+            if (!key.reset()) {
+                Utils.logToConsole("~~~ Report directory [" + directory.getAbsolutePath() + "] is no longer accessible, stop watching.");
+                return;
+            }
+        }
+    }
+
+    private void fileChanged(final String name, boolean exists) {
+        if (!name.endsWith(SUFFIX)) {
+            return;
+        }
+        final String file = fileReportProvider.getPrefix() + name;
+        reportRender.invalidate(file);
+        if (Utils.isDebug()) {
+            Utils.logToConsole("~~~ Report [" + file + "] changed, cached definition evicted.");
+        }
+        ScheduledExecutorService executor = reparseExecutor;
+        if (executor == null || !exists) {
+            return;
+        }
+        // 编辑器保存文件时通常会产生多次修改事件，等文件稳定后只解析一次
+        ScheduledFuture<?> future;
+        try {
+            future = executor.schedule(() -> {
+                pendingMap.remove(file);
+                if (!new File(directory, name).isFile()) {
+                    return;
+                }
+                try {
+                    reportRender.reloadReportDefinition(file);
+                } catch (Exception ex) {
+                    reportRender.invalidate(file);
+                    Utils.logToConsole("~~~ Reparse report [" + file + "] failed:" + ex.getMessage());
+                }
+            }, debounceMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            return;
+        }
+        ScheduledFuture<?> previous = pendingMap.put(file, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private List<String> listReportFiles() {
+        List<String> names = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return names;
+        }
+        for (File f : files) {
+            if (f.isFile() && f.getName().endsWith(SUFFIX)) {
+                names.add(f.getName());
+            }
+        }
+        return names;
+    }
+
+    private static ThreadFactory daemonFactory(final String namePrefix) {
+        final AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                Utils.logToConsole("~~~ Close report directory watcher failed:" + ex.getMessage());
+            }
+            watchService = null;
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        if (reparseExecutor != null) {
+            reparseExecutor.shutdownNow();
+            reparseExecutor = null;
+        }
+        pendingMap.clear();
+    }
+
+    public void setFileReportProvider(FileReportProvider fileReportProvider) {
+        this.fileReportProvider = fileReportProvider;
+    }
+
+    public void setReportRender(ReportRender reportRender) {
+        this.reportRender = reportRender;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setReparse(boolean reparse) {
+        this.reparse = reparse;
+    }
+
+    public void setPrewarm(boolean prewarm) {
+        this.prewarm = prewarm;
+    }
+
+    public void setPrewarmThreads(int prewarmThreads) {
+        this.prewarmThreads = prewarmThreads;
+    }
+
+    public void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+}
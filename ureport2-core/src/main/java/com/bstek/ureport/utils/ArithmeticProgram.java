@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.List;
+
+import com.bstek.ureport.expression.model.Operator;
+
+/**
+ * 将"操作数 运算符 操作数..."形式的四则运算预先编译成后缀指令，
+ * 运算时直接对操作数值求值，不再拼接字符串后交给{@link ElCompute}重新解析。<br>
+ * 运算规则与{@link ElCompute}保持一致：乘除模优先于加减、同级从左到右；
+ * 任一操作数为字符串时，加号做字符串拼接，其它运算符以"左值+运算符+右值"拼成字符串；
+ * 数字运算结果为BigDecimal，整数的加减乘模先用long计算，溢出或遇到小数时才转为BigDecimal。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ArithmeticProgram {
+	private static final byte LONG=0,DECIMAL=1,STRING=2;
+	private static final Operator[] OPERATORS=Operator.values();
+	/**
+	 * 后缀指令，大于等于0表示操作数下标，小于0表示运算符，值为-(运算符序号+1)
+	 */
+	private final int[] instructions;
+	private final int operandSize;
+
+	public ArithmeticProgram(List<Operator> operators) {
+		operandSize=operators.size()+1;
+		instructions=new int[operandSize+operators.size()];
+		Operator[] opStack=new Operator[operators.size()];
+		int pos=0,top=-1;
+		for(int i=0;i<operandSize;i++){
+			instructions[pos++]=i;
+			if(i==operators.size()){
+				break;
+			}
+			Operator op=operators.get(i);
+			while(top>-1 && priority(opStack[top])>=priority(op)){
+				instructions[pos++]=encode(opStack[top--]);
+			}
+			opStack[++top]=op;
+		}
+		while(top>-1){
+			instructions[pos++]=encode(opStack[top--]);
+		}
+	}
+
+	/**
+	 * 对操作数执行运算
+	 * @param operands 操作数，数量为运算符数量加1
+	 * @return 运算结果；如果存在无法按类型直接运算的操作数(如日期)则返回null，由调用方走字符串解析的方式
+	 */
+	public Object execute(Object[] operands){
+		byte[] types=new byte[operandSize];
+		long[] longs=new long[operandSize];
+		Object[] objects=new Object[operandSize];
+		int top=-1;
+		for(int instruction:instructions){
+			if(instruction>-1){
+				top++;
+				Object obj=operands[instruction];
+				if(obj==null){
+					obj="";
+				}
+				if(obj instanceof String){
+					types[top]=STRING;
+					objects[top]=obj;
+				}else if(obj instanceof Integer || obj instanceof Long || obj instanceof Short || obj instanceof Byte){
+					types[top]=LONG;
+					longs[top]=((Number)obj).longValue();
+				}else if(obj instanceof BigDecimal){
+					types[top]=DECIMAL;
+					objects[top]=obj;
+				}else if(obj instanceof BigInteger){
+					types[top]=DECIMAL;
+					objects[top]=new BigDecimal((BigInteger)obj);
+				}else if(obj instanceof Number){
+					try{
+						objects[top]=new BigDecimal(obj.toString());
+					}catch(NumberFormatException ex){
+						return null;
+					}
+					types[top]=DECIMAL;
+				}else{
+					return null;
+				}
+				continue;
+			}
+			Operator op=OPERATORS[-instruction-1];
+			int left=top-1,right=top;
+			top--;
+			byte leftType=types[left],rightType=types[right];
+			if(leftType==STRING || rightType==STRING){
+				String leftStr=toString(leftType,longs[left],objects[left]);
+				String rightStr=toString(rightType,longs[right],objects[right]);
+				types[left]=STRING;
+				if(op.equals(Operator.Add)){
+					objects[left]=leftStr+rightStr;
+				}else{
+					objects[left]=leftStr+op+rightStr;
+				}
+				continue;
+			}
+			if(leftType==LONG && rightType==LONG && computeLong(op,longs,left,right)){
+				continue;
+			}
+			BigDecimal b1=toBigDecimal(leftType,longs[left],objects[left]);
+			BigDecimal b2=toBigDecimal(rightType,longs[right],objects[right]);
+			types[left]=DECIMAL;
+			objects[left]=computeDecimal(op,b1,b2);
+		}
+		switch(types[0]){
+		case LONG:
+			return BigDecimal.valueOf(longs[0]);
+		default:
+			return objects[0];
+		}
+	}
+
+	private boolean computeLong(Operator op,long[] longs,int left,int right){
+		long l1=longs[left],l2=longs[right];
+		try{
+			switch(op){
+			case Add:
+				longs[left]=Math.addExact(l1, l2);
+				return true;
+			case Subtract:
+				longs[left]=Math.subtractExact(l1, l2);
+				return true;
+			case Multiply:
+				longs[left]=Math.multiplyExact(l1, l2);
+				return true;
+			case Complementation:
+				if(l2==0){
+					return false;
+				}
+				longs[left]=l1%l2;
+				return true;
+			default:
+				return false;
+			}
+		}catch(ArithmeticException ex){
+			return false;
+		}
+	}
+
+	private BigDecimal computeDecimal(Operator op,BigDecimal b1,BigDecimal b2){
+		switch(op){
+		case Add:
+			return b1.add(b2);
+		case Subtract:
+			return b1.subtract(b2);
+		case Multiply:
+			return b1.multiply(b2);
+		case Divide:
+			return b1.divide(b2,10,RoundingMode.HALF_UP).stripTrailingZeros();
+		case Complementation:
+			return b1.divideAndRemainder(b2)[1];
+		}
+		throw new RuntimeException("Unkown operate "+op+"");
+	}
+
+	private BigDecimal toBigDecimal(byte type,long longValue,Object obj){
+		if(type==LONG){
+			return BigDecimal.valueOf(longValue);
+		}
+		return (BigDecimal)obj;
+	}
+
+	private String toString(byte type,long longValue,Object obj){
+		if(type==LONG){
+			return String.valueOf(longValue);
+		}
+		return obj.toString();
+	}
+
+	private int priority(Operator op){
+		if(op.equals(Operator.Add) || op.equals(Operator.Subtract)){
+			return 0;
+		}
+		return 1;
+	}
+
+	private int encode(Operator op){
+		return -(op.ordinal()+1);
+	}
+}
@@ -15,10 +15,8 @@
  ******************************************************************************/
 package com.bstek.ureport.utils;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import com.bstek.ureport.Utils;
 import com.bstek.ureport.build.Context;
 import com.bstek.ureport.definition.value.DatasetValue;
 import com.bstek.ureport.definition.value.ExpressionValue;
@@ -54,41 +52,34 @@ public class DataUtils {
 		}else if(topList==null){
 			return leftList;
 		}else{
-			List<Object> list=null;
-			Object data=null;
-			String prop=null;
-			if(leftList.size()>topList.size()){
-				list=topList;
-				data=leftCell.getData();
-				Value value=leftCell.getValue();
-				DatasetExpression de=fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}else{
-				list=leftList;
-				data=topCell.getData();
-				Value value=topCell.getValue();
-				DatasetExpression de=fetchDatasetExpression(value);
-				if(de==null){
-					throw new ReportComputeException("Unsupport value : "+value);
-				}
-				prop=de.getProperty();
-			}
-			List<Object> result=new ArrayList<Object>();
-			for(Object obj:list){
-				Object o=Utils.getProperty(obj, prop);
-				if((o==null && data==null)){
-					result.add(obj);
-				}else if(o!=null && o.equals(data)){
-					result.add(obj);
-				}else if(data!=null && data.equals(o)){
-					result.add(obj);
-				}
-			}
-			return result;
+			return fetchCrossData(leftCell, topCell, context);
+		}
+	}
+	
+	/**
+	 * 取左父格与上父格绑定数据的交叉部分：在数据较少的一方中取出属性值等于另一方单元格值的行
+	 * @param leftCell 左父格
+	 * @param topCell 上父格
+	 * @param context 上下文
+	 * @return 交叉部分的数据
+	 */
+	public static List<Object> fetchCrossData(Cell leftCell,Cell topCell,Context context){
+		List<Object> leftList=leftCell.getBindData(),topList=topCell.getBindData();
+		List<Object> list=null;
+		Cell dataCell=null;
+		if(leftList.size()>topList.size()){
+			list=topList;
+			dataCell=leftCell;
+		}else{
+			list=leftList;
+			dataCell=topCell;
+		}
+		Value value=dataCell.getValue();
+		DatasetExpression de=fetchDatasetExpression(value);
+		if(de==null){
+			throw new ReportComputeException("Unsupport value : "+value);
 		}
+		return context.fetchGroupRows(list, de.getProperty(), dataCell.getData());
 	}
 	public static Cell fetchLeftCell(Cell cell, Context context,String datasetName){
 		Cell targetCell=null;
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.utils;
+
+import java.text.DecimalFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 数字与日期格式化器的注册表，每个格式只编译一次，按线程各持有一份DecimalFormat与SimpleDateFormat实例，
+ * 避免每个单元格格式化时都重新创建格式化器；格式化结果与直接new DecimalFormat/SimpleDateFormat完全一致。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class FormatUtils {
+	/**
+	 * 每个线程最多缓存的格式数，格式来自表达式参数时可能不断变化，超过后淘汰最久未使用的格式
+	 */
+	private static final int MAX_PATTERNS=64;
+	private static final ThreadLocal<Map<String,DecimalFormat>> decimalFormats=ThreadLocal.withInitial(() -> new PatternMap<DecimalFormat>());
+	private static final ThreadLocal<Map<String,SimpleDateFormat>> dateFormats=ThreadLocal.withInitial(() -> new PatternMap<SimpleDateFormat>());
+
+	/**
+	 * 按数字的实际类型格式化，整数类型直接按long格式化，其余按double格式化
+	 */
+	public static String formatNumber(Number number,String pattern){
+		if(number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte){
+			return formatNumber(number.longValue(), pattern);
+		}
+		return formatNumber(number.doubleValue(), pattern);
+	}
+
+	public static String formatNumber(long value,String pattern){
+		return getDecimalFormat(pattern).format(value);
+	}
+
+	public static String formatNumber(double value,String pattern){
+		return getDecimalFormat(pattern).format(value);
+	}
+
+	public static String formatDate(Date date,String pattern){
+		return getDateFormat(pattern).format(date);
+	}
+
+	public static Date parseDate(String text,String pattern) throws ParseException{
+		return getDateFormat(pattern).parse(text);
+	}
+
+	/**
+	 * 返回的实例只能在当前线程中使用，且不能修改其设置
+	 */
+	public static DecimalFormat getDecimalFormat(String pattern){
+		Map<String,DecimalFormat> map=decimalFormats.get();
+		DecimalFormat format=map.get(pattern);
+		if(format==null){
+			format=new DecimalFormat(pattern);
+			map.put(pattern, format);
+		}
+		return format;
+	}
+
+	/**
+	 * 返回的实例只能在当前线程中使用，且不能修改其设置
+	 */
+	public static SimpleDateFormat getDateFormat(String pattern){
+		Map<String,SimpleDateFormat> map=dateFormats.get();
+		SimpleDateFormat format=map.get(pattern);
+		if(format==null){
+			format=new SimpleDateFormat(pattern);
+			map.put(pattern, format);
+		}
+		return format;
+	}
+
+	private static class PatternMap<T> extends LinkedHashMap<String,T>{
+		private static final long serialVersionUID = 1L;
+		PatternMap() {
+			super(16,0.75f,true);
+		}
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,T> eldest) {
+			return size()>MAX_PATTERNS;
+		}
+	}
+}
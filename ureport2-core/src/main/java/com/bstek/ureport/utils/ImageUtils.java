@@ -20,7 +20,9 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.imageio.ImageIO;
@@ -30,6 +32,7 @@ import org.springframework.util.Base64Utils;
 
 import com.bstek.ureport.exception.ReportComputeException;
 import com.bstek.ureport.image.ChartImageProcessor;
+import com.bstek.ureport.image.ImageCache;
 import com.bstek.ureport.image.ImageProcessor;
 import com.bstek.ureport.image.ImageType;
 import com.bstek.ureport.image.StaticImageProcessor;
@@ -55,11 +58,36 @@ public class ImageUtils {
 	
 	@SuppressWarnings("unchecked")
 	public static String getImageBase64Data(ImageType type,Object data,int width,int height){
+		if(type==ImageType.image && data instanceof String && ImageCache.isEnabled()){
+			return ImageCache.getBase64Data((String)data, width, height);
+		}
 		ImageProcessor<Object> targetProcessor=(ImageProcessor<Object>)imageProcessorMap.get(type);
 		if(targetProcessor==null){
 			throw new ReportComputeException("Unknow image type :"+type);
 		}
 		InputStream inputStream = targetProcessor.getImage(data);
+		byte[] bytes=toImageBytes(inputStream, width, height);
+		return Base64Utils.encodeToString(bytes);
+	}
+	
+	/**
+	 * 取得多张图片的base64数据，启用图片缓存时并发读取，返回结果与paths的顺序一致
+	 */
+	public static List<String> getImageBase64Datas(List<String> paths,int width,int height){
+		if(ImageCache.isEnabled()){
+			return ImageCache.getBase64Datas(paths, width, height);
+		}
+		List<String> list=new ArrayList<String>(paths.size());
+		for(String path:paths){
+			list.add(getImageBase64Data(ImageType.image, path, width, height));
+		}
+		return list;
+	}
+	
+	/**
+	 * 读取图片，宽高都大于0时缩放为指定大小的PNG，读取完成后关闭输入流
+	 */
+	public static byte[] toImageBytes(InputStream inputStream,int width,int height){
 		try{
 			if(width>0 && height>0){
 				BufferedImage inputImage=ImageIO.read(inputStream);
@@ -69,10 +97,9 @@ public class ImageUtils {
 		        g.dispose();
 		        ByteArrayOutputStream outputStream=new ByteArrayOutputStream();
 		        ImageIO.write(outputImage, "png", outputStream);
-		        inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+		        return outputStream.toByteArray();
 			}
-			byte[] bytes=IOUtils.toByteArray(inputStream);
-			return Base64Utils.encodeToString(bytes);
+			return IOUtils.toByteArray(inputStream);
 		}catch(Exception ex){
 			throw new ReportComputeException(ex);
 		}finally{
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.utils;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.ListIterator;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.build.BindData;
+import com.bstek.ureport.definition.Order;
+
+/**
+ * 分组、排序时使用的排序工具，排序前为每个元素只计算一次排序键：日期取毫秒数，整数取long，其它数字取double，
+ * 包含BigDecimal时取BigDecimal，其余取字符串，之后按下标做稳定的归并排序，比较时不再创建任何对象。<br>
+ * 排序结果与按第一个值的类型比较的原有规则一致。<br>
+ * 原有比较规则中只要有一个值为null就返回1，null的位置取决于排序过程中的比较顺序，
+ * 为了不改变报表的输出，含有null时仍用与原来相同的TimSort及相同的比较结果排序，只是比较时使用预先算好的排序键。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class OrderUtils {
+	private static final int INSERTION_SORT_THRESHOLD=16;
+
+	public static void sortBindDataList(List<BindData> list,Order order){
+		if(order==null || order.equals(Order.none) || list.size()<2){
+			return;
+		}
+		Object[] items=list.toArray();
+		Object[] values=new Object[items.length];
+		for(int i=0;i<items.length;i++){
+			values[i]=((BindData)items[i]).getValue();
+		}
+		sort(list, items, values, order.equals(Order.desc));
+	}
+
+	public static void sortValues(List<?> list,Order order){
+		if(order==null || order.equals(Order.none) || list.size()<2){
+			return;
+		}
+		Object[] items=list.toArray();
+		sort(list, items, items, order.equals(Order.desc));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void sort(List<?> list,Object[] items,Object[] values,boolean desc){
+		int size=items.length;
+		int[] index=new int[size];
+		int count=0;
+		for(int i=0;i<size;i++){
+			if(values[i]!=null){
+				index[count++]=i;
+			}
+		}
+		if(count<size){
+			legacySort(index, count, values, desc);
+		}else{
+			KeyComparator comparator=buildComparator(values, index, count, desc);
+			mergeSort(index, new int[count], 0, count, comparator);
+		}
+		ListIterator<Object> iter=(ListIterator<Object>)list.listIterator();
+		for(int i=0;i<size;i++){
+			iter.next();
+			iter.set(items[index[i]]);
+		}
+	}
+
+	/**
+	 * 含有null时与原有的Collections.sort排序保持一致，排序结果写回index
+	 */
+	private static void legacySort(int[] index,int count,final Object[] values,boolean desc){
+		int size=values.length;
+		final KeyComparator comparator=count>0 ? buildComparator(values, index, count, desc) : null;
+		Integer[] positions=new Integer[size];
+		for(int i=0;i<size;i++){
+			positions[i]=i;
+		}
+		Arrays.sort(positions, (a,b) -> {
+			if(values[a]==null || values[b]==null){
+				return 1;
+			}
+			return comparator.compare(a, b);
+		});
+		for(int i=0;i<size;i++){
+			index[i]=positions[i];
+		}
+	}
+
+	private static KeyComparator buildComparator(Object[] values,int[] index,int count,boolean desc){
+		Object first=values[index[0]];
+		boolean allDate=true,allIntegral=true,allDouble=true;
+		for(int i=0;i<count;i++){
+			Object value=values[index[i]];
+			if(!(value instanceof Date) || value instanceof Timestamp){
+				allDate=false;
+			}
+			if(!(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)){
+				allIntegral=false;
+			}
+			if(!(value instanceof Number) || value instanceof BigDecimal){
+				allDouble=false;
+			}
+		}
+		int size=values.length;
+		if(first instanceof Date){
+			if(allDate){
+				long[] keys=new long[size];
+				for(int i=0;i<count;i++){
+					keys[index[i]]=((Date)values[index[i]]).getTime();
+				}
+				return new LongKeyComparator(keys, desc);
+			}
+			// 含有Timestamp时需要比较纳秒部分，不同类型混合时与原来一样由Date.compareTo抛出异常
+			return new ComparableKeyComparator(values, desc);
+		}
+		if(first instanceof Number){
+			long[] keys;
+			if(allIntegral){
+				keys=new long[size];
+				for(int i=0;i<count;i++){
+					keys[index[i]]=((Number)values[index[i]]).longValue();
+				}
+				return new LongKeyComparator(keys, desc);
+			}
+			if(allDouble){
+				keys=new long[size];
+				for(int i=0;i<count;i++){
+					keys[index[i]]=sortableBits(((Number)values[index[i]]).doubleValue());
+				}
+				return new LongKeyComparator(keys, desc);
+			}
+			Object[] keyValues=new Object[size];
+			for(int i=0;i<count;i++){
+				keyValues[index[i]]=Utils.toBigDecimal(values[index[i]]);
+			}
+			return new ComparableKeyComparator(keyValues, desc);
+		}
+		Object[] keyValues=new Object[size];
+		for(int i=0;i<count;i++){
+			keyValues[index[i]]=values[index[i]].toString();
+		}
+		return new ComparableKeyComparator(keyValues, desc);
+	}
+
+	/**
+	 * 将double转为可直接按long比较大小的值，0.0与-0.0视为相等
+	 */
+	private static long sortableBits(double value){
+		if(value==0.0){
+			value=0.0;
+		}
+		long bits=Double.doubleToLongBits(value);
+		return bits^((bits>>63)&Long.MAX_VALUE);
+	}
+
+	private static void mergeSort(int[] index,int[] tmp,int from,int to,KeyComparator comparator){
+		if(to-from<=INSERTION_SORT_THRESHOLD){
+			for(int i=from+1;i<to;i++){
+				int current=index[i];
+				int j=i-1;
+				while(j>=from && comparator.compare(current, index[j])<0){
+					index[j+1]=index[j];
+					j--;
+				}
+				index[j+1]=current;
+			}
+			return;
+		}
+		int mid=(from+to)>>>1;
+		mergeSort(index, tmp, from, mid, comparator);
+		mergeSort(index, tmp, mid, to, comparator);
+		if(comparator.compare(index[mid], index[mid-1])>=0){
+			return;
+		}
+		System.arraycopy(index, from, tmp, from, to-from);
+		int left=from,right=mid,pos=from;
+		while(left<mid && right<to){
+			if(comparator.compare(tmp[right], tmp[left])<0){
+				index[pos++]=tmp[right++];
+			}else{
+				index[pos++]=tmp[left++];
+			}
+		}
+		while(left<mid){
+			index[pos++]=tmp[left++];
+		}
+		while(right<to){
+			index[pos++]=tmp[right++];
+		}
+	}
+
+	private interface KeyComparator{
+		/**
+		 * @return 下标为a的元素排在下标为b的元素之前时小于0，相等时为0，之后时大于0
+		 */
+		int compare(int a,int b);
+	}
+
+	private static class LongKeyComparator implements KeyComparator{
+		private final long[] keys;
+		private final boolean desc;
+		LongKeyComparator(long[] keys,boolean desc) {
+			this.keys=keys;
+			this.desc=desc;
+		}
+		@Override
+		public int compare(int a, int b) {
+			return desc ? Long.compare(keys[b], keys[a]) : Long.compare(keys[a], keys[b]);
+		}
+	}
+
+	private static class ComparableKeyComparator implements KeyComparator{
+		private final Object[] keys;
+		private final boolean desc;
+		ComparableKeyComparator(Object[] keys,boolean desc) {
+			this.keys=keys;
+			this.desc=desc;
+		}
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compare(int a, int b) {
+			return desc ? ((Comparable)keys[b]).compareTo(keys[a]) : ((Comparable)keys[a]).compareTo(keys[b]);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.utils;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按(类型,属性路径)缓存编译好的属性读取器，用于替代每次都要内省的PropertyUtils.getProperty。<br>
+ * getter方法优先通过LambdaMetafactory生成{@link Function}，无法生成时使用MethodHandle；
+ * 支持a.b.c形式的嵌套属性，中间值为Map时按key取值。
+ * 遇到带下标或mapped形式的属性、中间值为null或找不到getter等情况时返回{@link #UNRESOLVED}，
+ * 由调用方交给PropertyUtils处理，以保持原有的取值及异常行为。<br>
+ * 读取器通过{@link ClassValue}挂在对应的类上，不会因为这里的静态引用导致应用重新部署后旧的类加载器无法回收；
+ * 每个类缓存的属性路径不超过{@link #MAX_PROPERTIES}个，超出后新的属性路径每次都重新编译，不再放入缓存。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class PropertyAccessor {
+	public static final Object UNRESOLVED=new Object();
+	private static final PropertyAccessor UNSUPPORTED=new PropertyAccessor(null,null);
+	private static final int MAX_PROPERTIES=256;
+	private static final ClassValue<Map<String,PropertyAccessor>> accessorMap=new ClassValue<Map<String,PropertyAccessor>>(){
+		@Override
+		protected Map<String,PropertyAccessor> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String,PropertyAccessor>();
+		}
+	};
+	private final String[] names;
+	/**
+	 * 按声明的返回类型预先解析好的各级getter，为null时表示该级需要按运行时类型解析
+	 */
+	private final Getter[] getters;
+
+	private PropertyAccessor(String[] names,Getter[] getters) {
+		this.names=names;
+		this.getters=getters;
+	}
+
+	public static Object getProperty(Object bean,String property){
+		PropertyAccessor accessor=getAccessor(bean.getClass(), property);
+		if(accessor==UNSUPPORTED){
+			return UNRESOLVED;
+		}
+		return accessor.get(bean);
+	}
+
+	private Object get(Object bean){
+		Object value=bean;
+		for(int i=0;i<names.length;i++){
+			if(value==null){
+				return UNRESOLVED;
+			}
+			Getter getter=getters[i];
+			if(getter==null){
+				PropertyAccessor accessor=getAccessor(value.getClass(), names[i]);
+				if(accessor==UNSUPPORTED || accessor.getters[0]==null){
+					return UNRESOLVED;
+				}
+				getter=accessor.getters[0];
+			}
+			try{
+				value=getter.get(value);
+			}catch(Throwable ex){
+				return UNRESOLVED;
+			}
+		}
+		return value;
+	}
+
+	private static PropertyAccessor getAccessor(Class<?> clazz,String property){
+		Map<String,PropertyAccessor> map=accessorMap.get(clazz);
+		PropertyAccessor accessor=map.get(property);
+		if(accessor==null){
+			accessor=compile(clazz, property);
+			if(map.size()<MAX_PROPERTIES){
+				map.put(property, accessor);
+			}
+		}
+		return accessor;
+	}
+
+	private static PropertyAccessor compile(Class<?> clazz,String property){
+		if(property.indexOf('[')>-1 || property.indexOf('(')>-1){
+			return UNSUPPORTED;
+		}
+		String[] names=property.split("\\.");
+		Getter[] getters=new Getter[names.length];
+		Class<?> type=clazz;
+		for(int i=0;i<names.length;i++){
+			String name=names[i];
+			if(name.length()==0){
+				return UNSUPPORTED;
+			}
+			if(type==null){
+				continue;
+			}
+			if(Map.class.isAssignableFrom(type)){
+				getters[i]=new MapGetter(name);
+				type=null;
+				continue;
+			}
+			Method method=findReadMethod(type, name);
+			if(method==null){
+				if(i==0){
+					return UNSUPPORTED;
+				}
+				type=null;
+				continue;
+			}
+			Getter getter=buildGetter(method);
+			if(getter==null){
+				if(i==0){
+					return UNSUPPORTED;
+				}
+				type=null;
+				continue;
+			}
+			getters[i]=getter;
+			type=method.getReturnType();
+			if(type.isPrimitive() || type==Object.class){
+				type=null;
+			}
+		}
+		return new PropertyAccessor(names,getters);
+	}
+
+	private static Method findReadMethod(Class<?> type,String name){
+		BeanInfo beanInfo;
+		try {
+			beanInfo=Introspector.getBeanInfo(type);
+		} catch (IntrospectionException e) {
+			return null;
+		}
+		for(PropertyDescriptor pd:beanInfo.getPropertyDescriptors()){
+			if(pd.getName().equals(name)){
+				return pd.getReadMethod();
+			}
+		}
+		return null;
+	}
+
+	private static Getter buildGetter(Method method){
+		if(method.getParameterTypes().length>0 || Modifier.isStatic(method.getModifiers())){
+			return null;
+		}
+		MethodHandle handle;
+		try{
+			handle=MethodHandles.publicLookup().unreflect(method);
+		}catch(IllegalAccessException ex){
+			try{
+				method.setAccessible(true);
+				handle=MethodHandles.lookup().unreflect(method);
+			}catch(Exception e){
+				return null;
+			}
+		}
+		Function<Object,Object> function=buildLambda(method, handle);
+		if(function!=null){
+			return new FunctionGetter(function);
+		}
+		return new HandleGetter(handle.asType(MethodType.methodType(Object.class, Object.class)));
+	}
+
+	/**
+	 * 只有getter所在类为public且对当前类加载器可见时才生成lambda，否则生成的类无法链接到目标方法
+	 */
+	@SuppressWarnings("unchecked")
+	private static Function<Object,Object> buildLambda(Method method,MethodHandle handle){
+		Class<?> declaringClass=method.getDeclaringClass();
+		if(!Modifier.isPublic(declaringClass.getModifiers()) || !Modifier.isPublic(method.getModifiers())){
+			return null;
+		}
+		try{
+			ClassLoader classLoader=PropertyAccessor.class.getClassLoader();
+			if(Class.forName(declaringClass.getName(), false, classLoader)!=declaringClass){
+				return null;
+			}
+			Class<?> returnType=MethodType.methodType(method.getReturnType()).wrap().returnType();
+			MethodHandles.Lookup lookup=MethodHandles.lookup();
+			CallSite site=LambdaMetafactory.metafactory(lookup, "apply",
+					MethodType.methodType(Function.class),
+					MethodType.methodType(Object.class, Object.class),
+					handle,
+					MethodType.methodType(returnType, declaringClass));
+			return (Function<Object,Object>)site.getTarget().invoke();
+		}catch(Throwable ex){
+			return null;
+		}
+	}
+
+	private interface Getter{
+		Object get(Object bean) throws Throwable;
+	}
+
+	private static class FunctionGetter implements Getter{
+		private final Function<Object,Object> function;
+		FunctionGetter(Function<Object,Object> function){
+			this.function=function;
+		}
+		@Override
+		public Object get(Object bean) {
+			return function.apply(bean);
+		}
+	}
+
+	private static class HandleGetter implements Getter{
+		private final MethodHandle handle;
+		HandleGetter(MethodHandle handle){
+			this.handle=handle;
+		}
+		@Override
+		public Object get(Object bean) throws Throwable {
+			return handle.invokeExact(bean);
+		}
+	}
+
+	private static class MapGetter implements Getter{
+		private final String key;
+		MapGetter(String key){
+			this.key=key;
+		}
+		@Override
+		public Object get(Object bean) {
+			return ((Map<?,?>)bean).get(key);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.utils;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JLabel;
+
+/**
+ * 按字体(名称、大小、样式)缓存字符宽度的文本测量工具，
+ * 用于单元格自动换行时计算文本宽度及折行，避免每个单元格都创建FontMetrics并反复测量整段文本。<br>
+ * 文本按码点测量，CJK扩展B区、emoji等由代理对表示的字符作为一个字符测量，折行时不会被拆开；
+ * 缓存的字体数超出上限时淘汰最久未使用的。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class TextMeasurer {
+	private static final int PAGE_SIZE=256;
+	private static final int MAX_MEASURER_SIZE=256;
+	private static final Map<Font,TextMeasurer> measurerMap=new LinkedHashMap<Font,TextMeasurer>(16,0.75f,true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Font,TextMeasurer> eldest) {
+			return size()>MAX_MEASURER_SIZE;
+		}
+	};
+	private final FontMetrics fontMetrics;
+	/**
+	 * 按256个字符分页存放的基本多文种平面字符的宽度，存放的值为宽度+1，0表示还未测量；
+	 * 辅助平面的字符很少出现，不缓存，每次直接测量
+	 */
+	private final int[][] widthPages=new int[(Character.MAX_VALUE+1)/PAGE_SIZE][];
+
+	private TextMeasurer(Font font) {
+		this.fontMetrics=new JLabel().getFontMetrics(font);
+	}
+
+	public static TextMeasurer getMeasurer(Font font){
+		synchronized(measurerMap){
+			TextMeasurer measurer=measurerMap.get(font);
+			if(measurer==null){
+				measurer=new TextMeasurer(font);
+				measurerMap.put(font, measurer);
+			}
+			return measurer;
+		}
+	}
+
+	/**
+	 * @param codePoint 字符的码点
+	 * @return 字符宽度
+	 */
+	public int charWidth(int codePoint){
+		if(codePoint>Character.MAX_VALUE){
+			return fontMetrics.charWidth(codePoint);
+		}
+		int[] page=widthPages[codePoint/PAGE_SIZE];
+		if(page==null){
+			page=new int[PAGE_SIZE];
+			widthPages[codePoint/PAGE_SIZE]=page;
+		}
+		int index=codePoint%PAGE_SIZE;
+		int width=page[index];
+		if(width==0){
+			width=fontMetrics.charWidth(codePoint)+1;
+			page[index]=width;
+		}
+		return width-1;
+	}
+
+	public int stringWidth(CharSequence text){
+		int width=0;
+		int length=text.length();
+		for(int i=0;i<length;){
+			int codePoint=Character.codePointAt(text, i);
+			width+=charWidth(codePoint);
+			i+=Character.charCount(codePoint);
+		}
+		return width;
+	}
+
+	/**
+	 * 将文本按最大宽度折行，原文中的回车换行符会被忽略
+	 * @param text 文本
+	 * @param maxWidth 每行允许的最大宽度
+	 * @return 折行后的各行文本
+	 */
+	public List<String> breakLines(String text,int maxWidth){
+		List<String> lines=new ArrayList<String>();
+		StringBuilder line=new StringBuilder();
+		int lineWidth=0;
+		int length=text.length();
+		for(int i=0;i<length;){
+			int codePoint=text.codePointAt(i);
+			i+=Character.charCount(codePoint);
+			if(codePoint=='\r' || codePoint=='\n'){
+				continue;
+			}
+			int width=charWidth(codePoint);
+			if(lineWidth+width>maxWidth && line.length()>0){
+				lines.add(line.toString());
+				line.setLength(0);
+				lineWidth=0;
+			}
+			line.appendCodePoint(codePoint);
+			lineWidth+=width;
+		}
+		if(line.length()>0){
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bstek.ureport.build.Context;
+import com.bstek.ureport.expression.model.Operator;
+import com.bstek.ureport.utils.ArithmeticProgram;
+
+/**
+ * 单元格四则运算表达式(如A1+B1*C1-D1/E1)的求值耗时：legacy为原JoinExpression中拼接表达式字符串后调用context.evalExpr，
+ * program为{@link ArithmeticProgram}直接对操作数求值。每次调用计算1万组操作数。<br>
+ * 在测试classpath下运行main方法即可，不会在mvn test中执行。
+ * @author jackie
+ * @since 2.2.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=3)
+@Fork(1)
+public class ArithmeticBenchmark {
+	private static final int ROWS=10000;
+	private static final List<Operator> OPERATORS=Arrays.asList(Operator.Add,Operator.Multiply,Operator.Subtract,Operator.Divide);
+	@Param({"int","decimal","string"})
+	private String operandType;
+	private Object[][] operands;
+	private Context context;
+	private ArithmeticProgram program;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		Random random=new Random(42);
+		operands=new Object[ROWS][];
+		for(int i=0;i<ROWS;i++){
+			Object[] row=new Object[OPERATORS.size()+1];
+			for(int j=0;j<row.length;j++){
+				int value=random.nextInt(10000)+1;
+				switch(operandType){
+				case "int":
+					row[j]=value;
+					break;
+				case "decimal":
+					row[j]=BigDecimal.valueOf(value, 2);
+					break;
+				default:
+					row[j]=j==0 ? "item"+value : value;
+				}
+			}
+			operands[i]=row;
+		}
+		context=new Context(null, new HashMap<String,Object>());
+		program=new ArithmeticProgram(OPERATORS);
+	}
+
+	@Benchmark
+	public void legacy(Blackhole blackhole){
+		for(Object[] row:operands){
+			blackhole.consume(context.evalExpr(buildExpression(row)));
+		}
+	}
+
+	@Benchmark
+	public void program(Blackhole blackhole){
+		for(Object[] row:operands){
+			blackhole.consume(program.execute(row));
+		}
+	}
+
+	/**
+	 * 原JoinExpression中拼接表达式字符串的规则
+	 */
+	private static String buildExpression(Object[] row){
+		String str=null;
+		for(int i=0;i<row.length;i++){
+			Object data=row[i];
+			if(str==null){
+				if(data instanceof String){
+					str="\""+data+"\"";
+				}else{
+					str=""+data+"";
+				}
+			}else{
+				Operator op=OPERATORS.get(i-1);
+				if(data instanceof String){
+					str+=""+op+"\""+data+"\"";
+				}else{
+					str+=""+op+""+data+"";
+				}
+			}
+		}
+		return str;
+	}
+
+	public static void main(String[] args) throws Exception{
+		new Runner(new OptionsBuilder().include(ArithmeticBenchmark.class.getSimpleName()).build()).run();
+	}
+}
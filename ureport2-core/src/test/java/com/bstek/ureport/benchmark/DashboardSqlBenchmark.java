@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import com.bstek.ureport.build.Context;
+import com.bstek.ureport.definition.datasource.DataType;
+import com.bstek.ureport.definition.dataset.Field;
+import com.bstek.ureport.definition.dataset.Parameter;
+import com.bstek.ureport.definition.dataset.SqlDatasetDefinition;
+import com.bstek.ureport.definition.dataset.SqlTemplate;
+import com.bstek.ureport.dsl.ReportParserLexer;
+import com.bstek.ureport.dsl.ReportParserParser;
+import com.bstek.ureport.expression.ExpressionUtils;
+import com.bstek.ureport.expression.model.Expression;
+import com.bstek.ureport.expression.model.data.ExpressionData;
+import com.bstek.ureport.expression.model.data.ObjectExpressionData;
+import com.bstek.ureport.expression.parse.ExpressionErrorListener;
+
+/**
+ * 一次仪表盘请求加载50个SQL数据集的耗时，每个数据集的SQL中有三个${...}表达式，查询的是H2内存库中的小表，
+ * 耗时主要在准备SQL上：legacy为原来每次加载时编译正则、完整解析表达式、逐个替换后交给新的NamedParameterJdbcTemplate重新解析命名参数，
+ * template为{@link SqlTemplate}及缓存ParsedSql后的{@link SqlDatasetDefinition#buildDataset}。<br>
+ * 在测试classpath下运行main方法即可，不会在mvn test中执行。
+ * @author jackie
+ * @since 2.2.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=3)
+@Fork(value=1,jvmArgs={"-Djava.awt.headless=true"})
+public class DashboardSqlBenchmark {
+	private static final String URL="jdbc:h2:mem:ureport_dashboard;DB_CLOSE_DELAY=-1";
+	private static final int DATASETS=50;
+	private ClassPathXmlApplicationContext applicationContext;
+	private Connection connection;
+	private List<SqlDatasetDefinition> definitions;
+	private Map<String,Object> parameters;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		connection=DriverManager.getConnection(URL, "sa", "");
+		Statement st=connection.createStatement();
+		st.execute("drop table if exists dash_item");
+		st.execute("create table dash_item(id int primary key,region varchar(16),amount decimal(12,2))");
+		st.close();
+		PreparedStatement ps=connection.prepareStatement("insert into dash_item values(?,?,?)");
+		for(int i=0;i<20;i++){
+			ps.setInt(1, i);
+			ps.setString(2, i%2==0 ? "east" : "west");
+			ps.setBigDecimal(3, new java.math.BigDecimal(i*10));
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+		applicationContext=new ClassPathXmlApplicationContext("classpath:ureport-core-context.xml");
+		definitions=new ArrayList<SqlDatasetDefinition>();
+		for(int i=0;i<DATASETS;i++){
+			SqlDatasetDefinition definition=new SqlDatasetDefinition();
+			definition.setName("ds"+i);
+			definition.setSql("select id,region,amount,"+i+" as seq from dash_item where amount>=${param(\"minAmount\")}"
+					+" ${emptyparam(\"region\")==true?\"\":\" and region=:region\"} order by ${param(\"sort\")}");
+			Parameter parameter=new Parameter();
+			parameter.setName("region");
+			parameter.setType(DataType.String);
+			definition.setParameters(Collections.singletonList(parameter));
+			definition.setFields(new ArrayList<Field>());
+			definitions.add(definition);
+		}
+		parameters=new HashMap<String,Object>();
+		parameters.put("minAmount", 50);
+		parameters.put("region", "east");
+		parameters.put("sort", "id");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception{
+		applicationContext.close();
+		connection.close();
+	}
+
+	@Benchmark
+	public void legacy(Blackhole blackhole){
+		Context context=new Context(null, parameters);
+		for(SqlDatasetDefinition definition:definitions){
+			String sqlForUse=definition.getSql();
+			Pattern pattern=Pattern.compile("\\$\\{.*?\\}");
+			Matcher matcher=pattern.matcher(sqlForUse);
+			while(matcher.find()){
+				String substr=matcher.group();
+				Expression expr=parseExpression(substr.substring(2,substr.length()-1));
+				sqlForUse=sqlForUse.replace(substr, executeSqlExpr(expr, context));
+			}
+			Map<String,Object> pmap=new HashMap<String,Object>();
+			pmap.put("region", parameters.get("region"));
+			JdbcTemplate template=new JdbcTemplate(new SingleConnectionDataSource(connection,false));
+			blackhole.consume(new NamedParameterJdbcTemplate(template).queryForList(sqlForUse, pmap));
+		}
+	}
+
+	@Benchmark
+	public void template(Blackhole blackhole){
+		for(SqlDatasetDefinition definition:definitions){
+			blackhole.consume(definition.buildDataset(parameters, connection));
+		}
+	}
+
+	/**
+	 * 原ExpressionUtils.parseExpression：不缓存，直接用LL模式完整解析
+	 */
+	private static Expression parseExpression(String text){
+		ReportParserParser parser=new ReportParserParser(new CommonTokenStream(new ReportParserLexer(new ANTLRInputStream(text))));
+		parser.addErrorListener(new ExpressionErrorListener());
+		return ExpressionUtils.getExprVisitor().visitEntry(parser.entry());
+	}
+
+	private static String executeSqlExpr(Expression expr,Context context){
+		ExpressionData<?> data=expr.execute(null, null, context);
+		Object obj=((ObjectExpressionData)data).getData();
+		return obj.toString().replaceAll("\\\\", "");
+	}
+
+	public static void main(String[] args) throws Exception{
+		new Runner(new OptionsBuilder().include(DashboardSqlBenchmark.class.getSimpleName()).build()).run();
+	}
+}
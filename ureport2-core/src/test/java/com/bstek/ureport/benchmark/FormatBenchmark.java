@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.benchmark;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.definition.CellStyle;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.utils.FormatUtils;
+
+/**
+ * 10万个单元格通过Cell.doFormat格式化的耗时及内存分配：legacy为原来每个单元格新建DecimalFormat/SimpleDateFormat的格式化，
+ * doFormat为使用{@link FormatUtils}中按线程缓存的格式化对象。单元格的值为int、long、double、BigDecimal、日期及数字字符串，共5种格式。<br>
+ * 在测试classpath下运行main方法即可，不会在mvn test中执行；main方法加了GC profiler，结果中的gc.alloc.rate.norm为每次调用分配的字节数。
+ * @author jackie
+ * @since 2.2.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=3)
+@Fork(1)
+public class FormatBenchmark {
+	private static final int SIZE=100000;
+	private static final String[] NUMBER_FORMATS={"#,##0.00","0.0%","#,##0"};
+	private static final String[] DATE_FORMATS={"yyyy-MM-dd","yyyy-MM-dd HH:mm:ss"};
+	private Cell[] cells;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		Random random=new Random(42);
+		cells=new Cell[SIZE];
+		for(int i=0;i<SIZE;i++){
+			int value=random.nextInt(1000000);
+			Object data;
+			String format;
+			switch(i%6){
+			case 0:
+				data=value;
+				break;
+			case 1:
+				data=(long)value*1000;
+				break;
+			case 2:
+				data=value/7.0;
+				break;
+			case 3:
+				data=BigDecimal.valueOf(value, 2);
+				break;
+			case 4:
+				data=String.valueOf(value);
+				break;
+			default:
+				data=new Date(value*60000L);
+			}
+			if(data instanceof Date){
+				format=DATE_FORMATS[i%DATE_FORMATS.length];
+			}else{
+				format=NUMBER_FORMATS[i%NUMBER_FORMATS.length];
+			}
+			CellStyle style=new CellStyle();
+			style.setFormat(format);
+			Cell cell=new Cell();
+			cell.setCellStyle(style);
+			cell.setData(data);
+			cells[i]=cell;
+		}
+	}
+
+	@Benchmark
+	public void legacy(Blackhole blackhole){
+		for(Cell cell:cells){
+			blackhole.consume(legacyFormat(cell.getData(), cell.getCellStyle().getFormat()));
+		}
+	}
+
+	@Benchmark
+	public void doFormat(Blackhole blackhole){
+		for(Cell cell:cells){
+			cell.doFormat();
+			blackhole.consume(cell.getFormatData());
+		}
+	}
+
+	/**
+	 * 原Cell.doFormat中的格式化
+	 */
+	private static Object legacyFormat(Object data,String format){
+		if(data instanceof Date){
+			return new SimpleDateFormat(format).format((Date)data);
+		}
+		BigDecimal bd=null;
+		try{
+			bd=Utils.toBigDecimal(data);
+		}catch(Exception ex){
+		}
+		if(bd!=null){
+			return new DecimalFormat(format).format(bd.doubleValue());
+		}
+		return null;
+	}
+
+	public static void main(String[] args) throws Exception{
+		new Runner(new OptionsBuilder().include(FormatBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bstek.ureport.Utils;
+import com.bstek.ureport.build.BindData;
+import com.bstek.ureport.definition.Order;
+import com.bstek.ureport.utils.OrderUtils;
+
+/**
+ * 分组排序的耗时：legacy为原来在Comparator中逐次转换类型的排序，orderUtils为{@link OrderUtils}预先计算排序键的排序。<br>
+ * 数据中含null时OrderUtils与原来的排序完全一致（数据量大时同样会抛出Comparison method violates its general contract），所以这里只测试不含null的数据。
+ * 在测试classpath下运行main方法即可，不会在mvn test中执行。
+ * @author jackie
+ * @since 2.2.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=3)
+@Fork(value=1,jvmArgs={"-Xmx2g"})
+public class OrderBenchmark {
+	@Param({"int","double","date","string","decimal"})
+	private String keyType;
+	@Param({"500000"})
+	private int size;
+	private List<BindData> source;
+	private List<BindData> list;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		Random random=new Random(42);
+		source=new ArrayList<BindData>(size);
+		for(int i=0;i<size;i++){
+			int value=random.nextInt(size);
+			Object data;
+			switch(keyType){
+			case "int":
+				data=value;
+				break;
+			case "double":
+				data=value/7.0;
+				break;
+			case "date":
+				data=new Date(value*60000L);
+				break;
+			case "string":
+				data="item"+value;
+				break;
+			default:
+				data=BigDecimal.valueOf(value, 2);
+			}
+			source.add(new BindData(data));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void copy(){
+		list=new ArrayList<BindData>(source);
+	}
+
+	@Benchmark
+	public List<BindData> legacy(){
+		Collections.sort(list, (o1,o2) -> legacyCompare(o1.getValue(), o2.getValue(), Order.asc));
+		return list;
+	}
+
+	@Benchmark
+	public List<BindData> orderUtils(){
+		OrderUtils.sortBindDataList(list, Order.asc);
+		return list;
+	}
+
+	/**
+	 * 原Aggregate.orderBindDataList中的比较规则
+	 */
+	private static int legacyCompare(Object data1,Object data2,Order order){
+		if(data1==null || data2==null){
+			return 1;
+		}
+		int result;
+		if(data1 instanceof Date){
+			result=((Date)data1).compareTo((Date)data2);
+		}else if(data1 instanceof Number){
+			result=Utils.toBigDecimal(data1).compareTo(Utils.toBigDecimal(data2));
+		}else{
+			result=data1.toString().compareTo(data2.toString());
+		}
+		return order.equals(Order.asc) ? result : -result;
+	}
+
+	public static void main(String[] args) throws Exception{
+		new Runner(new OptionsBuilder().include(OrderBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bstek.ureport.utils.PropertyAccessor;
+
+/**
+ * 从100万个POJO中读取属性的耗时：propertyUtils为原来的PropertyUtils.getProperty，accessor为{@link PropertyAccessor}。<br>
+ * 在测试classpath下运行main方法即可，不会在mvn test中执行。
+ * @author jackie
+ * @since 2.2.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=3)
+@Fork(value=1,jvmArgs={"-Xmx2g"})
+public class PropertyBenchmark {
+	@Param({"salary","dept.name"})
+	private String property;
+	@Param({"1000000"})
+	private int size;
+	private List<Employee> employees;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		Dept[] depts=new Dept[20];
+		for(int i=0;i<depts.length;i++){
+			depts[i]=new Dept("dept"+i);
+		}
+		employees=new ArrayList<Employee>(size);
+		for(int i=0;i<size;i++){
+			employees.add(new Employee("emp"+i, BigDecimal.valueOf(i%10000, 2), depts[i%depts.length]));
+		}
+	}
+
+	@Benchmark
+	public void propertyUtils(Blackhole blackhole) throws Exception{
+		for(Employee employee:employees){
+			blackhole.consume(PropertyUtils.getProperty(employee, property));
+		}
+	}
+
+	@Benchmark
+	public void accessor(Blackhole blackhole){
+		for(Employee employee:employees){
+			blackhole.consume(PropertyAccessor.getProperty(employee, property));
+		}
+	}
+
+	public static class Employee{
+		private final String name;
+		private final BigDecimal salary;
+		private final Dept dept;
+		public Employee(String name,BigDecimal salary,Dept dept){
+			this.name=name;
+			this.salary=salary;
+			this.dept=dept;
+		}
+		public String getName() {
+			return name;
+		}
+		public BigDecimal getSalary() {
+			return salary;
+		}
+		public Dept getDept() {
+			return dept;
+		}
+	}
+
+	public static class Dept{
+		private final String name;
+		public Dept(String name){
+			this.name=name;
+		}
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static void main(String[] args) throws Exception{
+		new Runner(new OptionsBuilder().include(PropertyBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.benchmark;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.bstek.ureport.build.ReportBuilder;
+import com.bstek.ureport.definition.ReportDefinition;
+import com.bstek.ureport.export.ReportRender;
+import com.bstek.ureport.model.Report;
+import com.bstek.ureport.parser.ReportParser;
+
+/**
+ * 向下扩展的明细报表的构建耗时，行数每次翻倍，耗时应大致翻倍而不是翻四倍。<br>
+ * 在测试classpath下运行main方法即可，不会在mvn test中执行。
+ * @author jackie
+ * @since 2.2.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=2)
+@Measurement(iterations=3)
+@Fork(value=1,jvmArgs={"-Xmx2g","-Djava.awt.headless=true"})
+public class ReportBuildBenchmark {
+	private static final String URL="jdbc:h2:mem:ureport_benchmark;DB_CLOSE_DELAY=-1";
+	@Param({"25000","50000","100000","200000"})
+	private int rows;
+	private ClassPathXmlApplicationContext applicationContext;
+	private Connection connection;
+	private ReportBuilder reportBuilder;
+	private ReportDefinition reportDefinition;
+	private Map<String,Object> parameters;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		connection=DriverManager.getConnection(URL, "sa", "");
+		Statement st=connection.createStatement();
+		st.execute("drop table if exists ledger");
+		st.execute("create table ledger(id int primary key,name varchar(32),amount decimal(12,2))");
+		st.close();
+		PreparedStatement ps=connection.prepareStatement("insert into ledger values(?,?,?)");
+		for(int i=0;i<rows;i++){
+			ps.setInt(1, i);
+			ps.setString(2, "item"+i);
+			ps.setBigDecimal(3, new java.math.BigDecimal(i%10000).movePointLeft(2));
+			ps.addBatch();
+			if(i%5000==4999){
+				ps.executeBatch();
+			}
+		}
+		ps.executeBatch();
+		ps.close();
+		applicationContext=new ClassPathXmlApplicationContext("classpath:ureport-core-context.xml");
+		reportBuilder=applicationContext.getBean(ReportBuilder.class);
+		ReportParser parser=applicationContext.getBean(ReportParser.class);
+		InputStream input=ReportBuildBenchmark.class.getResourceAsStream("/benchmark/ledger.ureport.xml");
+		try{
+			reportDefinition=parser.parse(input, "ledger.ureport.xml");
+		}finally{
+			input.close();
+		}
+		applicationContext.getBean(ReportRender.class).rebuildReportDefinition(reportDefinition);
+		parameters=new HashMap<String,Object>();
+		parameters.put("rows", rows);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception{
+		applicationContext.close();
+		connection.close();
+	}
+
+	@Benchmark
+	public Report buildReport(){
+		return reportBuilder.buildReport(reportDefinition, parameters);
+	}
+
+	public static void main(String[] args) throws Exception{
+		new Runner(new OptionsBuilder().include(ReportBuildBenchmark.class.getSimpleName()).build()).run();
+	}
+}
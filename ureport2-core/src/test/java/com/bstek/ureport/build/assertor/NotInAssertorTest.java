@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.assertor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * NOT IN的结果应为IN的取反，left为null时为false；prepare后的结果与eval一致。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class NotInAssertorTest {
+	private final NotInAssertor assertor=new NotInAssertor();
+
+	@Test
+	public void listWithSeveralValues(){
+		Object right=Arrays.asList("a","b","c");
+		check(false, "a", right);
+		check(false, "c", right);
+		check(true, "d", right);
+	}
+
+	@Test
+	public void arrayAndCommaString(){
+		check(false, "b", new Object[]{"a","b"});
+		check(true, "x", new Object[]{"a","b"});
+		check(false, "b", "a,b,c");
+		check(true, "x", "a,b,c");
+	}
+
+	@Test
+	public void singleValueAndEmptyList(){
+		check(false, "a", Collections.singletonList("a"));
+		check(true, "b", Collections.singletonList("a"));
+		check(true, "a", Collections.emptyList());
+		check(false, 1, 1);
+		check(true, 1, 2);
+	}
+
+	@Test
+	public void nullLeftOrRight(){
+		check(false, null, Arrays.asList("a","b"));
+		check(false, "a", null);
+	}
+
+	private void check(boolean expected,Object left,Object right){
+		assertEquals(expected, assertor.eval(left, right));
+		assertEquals(expected, assertor.prepare(right).eval(left));
+		if(left!=null && right!=null){
+			assertTrue(expected!=new InAssertor().eval(left, right));
+		}else{
+			assertFalse(expected);
+		}
+	}
+}
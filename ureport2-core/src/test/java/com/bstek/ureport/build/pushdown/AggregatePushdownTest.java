@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.bstek.ureport.build.ReportBuilder;
+import com.bstek.ureport.definition.ReportDefinition;
+import com.bstek.ureport.definition.dataset.SqlDatasetDefinition;
+import com.bstek.ureport.export.ReportRender;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Column;
+import com.bstek.ureport.model.Report;
+import com.bstek.ureport.model.Row;
+import com.bstek.ureport.parser.ReportParser;
+
+/**
+ * 分组汇总下推到数据库后，每组的sum、avg、count、max、min必须与在原始行上计算的结果完全相同，汇总的列中包含null及定点数。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class AggregatePushdownTest {
+	private static final String URL="jdbc:h2:mem:ureport_aggregate;DB_CLOSE_DELAY=-1";
+	private static final int ROWS=80;
+	private static final String SQL="select id,region,category,amount,qty,price,tag from agg_item";
+	private static Connection connection;
+	private static ClassPathXmlApplicationContext applicationContext;
+	private static SqlPushdownPlanner planner;
+
+	@BeforeClass
+	public static void setup() throws Exception{
+		connection=DriverManager.getConnection(URL, "sa", "");
+		Statement st=connection.createStatement();
+		st.execute("create table agg_item(id int primary key,region varchar(8),category varchar(8),amount decimal(12,2),qty int,price double,tag varchar(8))");
+		st.close();
+		String[] regions={"east","west","East","south","west","east"};
+		String[] categories={"a","b","c","d"};
+		PreparedStatement ps=connection.prepareStatement("insert into agg_item values(?,?,?,?,?,?,?)");
+		for(int i=0;i<ROWS;i++){
+			ps.setInt(1, i);
+			// north只有一行，分组时走单行的分支
+			ps.setString(2, i==ROWS-1 ? "north" : regions[i%regions.length]);
+			ps.setString(3, categories[i%7%categories.length]);
+			ps.setBigDecimal(4, i%6==1 ? null : BigDecimal.valueOf(i*137L%5000-1200, 2));
+			ps.setObject(5, i%9==0 ? null : i%5);
+			ps.setDouble(6, i/10.0+0.1);
+			ps.setString(7, i%4==0 ? null : "t"+(i%3));
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+		applicationContext=new ClassPathXmlApplicationContext("classpath:ureport-core-context.xml");
+		planner=applicationContext.getBean(SqlPushdownPlanner.BEAN_ID, SqlPushdownPlanner.class);
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception{
+		planner.setEnabled(false);
+		planner.setAggregate(false);
+		applicationContext.close();
+		connection.close();
+	}
+
+	/**
+	 * 按两级分组的汇总，以及不在分组内、对整个数据集计算的合计行(avg按总行数计算)
+	 */
+	@Test
+	public void nestedGroupsAndTotals(){
+		String cells=cell("A1", 1, 1, "Down", null, null, "group", "region", "asc", "")
+				+cell("B1", 1, 2, "Down", "A1", null, "group", "category", "desc", "")
+				+cell("C1", 1, 3, "None", "B1", null, "sum", "amount", null, "")
+				+cell("D1", 1, 4, "None", "B1", null, "avg", "amount", null, "")
+				+cell("E1", 1, 5, "None", "B1", null, "count", "id", null, "")
+				+cell("F1", 1, 6, "None", "B1", null, "max", "qty", null, "")
+				+cell("G1", 1, 7, "None", "B1", null, "min", "amount", null, "")
+				+cell("C2", 2, 3, "None", null, null, "sum", "amount", null, "")
+				+cell("D2", 2, 4, "None", null, null, "avg", "amount", null, "")
+				+cell("E2", 2, 5, "None", null, null, "count", "id", null, "")
+				+cell("F2", 2, 6, "None", null, null, "max", "amount", null, "")
+				+cell("G2", 2, 7, "None", null, null, "min", "qty", null, "");
+		assertAggregated(SQL, cells, 2, 7);
+	}
+
+	/**
+	 * 交叉表中avg按值不为null的行数计算
+	 */
+	@Test
+	public void crosstab(){
+		String cells=cell("A2", 2, 1, "Down", null, null, "group", "region", "desc", "")
+				+cell("B1", 1, 2, "Right", null, null, "group", "category", "asc", "")
+				+cell("B2", 2, 2, "None", "A2", "B1", "avg", "amount", null, "")
+				+cell("C2", 2, 3, "None", "A2", "B1", "sum", "qty", null, "")
+				+cell("D2", 2, 4, "None", "A2", "B1", "count", "id", null, "");
+		assertAggregated(SQL, cells, 2, 4);
+	}
+
+	/**
+	 * 单元格条件中的列加入group by，条件仍在内存中按组计算；下推的条件与汇总同时使用
+	 */
+	@Test
+	public void conditionsOnAggregates(){
+		String condition=condition("qty", ">", "1");
+		String cells=cell("A1", 1, 1, "Down", null, null, "group", "region", "asc", condition)
+				+cell("B1", 1, 2, "None", "A1", null, "sum", "amount", null, condition)
+				+cell("C1", 1, 3, "None", "A1", null, "avg", "amount", null, condition)
+				+cell("D1", 1, 4, "None", "A1", null, "count", "id", null, condition+condition("amount", "<", "0"))
+				+cell("E1", 1, 5, "None", "A1", null, "min", "amount", null, condition);
+		assertAggregated(SQL, cells, 1, 5);
+		assertAggregated(SQL+" order by id", cells, 1, 5);
+	}
+
+	/**
+	 * 一个汇总行可能代表多行原始数据，不能按只有一行数据处理(如条件不满足时下级单元格的取值不同)
+	 */
+	@Test
+	public void singleAggregatedRow(){
+		String cells=cell("A1", 1, 1, "Down", null, null, "group", "region", "asc", "")
+				+cell("B1", 1, 2, "Down", "A1", null, "group", "category", "asc", "")
+				+cell("C1", 1, 3, "None", "B1", null, "sum", "amount", null, "")
+				+cell("D1", 1, 4, "None", "B1", null, "avg", "amount", null, "")
+				+cell("E1", 1, 5, "None", "B1", null, "count", "id", null, "");
+		assertAggregated("select region,category,amount,id from agg_item where region='east' and category='a'", cells, 1, 5);
+		assertAggregated("select region,category,amount,id from agg_item where region in ('north','west')", cells, 1, 5);
+		String condition=condition("region", "==", "\"west\"");
+		cells=cell("A1", 1, 1, "Down", null, null, "group", "category", "asc", condition)
+				+cell("B1", 1, 2, "None", "A1", null, "sum", "amount", null, "")
+				+cell("C1", 1, 3, "None", "A1", null, "count", "id", null, "");
+		assertAggregated("select region,category,amount,id from agg_item where region='east' and category='a'", cells, 1, 3);
+	}
+
+	/**
+	 * 浮点数列的sum由min()样本识别出不精确，本次回退到原SQL，之后仍然尝试下推
+	 */
+	@Test
+	public void inexactSumFallsBackOnce(){
+		String cells=cell("A1", 1, 1, "Down", null, null, "group", "region", "asc", "")
+				+cell("B1", 1, 2, "None", "A1", null, "sum", "price", null, "")
+				+cell("C1", 1, 3, "None", "A1", null, "max", "price", null, "");
+		ReportDefinition off=parse(SQL, cells, 1, 3);
+		List<String> expected=dump(build(off, false));
+		ReportDefinition on=parse(SQL, cells, 1, 3);
+		for(int i=0;i<2;i++){
+			Report report=build(on, true);
+			assertEquals(expected, dump(report));
+			assertEquals(ROWS, loadedRows(report));
+			assertNotNull(dataset(on).getAggregatePlan());
+		}
+	}
+
+	/**
+	 * 分组列中有null时各组排序后的顺序取决于排序前的顺序，汇总行无法还原，本次回退到原SQL
+	 */
+	@Test
+	public void nullGroupValuesFallBackOnce(){
+		String cells=cell("A1", 1, 1, "Down", null, null, "group", "tag", "asc", "")
+				+cell("B1", 1, 2, "None", "A1", null, "sum", "amount", null, "")
+				+cell("C1", 1, 3, "None", "A1", null, "count", "id", null, "");
+		ReportDefinition off=parse(SQL, cells, 1, 3);
+		List<String> expected=dump(build(off, false));
+		ReportDefinition on=parse(SQL, cells, 1, 3);
+		Report report=build(on, true);
+		assertEquals(expected, dump(report));
+		assertEquals(ROWS, loadedRows(report));
+		assertNotNull(dataset(on).getAggregatePlan());
+	}
+
+	private void assertAggregated(String sql,String cells,int rows,int columns){
+		List<String> expected=dump(build(parse(sql, cells, rows, columns), false));
+		ReportDefinition reportDefinition=parse(sql, cells, rows, columns);
+		Report report=build(reportDefinition, true);
+		assertEquals(sql, expected, dump(report));
+		assertNotNull(sql, dataset(reportDefinition).getAggregatePlan());
+		assertTrue(sql, report.getContext().getDatasetMap().get("ds").getData().get(0) instanceof AggregatedRow);
+	}
+
+	private Report build(ReportDefinition reportDefinition,boolean pushdown){
+		planner.setEnabled(pushdown);
+		planner.setAggregate(pushdown);
+		return applicationContext.getBean(ReportBuilder.class).buildReport(reportDefinition, new HashMap<String,Object>());
+	}
+
+	private ReportDefinition parse(String sql,String cells,int rows,int columns){
+		StringBuilder xml=new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><ureport>");
+		xml.append(cells);
+		for(int i=1;i<=rows;i++){
+			xml.append("<row row-number=\"").append(i).append("\" height=\"18\"/>");
+		}
+		for(int i=1;i<=columns;i++){
+			xml.append("<column col-number=\"").append(i).append("\" width=\"80\"/>");
+		}
+		xml.append("<datasource name=\"h2\" type=\"jdbc\" username=\"sa\" password=\"\" url=\"").append(URL).append("\" driver=\"org.h2.Driver\">");
+		xml.append("<dataset name=\"ds\" type=\"sql\"><sql><![CDATA[").append(sql).append("]]></sql>");
+		for(String field:new String[]{"id","region","category","amount","qty","price","tag"}){
+			xml.append("<field name=\"").append(field).append("\"/>");
+		}
+		xml.append("</dataset></datasource>");
+		xml.append("<paper type=\"A4\" left-margin=\"90\" right-margin=\"90\" top-margin=\"72\" bottom-margin=\"72\" paging-mode=\"fitpage\" fixrows=\"0\" width=\"595\" height=\"842\" orientation=\"portrait\" html-report-align=\"left\" bg-image=\"\" html-interval-refresh-value=\"0\" column-enabled=\"false\"></paper>");
+		xml.append("</ureport>");
+		ReportParser parser=applicationContext.getBean(ReportParser.class);
+		ReportDefinition reportDefinition=parser.parse(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), "aggregate.ureport.xml");
+		applicationContext.getBean(ReportRender.class).rebuildReportDefinition(reportDefinition);
+		return reportDefinition;
+	}
+
+	private static String cell(String name,int row,int col,String expand,String leftCell,String topCell,String aggregate,String property,String order,String conditions){
+		StringBuilder sb=new StringBuilder("<cell expand=\"").append(expand).append("\" name=\"").append(name).append("\" row=\"").append(row).append("\" col=\"").append(col).append("\"");
+		if(leftCell!=null){
+			sb.append(" left-cell=\"").append(leftCell).append("\"");
+		}
+		if(topCell!=null){
+			sb.append(" top-cell=\"").append(topCell).append("\"");
+		}
+		sb.append("><dataset-value dataset-name=\"ds\" aggregate=\"").append(aggregate).append("\" property=\"").append(property).append("\" order=\"").append(order==null ? "none" : order).append("\">");
+		sb.append(conditions).append("</dataset-value><cell-style font-size=\"10\"/></cell>");
+		return sb.toString();
+	}
+
+	private static String condition(String property,String op,String value){
+		return "<condition property=\""+property+"\" op=\""+op.replace("<", "&lt;")+"\" join=\"and\"><value><![CDATA["+value+"]]></value></condition>";
+	}
+
+	private SqlDatasetDefinition dataset(ReportDefinition reportDefinition){
+		return (SqlDatasetDefinition)reportDefinition.getDatasources().get(0).getDatasets().get(0);
+	}
+
+	private int loadedRows(Report report){
+		return report.getContext().getDatasetMap().get("ds").getData().size();
+	}
+
+	private List<String> dump(Report report){
+		List<String> lines=new ArrayList<String>();
+		Map<Row,Map<Column,Cell>> map=report.getRowColCellMap();
+		for(Row row:report.getRows()){
+			Map<Column,Cell> cells=map.get(row);
+			if(cells==null){
+				continue;
+			}
+			StringBuilder sb=new StringBuilder();
+			for(Column column:report.getColumns()){
+				Cell cell=cells.get(column);
+				sb.append(cell==null ? "" : String.valueOf(cell.getData())).append("|");
+			}
+			lines.add(sb.toString());
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.build.pushdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.bstek.ureport.build.Dataset;
+import com.bstek.ureport.build.ReportBuilder;
+import com.bstek.ureport.definition.ReportDefinition;
+import com.bstek.ureport.definition.dataset.Parameter;
+import com.bstek.ureport.definition.dataset.SqlDatasetDefinition;
+import com.bstek.ureport.export.ReportRender;
+import com.bstek.ureport.expression.ExpressionUtils;
+import com.bstek.ureport.expression.model.Op;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Column;
+import com.bstek.ureport.model.Report;
+import com.bstek.ureport.model.Row;
+import com.bstek.ureport.parser.ReportParser;
+
+/**
+ * 同一报表在条件下推开启与关闭时计算出的单元格值及顺序必须完全相同，数据中包含null、与列类型不同的比较值及带order by的SQL。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class SqlPushdownTest {
+	private static final String URL="jdbc:h2:mem:ureport_pushdown;DB_CLOSE_DELAY=-1";
+	private static final int ROWS=60;
+	private static final String SQL="select id,name,code,amount,ratio,qty,created from pd_item";
+	private static final String ORDERED_SQL=SQL+" order by id";
+	private static final String[] COLUMNS={"id","name","code","amount","qty"};
+	private static Connection connection;
+	private static ClassPathXmlApplicationContext applicationContext;
+	private static SqlPushdownPlanner planner;
+
+	@BeforeClass
+	public static void setup() throws Exception{
+		connection=DriverManager.getConnection(URL, "sa", "");
+		Statement st=connection.createStatement();
+		st.execute("create table pd_item(id int primary key,name varchar(16),code varchar(16),amount decimal(12,2),ratio double,qty int,created date)");
+		st.close();
+		String[] codes={"010","10","10.0","abc","7",null};
+		PreparedStatement ps=connection.prepareStatement("insert into pd_item values(?,?,?,?,?,?,?)");
+		for(int i=0;i<ROWS;i++){
+			ps.setInt(1, i);
+			ps.setString(2, i%7==0 ? null : (i%9==0 ? "N" : "n")+(i%5)+(i%10==3 ? "_%" : ""));
+			ps.setString(3, codes[i%codes.length]);
+			ps.setBigDecimal(4, i%5==0 ? null : BigDecimal.valueOf(i*250L-3000, 2));
+			ps.setObject(5, i%11==0 ? null : (i%3)/2.0);
+			ps.setObject(6, i%8==0 ? null : i%4);
+			ps.setDate(7, java.sql.Date.valueOf("2020-01-"+(i%28<9 ? "0" : "")+(i%28+1)));
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+		applicationContext=new ClassPathXmlApplicationContext("classpath:ureport-core-context.xml");
+		planner=applicationContext.getBean(SqlPushdownPlanner.BEAN_ID, SqlPushdownPlanner.class);
+	}
+
+	@AfterClass
+	public static void tearDown() throws Exception{
+		planner.setEnabled(false);
+		applicationContext.close();
+		connection.close();
+	}
+
+	@Test
+	public void numericConditions(){
+		assertPushed(ORDERED_SQL, condition("amount", ">", "0")+condition("qty", "==", "2"));
+		assertPushed(ORDERED_SQL, condition("amount", "<=", "param(\"maxAmount\")")+condition("amount", ">", "-10"));
+	}
+
+	@Test
+	public void stringConditionsWithNulls(){
+		assertPushed(ORDERED_SQL, condition("name", "==", "\"n1\""));
+		assertPushed(ORDERED_SQL, condition("name", "in", "\"n1,n2,N4\""));
+		assertPushed(ORDERED_SQL, condition("name", "like", "\"_%\""));
+		assertPushed(ORDERED_SQL, condition("name", "like", "\"1\"")+condition("amount", ">=", "0"));
+	}
+
+	/**
+	 * 列与比较值类型不同时内存中的比较结果与数据库中不一定相同，这些条件不能下推
+	 */
+	@Test
+	public void mixedTypeConditions(){
+		String[] conditions={
+			condition("code", "==", "10"),
+			condition("code", "in", "10"),
+			condition("qty", "==", "\"2\""),
+			condition("ratio", "==", "0.5"),
+			condition("ratio", ">", "0.4"),
+			condition("created", "like", "\"Jan\""),
+			condition("qty", "like", "\"1\"")
+		};
+		for(String condition:conditions){
+			List<String> expected=dump(build(ORDERED_SQL, condition, false));
+			Report report=build(ORDERED_SQL, condition, true);
+			assertEquals(condition, expected, dump(report));
+			assertEquals(condition, ROWS, loadedRows(report));
+		}
+	}
+
+	@Test
+	public void orderByIsKeptOnOuterQuery(){
+		assertPushed(SQL+" order by name desc nulls last, id", condition("amount", ">", "0"));
+		assertPushed(SQL+" order by 2, id desc;", condition("qty", ">=", "1"));
+		assertPushed(SQL+" order by \"CODE\", id", condition("name", "in", "\"n1,n3\""));
+	}
+
+	/**
+	 * 没有order by时行的顺序由数据库决定，下推后可能改变，列表单元格的数据集不下推
+	 */
+	@Test
+	public void orderByThatCannotBeMoved(){
+		String[] sqls={
+			SQL,
+			SQL+" order by lower(name), id",
+			SQL+" order by id desc limit 20",
+			SQL+" order by pd_item.id",
+			"select id,name,code,amount,qty from pd_item order by ratio, id"
+		};
+		for(String sql:sqls){
+			String condition=condition("amount", ">", "0");
+			List<String> expected=dump(build(sql, condition, false));
+			Report report=build(sql, condition, true);
+			assertEquals(sql, expected, dump(report));
+			assertEquals(sql, sql.contains("limit") ? 20 : ROWS, loadedRows(report));
+		}
+	}
+
+	@Test
+	public void splitOrderBy(){
+		SqlOrderBy split=SqlOrderBy.split("select a,b from t where c='order by x' -- order by y\n order by a desc, \"B\" nulls first ;");
+		assertEquals("select a,b from t where c='order by x' -- order by y", split.getBody());
+		assertEquals("order by a desc, \"B\" nulls first", split.getOrderBy());
+		assertEquals(2, split.getColumns().size());
+		split=SqlOrderBy.split("select a,row_number() over(order by b) from t");
+		assertEquals(null, split.getOrderBy());
+		assertEquals(null, SqlOrderBy.split("select top 10 a from t order by a"));
+		assertEquals(null, SqlOrderBy.split("select a from t order by a fetch first 10 rows only"));
+		assertEquals(null, SqlOrderBy.split("select a from t where b='x order by a"));
+	}
+
+	/**
+	 * 事务中下推的SQL出错时只回滚到保存点，事务中之前的修改仍然可见；语法错误之后不再下推
+	 */
+	@Test
+	public void fallbackInsideTransaction() throws Exception{
+		Connection conn=DriverManager.getConnection(URL, "sa", "");
+		try{
+			conn.setAutoCommit(false);
+			Statement st=conn.createStatement();
+			st.execute("insert into pd_item(id,qty) values(1000,2)");
+			st.close();
+			SqlDatasetDefinition dataset=new SqlDatasetDefinition();
+			dataset.setName("ds");
+			dataset.setSql("select id,id,qty from pd_item");
+			dataset.setParameters(new ArrayList<Parameter>());
+			List<SqlPredicate> predicates=new ArrayList<SqlPredicate>();
+			predicates.add(new SqlPredicate("qty", Op.Equals, ExpressionUtils.parseExpression("2"), "2"));
+			dataset.setPushdownPredicates(predicates);
+			Dataset result=dataset.buildDataset(new HashMap<String,Object>(), conn);
+			assertEquals(ROWS+1, result.getData().size());
+			assertTrue(dataset.getPushdownPredicates().isEmpty());
+			conn.rollback();
+		}finally{
+			conn.close();
+		}
+	}
+
+	private void assertPushed(String sql,String conditions){
+		List<String> expected=dump(build(sql, conditions, false));
+		Report report=build(sql, conditions, true);
+		assertEquals(sql+" "+conditions, expected, dump(report));
+		assertTrue(sql+" "+conditions, loadedRows(report)<ROWS);
+		assertFalse(expected.isEmpty());
+	}
+
+	private Report build(String sql,String conditions,boolean pushdown){
+		planner.setEnabled(pushdown);
+		StringBuilder xml=new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><ureport>");
+		for(int i=0;i<COLUMNS.length;i++){
+			String name=(char)('A'+i)+"1";
+			xml.append("<cell expand=\"").append(i==0 ? "Down" : "None").append("\" name=\"").append(name).append("\" row=\"1\" col=\"").append(i+1).append("\"");
+			if(i>0){
+				xml.append(" left-cell=\"A1\"");
+			}
+			xml.append("><dataset-value dataset-name=\"ds\" aggregate=\"select\" property=\"").append(COLUMNS[i]).append("\" order=\"none\">");
+			xml.append(conditions).append("</dataset-value><cell-style font-size=\"10\"/></cell>");
+		}
+		xml.append("<row row-number=\"1\" height=\"18\"/>");
+		for(int i=0;i<COLUMNS.length;i++){
+			xml.append("<column col-number=\"").append(i+1).append("\" width=\"80\"/>");
+		}
+		xml.append("<datasource name=\"h2\" type=\"jdbc\" username=\"sa\" password=\"\" url=\"").append(URL).append("\" driver=\"org.h2.Driver\">");
+		xml.append("<dataset name=\"ds\" type=\"sql\"><sql><![CDATA[").append(sql).append("]]></sql>");
+		for(String column:COLUMNS){
+			xml.append("<field name=\"").append(column).append("\"/>");
+		}
+		xml.append("</dataset></datasource>");
+		xml.append("<paper type=\"A4\" left-margin=\"90\" right-margin=\"90\" top-margin=\"72\" bottom-margin=\"72\" paging-mode=\"fitpage\" fixrows=\"0\" width=\"595\" height=\"842\" orientation=\"portrait\" html-report-align=\"left\" bg-image=\"\" html-interval-refresh-value=\"0\" column-enabled=\"false\"></paper>");
+		xml.append("</ureport>");
+		ReportParser parser=applicationContext.getBean(ReportParser.class);
+		ReportDefinition reportDefinition=parser.parse(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), "pushdown.ureport.xml");
+		applicationContext.getBean(ReportRender.class).rebuildReportDefinition(reportDefinition);
+		Map<String,Object> parameters=new HashMap<String,Object>();
+		parameters.put("maxAmount", new BigDecimal("5.00"));
+		return applicationContext.getBean(ReportBuilder.class).buildReport(reportDefinition, parameters);
+	}
+
+	private static String condition(String property,String op,String value){
+		return "<condition property=\""+property+"\" op=\""+op.replace("<", "&lt;")+"\" join=\"and\"><value><![CDATA["+value+"]]></value></condition>";
+	}
+
+	private int loadedRows(Report report){
+		return report.getContext().getDatasetMap().get("ds").getData().size();
+	}
+
+	private List<String> dump(Report report){
+		List<String> lines=new ArrayList<String>();
+		Map<Row,Map<Column,Cell>> map=report.getRowColCellMap();
+		for(Row row:report.getRows()){
+			Map<Column,Cell> cells=map.get(row);
+			if(cells==null){
+				continue;
+			}
+			StringBuilder sb=new StringBuilder();
+			for(Column column:report.getColumns()){
+				Cell cell=cells.get(column);
+				sb.append(cell==null ? "" : String.valueOf(cell.getData())).append("|");
+			}
+			lines.add(sb.toString());
+		}
+		return Collections.unmodifiableList(lines);
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.bstek.ureport.build.paging.Page;
+import com.bstek.ureport.model.Report;
+
+/**
+ * 计算期间报表被移除时，计算结果不能放入缓存；没有移除时同样的key直接取缓存。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ComputedReportCacheTest {
+	private static final Map<String,Object> PARAMETERS=Collections.<String,Object>singletonMap("id", 1);
+
+	@Test
+	public void cachesReport(){
+		ComputedReportCache cache=newCache();
+		CountingLoader loader=new CountingLoader(null, null);
+		Report report=cache.getReport("a.ureport.xml", PARAMETERS, loader);
+		assertSame(report, cache.getReport("a.ureport.xml", PARAMETERS, loader));
+		assertEquals(1, loader.count.get());
+	}
+
+	@Test
+	public void skipsStoreWhenEvictedDuringLoad(){
+		ComputedReportCache cache=newCache();
+		CountingLoader loader=new CountingLoader(cache, "a.ureport.xml");
+		Report first=cache.getReport("a.ureport.xml", PARAMETERS, loader);
+		Report second=cache.getReport("a.ureport.xml", PARAMETERS, loader);
+		assertNotSame(first, second);
+		assertEquals(2, loader.count.get());
+	}
+
+	@Test
+	public void skipsStoreWhenCleanedDuringLoad(){
+		final ComputedReportCache cache=newCache();
+		final AtomicInteger count=new AtomicInteger();
+		Callable<Report> loader=new Callable<Report>(){
+			@Override
+			public Report call(){
+				count.incrementAndGet();
+				cache.clean();
+				return newReport();
+			}
+		};
+		cache.getReport("a.ureport.xml", PARAMETERS, loader);
+		cache.getReport("a.ureport.xml", PARAMETERS, loader);
+		assertEquals(2, count.get());
+	}
+
+	private ComputedReportCache newCache(){
+		ComputedReportCache cache=new ComputedReportCache();
+		cache.setEnabled(true);
+		return cache;
+	}
+
+	private static Report newReport(){
+		Report report=new Report();
+		report.setPages(new ArrayList<Page>());
+		return report;
+	}
+
+	/**
+	 * 计算报表，evictFile不为null时在计算过程中移除该报表文件的缓存，相当于计算期间报表模版被修改
+	 */
+	private static class CountingLoader implements Callable<Report>{
+		private final AtomicInteger count=new AtomicInteger();
+		private final ComputedReportCache cache;
+		private final String evictFile;
+		CountingLoader(ComputedReportCache cache,String evictFile){
+			this.cache=cache;
+			this.evictFile=evictFile;
+		}
+		@Override
+		public Report call(){
+			count.incrementAndGet();
+			if(evictFile!=null){
+				cache.evict(evictFile);
+			}
+			return newReport();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2017 Bstek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.bstek.ureport.export.excel.high.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.bstek.ureport.definition.CellStyle;
+import com.bstek.ureport.definition.Orientation;
+import com.bstek.ureport.definition.Paper;
+import com.bstek.ureport.definition.PaperType;
+import com.bstek.ureport.model.Cell;
+import com.bstek.ureport.model.Column;
+import com.bstek.ureport.model.Report;
+import com.bstek.ureport.model.Row;
+
+/**
+ * {@link ExcelBuilderDirect}的内存回归测试：报表的行在读取时才生成，所有行共用同一组单元格，
+ * 报表模型本身几乎不占内存，堆的占用只来自导出过程。<br>
+ * 这个类在ureport2-core/pom.xml中单独的surefire执行(excel-memory)里以很小的-Xmx运行，
+ * 导出过程中保留的行数随报表行数增长时(如SXSSF行窗口过大、提前创建被跨行覆盖的行)，exportMillionRows会抛出OutOfMemoryError。
+ * @author jackie
+ * @since 2.2.10
+ */
+public class ExcelBuilderDirectMemoryTest {
+	private static final int COLUMNS=5;
+	/**
+	 * 每隔多少行放一个跨两行的单元格
+	 */
+	private static final int SPAN_INTERVAL=1000;
+
+	@Test
+	public void exportMillionRows(){
+		CountingOutputStream output=new CountingOutputStream();
+		new ExcelBuilderDirect().build(new SyntheticReport(1000000), output);
+		assertTrue(output.count>0);
+	}
+
+	@Test
+	public void writesRowsAndSpans() throws Exception{
+		int rowCount=3*SPAN_INTERVAL+10;
+		ByteArrayOutputStream output=new ByteArrayOutputStream();
+		new ExcelBuilderDirect().build(new SyntheticReport(rowCount), output);
+		XSSFWorkbook wb=new XSSFWorkbook(new ByteArrayInputStream(output.toByteArray()));
+		try{
+			Sheet sheet=wb.getSheetAt(0);
+			assertEquals(rowCount-1, sheet.getLastRowNum());
+			assertEquals("r0", sheet.getRow(0).getCell(0).getStringCellValue());
+			assertEquals(1.5, sheet.getRow(rowCount-1).getCell(1).getNumericCellValue(), 0);
+			assertEquals(3, sheet.getNumMergedRegions());
+			for(int i=0;i<sheet.getNumMergedRegions();i++){
+				CellRangeAddress region=sheet.getMergedRegion(i);
+				int first=(i+1)*SPAN_INTERVAL-1;
+				assertEquals(first, region.getFirstRow());
+				assertEquals(first+1, region.getLastRow());
+				assertEquals(COLUMNS-1, region.getFirstColumn());
+				org.apache.poi.ss.usermodel.Cell covered=sheet.getRow(first+1).getCell(COLUMNS-1);
+				assertEquals(sheet.getRow(first).getCell(COLUMNS-1).getCellStyle().getIndex(), covered.getCellStyle().getIndex());
+			}
+		}finally{
+			wb.close();
+		}
+	}
+
+	/**
+	 * 每行的Row对象在读取时创建，单元格按行号从三组共用的单元格中取：普通行、带跨行单元格的行、被跨行覆盖的行
+	 */
+	private static class SyntheticReport extends Report{
+		private final List<Row> rows;
+		private final Map<Row,Map<Column,Cell>> rowColCellMap;
+
+		SyntheticReport(final int rowCount){
+			Paper paper=new Paper();
+			paper.setPaperType(PaperType.A4);
+			paper.setOrientation(Orientation.portrait);
+			setPaper(paper);
+			List<Column> columns=new ArrayList<Column>();
+			for(int i=0;i<COLUMNS;i++){
+				Column column=new Column(columns);
+				column.setWidth(80);
+				columns.add(column);
+			}
+			setColumns(columns);
+			rows=new AbstractList<Row>(){
+				@Override
+				public Row get(int index){
+					Row row=new Row(this);
+					row.setHeight(18);
+					row.setTempRowNumber(index);
+					return row;
+				}
+				@Override
+				public int size(){
+					return rowCount;
+				}
+			};
+			Row sample=new Row(rows);
+			final Map<Column,Cell> plainCells=buildCells(columns, sample, "plain", 0);
+			final Map<Column,Cell> spanCells=buildCells(columns, sample, "span", 2);
+			final Map<Column,Cell> coveredCells=new HashMap<Column,Cell>(plainCells);
+			coveredCells.remove(columns.get(COLUMNS-1));
+			rowColCellMap=new AbstractMap<Row,Map<Column,Cell>>(){
+				@Override
+				public Map<Column,Cell> get(Object key){
+					int rowNumber=((Row)key).getTempRowNumber()+1;
+					if(rowNumber%SPAN_INTERVAL==0){
+						return spanCells;
+					}
+					if(rowNumber>SPAN_INTERVAL && rowNumber%SPAN_INTERVAL==1){
+						return coveredCells;
+					}
+					return plainCells;
+				}
+				@Override
+				public Set<Map.Entry<Row,Map<Column,Cell>>> entrySet(){
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		private Map<Column,Cell> buildCells(List<Column> columns,Row row,String prefix,int lastRowSpan){
+			Map<Column,Cell> cells=new HashMap<Column,Cell>();
+			for(int i=0;i<COLUMNS;i++){
+				Cell cell=new Cell();
+				cell.setName(prefix+i);
+				cell.setRow(row);
+				cell.setColumn(columns.get(i));
+				CellStyle style=new CellStyle();
+				style.setFontSize(9);
+				cell.setCellStyle(style);
+				if(i==0){
+					cell.setData("r0");
+				}else if(i==1){
+					cell.setData(1.5);
+				}else{
+					cell.setData(new BigDecimal("12345.67"));
+				}
+				if(i==COLUMNS-1){
+					cell.setRowSpan(lastRowSpan);
+				}
+				cells.put(columns.get(i), cell);
+			}
+			return cells;
+		}
+
+		@Override
+		public List<Row> getRows(){
+			return rows;
+		}
+
+		@Override
+		public Map<Row,Map<Column,Cell>> getRowColCellMap(){
+			return rowColCellMap;
+		}
+	}
+
+	private static class CountingOutputStream extends OutputStream{
+		private long count;
+		@Override
+		public void write(int b){
+			count++;
+		}
+		@Override
+		public void write(byte[] b,int off,int len){
+			count+=len;
+		}
+	}
+}
@@ -67,7 +67,7 @@ export function buildNewCellDef(rowNumber,columnNumber){
 export function tableToXml(context){
     const hot=context.hot;
     const countRows=hot.countRows(),countCols=hot.countCols();
-    let xml=`<?xml version="1.0" encoding="UTF-8"?><ureport>`;
+    let xml=`<?xml version="1.0" encoding="UTF-8"?><ureport${context.reportDef.parallelDatasets===false ? ' parallel-datasets="false"' : ''}>`;
     let rowsXml='',columnXml='';
     const rowHeaders=context.rowHeaders;
     for(let i=0;i<countRows;i++){
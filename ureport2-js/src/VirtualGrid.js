@@ -0,0 +1,225 @@
+/**
+ * Created by jackie on 2026-10-18.
+ * 虚拟滚动预览：按需从服务端/preview/loadRows分段取得行数据，只渲染可视区域内的行，
+ * 浏览器中最多保留MAX_WINDOWS段数据，适合浏览行数很多的报表。
+ * 第一段数据中带有所有可见行的行高(连续相同行高合并为一段)，据此建立每段起始行及起始位置的前缀和表，
+ * 未加载的行也能按实际行高计算位置，按位置查找行号时在表上二分查找。
+ */
+const WINDOW_SIZE=200,MAX_WINDOWS=5,OVERSCAN=20;
+
+export default class VirtualGrid{
+    constructor(container){
+        this.container=container;
+        this.windows=new Map();
+        this.loading=new Set();
+        this.total=0;
+        this.runRows=[0];
+        this.runTops=[0];
+        this.runHeights=[18];
+        this.totalHeight=0;
+        this.columns=[];
+        this.columnLefts=[];
+        this.viewport=$(`<div style="position:relative;overflow:auto;height:${$(window).height()-container.offset().top-10}px"></div>`);
+        this.spacer=$(`<div style="position:relative"></div>`);
+        this.viewport.append(this.spacer);
+        container.empty();
+        container.css('float','none');
+        container.append(this.viewport);
+        let scheduled=false;
+        this.viewport.scroll(()=>{
+            if(scheduled){
+                return;
+            }
+            scheduled=true;
+            window.requestAnimationFrame(()=>{
+                scheduled=false;
+                this.refresh();
+            });
+        });
+        this.loadWindow(0);
+    }
+
+    reload(){
+        this.windows.clear();
+        this.loading.clear();
+        this.viewport.scrollTop(0);
+        this.loadWindow(0);
+    }
+
+    loadWindow(windowIndex){
+        if(this.windows.has(windowIndex) || this.loading.has(windowIndex)){
+            return;
+        }
+        this.loading.add(windowIndex);
+        const parameters=window.buildLocationSearchParameters('_i');
+        const url=window._server+`/preview/loadRows${parameters}&_o=${windowIndex*WINDOW_SIZE}&_l=${WINDOW_SIZE}`;
+        $.ajax({
+            url,
+            type:'GET',
+            success:(data)=>{
+                this.loading.delete(windowIndex);
+                if(this.windows.size===0 && windowIndex===0){
+                    this.init(data);
+                }
+                this.windows.set(windowIndex,data);
+                this.evict(windowIndex);
+                this.refresh();
+            },
+            error:(response)=>{
+                this.loading.delete(windowIndex);
+                if(response && response.responseText){
+                    this.container.append("<h3 style='color: #d30e00;'>服务端错误："+response.responseText+"</h3>");
+                }else{
+                    this.container.append("<h3 style='color: #d30e00;'>加载数据失败</h3>");
+                }
+            }
+        });
+    }
+
+    init(data){
+        this.total=data.total;
+        this.columns=data.columns;
+        this.columnLefts=[];
+        let left=0;
+        for(let width of this.columns){
+            this.columnLefts.push(left);
+            left+=width;
+        }
+        this.buildRuns(data);
+        this.spacer.css({width:left+'pt',height:this.totalHeight+'pt'});
+    }
+
+    buildRuns(data){
+        this.runRows=[];
+        this.runTops=[];
+        this.runHeights=[];
+        let row=0,top=0;
+        const runs=data.heightRuns;
+        if(runs && runs.length>0){
+            for(let i=0;i<runs.length;i+=2){
+                this.runRows.push(row);
+                this.runTops.push(top);
+                this.runHeights.push(runs[i]);
+                row+=runs[i+1];
+                top+=runs[i]*runs[i+1];
+            }
+        }else{
+            const height=data.heights.length>0 && data.heights[0]>0 ? data.heights[0] : 18;
+            this.runRows.push(0);
+            this.runTops.push(0);
+            this.runHeights.push(height);
+            top=height*this.total;
+        }
+        this.totalHeight=top;
+    }
+
+    findRun(values,value){
+        let low=0,high=values.length-1;
+        while(low<high){
+            const mid=(low+high+1)>>1;
+            if(values[mid]<=value){
+                low=mid;
+            }else{
+                high=mid-1;
+            }
+        }
+        return low;
+    }
+
+    rowTop(row){
+        if(row>=this.total){
+            return this.totalHeight;
+        }
+        const run=this.findRun(this.runRows,row);
+        return this.runTops[run]+(row-this.runRows[run])*this.runHeights[run];
+    }
+
+    rowAt(top){
+        if(top<=0){
+            return 0;
+        }
+        if(top>=this.totalHeight){
+            return this.total;
+        }
+        const run=this.findRun(this.runTops,top);
+        const height=this.runHeights[run];
+        const offset=height>0 ? Math.floor((top-this.runTops[run])/height) : 0;
+        return Math.min(this.runRows[run]+offset,this.total);
+    }
+
+    evict(currentIndex){
+        while(this.windows.size>MAX_WINDOWS){
+            let farthest=null,distance=-1;
+            for(let index of this.windows.keys()){
+                const d=Math.abs(index-currentIndex);
+                if(d>distance){
+                    farthest=index;
+                    distance=d;
+                }
+            }
+            this.windows.delete(farthest);
+        }
+    }
+
+    refresh(){
+        if(this.total===0){
+            this.spacer.empty();
+            return;
+        }
+        const scrollTop=this.viewport.scrollTop()*3/4;
+        const first=Math.max(0,this.rowAt(scrollTop)-OVERSCAN);
+        const last=Math.min(this.total,this.rowAt(scrollTop+this.viewport.height()*3/4)+1+OVERSCAN);
+        const firstWindow=Math.floor(first/WINDOW_SIZE),lastWindow=Math.floor((last-1)/WINDOW_SIZE);
+        const fragment=document.createDocumentFragment();
+        for(let w=firstWindow;w<=lastWindow;w++){
+            const data=this.windows.get(w);
+            if(!data){
+                this.loadWindow(w);
+                continue;
+            }
+            for(let cell of data.cells){
+                const row=cell[0],rowSpan=Math.max(cell[2],1);
+                if(row+rowSpan<=first || row>=last){
+                    continue;
+                }
+                if(row<data.offset && w!==firstWindow){
+                    continue;
+                }
+                fragment.appendChild(this.buildCell(cell,data.styles));
+            }
+        }
+        this.spacer.empty();
+        this.spacer[0].appendChild(fragment);
+    }
+
+    buildCell(cell,styles){
+        const [row,col,rowSpan,colSpan,name,styleIndex,text,image]=cell;
+        let width=0;
+        const end=Math.min(col+Math.max(colSpan,1),this.columns.length);
+        for(let i=col;i<end;i++){
+            width+=this.columns[i];
+        }
+        const div=document.createElement('div');
+        div.className='_'+name;
+        if(styleIndex>-1){
+            div.style.cssText=styles[styleIndex];
+        }
+        div.style.position='absolute';
+        div.style.overflow='hidden';
+        div.style.whiteSpace='pre-wrap';
+        div.style.boxSizing='border-box';
+        div.style.left=this.columnLefts[col]+'pt';
+        const top=this.rowTop(row);
+        div.style.top=top+'pt';
+        div.style.width=width+'pt';
+        div.style.height=(this.rowTop(row+Math.max(rowSpan,1))-top)+'pt';
+        if(image){
+            const img=document.createElement('img');
+            img.src=image;
+            div.appendChild(img);
+        }else{
+            div.textContent=text;
+        }
+        return div;
+    }
+};
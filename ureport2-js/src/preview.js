@@ -5,6 +5,7 @@ import './form/external/bootstrap-datetimepicker.css';
 import {pointToMM,showLoading,hideLoading} from './Utils.js';
 import {alert} from './MsgBox.js';
 import PDFPrintDialog from './dialog/PDFPrintDialog.js';
+import VirtualGrid from './VirtualGrid.js';
 import defaultI18nJsonData from './i18n/preview.json';
 import en18nJsonData from './i18n/preview_en.json';
 (function($){
@@ -287,6 +288,10 @@ function _refreshData(second){
     });
 };
 
+window._buildVirtualGrid=function(containerId){
+    window._virtualGrid=new VirtualGrid($('#'+containerId));
+};
+
 window._buildChartDatas=function(chartData){
     if(!chartData){
         return;
@@ -318,6 +323,9 @@ window._buildChart=function(canvasId,chartJson){
         options.animation=animation;
     }
     animation.onComplete=function(event){
+        if(window._serverChartRender){
+            return;
+        }
         const chart=event.chart;
         const base64Image=chart.toBase64Image();
         const urlParameters=window.location.search;
@@ -345,6 +353,10 @@ window.submitSearchForm=function(file,customParameters){
             window.searchFormParameters[key]=value;
         }
     }
+    if(window._virtualGrid){
+        window._virtualGrid.reload();
+        return;
+    }
     const parameters=window.buildLocationSearchParameters('_i');
     let url=window._server+"/preview/loadData"+parameters;
     const pageSelector=$(`#pageSelector`);